@@ -28,6 +28,7 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
@@ -44,7 +45,8 @@ public class BaseConfiguration {
                                               UserManager userManager,
                                               EventRepository eventRepository,
                                               ExternalConfiguration externalConfiguration,
-                                              Environment environment) {
+                                              Environment environment,
+                                              ApplicationEventPublisher applicationEventPublisher) {
         Cache<Set<ConfigurationKeys>, Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration>> cache = Caffeine.newBuilder()
             .expireAfterWrite(Duration.ofMinutes(1))
             .build();
@@ -53,7 +55,9 @@ public class BaseConfiguration {
             eventRepository,
             externalConfiguration,
             environment,
-            cache);
+            cache,
+            applicationEventPublisher,
+            Duration.ofMillis(environment.getProperty("alfio.configuration.version-check-interval-ms", Long.class, 5_000L)));
     }
 
     public static ObjectMapper buildObjectMapper() {
@@ -27,6 +27,7 @@ import alfio.manager.*;
 import alfio.manager.i18n.MessageSourceManager;
 import alfio.manager.system.AdminJobManager;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.wallet.GoogleWalletManager;
 import alfio.repository.*;
 import alfio.repository.system.AdminJobQueueRepository;
 import alfio.repository.system.ConfigurationRepository;
@@ -188,7 +189,7 @@ public class DataSourceConfiguration {
      }
 
     @Bean
-    public MessageSourceManager messageSourceManager(ConfigurationRepository configurationRepository) {
+    public MessageSourceManager messageSourceManager(ConfigurationRepository configurationRepository, ConfigurationManager configurationManager) {
 
         var source = new CustomResourceBundleMessageSource();
         source.setBasenames("alfio.i18n.public", "alfio.i18n.admin");
@@ -197,8 +198,7 @@ public class DataSourceConfiguration {
         //the fallback to the system locale.
         source.setFallbackToSystemLocale(false);
         source.setAlwaysUseMessageFormat(true);
-
-        return new MessageSourceManager(source, configurationRepository);
+        return new MessageSourceManager(source, configurationRepository, configurationManager);
     }
 
     @Bean
@@ -236,12 +236,16 @@ public class DataSourceConfiguration {
                      SpecialPriceTokenGenerator specialPriceTokenGenerator,
                      WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor,
                      TicketReservationManager ticketReservationManager,
-                     AdminJobManager adminJobManager
+                     AdminJobManager adminJobManager,
+                     EventStatisticsManager eventStatisticsManager,
+                     GoogleWalletManager googleWalletManager,
+                     PaymentWebhookInboxManager paymentWebhookInboxManager,
+                     AdmissionQueueManager admissionQueueManager
                      ) {
         return new Jobs(adminReservationRequestManager, fileUploadManager,
             notificationManager, specialPriceTokenGenerator, ticketReservationManager,
             waitingQueueSubscriptionProcessor,
-            adminJobManager);
+            adminJobManager, eventStatisticsManager, googleWalletManager, paymentWebhookInboxManager, admissionQueueManager);
     }
 
     @Bean
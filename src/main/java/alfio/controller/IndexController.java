@@ -19,6 +19,7 @@ package alfio.controller;
 import alfio.controller.api.v2.model.Language;
 import alfio.controller.api.v2.user.support.EventLoader;
 import alfio.controller.support.CSPConfigurer;
+import alfio.controller.support.IndexShell;
 import alfio.manager.PurchaseContextManager;
 import alfio.manager.i18n.MessageSourceManager;
 import alfio.manager.openid.OpenIdAuthenticationManager;
@@ -35,8 +36,10 @@ import alfio.util.Json;
 import alfio.util.MustacheCustomTag;
 import alfio.util.RequestUtils;
 import ch.digitalfondue.jfiveparse.*;
-import org.apache.commons.collections4.IterableUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.ResponseEntity;
@@ -54,6 +57,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
 
 import static alfio.config.Initializer.PROFILE_LIVE;
@@ -61,6 +65,7 @@ import static alfio.controller.Constants.*;
 import static alfio.model.system.ConfigurationKeys.BASE_CUSTOM_CSS;
 import static alfio.util.HttpUtils.APPLICATION_JSON;
 import static java.util.Objects.requireNonNull;
+import static org.apache.commons.text.StringEscapeUtils.escapeHtml4;
 
 @Controller
 @Profile(PROFILE_LIVE)
@@ -69,7 +74,7 @@ public class IndexController {
     private static final String TEXT_HTML_CHARSET_UTF_8 = "text/html;charset=UTF-8";
     private static final String UTF_8 = "UTF-8";
 
-    private final Document indexPage;
+    private final IndexShell indexShell;
     private final Document openGraphPage;
     private final ConfigurationManager configurationManager;
     private final EventRepository eventRepository;
@@ -84,6 +89,9 @@ public class IndexController {
     private final Json json;
     private final CsrfTokenRepository csrfTokenRepository;
     private final CSPConfigurer cspConfigurer;
+    private final Cache<String, Pair<Map<String, String>, String>> serializedBundles = Caffeine.newBuilder()
+        .maximumSize(100)
+        .build();
 
     public IndexController(ConfigurationManager configurationManager,
                            EventRepository eventRepository,
@@ -115,7 +123,7 @@ public class IndexController {
              var idxOpenIs = new ClassPathResource("alfio/web-templates/event-open-graph-page.html").getInputStream();
              var idxIsR = new InputStreamReader(idxIs, StandardCharsets.UTF_8);
              var idxOpenGraphReader = new InputStreamReader(idxOpenIs, StandardCharsets.UTF_8)) {
-            indexPage = JFiveParse.parse(idxIsR);
+            indexShell = IndexShell.from(JFiveParse.parse(idxIsR));
             openGraphPage = JFiveParse.parse(idxOpenGraphReader);
         } catch (IOException e) {
             throw new IllegalStateException(e);
@@ -224,32 +232,26 @@ public class IndexController {
                 JFiveParse.serialize(res, osw);
             }
         } else {
-            try (var os = response.getOutputStream(); var osw = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
-                var baseCustomCss = configurationManager.getForSystem(BASE_CUSTOM_CSS).getValueOrNull();
-                var idx = indexPage.cloneNode(true);
-                if(session.getAttribute(OpenIdAuthenticationManager.USER_SIGNED_UP) != null) {
-                    Optional.ofNullable(IterableUtils.get(idx.getElementsByTagName("html"), 0))
-                            .ifPresent(html -> html.setAttribute("data-signed-up", "true"));
-                    session.removeAttribute(OpenIdAuthenticationManager.USER_SIGNED_UP);
-                }
-                idx.getElementsByTagName("script").forEach(element -> element.setAttribute(NONCE, nonce));
-                var head = idx.getElementsByTagName("head").get(0);
-                head.appendChild(buildScripTag(json.asJsonString(configurationManager.getInfo(session)), APPLICATION_JSON, "preload-info", null));
-                var httpServletRequest = requireNonNull(request.getNativeRequest(HttpServletRequest.class));
-                head.appendChild(buildMetaTag("GID", request.getSessionId()));
-                var csrf = csrfTokenRepository.loadToken(httpServletRequest);
-                if (csrf == null) {
-                    csrf = csrfTokenRepository.generateToken(httpServletRequest);
-                }
-                head.appendChild(buildMetaTag("XSRF_TOKEN", csrf.getToken()));
-                if (baseCustomCss != null) {
-                    var style = new Element("style");
-                    style.setAttribute("type", "text/css");
-                    style.appendChild(new Text(baseCustomCss));
-                    head.appendChild(style);
-                }
-                preloadTranslations(eventShortName, request, session, eventLoader, head, messageSourceManager, idx, json, lang);
-                JFiveParse.serialize(idx, osw);
+            var baseCustomCss = configurationManager.getForSystem(BASE_CUSTOM_CSS).getValueOrNull();
+            boolean signedUp = session.getAttribute(OpenIdAuthenticationManager.USER_SIGNED_UP) != null;
+            if (signedUp) {
+                session.removeAttribute(OpenIdAuthenticationManager.USER_SIGNED_UP);
+            }
+            var head = new StringBuilder();
+            appendScriptTag(head, json.asJsonString(configurationManager.getInfo(session)), APPLICATION_JSON, "preload-info", null);
+            var httpServletRequest = requireNonNull(request.getNativeRequest(HttpServletRequest.class));
+            appendMetaTag(head, "GID", request.getSessionId());
+            var csrf = csrfTokenRepository.loadToken(httpServletRequest);
+            if (csrf == null) {
+                csrf = csrfTokenRepository.generateToken(httpServletRequest);
+            }
+            appendMetaTag(head, "XSRF_TOKEN", csrf.getToken());
+            if (baseCustomCss != null) {
+                head.append("<style type=\"text/css\">").append(baseCustomCss).append("</style>");
+            }
+            var preloadLang = preloadTranslations(eventShortName, request, session, eventLoader, head, this::getSerializedBundle, json, lang);
+            try (var os = response.getOutputStream()) {
+                indexShell.write(os, nonce, preloadLang, signedUp, head);
             }
         }
     }
@@ -285,42 +287,61 @@ public class IndexController {
         }
     }
 
-    static void preloadTranslations(String eventShortName,
-                                    ServletWebRequest request,
-                                    HttpSession session,
-                                    EventLoader eventLoader,
-                                    Element head,
-                                    MessageSourceManager messageSourceManager,
-                                    Node idx,
-                                    Json json,
-                                    String lang) {
+    /**
+     * Appends the event info and the translations to the given head content.
+     *
+     * @return the language of the page
+     */
+    static String preloadTranslations(String eventShortName,
+                                      ServletWebRequest request,
+                                      HttpSession session,
+                                      EventLoader eventLoader,
+                                      StringBuilder head,
+                                      UnaryOperator<String> serializedBundle,
+                                      Json json,
+                                      String lang) {
         String preloadLang = Objects.requireNonNullElse(lang, "en");
         if (eventShortName != null) {
             var eventInfoOptional = eventLoader.loadEventInfo(eventShortName, session);
             if (eventInfoOptional.isPresent()) {
                 var ev = eventInfoOptional.get();
-                head.appendChild(buildScripTag(json.asJsonString(ev), APPLICATION_JSON, "preload-event", eventShortName));
+                appendScriptTag(head, json.asJsonString(ev), APPLICATION_JSON, "preload-event", eventShortName);
                 preloadLang = getMatchingLocale(request, ev.getContentLanguages().stream().map(Language::getLocale).toList(), lang).getLanguage();
             }
         }
-        head.appendChild(buildScripTag(json.asJsonString(messageSourceManager.getBundleAsMap("alfio.i18n.public", true, preloadLang, MessageSourceManager.PUBLIC_FRONTEND)), "application/json", "preload-bundle", preloadLang));
+        appendScriptTag(head, serializedBundle.apply(preloadLang), "application/json", "preload-bundle", preloadLang);
         // add fallback in english
         if (!"en".equals(preloadLang)) {
-            head.appendChild(buildScripTag(json.asJsonString(messageSourceManager.getBundleAsMap("alfio.i18n.public", true, "en", MessageSourceManager.PUBLIC_FRONTEND)), "application/json", "preload-bundle", "en"));
+            appendScriptTag(head, serializedBundle.apply("en"), "application/json", "preload-bundle", "en");
+        }
+        return preloadLang;
+    }
+
+    /**
+     * The serialized bundle is reused as long as {@link MessageSourceManager} returns the same bundle instance,
+     * i.e. until the translations are modified.
+     */
+    private String getSerializedBundle(String lang) {
+        var bundle = messageSourceManager.getBundleAsMap("alfio.i18n.public", true, lang, MessageSourceManager.PUBLIC_FRONTEND);
+        var cached = serializedBundles.getIfPresent(lang);
+        if (cached != null && cached.getLeft() == bundle) {
+            return cached.getRight();
         }
-        var htmlElement = IterableUtils.get(idx.getElementsByTagName("html"), 0);
-        htmlElement.setAttribute("lang", preloadLang);
+        var serialized = json.asJsonString(bundle);
+        serializedBundles.put(lang, Pair.of(bundle, serialized));
+        return serialized;
     }
 
-    private static Element buildScripTag(String content, String type, String id, String param) {
-        var e = new Element("script");
-        e.appendChild(new Text(content));
-        e.setAttribute("type", type);
-        e.setAttribute("id", id);
+    private static void appendScriptTag(StringBuilder head, String content, String type, String id, String param) {
+        head.append("<script type=\"").append(escapeHtml4(type)).append("\" id=\"").append(escapeHtml4(id)).append('"');
         if (param != null) {
-            e.setAttribute("data-param", param);
+            head.append(" data-param=\"").append(escapeHtml4(param)).append('"');
         }
-        return e;
+        head.append('>').append(content).append("</script>");
+    }
+
+    private static void appendMetaTag(StringBuilder head, String name, String content) {
+        head.append("<meta name=\"").append(escapeHtml4(name)).append("\" content=\"").append(escapeHtml4(content)).append("\">");
     }
 
     private static String reservationStatusToUrlMapping(TicketReservationStatusAndValidation status) {
@@ -399,10 +420,6 @@ public class IndexController {
         return buildMetaTag(PROPERTY, propertyValue, contentValue);
     }
 
-    private static Element buildMetaTag(String name, String content) {
-        return buildMetaTag("name", name, content);
-    }
-
     private static Element buildMetaTag(String property, String propertyValue, String content) {
         var meta = new Element("meta");
         meta.setAttribute(property, propertyValue);
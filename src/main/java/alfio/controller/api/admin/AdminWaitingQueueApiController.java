@@ -21,6 +21,8 @@ import alfio.manager.EventManager;
 import alfio.manager.EventStatisticsManager;
 import alfio.manager.TicketReservationManager;
 import alfio.manager.WaitingQueueManager;
+import alfio.manager.WaitingQueueProcessingTimeTracker;
+import alfio.manager.support.WaitingQueueProcessingTime;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.Event;
 import alfio.model.WaitingQueueSubscription;
@@ -55,19 +57,22 @@ public class AdminWaitingQueueApiController {
     private final ConfigurationManager configurationManager;
     private final EventStatisticsManager eventStatisticsManager;
     private final ClockProvider clockProvider;
+    private final WaitingQueueProcessingTimeTracker processingTimeTracker;
 
     public AdminWaitingQueueApiController(WaitingQueueManager waitingQueueManager,
                                           EventManager eventManager,
                                           TicketReservationManager ticketReservationManager,
                                           ConfigurationManager configurationManager,
                                           EventStatisticsManager eventStatisticsManager,
-                                          ClockProvider clockProvider) {
+                                          ClockProvider clockProvider,
+                                          WaitingQueueProcessingTimeTracker processingTimeTracker) {
         this.waitingQueueManager = waitingQueueManager;
         this.eventManager = eventManager;
         this.ticketReservationManager = ticketReservationManager;
         this.configurationManager = configurationManager;
         this.eventStatisticsManager = eventStatisticsManager;
         this.clockProvider = clockProvider;
+        this.processingTimeTracker = processingTimeTracker;
     }
 
     @GetMapping("/status")
@@ -114,6 +119,12 @@ public class AdminWaitingQueueApiController {
         return 0;
     }
 
+    @GetMapping("/processing-time")
+    public ResponseEntity<WaitingQueueProcessingTime> getProcessingTime(@PathVariable("eventName") String eventName, Principal principal) {
+        return ResponseEntity.of(eventManager.getOptionalEventAndOrganizationIdByName(eventName, principal.getName())
+            .map(e -> processingTimeTracker.getProcessingTime(e.getId())));
+    }
+
     @GetMapping("/load")
     public List<WaitingQueueSubscription> loadAllSubscriptions(@PathVariable("eventName") String eventName, Principal principal, HttpServletResponse response) {
         Optional<List<WaitingQueueSubscription>> count = eventManager.getOptionalEventAndOrganizationIdByName(eventName, principal.getName())
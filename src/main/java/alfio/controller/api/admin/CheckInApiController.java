@@ -17,8 +17,11 @@
 package alfio.controller.api.admin;
 
 import alfio.manager.CheckInManager;
+import alfio.manager.CheckInLatencyTracker;
 import alfio.manager.EventManager;
+import alfio.manager.support.CheckInLatency;
 import alfio.manager.support.CheckInStatistics;
+import alfio.manager.support.CheckInStatus;
 import alfio.manager.support.TicketAndCheckInResult;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.EventAndOrganizationId;
@@ -56,13 +59,16 @@ public class CheckInApiController {
     private final CheckInManager checkInManager;
     private final EventManager eventManager;
     private final ConfigurationManager configurationManager;
+    private final CheckInLatencyTracker checkInLatencyTracker;
 
     public CheckInApiController(CheckInManager checkInManager,
                                 EventManager eventManager,
-                                ConfigurationManager configurationManager) {
+                                ConfigurationManager configurationManager,
+                                CheckInLatencyTracker checkInLatencyTracker) {
         this.checkInManager = checkInManager;
         this.eventManager = eventManager;
         this.configurationManager = configurationManager;
+        this.checkInLatencyTracker = checkInLatencyTracker;
     }
 
 
@@ -126,7 +132,10 @@ public class CheckInApiController {
                                           Principal principal) {
         String username = principal.getName();
         String auditUser = StringUtils.defaultIfBlank(offlineUser, username);
-        return checkInManager.checkIn(eventName, ticketIdentifier, Optional.ofNullable(ticketCode).map(TicketCode::getCode), username, auditUser);
+        long start = System.nanoTime();
+        var result = checkInManager.checkIn(eventName, ticketIdentifier, Optional.ofNullable(ticketCode).map(TicketCode::getCode), username, auditUser);
+        recordLatency(eventName, result, start);
+        return result;
     }
 
     @PostMapping("/check-in/event/{eventName}/bulk")
@@ -140,9 +149,11 @@ public class CheckInApiController {
         return ticketIdentifierCodes.stream()
             .distinct()
             .map(t -> {
+                long start = System.nanoTime();
                 TicketAndCheckInResult res = checkInManager.checkIn(eventName, t.getIdentifier(),
                     Optional.ofNullable(t.getCode()),
                     username, auditUser, forceCheckInPaymentOnSite);
+                recordLatency(eventName, res, start);
                 return Pair.of(t.identifier, res);
             })
             .collect(Collectors.toMap(Pair::getKey, Pair::getValue));
@@ -195,6 +206,18 @@ public class CheckInApiController {
     public CheckInStatistics getStatistics(@PathVariable("eventName") String eventName, Principal principal) {
         return checkInManager.getStatistics(eventName, principal.getName());
     }
+
+    @GetMapping("/check-in/event/{eventName}/latency")
+    public ResponseEntity<CheckInLatency> getLatency(@PathVariable("eventName") String eventName, Principal principal) {
+        return ResponseEntity.of(eventManager.getOptionalEventAndOrganizationIdByName(eventName, principal.getName())
+            .map(ev -> checkInLatencyTracker.getLatency(eventName)));
+    }
+
+    private void recordLatency(String eventName, TicketAndCheckInResult result, long start) {
+        if(result.getResult().getStatus() != CheckInStatus.EVENT_NOT_FOUND) {
+            checkInLatencyTracker.record(eventName, System.nanoTime() - start);
+        }
+    }
     
     @PostMapping("/check-in/{eventId}/ticket/{ticketIdentifier}/confirm-on-site-payment")
     public OnSitePaymentConfirmation confirmOnSitePayment(@PathVariable("eventId") int eventId, @PathVariable("ticketIdentifier") String ticketIdentifier) {
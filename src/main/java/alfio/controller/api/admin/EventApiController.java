@@ -48,6 +48,7 @@ import com.opencsv.exceptions.CsvException;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.function.FailableConsumer;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.slf4j.Logger;
@@ -365,10 +366,10 @@ public class EventApiController {
     }
 
     private void exportTicketExcel(String eventName, HttpServletResponse response, Principal principal, List<String> fields, Map<Integer,TicketCategory> categoriesMap, ZoneId eventZoneId) throws IOException {
-        ExportUtils.exportExcel(eventName + "-export.xlsx",
+        exportLines(eventName, principal, fields, categoriesMap, eventZoneId, lines -> ExportUtils.exportExcel(eventName + "-export.xlsx",
             eventName + " export",
             exportHeader(fields),
-            exportLines(eventName, principal, fields, categoriesMap, eventZoneId), response);
+            lines, response));
 
     }
 
@@ -376,7 +377,7 @@ public class EventApiController {
                            Principal principal, List<String> fields,
                            Map<Integer, TicketCategory> categoriesMap,
                            ZoneId eventZoneId) throws IOException {
-        ExportUtils.exportCsv(eventName + "-export.csv", exportHeader(fields), exportLines(eventName, principal, fields, categoriesMap, eventZoneId), response);
+        exportLines(eventName, principal, fields, categoriesMap, eventZoneId, lines -> ExportUtils.exportCsv(eventName + "-export.csv", exportHeader(fields), lines, response));
     }
 
     private String[] exportHeader(List<String> fields) {
@@ -388,11 +389,15 @@ public class EventApiController {
         }).toArray(String[]::new);
     }
 
-    private Stream<String[]> exportLines(String eventName, Principal principal, List<String> fields, Map<Integer, TicketCategory> categoriesMap, ZoneId eventZoneId) {
+    private void exportLines(String eventName, Principal principal, List<String> fields, Map<Integer, TicketCategory> categoriesMap, ZoneId eventZoneId,
+                             FailableConsumer<Stream<String[]>, IOException> writer) throws IOException {
         var username = principal.getName();
         var eInvoicingEnabled = configurationManager.isItalianEInvoicingEnabled(eventManager.getEventAndOrganizationId(eventName, username));
 
-        return eventManager.findAllConfirmedTicketsForCSV(eventName, username).stream().map(trs -> {
+        boolean customFieldsRequested = fields.stream().anyMatch(f -> f.startsWith(CUSTOM_FIELDS_PREFIX));
+
+        eventManager.exportAllConfirmedTickets(eventName, username, customFieldsRequested, tickets -> writer.accept(tickets.map(p -> {
+            var trs = p.getLeft();
             Ticket t = trs.getTicket();
             var currencyCode = t.getCurrencyCode();
             TicketReservation reservation = trs.getTicketReservation();
@@ -432,8 +437,7 @@ public class EventApiController {
                 if(fields.contains("PEC")) {line.add(optionalInvoicingData.map(ItalianEInvoicing::getPec).orElse(""));}
             }
 
-            //obviously not optimized
-            Map<String, String> additionalValues = ticketFieldRepository.findAllValuesForTicketId(t.getId());
+            Map<String, String> additionalValues = p.getRight();
 
             Predicate<String> contains = FIXED_FIELDS::contains;
 
@@ -443,7 +447,7 @@ public class EventApiController {
             });
 
             return line.toArray(new String[0]);
-        });
+        })));
     }
 
     @GetMapping("/events/{eventName}/sponsor-scan/export")
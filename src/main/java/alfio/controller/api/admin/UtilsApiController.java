@@ -20,7 +20,11 @@ import alfio.config.Initializer;
 import alfio.controller.api.support.CurrencyDescriptor;
 import alfio.controller.api.support.TicketHelper;
 import alfio.manager.EventNameManager;
+import alfio.manager.PaymentWebhookInboxManager;
+import alfio.model.transaction.webhook.PaymentWebhookInboxStatus;
 import alfio.util.MustacheCustomTag;
+import alfio.util.RequestUtils;
+import alfio.util.TemplateManager;
 import alfio.util.Wrappers;
 import org.apache.commons.lang3.tuple.Pair;
 import org.joda.money.CurrencyUnit;
@@ -50,12 +54,20 @@ public class UtilsApiController {
     private final EventNameManager eventNameManager;
     private final String version;
     private final Environment environment;
+    private final PaymentWebhookInboxManager paymentWebhookInboxManager;
+    private final TemplateManager templateManager;
 
     @Autowired
-    public UtilsApiController(EventNameManager eventNameManager, @Value("${alfio.version}") String version, Environment environment) {
+    public UtilsApiController(EventNameManager eventNameManager,
+                              @Value("${alfio.version}") String version,
+                              Environment environment,
+                              PaymentWebhookInboxManager paymentWebhookInboxManager,
+                              TemplateManager templateManager) {
         this.eventNameManager = eventNameManager;
         this.version = version;
         this.environment = environment;
+        this.paymentWebhookInboxManager = paymentWebhookInboxManager;
+        this.templateManager = templateManager;
     }
 
     @ExceptionHandler(MissingServletRequestParameterException.class)
@@ -89,9 +101,25 @@ public class UtilsApiController {
         applicationInfo.put("version", version);
         applicationInfo.put("username", principal.getName());
         applicationInfo.put("isDemoMode", environment.acceptsProfiles(Profiles.of(Initializer.PROFILE_DEMO)));
+        if(RequestUtils.isAdmin(principal)) {
+            var stats = templateManager.getCompiledTemplatesStats();
+            applicationInfo.put("compiledTemplatesCache", Map.of(
+                "hitCount", stats.hitCount(),
+                "missCount", stats.missCount(),
+                "hitRate", stats.hitRate(),
+                "evictionCount", stats.evictionCount()));
+        }
         return applicationInfo;
     }
 
+    @GetMapping("/payment-webhook-inbox/status")
+    public ResponseEntity<PaymentWebhookInboxStatus> getPaymentWebhookInboxStatus(Principal principal) {
+        if(!RequestUtils.isAdmin(principal)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(paymentWebhookInboxManager.getStatus());
+    }
+
     @GetMapping("/currencies")
     public List<CurrencyDescriptor> getCurrencies() {
         return CurrencyUnit.registeredCurrencies().stream()
@@ -18,6 +18,7 @@ package alfio.controller.api.v1;
 
 import alfio.manager.AttendeeManager;
 import alfio.manager.support.SponsorAttendeeData;
+import alfio.manager.support.SponsorScanRegistration;
 import alfio.manager.support.TicketAndCheckInResult;
 import alfio.model.SponsorScan;
 import alfio.model.result.Result;
@@ -85,9 +86,10 @@ public class AttendeeApiController {
                                                                    Principal principal,
                                                                    @RequestHeader(name = ALFIO_OPERATOR_HEADER, required = false) String operator) {
         String username = principal.getName();
-        return ResponseEntity.ok(requests.stream()
-            .map(request -> attendeeManager.registerSponsorScan(request.eventName, request.ticketIdentifier, request.notes, request.leadStatus, username, operator))
-            .collect(Collectors.toList()));
+        var scans = requests.stream()
+            .map(request -> new SponsorScanRegistration(request.eventName, request.ticketIdentifier, request.notes, request.leadStatus))
+            .collect(Collectors.toList());
+        return ResponseEntity.ok(attendeeManager.registerSponsorScans(scans, username, operator));
     }
 
     @GetMapping("/{eventKey}/sponsor-scan/mine")
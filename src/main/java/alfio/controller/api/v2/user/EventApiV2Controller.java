@@ -21,6 +21,7 @@ import alfio.controller.api.v2.model.EventWithAdditionalInfo;
 import alfio.controller.api.v2.model.TicketCategory;
 import alfio.controller.api.v2.model.*;
 import alfio.controller.api.v2.user.support.EventLoader;
+import alfio.controller.api.v2.user.support.EventPageReadModel;
 import alfio.controller.decorator.SaleableAdditionalService;
 import alfio.controller.decorator.SaleableTicketCategory;
 import alfio.controller.form.ReservationForm;
@@ -30,6 +31,7 @@ import alfio.controller.support.Formatters;
 import alfio.manager.*;
 import alfio.manager.i18n.I18nManager;
 import alfio.manager.i18n.MessageSourceManager;
+import alfio.manager.support.AdmissionQueueStatus;
 import alfio.manager.support.response.ValidatedResponse;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.*;
@@ -38,10 +40,12 @@ import alfio.model.result.ValidationResult;
 import alfio.model.system.ConfigurationKeys;
 import alfio.repository.*;
 import alfio.util.*;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -49,12 +53,15 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.WebUtils;
 
+import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
 import java.security.Principal;
+import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.function.Function;
@@ -75,10 +82,7 @@ public class EventApiV2Controller {
     private final EventRepository eventRepository;
     private final ConfigurationManager configurationManager;
     private final EventDescriptionRepository eventDescriptionRepository;
-    private final TicketCategoryDescriptionRepository ticketCategoryDescriptionRepository;
     private final MessageSourceManager messageSourceManager;
-    private final AdditionalServiceRepository additionalServiceRepository;
-    private final AdditionalServiceTextRepository additionalServiceTextRepository;
     private final WaitingQueueManager waitingQueueManager;
     private final I18nManager i18nManager;
     private final TicketCategoryRepository ticketCategoryRepository;
@@ -89,17 +93,16 @@ public class EventApiV2Controller {
     private final RecaptchaService recaptchaService;
     private final PromoCodeRequestManager promoCodeRequestManager;
     private final EventLoader eventLoader;
+    private final EventPageReadModel eventPageReadModel;
     private final ExtensionManager extensionManager;
     private final ClockProvider clockProvider;
+    private final AdmissionQueueManager admissionQueueManager;
 
     public EventApiV2Controller(EventManager eventManager,
                                 EventRepository eventRepository,
                                 ConfigurationManager configurationManager,
                                 EventDescriptionRepository eventDescriptionRepository,
-                                TicketCategoryDescriptionRepository ticketCategoryDescriptionRepository,
                                 MessageSourceManager messageSourceManager,
-                                AdditionalServiceRepository additionalServiceRepository,
-                                AdditionalServiceTextRepository additionalServiceTextRepository,
                                 WaitingQueueManager waitingQueueManager,
                                 I18nManager i18nManager,
                                 TicketCategoryRepository ticketCategoryRepository,
@@ -110,16 +113,15 @@ public class EventApiV2Controller {
                                 RecaptchaService recaptchaService,
                                 PromoCodeRequestManager promoCodeRequestManager,
                                 EventLoader eventLoader,
+                                EventPageReadModel eventPageReadModel,
                                 ExtensionManager extensionManager,
-                                ClockProvider clockProvider) {
+                                ClockProvider clockProvider,
+                                AdmissionQueueManager admissionQueueManager) {
         this.eventManager = eventManager;
         this.eventRepository = eventRepository;
         this.configurationManager = configurationManager;
         this.eventDescriptionRepository = eventDescriptionRepository;
-        this.ticketCategoryDescriptionRepository = ticketCategoryDescriptionRepository;
         this.messageSourceManager = messageSourceManager;
-        this.additionalServiceRepository = additionalServiceRepository;
-        this.additionalServiceTextRepository = additionalServiceTextRepository;
         this.waitingQueueManager = waitingQueueManager;
         this.i18nManager = i18nManager;
         this.ticketCategoryRepository = ticketCategoryRepository;
@@ -130,8 +132,10 @@ public class EventApiV2Controller {
         this.recaptchaService = recaptchaService;
         this.promoCodeRequestManager = promoCodeRequestManager;
         this.eventLoader = eventLoader;
+        this.eventPageReadModel = eventPageReadModel;
         this.extensionManager = extensionManager;
         this.clockProvider = clockProvider;
+        this.admissionQueueManager = admissionQueueManager;
     }
 
 
@@ -182,10 +186,11 @@ public class EventApiV2Controller {
     public ResponseEntity<ItemsByCategory> getTicketCategories(@PathVariable("eventName") String eventName, @RequestParam(value = "code", required = false) String code) {
 
         //
-        return eventRepository.findOptionalByShortName(eventName).filter(e -> e.getStatus() != Event.Status.DISABLED).map(event -> {
+        return eventPageReadModel.load(eventName).filter(s -> s.event().getStatus() != Event.Status.DISABLED).map(snapshot -> {
 
-            var configurations = configurationManager.getFor(List.of(DISPLAY_TICKETS_LEFT_INDICATOR, MAX_AMOUNT_OF_TICKETS_BY_RESERVATION, DISPLAY_EXPIRED_CATEGORIES), event.getConfigurationLevel());
-            var ticketCategoryLevelConfiguration = configurationManager.getAllCategoriesAndValueWith(event, MAX_AMOUNT_OF_TICKETS_BY_RESERVATION);
+            var event = snapshot.event();
+            var configurations = snapshot.configurations();
+            var ticketCategoryLevelConfiguration = snapshot.maxTicketsByCategory();
             var messageSource = messageSourceManager.getMessageSourceFor(event);
             var appliedPromoCode = promoCodeRequestManager.checkCode(event, code);
 
@@ -194,10 +199,10 @@ public class EventApiV2Controller {
             Optional<PromoCodeDiscount> promoCodeDiscount = appliedPromoCode.getValue().getRight();
 
             final ZonedDateTime now = event.now(clockProvider);
+            // availability is read from the ticket counters, with a single query for all the categories
+            var freeTickets = eventPageReadModel.countFreeTickets(event.getId());
             //hide access restricted ticket categories
-            var ticketCategories = ticketCategoryRepository.findAllTicketCategories(event.getId());
-
-            List<SaleableTicketCategory> saleableTicketCategories = ticketCategories.stream()
+            List<SaleableTicketCategory> saleableTicketCategories = snapshot.ticketCategories().stream()
                 .filter(c -> !c.isAccessRestricted() || shouldDisplayRestrictedCategory(specialCode, c, promoCodeDiscount))
                 .map(category -> {
                     int maxTickets = getMaxAmountOfTicketsPerReservation(configurations, ticketCategoryLevelConfiguration, category.getId());
@@ -207,28 +212,29 @@ public class EventApiV2Controller {
                     } else if (filteredPromoCode != null && filteredPromoCode.getMaxUsage() != null) {
                         maxTickets = filteredPromoCode.getMaxUsage() - promoCodeRepository.countConfirmedPromoCode(filteredPromoCode.getId(), categoriesOrNull(filteredPromoCode), null, categoriesOrNull(filteredPromoCode) != null ? "X" : null);
                     }
+                    int available = freeTickets.getOrDefault(category.isBounded() ? category.getId() : -1, 0);
                     return new SaleableTicketCategory(category,
-                        now, event, ticketReservationManager.countAvailableTickets(event, category), maxTickets,
+                        now, event, available, maxTickets,
                         filteredPromoCode);
                 })
                 .toList();
 
 
-            var valid = saleableTicketCategories.stream().filter(tc -> !tc.getExpired()).toList();
+            var valid = saleableTicketCategories.stream().filter(tc -> !tc.getExpired()).map(SaleableTicketCategory::getId).collect(toSet());
 
             //
 
-            var ticketCategoryIds = valid.stream().map(SaleableTicketCategory::getId).toList();
-            var ticketCategoryDescriptions = ticketCategoryDescriptionRepository.descriptionsByTicketCategory(ticketCategoryIds);
-            var categoriesNoTax = configurationManager.getCategoriesWithNoTaxes(ticketCategoryIds);
+            var ticketCategoryDescriptions = snapshot.categoryDescriptions();
+            var categoriesNoTax = snapshot.categoriesWithNoTaxes();
 
             boolean displayTicketsLeft = configurations.get(DISPLAY_TICKETS_LEFT_INDICATOR).getValueAsBooleanOrDefault();
             var categoriesByExpiredFlag = saleableTicketCategories.stream()
                 .map(stc -> {
-                    var description = Formatters.applyCommonMark(ticketCategoryDescriptions.getOrDefault(stc.getId(), Collections.emptyMap()), messageSource);
+                    var isValid = valid.contains(stc.getId());
+                    var description = Formatters.applyCommonMark(isValid ? ticketCategoryDescriptions.getOrDefault(stc.getId(), Collections.emptyMap()) : Collections.emptyMap(), messageSource);
                     var expiration = Formatters.getFormattedDate(event, stc.getZonedExpiration(), TICKET_CATEGORY_DATE_FORMAT, messageSource);
                     var inception = Formatters.getFormattedDate(event, stc.getZonedInception(), TICKET_CATEGORY_DATE_FORMAT, messageSource);
-                    return new TicketCategory(stc, description, inception, expiration, displayTicketsLeft && !stc.isAccessRestricted(), !categoriesNoTax.contains(stc.getId()));
+                    return new TicketCategory(stc, description, inception, expiration, displayTicketsLeft && !stc.isAccessRestricted(), !(isValid && categoriesNoTax.contains(stc.getId())));
                 })
                 .sorted(Comparator.comparingInt(TicketCategory::getOrdinal))
                 .collect(partitioningBy(TicketCategory::isExpired));
@@ -239,15 +245,13 @@ public class EventApiV2Controller {
                 .flatMap(Pair::getRight);
 
             //
-            var saleableAdditionalServices = additionalServiceRepository.loadAllForEvent(event.getId())
+            var saleableAdditionalServices = snapshot.additionalServices()
                 .stream()
                 .map(as -> new SaleableAdditionalService(event, as, promoCode.orElse(null)))
                 .filter(SaleableAdditionalService::isNotExpired).toList();
 
-            // will be used for fetching descriptions and titles for all the languages
-            var saleableAdditionalServicesIds = saleableAdditionalServices.stream().map(SaleableAdditionalService::getId).toList();
-
-            var additionalServiceTexts = additionalServiceTextRepository.getDescriptionsByAdditionalServiceIds(saleableAdditionalServicesIds);
+            // descriptions and titles for all the languages
+            var additionalServiceTexts = snapshot.additionalServiceTexts();
 
             var additionalServicesRes = saleableAdditionalServices.stream().map(as -> {
                 var expiration = Formatters.getFormattedDate(event, as.getZonedExpiration(), TICKET_CATEGORY_DATE_FORMAT, messageSource);
@@ -272,7 +276,15 @@ public class EventApiV2Controller {
             var activeCategories = categoriesByExpiredFlag.get(false);
             var expiredCategories = configurations.get(DISPLAY_EXPIRED_CATEGORIES).getValueAsBooleanOrDefault() ? categoriesByExpiredFlag.get(true) : List.<TicketCategory>of();
 
-            return new ResponseEntity<>(new ItemsByCategory(activeCategories, expiredCategories, additionalServicesRes, displayWaitingQueueForm, preSales, tcForWaitingList), getCorsHeaders(), HttpStatus.OK);
+            var body = new ItemsByCategory(activeCategories, expiredCategories, additionalServicesRes, displayWaitingQueueForm, preSales, tcForWaitingList);
+            var builder = ResponseEntity.ok().headers(getCorsHeaders());
+            if (StringUtils.isBlank(code)) {
+                // the ETag is derived from the content, so that it is the same on every node.
+                // Clients polling the page can then revalidate it with If-None-Match
+                builder = builder.eTag(DigestUtils.sha256Hex(Json.toJson(body)))
+                    .cacheControl(CacheControl.maxAge(Duration.ofSeconds(2)));
+            }
+            return builder.body(body);
         }).orElseGet(() -> ResponseEntity.notFound().headers(getCorsHeaders()).build());
     }
 
@@ -318,6 +330,49 @@ public class EventApiV2Controller {
         }, () -> response.setStatus(HttpServletResponse.SC_NOT_FOUND));
     }
 
+    @PostMapping("event/{eventName}/admission-queue")
+    public ResponseEntity<AdmissionQueueStatus> enterAdmissionQueue(@PathVariable("eventName") String eventName,
+                                                                    HttpServletRequest request,
+                                                                    HttpServletResponse response) {
+        return eventRepository.findOptionalByShortName(eventName)
+            .filter(e -> e.getStatus() == Event.Status.PUBLIC)
+            .map(event -> admissionQueueManager.enqueue(event, getOrCreateAdmissionClientId(request, response), request.getRemoteAddr())
+                .map(status -> ResponseEntity.ok().headers(getCorsHeaders()).body(status))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).headers(getCorsHeaders()).build()))
+            .orElseGet(() -> ResponseEntity.notFound().headers(getCorsHeaders()).build());
+    }
+
+    @GetMapping("event/{eventName}/admission-queue")
+    public ResponseEntity<AdmissionQueueStatus> getAdmissionQueueStatus(@PathVariable("eventName") String eventName,
+                                                                        @RequestParam("token") String token,
+                                                                        HttpServletRequest request) {
+        return eventRepository.findOptionalByShortName(eventName)
+            .map(event -> admissionQueueManager.getStatus(event, token, getAdmissionClientId(request))
+                .map(status -> ResponseEntity.ok().headers(getCorsHeaders()).body(status))
+                .orElseGet(() -> ResponseEntity.badRequest().headers(getCorsHeaders()).build()))
+            .orElseGet(() -> ResponseEntity.notFound().headers(getCorsHeaders()).build());
+    }
+
+    private static String getAdmissionClientId(HttpServletRequest request) {
+        return Optional.ofNullable(WebUtils.getCookie(request, AdmissionQueueManager.CLIENT_COOKIE))
+            .map(Cookie::getValue)
+            .filter(v -> v.length() <= 64)
+            .orElse(null);
+    }
+
+    private static String getOrCreateAdmissionClientId(HttpServletRequest request, HttpServletResponse response) {
+        var clientId = getAdmissionClientId(request);
+        if (clientId == null) {
+            clientId = UUID.randomUUID().toString();
+            var cookie = new Cookie(AdmissionQueueManager.CLIENT_COOKIE, clientId);
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setSecure(request.isSecure());
+            response.addCookie(cookie);
+        }
+        return clientId;
+    }
+
     /**
      * Create a new reservation.
      *
@@ -340,6 +395,11 @@ public class EventApiV2Controller {
 
         Optional<ResponseEntity<ValidatedResponse<String>>> r = eventRepository.findOptionalByShortName(eventName).map(event -> {
 
+            if (!admissionQueueManager.isAdmitted(event, request.getHeader(AdmissionQueueManager.TOKEN_HEADER), getAdmissionClientId(request.getRequest()))) {
+                bindingResult.reject(ErrorsCode.STEP_1_ADMISSION_QUEUE);
+                return new ResponseEntity<>(ValidatedResponse.toResponse(bindingResult, null), getCorsHeaders(), HttpStatus.TOO_MANY_REQUESTS);
+            }
+
             Locale locale = LocaleUtil.forLanguageTag(lang, event);
 
             Optional<String> promoCodeDiscount = ReservationUtil.checkPromoCode(reservation, event, promoCodeRequestManager, bindingResult);
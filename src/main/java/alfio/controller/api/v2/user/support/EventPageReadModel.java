@@ -0,0 +1,124 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.v2.user.support;
+
+import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.ConfigurationManager.MaybeConfiguration;
+import alfio.model.AdditionalService;
+import alfio.model.AdditionalServiceText;
+import alfio.model.Event;
+import alfio.model.TicketCategory;
+import alfio.model.system.ConfigurationKeys;
+import alfio.repository.*;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static alfio.model.system.ConfigurationKeys.*;
+
+/**
+ * Read model backing the ticket categories page. It holds the data which does not depend on the promo code
+ * and changes only when an administrator modifies the event, so that it can be shared by all the buyers.
+ * Snapshots are discarded together with the configuration snapshots (see {@link ConfigurationManager#addInvalidationListener(Runnable)}),
+ * while changes to the event data are picked up after {@code alfio.event-page.cache-ttl-ms} (default 5 seconds).
+ * The availability is not part of the snapshot; it is read from the ticket counters (see {@link #countFreeTickets(int)}).
+ */
+@Component
+public class EventPageReadModel {
+
+    private static final List<ConfigurationKeys> CONFIGURATION_KEYS = List.of(DISPLAY_TICKETS_LEFT_INDICATOR, MAX_AMOUNT_OF_TICKETS_BY_RESERVATION, DISPLAY_EXPIRED_CATEGORIES);
+
+    private final EventRepository eventRepository;
+    private final ConfigurationManager configurationManager;
+    private final TicketCategoryRepository ticketCategoryRepository;
+    private final TicketCategoryDescriptionRepository ticketCategoryDescriptionRepository;
+    private final AdditionalServiceRepository additionalServiceRepository;
+    private final AdditionalServiceTextRepository additionalServiceTextRepository;
+    private final TicketStatusCountRepository ticketStatusCountRepository;
+    private final Cache<String, Snapshot> snapshots;
+
+    public EventPageReadModel(EventRepository eventRepository,
+                              ConfigurationManager configurationManager,
+                              TicketCategoryRepository ticketCategoryRepository,
+                              TicketCategoryDescriptionRepository ticketCategoryDescriptionRepository,
+                              AdditionalServiceRepository additionalServiceRepository,
+                              AdditionalServiceTextRepository additionalServiceTextRepository,
+                              TicketStatusCountRepository ticketStatusCountRepository,
+                              Environment environment) {
+        this.eventRepository = eventRepository;
+        this.configurationManager = configurationManager;
+        this.ticketCategoryRepository = ticketCategoryRepository;
+        this.ticketCategoryDescriptionRepository = ticketCategoryDescriptionRepository;
+        this.additionalServiceRepository = additionalServiceRepository;
+        this.additionalServiceTextRepository = additionalServiceTextRepository;
+        this.ticketStatusCountRepository = ticketStatusCountRepository;
+        var expiration = Duration.ofMillis(environment.getProperty("alfio.event-page.cache-ttl-ms", Long.class, 5_000L));
+        this.snapshots = Caffeine.newBuilder()
+            .expireAfterWrite(expiration)
+            .maximumSize(1000)
+            .build();
+        configurationManager.addInvalidationListener(snapshots::invalidateAll);
+    }
+
+    public Optional<Snapshot> load(String eventName) {
+        configurationManager.checkForChanges();
+        return Optional.ofNullable(snapshots.get(eventName, this::buildSnapshot));
+    }
+
+    /**
+     * @param eventId the event id
+     * @return the number of FREE tickets by category id. Tickets without category are counted under {@code -1}
+     */
+    public Map<Integer, Integer> countFreeTickets(int eventId) {
+        return ticketStatusCountRepository.countFreeTicketsByCategory(eventId);
+    }
+
+    private Snapshot buildSnapshot(String eventName) {
+        return eventRepository.findOptionalByShortName(eventName)
+            .map(event -> {
+                var ticketCategories = ticketCategoryRepository.findAllTicketCategories(event.getId());
+                var categoryIds = ticketCategories.stream().map(TicketCategory::getId).toList();
+                var additionalServices = additionalServiceRepository.loadAllForEvent(event.getId());
+                return new Snapshot(event,
+                    configurationManager.getFor(CONFIGURATION_KEYS, event.getConfigurationLevel()),
+                    configurationManager.getAllCategoriesAndValueWith(event, MAX_AMOUNT_OF_TICKETS_BY_RESERVATION),
+                    ticketCategories,
+                    ticketCategoryDescriptionRepository.descriptionsByTicketCategory(categoryIds),
+                    Set.copyOf(configurationManager.getCategoriesWithNoTaxes(categoryIds)),
+                    additionalServices,
+                    additionalServiceTextRepository.getDescriptionsByAdditionalServiceIds(additionalServices.stream().map(AdditionalService::getId).toList()));
+            })
+            .orElse(null);
+    }
+
+    public record Snapshot(Event event,
+                           Map<ConfigurationKeys, MaybeConfiguration> configurations,
+                           Map<Integer, String> maxTicketsByCategory,
+                           List<TicketCategory> ticketCategories,
+                           Map<Integer, Map<String, String>> categoryDescriptions,
+                           Set<Integer> categoriesWithNoTaxes,
+                           List<AdditionalService> additionalServices,
+                           Map<Integer, Map<AdditionalServiceText.TextType, Map<String, String>>> additionalServiceTexts) {
+    }
+}
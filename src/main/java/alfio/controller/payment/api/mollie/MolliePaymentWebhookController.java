@@ -16,8 +16,8 @@
  */
 package alfio.controller.payment.api.mollie;
 
+import alfio.manager.PaymentWebhookInboxManager;
 import alfio.manager.PurchaseContextManager;
-import alfio.manager.TicketReservationManager;
 import alfio.model.transaction.PaymentContext;
 import alfio.model.transaction.PaymentProxy;
 import org.apache.commons.lang3.StringUtils;
@@ -40,11 +40,11 @@ public class MolliePaymentWebhookController {
 
     private static final Logger log = LoggerFactory.getLogger(MolliePaymentWebhookController.class);
 
-    private final TicketReservationManager ticketReservationManager;
+    private final PaymentWebhookInboxManager paymentWebhookInboxManager;
     private final PurchaseContextManager purchaseContextManager;
 
-    public MolliePaymentWebhookController(TicketReservationManager ticketReservationManager, PurchaseContextManager purchaseContextManager) {
-        this.ticketReservationManager = ticketReservationManager;
+    public MolliePaymentWebhookController(PaymentWebhookInboxManager paymentWebhookInboxManager, PurchaseContextManager purchaseContextManager) {
+        this.paymentWebhookInboxManager = paymentWebhookInboxManager;
         this.purchaseContextManager = purchaseContextManager;
     }
 
@@ -56,11 +56,11 @@ public class MolliePaymentWebhookController {
             .flatMap(id -> purchaseContextManager.findByReservationId(reservationId)
                     .map(purchaseContext -> {
                         var content = "id="+id;
-                        var result = ticketReservationManager.processTransactionWebhook(content, null, PaymentProxy.MOLLIE,
+                        var result = paymentWebhookInboxManager.receiveTransactionWebhook(content, null, PaymentProxy.MOLLIE,
                             Map.of(ADDITIONAL_INFO_PURCHASE_CONTEXT_TYPE, purchaseContext.getType().getUrlComponent(),
                                 ADDITIONAL_INFO_PURCHASE_IDENTIFIER, purchaseContext.getPublicIdentifier(),
                                 ADDITIONAL_INFO_RESERVATION_ID, reservationId), new PaymentContext(purchaseContext, reservationId));
-                        if(result.isSuccessful()) {
+                        if(result.isSuccessful() || result.isAccepted()) {
                             return ResponseEntity.ok("OK");
                         } else if(result.isError()) {
                             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result.getReason());
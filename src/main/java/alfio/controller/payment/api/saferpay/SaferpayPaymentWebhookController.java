@@ -16,8 +16,8 @@
  */
 package alfio.controller.payment.api.saferpay;
 
+import alfio.manager.PaymentWebhookInboxManager;
 import alfio.manager.PurchaseContextManager;
-import alfio.manager.TicketReservationManager;
 import alfio.manager.payment.saferpay.PaymentPageInitializeRequestBuilder;
 import alfio.model.transaction.PaymentContext;
 import alfio.model.transaction.PaymentProxy;
@@ -32,11 +32,11 @@ import java.util.Map;
 @RestController
 public class SaferpayPaymentWebhookController {
 
-    private final TicketReservationManager ticketReservationManager;
+    private final PaymentWebhookInboxManager paymentWebhookInboxManager;
     private final PurchaseContextManager purchaseContextManager;
 
-    public SaferpayPaymentWebhookController(TicketReservationManager ticketReservationManager, PurchaseContextManager purchaseContextManager) {
-        this.ticketReservationManager = ticketReservationManager;
+    public SaferpayPaymentWebhookController(PaymentWebhookInboxManager paymentWebhookInboxManager, PurchaseContextManager purchaseContextManager) {
+        this.paymentWebhookInboxManager = paymentWebhookInboxManager;
         this.purchaseContextManager = purchaseContextManager;
     }
 
@@ -44,11 +44,11 @@ public class SaferpayPaymentWebhookController {
     ResponseEntity<String> handleTransactionNotification(@PathVariable("reservationId") String reservationId) {
         return purchaseContextManager.findByReservationId(reservationId)
                 .map(purchaseContext -> {
-                    var result = ticketReservationManager.processTransactionWebhook("", null, PaymentProxy.SAFERPAY,
+                    var result = paymentWebhookInboxManager.receiveTransactionWebhook("", null, PaymentProxy.SAFERPAY,
                         Map.of("purchaseContextType", purchaseContext.getType().getUrlComponent(),
                             "purchaseContextIdentifier", purchaseContext.getPublicIdentifier(),
                             "reservationId", reservationId), new PaymentContext(purchaseContext, reservationId));
-                    if(result.isSuccessful()) {
+                    if(result.isSuccessful() || result.isAccepted()) {
                         return ResponseEntity.ok("OK");
                     } else if(result.isError()) {
                         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result.getReason());
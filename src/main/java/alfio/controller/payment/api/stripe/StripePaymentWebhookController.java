@@ -16,7 +16,7 @@
  */
 package alfio.controller.payment.api.stripe;
 
-import alfio.manager.TicketReservationManager;
+import alfio.manager.PaymentWebhookInboxManager;
 import alfio.model.transaction.PaymentProxy;
 import alfio.util.RequestUtils;
 import org.springframework.http.HttpHeaders;
@@ -34,10 +34,10 @@ import static alfio.util.HttpUtils.APPLICATION_JSON_UTF8;
 @RestController
 public class StripePaymentWebhookController {
 
-    private final TicketReservationManager ticketReservationManager;
+    private final PaymentWebhookInboxManager paymentWebhookInboxManager;
 
-    public StripePaymentWebhookController(TicketReservationManager ticketReservationManager) {
-        this.ticketReservationManager = ticketReservationManager;
+    public StripePaymentWebhookController(PaymentWebhookInboxManager paymentWebhookInboxManager) {
+        this.paymentWebhookInboxManager = paymentWebhookInboxManager;
     }
 
     @PostMapping("/api/payment/webhook/stripe/payment")
@@ -47,8 +47,8 @@ public class StripePaymentWebhookController {
         httpHeaders.add(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON_UTF8);
         return RequestUtils.readRequest(request)
             .map(content -> {
-                var result = ticketReservationManager.processTransactionWebhook(content, stripeSignature, PaymentProxy.STRIPE, Map.of());
-                if(result.isSuccessful()) {
+                var result = paymentWebhookInboxManager.receiveTransactionWebhook(content, stripeSignature, PaymentProxy.STRIPE, Map.of());
+                if(result.isSuccessful() || result.isAccepted()) {
                     return ResponseEntity.status(HttpStatus.OK)
                         .headers(httpHeaders)
                         .body("OK");
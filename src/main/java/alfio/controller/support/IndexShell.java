@@ -0,0 +1,127 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.support;
+
+import ch.digitalfondue.jfiveparse.Document;
+import ch.digitalfondue.jfiveparse.JFiveParse;
+import ch.digitalfondue.jfiveparse.Text;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static alfio.controller.Constants.NONCE;
+import static org.apache.commons.text.StringEscapeUtils.escapeHtml4;
+
+/**
+ * Pre-rendered version of the public index page.
+ * The page is serialized only once, and split into static segments and slots for the values which change for
+ * each request: the CSP nonce of the script tags, the attributes of the {@code html} element, and the content
+ * appended to the {@code head} element.
+ */
+public class IndexShell {
+
+    private static final String NONCE_PLACEHOLDER = "alfio-slot-nonce";
+    private static final String LANG_PLACEHOLDER = "alfio-slot-lang";
+    private static final String HEAD_PLACEHOLDER = "alfio-slot-head";
+
+    private enum Slot {
+        NONCE(NONCE_PLACEHOLDER),
+        HTML_ATTRIBUTES("lang=\"" + LANG_PLACEHOLDER + "\""),
+        HEAD_CONTENT(HEAD_PLACEHOLDER);
+
+        private final String placeholder;
+
+        Slot(String placeholder) {
+            this.placeholder = placeholder;
+        }
+    }
+
+    private final List<byte[]> segments;
+    private final List<Slot> slots;
+
+    private IndexShell(List<byte[]> segments, List<Slot> slots) {
+        this.segments = segments;
+        this.slots = slots;
+    }
+
+    public static IndexShell from(Document page) {
+        var template = (Document) page.cloneNode(true);
+        template.getElementsByTagName("script").forEach(element -> element.setAttribute(NONCE, NONCE_PLACEHOLDER));
+        template.getElementsByTagName("html").get(0).setAttribute("lang", LANG_PLACEHOLDER);
+        template.getElementsByTagName("head").get(0).appendChild(new Text(HEAD_PLACEHOLDER));
+        var writer = new StringWriter();
+        try {
+            JFiveParse.serialize(template, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var html = writer.toString();
+        var segments = new ArrayList<byte[]>();
+        var slots = new ArrayList<Slot>();
+        int position = 0;
+        while (true) {
+            Slot next = null;
+            int nextIndex = -1;
+            for (Slot slot : Slot.values()) {
+                int index = html.indexOf(slot.placeholder, position);
+                if (index >= 0 && (nextIndex < 0 || index < nextIndex)) {
+                    next = slot;
+                    nextIndex = index;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            segments.add(html.substring(position, nextIndex).getBytes(StandardCharsets.UTF_8));
+            slots.add(next);
+            position = nextIndex + next.placeholder.length();
+        }
+        segments.add(html.substring(position).getBytes(StandardCharsets.UTF_8));
+        if (!slots.contains(Slot.HTML_ATTRIBUTES) || !slots.contains(Slot.HEAD_CONTENT)) {
+            throw new IllegalStateException("Cannot find html and head elements in the index page");
+        }
+        return new IndexShell(List.copyOf(segments), List.copyOf(slots));
+    }
+
+    /**
+     * Writes the page to the given stream.
+     *
+     * @param out the destination stream
+     * @param nonce the CSP nonce for the script tags
+     * @param lang the language of the page
+     * @param signedUp whether the user has just signed up
+     * @param headContent the HTML to be appended to the {@code head} element. It is written as-is.
+     * @throws IOException if the stream cannot be written
+     */
+    public void write(OutputStream out, String nonce, String lang, boolean signedUp, CharSequence headContent) throws IOException {
+        var nonceBytes = escapeHtml4(nonce).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < slots.size(); i++) {
+            out.write(segments.get(i));
+            switch (slots.get(i)) {
+                case NONCE -> out.write(nonceBytes);
+                case HTML_ATTRIBUTES -> out.write(("lang=\"" + escapeHtml4(lang) + "\"" + (signedUp ? " data-signed-up=\"true\"" : "")).getBytes(StandardCharsets.UTF_8));
+                case HEAD_CONTENT -> out.write(headContent.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        out.write(segments.get(segments.size() - 1));
+    }
+}
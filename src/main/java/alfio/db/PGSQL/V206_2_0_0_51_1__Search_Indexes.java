@@ -0,0 +1,67 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.db.PGSQL;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Creates the trigram indexes used by the admin search (reservations, check-in, email log).
+ * <p>
+ * The indexes are built concurrently, so that the migration does not block writes on the ticket,
+ * tickets_reservation and email_message tables. Since "create index concurrently" cannot run inside
+ * a transaction or a "do" block, this is a Java migration instead of a SQL one.
+ * <p>
+ * The indexed expressions must match the search documents defined in TicketSearchRepository and EmailMessageRepository.
+ */
+public class V206_2_0_0_51_1__Search_Indexes extends BaseJavaMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(V206_2_0_0_51_1__Search_Indexes.class);
+
+    private static final List<String> INDEXES = List.of(
+        "create index concurrently if not exists tickets_reservation_search_idx on tickets_reservation using gin (lower(coalesce(id, '') || chr(31) || coalesce(full_name, '') || chr(31) || coalesce(first_name, '') || chr(31) || coalesce(last_name, '') || chr(31) || coalesce(email_address, '') || chr(31) || coalesce(customer_reference, '') || chr(31) || coalesce(invoice_number, '')) gin_trgm_ops)",
+        "create index concurrently if not exists ticket_search_idx on ticket using gin (lower(coalesce(uuid, '') || chr(31) || coalesce(full_name, '') || chr(31) || coalesce(first_name, '') || chr(31) || coalesce(last_name, '') || chr(31) || coalesce(email_address, '')) gin_trgm_ops)",
+        "create index concurrently if not exists email_message_search_idx on email_message using gin (lower(coalesce(recipient, '') || chr(31) || coalesce(subject, '')) gin_trgm_ops)"
+    );
+
+    @Override
+    public boolean canExecuteInTransaction() {
+        return false;
+    }
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        var connection = context.getConnection();
+        try (var statement = connection.createStatement();
+             var resultSet = statement.executeQuery("select count(*) from pg_extension where extname = 'pg_trgm'")) {
+            if(!resultSet.next() || resultSet.getInt(1) == 0) {
+                log.warn("extension pg_trgm is not available, search indexes will not be created");
+                return;
+            }
+        }
+        for (String index : INDEXES) {
+            try (var statement = connection.createStatement()) {
+                statement.execute(index);
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package alfio.db.PGSQL;
 
 import alfio.extension.Extension;
+import alfio.extension.ExtensionLogWriter;
 import alfio.extension.ExtensionService;
 import alfio.extension.ScriptingExecutionService;
 import alfio.manager.system.ExternalConfiguration;
@@ -72,7 +73,7 @@ public class V22_1_14_8__MigrateMailchimp extends BaseJavaMigration {
             new ScriptingExecutionService(HttpClient.newHttpClient(), null, Executors::newSingleThreadExecutor),
             extensionRepository,
             extensionLogRepository,
-            new DataSourceTransactionManager(dataSource),
+            ExtensionLogWriter.synchronous(extensionLogRepository, new DataSourceTransactionManager(dataSource)),
             new ExternalConfiguration(),
             new NamedParameterJdbcTemplate(jdbcTemplate));
 
@@ -0,0 +1,133 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.extension;
+
+import alfio.model.ExtensionLog;
+import alfio.repository.ExtensionLogRepository;
+import alfio.util.BatchingWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the extension logs.
+ * <p>
+ * By default, entries are collected in a bounded in-memory queue and written in batches by a background thread,
+ * so that logging from a script does not require a second connection while the caller's transaction is still open.
+ * If the queue is full, new entries are dropped and a warning is logged.
+ * <p>
+ * Properties:
+ * <ul>
+ *     <li>{@code alfio.extension.log.async}: write in background (default {@code true})</li>
+ *     <li>{@code alfio.extension.log.queue-size}: max number of pending entries (default 10000)</li>
+ *     <li>{@code alfio.extension.log.sync-errors}: write {@link ExtensionLog.Type#ERROR} entries immediately (default {@code false})</li>
+ * </ul>
+ */
+@Component
+public class ExtensionLogWriter implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ExtensionLogWriter.class);
+    private static final long POLL_INTERVAL_MILLIS = 500;
+
+    private final ExtensionLogRepository extensionLogRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean syncErrors;
+    private final BatchingWriter<Entry> batchingWriter;
+    private final AtomicLong dropped = new AtomicLong();
+
+    @Autowired
+    public ExtensionLogWriter(ExtensionLogRepository extensionLogRepository,
+                              PlatformTransactionManager platformTransactionManager,
+                              Environment environment) {
+        this(extensionLogRepository,
+            platformTransactionManager,
+            environment.getProperty("alfio.extension.log.async", Boolean.class, true),
+            environment.getProperty("alfio.extension.log.queue-size", Integer.class, 10_000),
+            environment.getProperty("alfio.extension.log.sync-errors", Boolean.class, false));
+    }
+
+    ExtensionLogWriter(ExtensionLogRepository extensionLogRepository,
+                       PlatformTransactionManager platformTransactionManager,
+                       boolean async,
+                       int queueSize,
+                       boolean syncErrors) {
+        this.extensionLogRepository = extensionLogRepository;
+        this.transactionTemplate = new TransactionTemplate(platformTransactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        this.syncErrors = syncErrors;
+        this.batchingWriter = async ? new BatchingWriter<>("extension-log-writer", queueSize, POLL_INTERVAL_MILLIS, this::writeBatch) : null;
+    }
+
+    /**
+     * Builds a writer which writes every entry immediately, in its own transaction.
+     * Used when the application context is not available, e.g. in java-based migrations.
+     */
+    public static ExtensionLogWriter synchronous(ExtensionLogRepository extensionLogRepository,
+                                                 PlatformTransactionManager platformTransactionManager) {
+        return new ExtensionLogWriter(extensionLogRepository, platformTransactionManager, false, 0, false);
+    }
+
+    void write(String effectivePath, String path, String name, String description, ExtensionLog.Type type) {
+        var entry = new Entry(effectivePath, path, name, description, type, System.currentTimeMillis());
+        if (batchingWriter == null || !batchingWriter.isRunning() || (syncErrors && type == ExtensionLog.Type.ERROR)) {
+            transactionTemplate.execute(s -> insert(List.of(entry)));
+        } else if (!batchingWriter.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void writeBatch(List<Entry> batch) {
+        long droppedEntries = dropped.getAndSet(0);
+        if (droppedEntries > 0) {
+            log.warn("Extension log queue is full. {} entries have been dropped", droppedEntries);
+        }
+        transactionTemplate.execute(s -> insert(batch));
+    }
+
+    private int[] insert(List<Entry> entries) {
+        long now = System.currentTimeMillis();
+        var params = entries.stream()
+            .map(e -> new MapSqlParameterSource("effectivePath", e.effectivePath())
+                .addValue("path", e.path())
+                .addValue("name", e.name())
+                .addValue("description", e.description())
+                .addValue("type", e.type().name())
+                .addValue("age", Math.max(0, now - e.timestamp()) / 1000.0))
+            .toArray(MapSqlParameterSource[]::new);
+        return extensionLogRepository.bulkInsert(params);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (batchingWriter != null) {
+            batchingWriter.shutdown();
+        }
+    }
+
+    private record Entry(String effectivePath, String path, String name, String description, ExtensionLog.Type type, long timestamp) {
+    }
+}
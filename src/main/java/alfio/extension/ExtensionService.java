@@ -32,12 +32,7 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.PlatformTransactionManager;
-import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.support.DefaultTransactionDefinition;
-import org.springframework.transaction.support.TransactionCallback;
-import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.*;
 import java.util.function.Supplier;
@@ -62,20 +57,20 @@ public class ExtensionService {
     private final ScriptingExecutionService scriptingExecutionService;
     private final ExtensionRepository extensionRepository;
     private final ExtensionLogRepository extensionLogRepository;
-    private final PlatformTransactionManager platformTransactionManager;
+    private final ExtensionLogWriter extensionLogWriter;
     private final ExternalConfiguration externalConfiguration;
     private final NamedParameterJdbcTemplate jdbcTemplate;
 
     public ExtensionService(ScriptingExecutionService scriptingExecutionService,
                             ExtensionRepository extensionRepository,
                             ExtensionLogRepository extensionLogRepository,
-                            PlatformTransactionManager platformTransactionManager,
+                            ExtensionLogWriter extensionLogWriter,
                             ExternalConfiguration externalConfiguration,
                             NamedParameterJdbcTemplate jdbcTemplate) {
         this.scriptingExecutionService = scriptingExecutionService;
         this.extensionRepository = extensionRepository;
         this.extensionLogRepository = extensionLogRepository;
-        this.platformTransactionManager = platformTransactionManager;
+        this.extensionLogWriter = extensionLogWriter;
         this.externalConfiguration = externalConfiguration;
         this.jdbcTemplate = jdbcTemplate;
     }
@@ -84,19 +79,16 @@ public class ExtensionService {
 
     private static final class ExtensionLoggerImpl implements ExtensionLogger {
 
-        private final ExtensionLogRepository extensionLogRepository;
-        private final PlatformTransactionManager platformTransactionManager;
+        private final ExtensionLogWriter extensionLogWriter;
         private final String effectivePath;
         private final String path;
         private final String name;
 
-        private ExtensionLoggerImpl(ExtensionLogRepository extensionLogRepository,
-                                    PlatformTransactionManager platformTransactionManager,
+        private ExtensionLoggerImpl(ExtensionLogWriter extensionLogWriter,
                                     String effectivePath,
                                     String path,
                                     String name) {
-            this.extensionLogRepository = extensionLogRepository;
-            this.platformTransactionManager = platformTransactionManager;
+            this.extensionLogWriter = extensionLogWriter;
             this.effectivePath = effectivePath;
             this.path = path;
             this.name = name;
@@ -104,28 +96,22 @@ public class ExtensionService {
 
         @Override
         public void logWarning(String msg) {
-            executeInNewTransaction(s -> extensionLogRepository.insert(effectivePath, path, name, msg, ExtensionLog.Type.WARNING));
+            extensionLogWriter.write(effectivePath, path, name, msg, ExtensionLog.Type.WARNING);
         }
 
         @Override
         public void logSuccess(String msg) {
-            executeInNewTransaction(s -> extensionLogRepository.insert(effectivePath, path, name, msg, ExtensionLog.Type.SUCCESS));
+            extensionLogWriter.write(effectivePath, path, name, msg, ExtensionLog.Type.SUCCESS);
         }
 
         @Override
         public void logError(String msg) {
-            executeInNewTransaction(s -> extensionLogRepository.insert(effectivePath, path, name, msg, ExtensionLog.Type.ERROR));
+            extensionLogWriter.write(effectivePath, path, name, msg, ExtensionLog.Type.ERROR);
         }
 
         @Override
         public void logInfo(String msg) {
-            executeInNewTransaction(s -> extensionLogRepository.insert(effectivePath, path, name, msg, ExtensionLog.Type.INFO));
-        }
-
-        private void executeInNewTransaction(TransactionCallback<Integer> t) {
-            DefaultTransactionDefinition definition = new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
-            TransactionTemplate template = new TransactionTemplate(platformTransactionManager, definition);
-            template.execute(t);
+            extensionLogWriter.write(effectivePath, path, name, msg, ExtensionLog.Type.INFO);
         }
     }
 
@@ -374,14 +360,16 @@ public class ExtensionService {
         String name = activePath.getName();
         Pair<Set<String>, Map<String, Object>> params = addExtensionParameters(input, basePath, activePath);
         var context = params.getRight();
-        ExtensionLogger extLogger = new ExtensionLoggerImpl(extensionLogRepository, platformTransactionManager, basePath, path, name);
+        ExtensionLogger extLogger = new ExtensionLoggerImpl(extensionLogWriter, basePath, path, name);
 
         if(params.getLeft().isEmpty()) {
             Supplier<String> scriptGetter = () -> getScript(path, name)+"\n;"+executeInstruction;
+            // the same script can be executed with different instructions, so we need to include them in the hash
+            String hash = activePath.getHash() + "-" + DigestUtils.sha256Hex(executeInstruction);
             if(async) {
-                scriptingExecutionService.executeScriptAsync(path, name, activePath.getHash(), scriptGetter, context, extLogger);
+                scriptingExecutionService.executeScriptAsync(path, name, hash, scriptGetter, context, extLogger);
             } else {
-                Object res = scriptingExecutionService.executeScript(name, activePath.getHash(), scriptGetter, context, expectedResult, extLogger);
+                Object res = scriptingExecutionService.executeScript(name, hash, scriptGetter, context, expectedResult, extLogger);
                 context.put(OUTPUT, res);
             }
         } else {
@@ -41,6 +41,7 @@ import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -65,6 +66,7 @@ public class ScriptingExecutionService {
     public static final String EXTENSION_CONFIGURATION_PARAMETERS = "extensionParameters";
     static final String CONNECT_EXCEPTION_MESSAGE = "Cannot connect to remote service. Please check your configuration";
     static final String DEFAULT_ERROR_MESSAGE = "Error while executing extension. Please retry.";
+    private static final int COMPILED_SCRIPTS_MAX_SIZE = 500;
 
     private final Supplier<Executor> executorSupplier;
     private final ScriptableObject sealedScope;
@@ -79,6 +81,13 @@ public class ScriptingExecutionService {
         })
         .build();
 
+    // compiled scripts do not hold any reference to the scope, so they can be safely shared and executed
+    // concurrently, each time on a fresh scope built on top of sealedScope
+    private final Cache<String, Script> compiledScripts = Caffeine.newBuilder()
+        .maximumSize(COMPILED_SCRIPTS_MAX_SIZE)
+        .expireAfterAccess(Duration.ofHours(12))
+        .build();
+
     static {
         ContextFactory.initGlobal(new SandboxContextFactory());
     }
@@ -104,8 +113,23 @@ public class ScriptingExecutionService {
         }
     }
 
+    /**
+     * Executes the script identified by the given hash. The script is fetched and compiled only the first time,
+     * subsequent executions will reuse the compiled version.
+     *
+     * @param name script name
+     * @param hash a hash uniquely identifying the script source
+     * @param scriptFetcher the script source supplier, called only if the compiled script is not in cache
+     * @param params the script parameters
+     * @param clazz the expected return type
+     * @param extensionLogger the logger
+     * @return the script result
+     */
     public <T> T executeScript(String name, String hash, Supplier<String> scriptFetcher, Map<String, Object> params, Class<T> clazz, ExtensionLogger extensionLogger) {
-        return executeScriptFinally(name, scriptFetcher.get(), params, clazz, extensionLogger);
+        if(hash == null) {
+            return executeScript(name, scriptFetcher.get(), params, clazz, extensionLogger);
+        }
+        return executeScriptFinally(name, cx -> compiledScripts.get(hash, k -> compile(cx, scriptFetcher.get(), name)), params, clazz, extensionLogger);
     }
 
     public void executeScriptAsync(String path,
@@ -146,7 +170,11 @@ public class ScriptingExecutionService {
     }
 
     public <T> T executeScript(String name, String script, Map<String, Object> params, Class<T> clazz,  ExtensionLogger extensionLogger) {
-        return executeScriptFinally(name, script, params, clazz, extensionLogger);
+        return executeScriptFinally(name, cx -> compile(cx, script, name), params, clazz, extensionLogger);
+    }
+
+    private static Script compile(Context cx, String script, String name) {
+        return cx.compileString(script, name, 1, null);
     }
 
     public static class JavaClassInterop {
@@ -169,7 +197,7 @@ public class ScriptingExecutionService {
     }
 
     @SuppressWarnings("unchecked")
-    private <T> T executeScriptFinally(String name, String script, Map<String, Object> params, Class<T> clazz,  ExtensionLogger extensionLogger) {
+    private <T> T executeScriptFinally(String name, Function<Context, Script> scriptProvider, Map<String, Object> params, Class<T> clazz,  ExtensionLogger extensionLogger) {
         Context cx = Context.enter();
         try {
             if(params == null) {
@@ -195,8 +223,7 @@ public class ScriptingExecutionService {
                     scope.put(entry.getKey(), scope, Context.javaToJS(value, scope));
                 }
             }
-            Object res;
-            res = cx.evaluateString(scope, script, name, 1, null);
+            Object res = scriptProvider.apply(cx).exec(cx, scope);
             extensionLogger.logSuccess("Script executed successfully.");
             if (res instanceof NativeJavaObject nativeRes) {
                 return (T) nativeRes.unwrap();
@@ -20,6 +20,7 @@ import alfio.config.Initializer;
 import alfio.manager.*;
 import alfio.manager.system.AdminJobExecutor;
 import alfio.manager.system.AdminJobManager;
+import alfio.manager.wallet.GoogleWalletManager;
 import org.apache.commons.lang3.time.DateUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
@@ -50,6 +51,7 @@ public class Jobs {
     private static final int THIRTY_SECONDS = 1000 * 30;
     private static final int FIVE_SECONDS = 1000 * 5;
     private static final int THIRTY_MINUTES = 30 * ONE_MINUTE;
+    private static final long PAYMENT_WEBHOOK_LAG_WARNING_SECONDS = 60;
     private static final String EVERY_HOUR = "0 0 0/1 * * ?";
 
     private final AdminReservationRequestManager adminReservationRequestManager;
@@ -59,6 +61,10 @@ public class Jobs {
     private final TicketReservationManager ticketReservationManager;
     private final WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor;
     private final AdminJobManager adminJobManager;
+    private final EventStatisticsManager eventStatisticsManager;
+    private final GoogleWalletManager googleWalletManager;
+    private final PaymentWebhookInboxManager paymentWebhookInboxManager;
+    private final AdmissionQueueManager admissionQueueManager;
 
     public Jobs(AdminReservationRequestManager adminReservationRequestManager,
                 FileUploadManager fileUploadManager,
@@ -66,7 +72,11 @@ public class Jobs {
                 SpecialPriceTokenGenerator specialPriceTokenGenerator,
                 TicketReservationManager ticketReservationManager,
                 WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor,
-                AdminJobManager adminJobManager) {
+                AdminJobManager adminJobManager,
+                EventStatisticsManager eventStatisticsManager,
+                GoogleWalletManager googleWalletManager,
+                PaymentWebhookInboxManager paymentWebhookInboxManager,
+                AdmissionQueueManager admissionQueueManager) {
         this.adminReservationRequestManager = adminReservationRequestManager;
         this.fileUploadManager = fileUploadManager;
         this.notificationManager = notificationManager;
@@ -74,6 +84,10 @@ public class Jobs {
         this.ticketReservationManager = ticketReservationManager;
         this.waitingQueueSubscriptionProcessor = waitingQueueSubscriptionProcessor;
         this.adminJobManager = adminJobManager;
+        this.eventStatisticsManager = eventStatisticsManager;
+        this.googleWalletManager = googleWalletManager;
+        this.paymentWebhookInboxManager = paymentWebhookInboxManager;
+        this.admissionQueueManager = admissionQueueManager;
     }
 
 
@@ -148,6 +162,44 @@ public class Jobs {
     }
 
 
+    @Scheduled(fixedRate = FIVE_SECONDS)
+    public void processPaymentWebhooks() {
+        log.trace("running job processPaymentWebhooks");
+        try {
+            // webhooks are normally processed as soon as they are received. Here we pick up retries and leftovers
+            int processed = paymentWebhookInboxManager.processPendingWebhooks();
+            var status = paymentWebhookInboxManager.getStatus();
+            if (status.lagSeconds() > PAYMENT_WEBHOOK_LAG_WARNING_SECONDS) {
+                log.warn("{} payment webhooks are pending. Oldest one has been received {} seconds ago", status.pending(), status.lagSeconds());
+            }
+            log.trace("processed {} payment webhooks", processed);
+        } finally {
+            log.trace("end job processPaymentWebhooks");
+        }
+    }
+
+    @Scheduled(fixedRate = ONE_MINUTE * 60)
+    public void cleanupProcessedPaymentWebhooks() {
+        log.trace("running job cleanupProcessedPaymentWebhooks");
+        try {
+            int deleted = paymentWebhookInboxManager.cleanupProcessedWebhooks();
+            log.trace("deleted {} payment webhooks", deleted);
+        } finally {
+            log.trace("end job cleanupProcessedPaymentWebhooks");
+        }
+    }
+
+    @Scheduled(fixedRate = THIRTY_MINUTES)
+    public void cleanupExpiredAdmissionQueueEntries() {
+        log.trace("running job cleanupExpiredAdmissionQueueEntries");
+        try {
+            int deleted = admissionQueueManager.cleanupExpiredEntries();
+            log.trace("deleted {} admission queue entries", deleted);
+        } finally {
+            log.trace("end job cleanupExpiredAdmissionQueueEntries");
+        }
+    }
+
     @Scheduled(fixedRate = THIRTY_MINUTES)
     public void sendOfflinePaymentReminder() {
         log.trace("running job sendOfflinePaymentReminder");
@@ -194,6 +246,28 @@ public class Jobs {
         }
     }
 
+    @Scheduled(fixedRate = ONE_MINUTE)
+    public void compactTicketStatusCount() {
+        log.trace("running job compactTicketStatusCount");
+        try {
+            int updated = eventStatisticsManager.compactTicketStatusCount();
+            log.trace("compacted {} ticket counter changes", updated);
+        } finally {
+            log.trace("end job compactTicketStatusCount");
+        }
+    }
+
+    @Scheduled(fixedRate = ONE_MINUTE)
+    public void provisionGoogleWalletObjects() {
+        log.trace("running job provisionGoogleWalletObjects");
+        try {
+            int provisioned = googleWalletManager.provisionWalletObjects();
+            log.trace("provisioned {} wallet objects", provisioned);
+        } finally {
+            log.trace("end job provisionGoogleWalletObjects");
+        }
+    }
+
     @Scheduled(fixedRateString = "#{environment.acceptsProfiles('dev') ? (1000 * 60) : (30 * 60 * 1000)}")
     public void checkOfflinePaymentsStatus() {
         log.trace("running job checkOfflinePaymentsStatus");
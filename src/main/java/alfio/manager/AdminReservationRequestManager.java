@@ -27,23 +27,26 @@ import alfio.repository.EventRepository;
 import alfio.repository.user.UserRepository;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static alfio.model.modification.AdminReservationModification.Notification.orEmpty;
@@ -52,16 +55,26 @@ import static java.util.Optional.ofNullable;
 
 @Component
 @Transactional
-public class AdminReservationRequestManager {
+public class AdminReservationRequestManager implements DisposableBean {
 
     private static final Logger log = LoggerFactory.getLogger(AdminReservationRequestManager.class);
+    private static final int CHUNK_SIZE = 100;
+    private static final int MAX_CHUNKS_PER_WORKER = 50;
+    private static final int MAX_PARALLEL_CHUNKS = Math.min(4, Runtime.getRuntime().availableProcessors());
 
     private final AdminReservationManager adminReservationManager;
     private final EventManager eventManager;
     private final UserRepository userRepository;
     private final AdminReservationRequestRepository adminReservationRequestRepository;
     private final EventRepository eventRepository;
-    private final PlatformTransactionManager transactionManager;
+    private final TransactionTemplate requiresNewTransactionTemplate;
+    private final TransactionTemplate nestedTransactionTemplate;
+    // each chunk is processed in its own transaction, so the pool size must stay well below the size of the connection pool
+    private final ThreadPoolExecutor chunkProcessors = new ThreadPoolExecutor(MAX_PARALLEL_CHUNKS, MAX_PARALLEL_CHUNKS, 1L, TimeUnit.MINUTES,
+        new ArrayBlockingQueue<>(MAX_PARALLEL_CHUNKS * 4),
+        new BasicThreadFactory.Builder().namingPattern("admin-reservation-request-processor-%d").daemon(true).build(),
+        // if the queue is full, or the pool has been shut down, the chunks are processed by the calling thread
+        (task, executor) -> task.run());
 
     public AdminReservationRequestManager(AdminReservationManager adminReservationManager,
                                           EventManager eventManager,
@@ -74,7 +87,9 @@ public class AdminReservationRequestManager {
         this.userRepository = userRepository;
         this.adminReservationRequestRepository = adminReservationRequestRepository;
         this.eventRepository = eventRepository;
-        this.transactionManager = transactionManager;
+        this.requiresNewTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        this.nestedTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED));
+        this.chunkProcessors.allowCoreThreadTimeOut(true);
     }
 
     public Result<AdminReservationRequestStats> getRequestStatus(String requestId, String eventName, String username) {
@@ -116,35 +131,84 @@ public class AdminReservationRequestManager {
             .orElseGet(() -> Result.error(ErrorCode.ReservationError.UPDATE_FAILED));
     }
 
-    //TODO: rewrite, and add test!
+    /**
+     * Processes the pending requests in chunks of {@value #CHUNK_SIZE}. Each chunk is locked, processed and committed in its own
+     * transaction, so that the progress is immediately visible through {@code admin_reservation_request_stats} and the locks
+     * are held only for the time needed to process the chunk.
+     * Up to {@link #MAX_PARALLEL_CHUNKS} chunks are processed in parallel; since the chunks are locked using "skip locked",
+     * a request will never be picked up by more than one worker.
+     *
+     * @return the number of successful and failed requests
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Pair<Integer, Integer> processPendingReservations() {
-        Map<Boolean, List<MapSqlParameterSource>> result = adminReservationRequestRepository.findPendingForUpdate(1000)
-            .stream()
-            .map(id -> {
-                AdminReservationRequest request = adminReservationRequestRepository.fetchCompleteById(id);
+        var futures = IntStream.range(0, MAX_PARALLEL_CHUNKS)
+            .mapToObj(i -> chunkProcessors.submit(this::processChunks))
+            .toList();
+        return futures.stream()
+            .map(AdminReservationRequestManager::awaitChunks)
+            .reduce((p1, p2) -> Pair.of(p1.getLeft() + p2.getLeft(), p1.getRight() + p2.getRight()))
+            .orElseGet(() -> Pair.of(0, 0));
+    }
 
-                Result<Triple<TicketReservation, List<Ticket>, Event>> reservationResult = Result.fromNullable(eventRepository.findOptionalById((int) request.getEventId()).orElse(null), ErrorCode.EventError.NOT_FOUND)
-                    .flatMap(e -> Result.fromNullable(userRepository.findOptionalById((int) request.getUserId()).map(u -> Pair.of(e, u)).orElse(null), ErrorCode.EventError.ACCESS_DENIED))
-                    .flatMap(p -> processReservation(request, p.getLeft(), p.getRight()));
-                return buildParameterSource(id, reservationResult);
-            }).collect(Collectors.partitioningBy(ps -> AdminReservationRequest.Status.SUCCESS.name().equals(ps.getValue("status"))));
+    private static Pair<Integer, Integer> awaitChunks(Future<Pair<Integer, Integer>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+            // the requests of a chunk which has not been committed are still pending and will be retried at the next run
+            log.warn("cannot process chunks of reservation requests", e);
+        }
+        return Pair.of(0, 0);
+    }
 
-        result.values().forEach(list -> {
+    private Pair<Integer, Integer> processChunks() {
+        int success = 0;
+        int failures = 0;
+        for (int i = 0; i < MAX_CHUNKS_PER_WORKER; i++) {
+            Pair<Integer, Integer> result;
             try {
-                adminReservationRequestRepository.updateStatus(list);
-            } catch(Exception e) {
-                log.warn("cannot update the status of "+list.size()+" reservations", e);
+                result = requiresNewTransactionTemplate.execute(status -> processChunk());
+            } catch (Exception e) {
+                // the whole chunk has been rolled back, so its requests are still pending and will be retried at the next run
+                log.warn("cannot process chunk of reservation requests", e);
+                break;
             }
-        });
+            if (result == null || result.getLeft() + result.getRight() == 0) {
+                break;
+            }
+            success += result.getLeft();
+            failures += result.getRight();
+        }
+        return Pair.of(success, failures);
+    }
 
-        return Pair.of(CollectionUtils.size(result.get(true)), CollectionUtils.size(result.get(false)));
+    private Pair<Integer, Integer> processChunk() {
+        var requests = adminReservationRequestRepository.findPendingForUpdate(CHUNK_SIZE);
+        if (requests.isEmpty()) {
+            return Pair.of(0, 0);
+        }
+        long start = System.currentTimeMillis();
+        // requests of the same import share event and user, so we look them up only once per chunk
+        Map<Long, Optional<Event>> events = new HashMap<>();
+        Map<Long, Optional<User>> users = new HashMap<>();
+        Map<Boolean, List<MapSqlParameterSource>> result = requests.stream()
+            .map(request -> {
+                Result<Triple<TicketReservation, List<Ticket>, Event>> reservationResult = Result.fromNullable(events.computeIfAbsent(request.getEventId(), id -> eventRepository.findOptionalById(id.intValue())).orElse(null), ErrorCode.EventError.NOT_FOUND)
+                    .flatMap(e -> Result.fromNullable(users.computeIfAbsent(request.getUserId(), id -> userRepository.findOptionalById(id.intValue())).map(u -> Pair.of(e, u)).orElse(null), ErrorCode.EventError.ACCESS_DENIED))
+                    .flatMap(p -> processReservation(request, p.getLeft(), p.getRight()));
+                return buildParameterSource(request.getId(), reservationResult);
+            }).collect(Collectors.partitioningBy(ps -> AdminReservationRequest.Status.SUCCESS.name().equals(ps.getValue("status"))));
 
+        // if the status update fails, the whole chunk must be rolled back. Otherwise, the requests would be processed again
+        adminReservationRequestRepository.updateStatus(result.values().stream().flatMap(List::stream).toList());
+        log.debug("processed {} reservation requests in {} ms", requests.size(), System.currentTimeMillis() - start);
+        return Pair.of(CollectionUtils.size(result.get(true)), CollectionUtils.size(result.get(false)));
     }
 
     private Result<Triple<TicketReservation, List<Ticket>, Event>> processReservation(AdminReservationRequest request, Event event, User user) {
-        DefaultTransactionDefinition definition = new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED);
-        TransactionTemplate template = new TransactionTemplate(transactionManager, definition);
-        return template.execute(status -> {
+        return nestedTransactionTemplate.execute(status -> {
             var savepoint = status.createSavepoint();
             try {
                 String eventName = event.getShortName();
@@ -243,4 +307,16 @@ public class AdminReservationRequestManager {
             });
     }
 
+    @Override
+    public void destroy() throws InterruptedException {
+        chunkProcessors.shutdown();
+        if(!chunkProcessors.awaitTermination(10, TimeUnit.SECONDS)) {
+            // uncommitted chunks are rolled back, so their requests will be processed again after restart
+            chunkProcessors.shutdownNow().forEach(task -> {
+                if(task instanceof Future<?> future) {
+                    future.cancel(false);
+                }
+            });
+        }
+    }
 }
@@ -0,0 +1,211 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.support.AdmissionQueueStatus;
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.Event;
+import alfio.model.Ticket;
+import alfio.repository.AdmissionQueueRepository;
+import alfio.util.ClockProvider;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+
+import static alfio.model.system.ConfigurationKeys.ADMISSION_QUEUE_MAX_ENTRIES_PER_ADDRESS;
+import static alfio.model.system.ConfigurationKeys.ADMISSION_QUEUE_RATE;
+import static alfio.model.system.ConfigurationKeys.ENABLE_ADMISSION_QUEUE;
+
+/**
+ * Admission queue (virtual waiting room) in front of the ticket reservation.
+ * <p>
+ * Each client receives a token, signed with the event key, containing the time at which they will be admitted.
+ * Admission times are derived from a position counter stored in the database for each event, {@code 1/rate} seconds apart,
+ * so that the queue is shared by all the nodes (see {@link #nextAdmissionTs(Event, ZonedDateTime, int)}).
+ * <p>
+ * The token is bound to the client identifier (a cookie, see {@link #CLIENT_COOKIE}) and can be used for a limited number
+ * of reservation attempts. A client holds at most one position in the queue of an event. The number of positions
+ * that can be requested from the same address can be limited with {@link alfio.model.system.ConfigurationKeys#ADMISSION_QUEUE_MAX_ENTRIES_PER_ADDRESS}.
+ */
+@Component
+@Transactional
+public class AdmissionQueueManager {
+
+    public static final String TOKEN_HEADER = "Alfio-Admission-Token";
+    public static final String CLIENT_COOKIE = "alfio-admission-client";
+    private static final int DEFAULT_RATE = 50;
+    // admitted buyers have this much time to complete their reservation request(s)
+    private static final Duration TOKEN_VALIDITY = Duration.ofMinutes(15);
+    private static final int MAX_RESERVATION_ATTEMPTS = 5;
+    private static final Duration ADDRESS_WINDOW = Duration.ofMinutes(10);
+
+    private final AdmissionQueueRepository admissionQueueRepository;
+    private final ConfigurationManager configurationManager;
+    private final ClockProvider clockProvider;
+
+    public AdmissionQueueManager(AdmissionQueueRepository admissionQueueRepository,
+                                 ConfigurationManager configurationManager,
+                                 ClockProvider clockProvider) {
+        this.admissionQueueRepository = admissionQueueRepository;
+        this.configurationManager = configurationManager;
+        this.clockProvider = clockProvider;
+    }
+
+    public boolean isEnabled(Event event) {
+        return configurationManager.getFor(ENABLE_ADMISSION_QUEUE, event.getConfigurationLevel()).getValueAsBooleanOrDefault();
+    }
+
+    /**
+     * Adds a client to the queue. If the client is already in the queue, its current position is returned.
+     *
+     * @param event the event
+     * @param clientId the client identifier
+     * @param clientAddress the address of the client
+     * @return the position of the client, including the token. Empty if the limit of positions for the same address is configured and has been reached
+     */
+    public Optional<AdmissionQueueStatus> enqueue(Event event, String clientId, String clientAddress) {
+        if (!isEnabled(event)) {
+            return Optional.of(AdmissionQueueStatus.notEnabled());
+        }
+        int rate = getRate(event);
+        var now = ZonedDateTime.now(clockProvider.getClock());
+        // the address is not stored as is
+        var addressHash = Ticket.hmacSHA256Base64(event.getPrivateKey(), "admission-queue-address/" + clientAddress);
+        var entry = admissionQueueRepository.lockEntry(event.getId(), event.getOrganizationId(), clientId, addressHash, now);
+        if (entry.admissionTs().plus(TOKEN_VALIDITY).isAfter(now)) {
+            // the client is already in the queue, or has been admitted recently. We don't move the queue forward
+            long admissionTime = entry.admissionTs().toInstant().toEpochMilli();
+            return Optional.of(buildStatus(generateToken(event, clientId, entry.id(), admissionTime), admissionTime, rate));
+        }
+        int maxEntriesPerAddress = configurationManager.getFor(ADMISSION_QUEUE_MAX_ENTRIES_PER_ADDRESS, event.getConfigurationLevel()).getValueAsIntOrDefault(0);
+        if (maxEntriesPerAddress > 0
+            && admissionQueueRepository.countEntriesFromAddress(event.getId(), addressHash, clientId, now.minus(ADDRESS_WINDOW)) >= maxEntriesPerAddress) {
+            return Optional.empty();
+        }
+        var admissionTs = nextAdmissionTs(event, now, rate);
+        admissionQueueRepository.updateEntry(entry.id(), addressHash, admissionTs, now);
+        long admissionTime = admissionTs.toInstant().toEpochMilli();
+        return Optional.of(buildStatus(generateToken(event, clientId, entry.id(), admissionTime), admissionTime, rate));
+    }
+
+    /**
+     * @param event the event
+     * @param token the token received from {@link #enqueue(Event, String, String)}
+     * @param clientId the client identifier
+     * @return the current position, if the token is valid
+     */
+    public Optional<AdmissionQueueStatus> getStatus(Event event, String token, String clientId) {
+        if (!isEnabled(event)) {
+            return Optional.of(AdmissionQueueStatus.notEnabled());
+        }
+        return parseToken(event, token, clientId).map(parsed -> buildStatus(token, parsed.admissionTime(), getRate(event)));
+    }
+
+    /**
+     * Checks whether the client can attempt a reservation. Each successful check uses one of the attempts granted to the token.
+     *
+     * @param event the event
+     * @param token the token received from {@link #enqueue(Event, String, String)}. Can be null
+     * @param clientId the client identifier. Can be null
+     * @return {@code true} if the queue is not enabled, or if the client has been admitted and the token can still be used
+     */
+    public boolean isAdmitted(Event event, String token, String clientId) {
+        if (!isEnabled(event)) {
+            return true;
+        }
+        long now = now();
+        return parseToken(event, token, clientId)
+            .filter(parsed -> now >= parsed.admissionTime() && now - parsed.admissionTime() <= TOKEN_VALIDITY.toMillis())
+            .filter(parsed -> admissionQueueRepository.registerReservationAttempt(parsed.entryId(), event.getId(), clientId, MAX_RESERVATION_ATTEMPTS) == 1)
+            .isPresent();
+    }
+
+    /**
+     * Assigns the next position in the queue of the event and returns its admission time. The position is
+     * admitted {@code (position - startPosition) / rate} seconds after the start of the queue.
+     * Each event has its own counter, so that the traffic of an event does not delay the buyers of the other events.
+     */
+    private ZonedDateTime nextAdmissionTs(Event event, ZonedDateTime now, int rate) {
+        var position = admissionQueueRepository.nextPosition(event.getId(), event.getOrganizationId(), rate, now);
+        var admissionTs = position.startTs().plusNanos((position.position() - position.startPosition()) * 1_000_000_000L / rate);
+        return admissionTs.isBefore(now) ? now : admissionTs;
+    }
+
+    /**
+     * Removes the entries whose token has expired, and which are too old to count for the limit of entries from the same address.
+     *
+     * @return the number of removed entries
+     */
+    public int cleanupExpiredEntries() {
+        var now = ZonedDateTime.now(clockProvider.getClock());
+        return admissionQueueRepository.deleteExpiredEntries(now.minus(TOKEN_VALIDITY), now.minus(ADDRESS_WINDOW));
+    }
+
+    private AdmissionQueueStatus buildStatus(String token, long admissionTime, int rate) {
+        long waitMillis = Math.max(0, admissionTime - now());
+        return new AdmissionQueueStatus(token, waitMillis == 0, (long) Math.ceil(waitMillis * rate / 1000.0), (long) Math.ceil(waitMillis / 1000.0));
+    }
+
+    private int getRate(Event event) {
+        return Math.max(1, configurationManager.getFor(ADMISSION_QUEUE_RATE, event.getConfigurationLevel()).getValueAsIntOrDefault(DEFAULT_RATE));
+    }
+
+    private long now() {
+        return Instant.now(clockProvider.getClock()).toEpochMilli();
+    }
+
+    private static String generateToken(Event event, String clientId, long entryId, long admissionTime) {
+        var payload = event.getId() + "." + entryId + "." + admissionTime;
+        return payload + "." + sign(event, payload, clientId);
+    }
+
+    private static Optional<ParsedToken> parseToken(Event event, String token, String clientId) {
+        if (StringUtils.isAnyBlank(token, clientId)) {
+            return Optional.empty();
+        }
+        var parts = token.split("\\.", 4);
+        if (parts.length != 4
+            || !parts[0].equals(Integer.toString(event.getId()))
+            || !isNumber(parts[1])
+            || !isNumber(parts[2])) {
+            return Optional.empty();
+        }
+        var expected = sign(event, parts[0] + "." + parts[1] + "." + parts[2], clientId);
+        if (!MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), parts[3].getBytes(StandardCharsets.UTF_8))) {
+            return Optional.empty();
+        }
+        return Optional.of(new ParsedToken(Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+    }
+
+    private static boolean isNumber(String value) {
+        return StringUtils.isNumeric(value) && value.length() <= 18;
+    }
+
+    private static String sign(Event event, String payload, String clientId) {
+        return Ticket.hmacSHA256Base64(event.getPrivateKey(), "admission-queue/" + payload + "/" + clientId);
+    }
+
+    private record ParsedToken(long entryId, long admissionTime) {
+    }
+}
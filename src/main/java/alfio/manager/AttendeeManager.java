@@ -19,6 +19,7 @@ package alfio.manager;
 import alfio.manager.support.CheckInStatus;
 import alfio.manager.support.DefaultCheckInResult;
 import alfio.manager.support.SponsorAttendeeData;
+import alfio.manager.support.SponsorScanRegistration;
 import alfio.manager.support.TicketAndCheckInResult;
 import alfio.manager.user.UserManager;
 import alfio.model.*;
@@ -33,9 +34,9 @@ import org.springframework.stereotype.Component;
 
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
 public class AttendeeManager {
@@ -74,29 +75,62 @@ public class AttendeeManager {
                                                       SponsorScan.LeadStatus leadStatus,
                                                       String username,
                                                       String operatorId) {
-        int userId = userRepository.getByUsername(username).getId();
-        Optional<EventAndOrganizationId> maybeEvent = eventRepository.findOptionalEventAndOrganizationIdByShortName(eventShortName);
-        if(maybeEvent.isEmpty()) {
-            return new TicketAndCheckInResult(null, new DefaultCheckInResult(CheckInStatus.EVENT_NOT_FOUND, "event not found"));
-        }
-        EventAndOrganizationId event = maybeEvent.get();
-        Optional<Ticket> maybeTicket = ticketRepository.findOptionalByUUID(ticketUid);
-        if(maybeTicket.isEmpty()) {
-            return new TicketAndCheckInResult(null, new DefaultCheckInResult(CheckInStatus.TICKET_NOT_FOUND, "ticket not found"));
-        }
-        Ticket ticket = maybeTicket.get();
-        if(ticket.getStatus() != Ticket.TicketStatus.CHECKED_IN) {
-            return new TicketAndCheckInResult(new TicketWithCategory(ticket, null), new DefaultCheckInResult(CheckInStatus.INVALID_TICKET_STATE, "not checked-in"));
+        return registerSponsorScans(List.of(new SponsorScanRegistration(eventShortName, ticketUid, notes, leadStatus)), username, operatorId).get(0);
+    }
+
+    /**
+     * Registers the given scans. User, events and tickets are loaded once for the whole list and the scans
+     * are written with one statement per event. If the same ticket has been scanned more than once,
+     * the last scan wins.
+     *
+     * @return the result of each scan, in the same order as the input
+     */
+    public List<TicketAndCheckInResult> registerSponsorScans(List<SponsorScanRegistration> scans,
+                                                             String username,
+                                                             String operatorId) {
+        if(scans.isEmpty()) {
+            return List.of();
         }
+        int userId = userRepository.getByUsername(username).getId();
         var operator = Objects.requireNonNullElse(operatorId, DEFAULT_OPERATOR_ID);
-        Optional<ZonedDateTime> existingRegistration = sponsorScanRepository.getRegistrationTimestamp(userId, event.getId(), ticket.getId(), operator);
-        if(existingRegistration.isEmpty()) {
-            ZoneId eventZoneId = eventRepository.getZoneIdByEventId(event.getId());
-            sponsorScanRepository.insert(userId, ZonedDateTime.now(clockProvider.withZone(eventZoneId)), event.getId(), ticket.getId(), notes, leadStatus, operator);
-        } else {
-            sponsorScanRepository.updateNotesAndLeadStatus(userId, event.getId(), ticket.getId(), notes, leadStatus, operator);
+        var uuids = scans.stream().map(SponsorScanRegistration::ticketIdentifier).filter(Objects::nonNull).collect(Collectors.toSet());
+        Map<String, Ticket> ticketsByUuid = uuids.isEmpty() ? Map.of() : ticketRepository.findByUUIDs(uuids).stream()
+            .collect(Collectors.toMap(Ticket::getUuid, Function.identity()));
+        Map<String, Optional<EventAndOrganizationId>> events = new HashMap<>();
+        Map<Integer, Map<Integer, SponsorScanRegistration>> scansByEvent = new LinkedHashMap<>();
+        List<TicketAndCheckInResult> results = new ArrayList<>(scans.size());
+        for(var scan : scans) {
+            var maybeEvent = events.computeIfAbsent(scan.eventShortName(), eventRepository::findOptionalEventAndOrganizationIdByShortName);
+            if(maybeEvent.isEmpty()) {
+                results.add(new TicketAndCheckInResult(null, new DefaultCheckInResult(CheckInStatus.EVENT_NOT_FOUND, "event not found")));
+                continue;
+            }
+            Ticket ticket = ticketsByUuid.get(scan.ticketIdentifier());
+            if(ticket == null) {
+                results.add(new TicketAndCheckInResult(null, new DefaultCheckInResult(CheckInStatus.TICKET_NOT_FOUND, "ticket not found")));
+                continue;
+            }
+            if(ticket.getStatus() != Ticket.TicketStatus.CHECKED_IN) {
+                results.add(new TicketAndCheckInResult(new TicketWithCategory(ticket, null), new DefaultCheckInResult(CheckInStatus.INVALID_TICKET_STATE, "not checked-in")));
+                continue;
+            }
+            var byTicket = scansByEvent.computeIfAbsent(maybeEvent.get().getId(), k -> new LinkedHashMap<>());
+            // the same row cannot be affected twice by an upsert, so the last scan of a ticket wins
+            byTicket.put(ticket.getId(), scan);
+            results.add(new TicketAndCheckInResult(new TicketWithCategory(ticket, null), new DefaultCheckInResult(CheckInStatus.SUCCESS, "success")));
         }
-        return new TicketAndCheckInResult(new TicketWithCategory(ticket, null), new DefaultCheckInResult(CheckInStatus.SUCCESS, "success"));
+        scansByEvent.forEach((eventId, byTicket) -> {
+            ZoneId eventZoneId = eventRepository.getZoneIdByEventId(eventId);
+            var registrations = List.copyOf(byTicket.values());
+            sponsorScanRepository.bulkUpsert(userId,
+                ZonedDateTime.now(clockProvider.withZone(eventZoneId)),
+                eventId,
+                List.copyOf(byTicket.keySet()),
+                registrations.stream().map(SponsorScanRegistration::notes).collect(Collectors.toList()),
+                registrations.stream().map(r -> Objects.requireNonNullElse(r.leadStatus(), SponsorScan.LeadStatus.WARM).name()).collect(Collectors.toList()),
+                operator);
+        });
+        return results;
     }
 
     public Result<TicketWithAdditionalFields> retrieveTicket(String eventShortName, String ticketUid, String username) {
@@ -0,0 +1,183 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.support.CheckInStatus;
+import alfio.model.Audit;
+import alfio.model.audit.ScanAudit;
+import alfio.repository.AuditingRepository;
+import alfio.repository.audit.ScanAuditRepository;
+import alfio.util.BatchingWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Types;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+/**
+ * Writes the scan audit and the auditing rows generated by the check-in.
+ * <p>
+ * By default, rows are queued once the check-in transaction has been committed and written in batches by a background
+ * thread, so that the scan itself needs only one write. If the queue is full, rows are written immediately.
+ * <p>
+ * Properties:
+ * <ul>
+ *     <li>{@code alfio.check-in.audit.async}: write in background (default {@code true})</li>
+ *     <li>{@code alfio.check-in.audit.queue-size}: max number of pending entries (default 10000)</li>
+ * </ul>
+ */
+@Component
+class CheckInAuditWriter implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(CheckInAuditWriter.class);
+    private static final long POLL_INTERVAL_MILLIS = 200;
+
+    private final ScanAuditRepository scanAuditRepository;
+    private final AuditingRepository auditingRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final BatchingWriter<Entry> batchingWriter;
+
+    @Autowired
+    CheckInAuditWriter(ScanAuditRepository scanAuditRepository,
+                       AuditingRepository auditingRepository,
+                       PlatformTransactionManager platformTransactionManager,
+                       Environment environment) {
+        this(scanAuditRepository,
+            auditingRepository,
+            platformTransactionManager,
+            environment.getProperty("alfio.check-in.audit.async", Boolean.class, true),
+            environment.getProperty("alfio.check-in.audit.queue-size", Integer.class, 10_000));
+    }
+
+    CheckInAuditWriter(ScanAuditRepository scanAuditRepository,
+                       AuditingRepository auditingRepository,
+                       PlatformTransactionManager platformTransactionManager,
+                       boolean async,
+                       int queueSize) {
+        this.scanAuditRepository = scanAuditRepository;
+        this.auditingRepository = auditingRepository;
+        this.transactionTemplate = new TransactionTemplate(platformTransactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        this.batchingWriter = async ? new BatchingWriter<>("check-in-audit-writer", queueSize, POLL_INTERVAL_MILLIS, this::writeBatch) : null;
+    }
+
+    /**
+     * Records a scan.
+     *
+     * @param entry the scan
+     * @param immediate {@code true} if the rows must be written in the current transaction, because they are needed
+     *                  to evaluate the next scans (e.g. for categories which can be scanned once per day)
+     */
+    void write(Entry entry, boolean immediate) {
+        if (batchingWriter == null || !batchingWriter.isRunning() || immediate) {
+            insert(entry);
+        } else if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(entry);
+                }
+            });
+        } else {
+            enqueue(entry);
+        }
+    }
+
+    private void enqueue(Entry entry) {
+        if (!batchingWriter.offer(entry)) {
+            log.debug("check-in audit queue is full, writing entry for ticket {} immediately", entry.ticketUuid());
+            transactionTemplate.execute(s -> insert(entry));
+        }
+    }
+
+    private int insert(Entry entry) {
+        scanAuditRepository.insert(entry.ticketUuid(), entry.eventId(), entry.timestamp(), entry.username(), entry.status(), entry.operation());
+        return auditingRepository.insert(entry.reservationId(), entry.userId(), entry.eventId(), entry.auditType(),
+            Date.from(entry.timestamp().toInstant()), Audit.EntityType.TICKET, Integer.toString(entry.ticketId()));
+    }
+
+    private void writeBatch(List<Entry> batch) {
+        try {
+            transactionTemplate.execute(s -> bulkInsert(batch));
+        } catch (RuntimeException e) {
+            log.warn("Cannot write {} check-in audit entries in batch, writing them one by one", batch.size(), e);
+            for (Entry entry : batch) {
+                try {
+                    transactionTemplate.execute(s -> insert(entry));
+                } catch (RuntimeException ex) {
+                    log.error("Cannot write check-in audit entry for ticket {}", entry.ticketUuid(), ex);
+                }
+            }
+        }
+    }
+
+    private int[] bulkInsert(List<Entry> entries) {
+        var scans = entries.stream()
+            .map(e -> new MapSqlParameterSource("ticketUuid", e.ticketUuid())
+                .addValue("eventId", e.eventId())
+                // same conversion applied by the repository when binding a ZonedDateTime
+                .addValue("scanTs", GregorianCalendar.from(e.timestamp().withZoneSameInstant(ZoneOffset.UTC)), Types.TIMESTAMP)
+                .addValue("username", e.username())
+                .addValue("status", e.status().name())
+                .addValue("operation", e.operation().name()))
+            .toArray(MapSqlParameterSource[]::new);
+        var audits = entries.stream()
+            .map(e -> new MapSqlParameterSource("reservationId", e.reservationId())
+                .addValue("userId", e.userId())
+                .addValue("eventId", e.eventId())
+                .addValue("eventType", e.auditType().name())
+                .addValue("eventTime", Date.from(e.timestamp().toInstant()))
+                .addValue("entityType", Audit.EntityType.TICKET.name())
+                .addValue("entityId", Integer.toString(e.ticketId())))
+            .toArray(MapSqlParameterSource[]::new);
+        scanAuditRepository.bulkInsert(scans);
+        return auditingRepository.bulkInsert(audits);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (batchingWriter != null) {
+            batchingWriter.shutdown();
+        }
+    }
+
+    record Entry(String ticketUuid,
+                 int eventId,
+                 String username,
+                 Integer userId,
+                 CheckInStatus status,
+                 ScanAudit.Operation operation,
+                 String reservationId,
+                 Audit.EventType auditType,
+                 int ticketId,
+                 ZonedDateTime timestamp) {
+    }
+}
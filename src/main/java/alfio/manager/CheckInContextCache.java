@@ -0,0 +1,139 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.Event;
+import alfio.model.TicketCategory;
+import alfio.model.support.CheckInOutputColorConfiguration;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.repository.user.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Keeps the data needed for scanning tickets at the entrance (event, categories, box colors, ownership, user id)
+ * for a short time, so that a scan does not have to load them again.
+ * <p>
+ * The TTL in milliseconds can be configured with {@code alfio.check-in.context-cache-ttl-ms} (default 30 seconds).
+ * A TTL of 0 disables caching. Missing events and users are not cached.
+ * <p>
+ * Contexts and ownership checks are discarded together with the configuration snapshots
+ * (see {@link ConfigurationManager#addInvalidationListener(Runnable)}), so that a change of the box colors
+ * is applied to the next scan.
+ */
+@Component
+class CheckInContextCache {
+
+    private final EventRepository eventRepository;
+    private final TicketCategoryRepository ticketCategoryRepository;
+    private final OrganizationRepository organizationRepository;
+    private final UserRepository userRepository;
+    private final ConfigurationManager configurationManager;
+    private final Cache<String, CheckInContext> contexts;
+    private final Cache<OwnershipKey, Boolean> ownership;
+    private final Cache<String, Integer> userIds;
+
+    @Autowired
+    CheckInContextCache(EventRepository eventRepository,
+                        TicketCategoryRepository ticketCategoryRepository,
+                        OrganizationRepository organizationRepository,
+                        UserRepository userRepository,
+                        ConfigurationManager configurationManager,
+                        Environment environment) {
+        this(eventRepository, ticketCategoryRepository, organizationRepository, userRepository, configurationManager,
+            Duration.ofMillis(environment.getProperty("alfio.check-in.context-cache-ttl-ms", Long.class, 30_000L)));
+    }
+
+    CheckInContextCache(EventRepository eventRepository,
+                        TicketCategoryRepository ticketCategoryRepository,
+                        OrganizationRepository organizationRepository,
+                        UserRepository userRepository,
+                        ConfigurationManager configurationManager,
+                        Duration ttl) {
+        this.eventRepository = eventRepository;
+        this.ticketCategoryRepository = ticketCategoryRepository;
+        this.organizationRepository = organizationRepository;
+        this.userRepository = userRepository;
+        this.configurationManager = configurationManager;
+        this.contexts = buildCache(ttl, 1_000);
+        this.ownership = buildCache(ttl, 10_000);
+        this.userIds = buildCache(ttl, 10_000);
+        if(contexts != null) {
+            configurationManager.addInvalidationListener(this::invalidateAll);
+        }
+    }
+
+    /**
+     * @return the check-in context for the given event, if the event exists and the user is allowed to access it
+     */
+    Optional<CheckInContext> findContext(String eventShortName, String username) {
+        configurationManager.checkForChanges();
+        return Optional.ofNullable(lookup(contexts, eventShortName, () -> eventRepository.findOptionalByShortName(eventShortName).map(this::loadContext).orElse(null)))
+            .filter(ctx -> lookup(ownership, new OwnershipKey(username, ctx.event().getOrganizationId()),
+                () -> EventManager.checkOwnership(username, organizationRepository).test(ctx.event())));
+    }
+
+    Integer findUserId(String username) {
+        return lookup(userIds, username, () -> userRepository.findIdByUserName(username).orElse(null));
+    }
+
+    private void invalidateAll() {
+        contexts.invalidateAll();
+        ownership.invalidateAll();
+    }
+
+    private CheckInContext loadContext(Event event) {
+        var categories = ticketCategoryRepository.findAllTicketCategories(event.getId()).stream()
+            .collect(toMap(TicketCategory::getId, Function.identity()));
+        return new CheckInContext(event, categories, CheckInManager.getOutputColorConfiguration(event, configurationManager));
+    }
+
+    private static <K, V> Cache<K, V> buildCache(Duration ttl, int maximumSize) {
+        if(ttl.isZero() || ttl.isNegative()) {
+            return null;
+        }
+        return Caffeine.newBuilder()
+            .expireAfterWrite(ttl)
+            .maximumSize(maximumSize)
+            .build();
+    }
+
+    // Caffeine does not store null values, so that a missing value is loaded again the next time
+    private static <K, V> V lookup(Cache<K, V> cache, K key, Supplier<V> loader) {
+        return cache != null ? cache.get(key, k -> loader.get()) : loader.get();
+    }
+
+    record CheckInContext(Event event, Map<Integer, TicketCategory> categories, CheckInOutputColorConfiguration colorConfiguration) {
+    }
+
+    private record OwnershipKey(String username, int organizationId) {
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.support.CheckInLatency;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Keeps the duration of the most recent scans of each event, in order to report p50 and p99 latency.
+ */
+@Component
+public class CheckInLatencyTracker {
+
+    static final int MAX_SAMPLES = 2048;
+
+    private final Cache<String, Samples> samplesByEvent = Caffeine.newBuilder()
+        .maximumSize(1_000)
+        .expireAfterAccess(Duration.ofDays(1))
+        .build();
+
+    public void record(String eventName, long elapsedNanos) {
+        samplesByEvent.get(eventName, k -> new Samples()).add(elapsedNanos);
+    }
+
+    public CheckInLatency getLatency(String eventName) {
+        var samples = samplesByEvent.getIfPresent(eventName);
+        return samples != null ? samples.toLatency() : new CheckInLatency(0, 0, 0);
+    }
+
+    private static final class Samples {
+        private final long[] values = new long[MAX_SAMPLES];
+        private int count;
+        private int next;
+
+        synchronized void add(long value) {
+            values[next] = value;
+            next = (next + 1) % MAX_SAMPLES;
+            count = Math.min(count + 1, MAX_SAMPLES);
+        }
+
+        CheckInLatency toLatency() {
+            long[] sorted;
+            synchronized (this) {
+                sorted = Arrays.copyOf(values, count);
+            }
+            if (sorted.length == 0) {
+                return new CheckInLatency(0, 0, 0);
+            }
+            Arrays.sort(sorted);
+            return new CheckInLatency(sorted.length, toMillis(percentile(sorted, 50)), toMillis(percentile(sorted, 99)));
+        }
+
+        private static long percentile(long[] sorted, int percentile) {
+            // nearest-rank method
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
@@ -23,23 +23,27 @@ import alfio.model.Ticket.TicketStatus;
 import alfio.model.api.v1.admin.CheckInLogEntry;
 import alfio.model.audit.ScanAudit;
 import alfio.model.checkin.AttendeeSearchResults;
+import alfio.model.checkin.AttendeeSearchResultsCount;
 import alfio.model.decorator.TicketPriceContainer;
 import alfio.model.support.CheckInOutputColorConfiguration;
 import alfio.model.transaction.PaymentProxy;
 import alfio.repository.*;
 import alfio.repository.audit.ScanAuditRepository;
 import alfio.repository.user.OrganizationRepository;
-import alfio.repository.user.UserRepository;
 import alfio.util.*;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.gson.reflect.TypeToken;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -50,11 +54,14 @@ import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -68,12 +75,14 @@ import static org.apache.commons.lang3.StringUtils.trimToEmpty;
 
 @Component
 @Transactional
-public class CheckInManager {
+public class CheckInManager implements DisposableBean {
 
     private static final Logger log = LoggerFactory.getLogger(CheckInManager.class);
 
     static final Pattern CYPHER_SPLITTER = Pattern.compile("\\|");
     private static final int SEARCH_ATTENDEES_LIMIT = 20;
+    private static final int ENCRYPTION_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final int MIN_ENCRYPTION_CHUNK_SIZE = 100;
     private final TicketRepository ticketRepository;
     private final EventRepository eventRepository;
     private final TicketReservationRepository ticketReservationRepository;
@@ -83,12 +92,23 @@ public class CheckInManager {
     private final AuditingRepository auditingRepository;
     private final ConfigurationManager configurationManager;
     private final OrganizationRepository organizationRepository;
-    private final UserRepository userRepository;
     private final TicketReservationManager ticketReservationManager;
     private final ExtensionManager extensionManager;
     private final AdditionalServiceItemRepository additionalServiceItemRepository;
     private final PollRepository pollRepository;
     private final ClockProvider clockProvider;
+    private final CheckInContextCache checkInContextCache;
+    private final CheckInAuditWriter checkInAuditWriter;
+    // the AES key is derived from the ticket code (PBKDF2, 1000 iterations), which is stable as long as the attendee
+    // data does not change. Caching the derived keys makes subsequent syncs (i.e. from other devices) much cheaper.
+    private final Cache<String, SecretKeySpec> derivedKeysCache = Caffeine.newBuilder()
+        .maximumSize(50_000)
+        .expireAfterAccess(Duration.ofHours(6))
+        .build();
+    private final ExecutorService encryptionExecutor = new ThreadPoolExecutor(ENCRYPTION_THREADS, ENCRYPTION_THREADS,
+        0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(ENCRYPTION_THREADS * 4),
+        new BasicThreadFactory.Builder().namingPattern("check-in-encryption-%d").daemon(true).build(),
+        new ThreadPoolExecutor.CallerRunsPolicy());
 
     public CheckInManager(TicketRepository ticketRepository,
                           EventRepository eventRepository,
@@ -99,12 +119,13 @@ public class CheckInManager {
                           AuditingRepository auditingRepository,
                           ConfigurationManager configurationManager,
                           OrganizationRepository organizationRepository,
-                          UserRepository userRepository,
                           TicketReservationManager ticketReservationManager,
                           ExtensionManager extensionManager,
                           AdditionalServiceItemRepository additionalServiceItemRepository,
                           PollRepository pollRepository,
-                          ClockProvider clockProvider) {
+                          ClockProvider clockProvider,
+                          CheckInContextCache checkInContextCache,
+                          CheckInAuditWriter checkInAuditWriter) {
         this.ticketRepository = ticketRepository;
         this.eventRepository = eventRepository;
         this.ticketReservationRepository = ticketReservationRepository;
@@ -114,12 +135,13 @@ public class CheckInManager {
         this.auditingRepository = auditingRepository;
         this.configurationManager = configurationManager;
         this.organizationRepository = organizationRepository;
-        this.userRepository = userRepository;
         this.ticketReservationManager = ticketReservationManager;
         this.extensionManager = extensionManager;
         this.additionalServiceItemRepository = additionalServiceItemRepository;
         this.pollRepository = pollRepository;
         this.clockProvider = clockProvider;
+        this.checkInContextCache = checkInContextCache;
+        this.checkInAuditWriter = checkInAuditWriter;
     }
 
 
@@ -143,9 +165,17 @@ public class CheckInManager {
             return new AttendeeSearchResults(0, 0, 0, 0, List.of());
         }
         int eventId = event.getId();
-        var search = "%" + query + "%";
-        var results = ticketRepository.searchAttendees(eventId, search, SEARCH_ATTENDEES_LIMIT, SEARCH_ATTENDEES_LIMIT * page);
-        var statistics = ticketRepository.countSearchResults(eventId, search);
+        var search = SqlUtils.toSearchPattern(query);
+        int offset = SEARCH_ATTENDEES_LIMIT * page;
+        var results = ticketRepository.searchAttendees(eventId, search, SEARCH_ATTENDEES_LIMIT, offset);
+        AttendeeSearchResultsCount statistics;
+        if(offset == 0 && results.size() < SEARCH_ATTENDEES_LIMIT) {
+            // all the results are already there, no need to count them on the database
+            int checkedIn = (int) results.stream().filter(fi -> fi.getTicket().getStatus() == TicketStatus.CHECKED_IN).count();
+            statistics = new AttendeeSearchResultsCount(results.size(), checkedIn);
+        } else {
+            statistics = ticketRepository.countSearchResults(eventId, search);
+        }
         var attendees = results.stream().map(fi -> {
             var ticket = fi.getTicket();
             var reservation = fi.getTicketReservation();
@@ -207,18 +237,46 @@ public class CheckInManager {
 
     public TicketAndCheckInResult checkIn(String eventShortName, String ticketIdentifier, Optional<String> ticketCode, String username, String auditUser,
                                           boolean automaticallyConfirmOnSitePayment) {
-        return eventRepository.findOptionalByShortName(eventShortName)
-            .filter(EventManager.checkOwnership(username, organizationRepository))
-            .map(e -> {
-                if (automaticallyConfirmOnSitePayment && CheckInStatus.MUST_PAY == evaluateTicketStatus(eventShortName, ticketIdentifier, ticketCode).getResult().getStatus()) {
-                    log.info("in event {} automaticallyConfirmOnSitePayment for {}", eventShortName, ticketIdentifier);
-                    confirmOnSitePayment(eventShortName, ticketIdentifier, ticketCode, username, auditUser);
-                }
-                return checkIn(e.getId(), ticketIdentifier, ticketCode, auditUser);
-            })
+        return checkInContextCache.findContext(eventShortName, username)
+            .map(context -> checkIn(context, ticketIdentifier, ticketCode, auditUser, automaticallyConfirmOnSitePayment))
             .orElseGet(() -> new TicketAndCheckInResult(null, new DefaultCheckInResult(CheckInStatus.EVENT_NOT_FOUND, "event not found")));
     }
 
+    /**
+     * Fast path for scanning tickets at the entrance: event and categories come from the cached context, the ticket
+     * status is evaluated once without locking the ticket and the check-in is a single conditional update.
+     * If the update fails because the ticket has been modified in the meantime, the scan is evaluated again on the
+     * locked ticket.
+     */
+    private TicketAndCheckInResult checkIn(CheckInContextCache.CheckInContext context, String ticketIdentifier, Optional<String> ticketCode, String user,
+                                           boolean automaticallyConfirmOnSitePayment) {
+        var event = context.event();
+        var descriptor = extractStatus(Optional.of(event), ticketRepository.findOptionalByUUID(ticketIdentifier), ticketIdentifier, ticketCode,
+            categoryId -> Optional.ofNullable(context.categories().get(categoryId)).orElseGet(() -> ticketCategoryRepository.getById(categoryId)));
+        var checkInStatus = descriptor.getResult().getStatus();
+        if (automaticallyConfirmOnSitePayment && checkInStatus == MUST_PAY) {
+            log.info("in event {} automaticallyConfirmOnSitePayment for {}", event.getShortName(), ticketIdentifier);
+            if (confirmOnSitePayment(ticketIdentifier).isPresent()) {
+                checkInStatus = OK_READY_TO_BE_CHECKED_IN;
+            }
+        }
+        if (checkInStatus == BADGE_SCAN_ALREADY_DONE || checkInStatus == OK_READY_FOR_BADGE_SCAN) {
+            // badge scans are evaluated on the locked ticket, so that concurrent scans are counted only once
+            return checkIn(event.getId(), ticketIdentifier, ticketCode, user);
+        } else if (checkInStatus != OK_READY_TO_BE_CHECKED_IN) {
+            return descriptor;
+        }
+
+        var checkedIn = ticketRepository.performCheckInReturningTicket(ticketIdentifier, event.getId());
+        if (checkedIn.isEmpty()) {
+            return checkIn(event.getId(), ticketIdentifier, ticketCode, user);
+        }
+        TicketWithCategory ticket = descriptor.getTicket();
+        extensionManager.handleTicketCheckedIn(checkedIn.get(0));
+        audit(ticketIdentifier, event.getId(), user, SUCCESS, ticket, CHECK_IN, isOncePerDay(ticket.getCategory()));
+        return new SuccessfulCheckIn(ticket, getAdditionalServicesForTicket(ticket), detectBoxColor(context.colorConfiguration(), ticket.getCategoryId()));
+    }
+
     public TicketAndCheckInResult checkIn(String shortName, String ticketIdentifier, Optional<String> ticketCode, String username, String auditUser) {
         return checkIn(shortName, ticketIdentifier, ticketCode, username, auditUser, false);
     }
@@ -229,19 +287,28 @@ public class CheckInManager {
         if(checkInStatus == OK_READY_TO_BE_CHECKED_IN) {
             checkIn(ticketIdentifier);
             TicketWithCategory ticket = descriptor.getTicket();
-            scanAuditRepository.insert(ticketIdentifier, eventId, ZonedDateTime.now(clockProvider.getClock()), user, SUCCESS, ScanAudit.Operation.SCAN);
-            auditingRepository.insert(ticket.getTicketsReservationId(), userRepository.findIdByUserName(user).orElse(null), eventId, CHECK_IN, new Date(), Audit.EntityType.TICKET, Integer.toString(descriptor.getTicket().getId()));
+            audit(ticketIdentifier, eventId, user, SUCCESS, ticket, CHECK_IN, true);
             // return also additional items, if any
             return new SuccessfulCheckIn(ticket, getAdditionalServicesForTicket(ticket), loadBoxColor(ticket));
         } else if(checkInStatus == BADGE_SCAN_ALREADY_DONE || checkInStatus == OK_READY_FOR_BADGE_SCAN) {
             var auditingStatus = checkInStatus == OK_READY_FOR_BADGE_SCAN ? BADGE_SCAN_SUCCESS : checkInStatus;
-            scanAuditRepository.insert(ticketIdentifier, eventId, ZonedDateTime.now(clockProvider.getClock()), user, auditingStatus, ScanAudit.Operation.SCAN);
-            auditingRepository.insert(descriptor.getTicket().getTicketsReservationId(), userRepository.findIdByUserName(user).orElse(null), eventId, BADGE_SCAN, new Date(), Audit.EntityType.TICKET, Integer.toString(descriptor.getTicket().getId()));
+            audit(ticketIdentifier, eventId, user, auditingStatus, descriptor.getTicket(), BADGE_SCAN, true);
             return new TicketAndCheckInResult(null, new DefaultCheckInResult(auditingStatus, checkInStatus == OK_READY_FOR_BADGE_SCAN ? "scan successful" : "already scanned"));
         }
         return descriptor;
     }
 
+    private void audit(String ticketIdentifier, int eventId, String user, CheckInStatus status, TicketInfoContainer ticket, Audit.EventType auditType, boolean immediate) {
+        var entry = new CheckInAuditWriter.Entry(ticketIdentifier, eventId, user, checkInContextCache.findUserId(user), status, ScanAudit.Operation.SCAN,
+            ticket.getTicketsReservationId(), auditType, ticket.getId(), ZonedDateTime.now(clockProvider.getClock()));
+        checkInAuditWriter.write(entry, immediate);
+    }
+
+    private static boolean isOncePerDay(TicketCategory category) {
+        // the audit is used to detect whether the badge has been already scanned on the same day
+        return category != null && category.getTicketCheckInStrategy() == TicketCategory.TicketCheckInStrategy.ONCE_PER_DAY;
+    }
+
     public boolean manualCheckIn(int eventId, String ticketIdentifier, String user) {
         Optional<Ticket> ticket = findAndLockTicket(ticketIdentifier);
         return ticket.map(t -> {
@@ -252,7 +319,7 @@ public class CheckInManager {
 
             checkIn(ticketIdentifier);
             scanAuditRepository.insert(ticketIdentifier, eventId, ZonedDateTime.now(clockProvider.getClock()), user, SUCCESS, ScanAudit.Operation.SCAN);
-            auditingRepository.insert(t.getTicketsReservationId(), userRepository.findIdByUserName(user).orElse(null), eventId, Audit.EventType.MANUAL_CHECK_IN, new Date(), Audit.EntityType.TICKET, Integer.toString(t.getId()));
+            auditingRepository.insert(t.getTicketsReservationId(), checkInContextCache.findUserId(user), eventId, Audit.EventType.MANUAL_CHECK_IN, new Date(), Audit.EntityType.TICKET, Integer.toString(t.getId()));
             return true;
         }).orElse(false);
     }
@@ -264,7 +331,7 @@ public class CheckInManager {
                 TicketStatus revertedStatus = reservation.getPaymentMethod() == PaymentProxy.ON_SITE ? TicketStatus.TO_BE_PAID : TicketStatus.ACQUIRED;
                 ticketRepository.updateTicketStatusWithUUID(ticketIdentifier, revertedStatus.toString());
                 scanAuditRepository.insert(ticketIdentifier, eventId, ZonedDateTime.now(clockProvider.getClock()), user, OK_READY_TO_BE_CHECKED_IN, ScanAudit.Operation.REVERT);
-                auditingRepository.insert(t.getTicketsReservationId(), userRepository.findIdByUserName(user).orElse(null), eventId, Audit.EventType.REVERT_CHECK_IN, new Date(), Audit.EntityType.TICKET, Integer.toString(t.getId()));
+                auditingRepository.insert(t.getTicketsReservationId(), checkInContextCache.findUserId(user), eventId, Audit.EventType.REVERT_CHECK_IN, new Date(), Audit.EntityType.TICKET, Integer.toString(t.getId()));
                 extensionManager.handleTicketRevertCheckedIn(ticketRepository.findByUUID(ticketIdentifier));
                 return true;
             }
@@ -289,6 +356,14 @@ public class CheckInManager {
     }
 
     private TicketAndCheckInResult extractStatus(Optional<? extends EventCheckInInfo> maybeEvent, Optional<Ticket> maybeTicket, String ticketIdentifier, Optional<String> ticketCode) {
+        return extractStatus(maybeEvent, maybeTicket, ticketIdentifier, ticketCode, ticketCategoryRepository::getById);
+    }
+
+    private TicketAndCheckInResult extractStatus(Optional<? extends EventCheckInInfo> maybeEvent,
+                                                 Optional<Ticket> maybeTicket,
+                                                 String ticketIdentifier,
+                                                 Optional<String> ticketCode,
+                                                 IntFunction<TicketCategory> categoryLoader) {
 
         if (maybeEvent.isEmpty()) {
             return new TicketAndCheckInResult(null, new DefaultCheckInResult(EVENT_NOT_FOUND, "Event not found"));
@@ -303,7 +378,7 @@ public class CheckInManager {
             return new TicketAndCheckInResult(new TicketWithCategory(ticket, null), new DefaultCheckInResult(INVALID_TICKET_STATE, "Invalid ticket state"));
         }
 
-        TicketCategory tc = ticketCategoryRepository.getById(ticket.getCategoryId());
+        TicketCategory tc = categoryLoader.apply(ticket.getCategoryId());
 
         EventCheckInInfo event = maybeEvent.get();
         if(ticketCode.filter(StringUtils::isNotBlank).isEmpty()) {
@@ -369,25 +444,35 @@ public class CheckInManager {
     }
 
     static Pair<Cipher, SecretKeySpec>  getCypher(String key) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            return Pair.of(cipher, deriveKey(key));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SecretKeySpec deriveKey(String key) {
         try {
             SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
             int iterations = 1000;
             int keyLength = 256;
             PBEKeySpec spec = new PBEKeySpec(key.toCharArray(), key.getBytes(StandardCharsets.UTF_8), iterations, keyLength);
             SecretKey secretKey = factory.generateSecret(spec);
-            SecretKeySpec secret = new SecretKeySpec(secretKey.getEncoded(), "AES");
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            return Pair.of(cipher, secret);
+            return new SecretKeySpec(secretKey.getEncoded(), "AES");
         } catch (GeneralSecurityException e) {
             throw new IllegalStateException(e);
         }
     }
 
     public static String encrypt(String key, String payload)  {
+        return encrypt(deriveKey(key), payload);
+    }
+
+    private static String encrypt(SecretKeySpec secret, String payload)  {
         try {
-            Pair<Cipher, SecretKeySpec> cipherAndSecret = getCypher(key);
-            Cipher cipher = cipherAndSecret.getKey();
-            cipher.init(Cipher.ENCRYPT_MODE, cipherAndSecret.getRight());
+            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.ENCRYPT_MODE, secret);
             byte[] data = cipher.doFinal(payload.getBytes(StandardCharsets.UTF_8));
             byte[] iv = cipher.getIV();
             return Base64.encodeBase64URLSafeString(iv) + "|" + Base64.encodeBase64URLSafeString(data);
@@ -441,7 +526,15 @@ public class CheckInManager {
             boolean hasPolls = !polls.isEmpty();
             var allowedTags = hasPolls ? polls.stream().flatMap(p -> p.allowedTags().stream()).collect(Collectors.toList()) : List.<String>of();
 
-            Function<FullTicketInfo, String> encryptedBody = ticket -> {
+            var tickets = ticketRepository.findAllFullTicketInfoAssignedByEventId(event.getId(), ids);
+            // load the additional fields for the whole page at once, and parse each description only once
+            Map<Integer, List<TicketFieldValueAndDescription>> fieldValues = additionalFields.isEmpty() || tickets.isEmpty() ? Map.of() :
+                ticketFieldRepository.findValueForTicketIds(tickets.stream().map(FullTicketInfo::getId).collect(Collectors.toSet()), additionalFields)
+                    .stream()
+                    .collect(Collectors.groupingBy(TicketFieldValueAndDescription::getTicketId));
+            Map<String, Map<String, String>> restrictedValuesByDescription = new HashMap<>();
+
+            Function<FullTicketInfo, Pair<String, String>> keyAndBody = ticket -> {
                 Map<String, String> info = new HashMap<>();
                 info.put("firstName", ticket.getFirstName());
                 info.put("lastName", ticket.getLastName());
@@ -461,22 +554,10 @@ public class CheckInManager {
                     Map<String, String> fields = new HashMap<>();
                     fields.put("company", trimToEmpty(ticket.getBillingDetails().getCompanyName()));
                     fields.put("category", ticket.getTicketCategory().getName());
-                    fields.putAll(ticketFieldRepository.findValueForTicketId(ticket.getId(), additionalFields).stream()
+                    fields.putAll(fieldValues.getOrDefault(ticket.getId(), List.of()).stream()
                         .map(vd -> {
-                            try {
-                                if(StringUtils.isNotBlank(vd.getDescription())) {
-                                    Map<String, Object> description = Json.GSON.fromJson(vd.getDescription(), new TypeToken<Map<String, Object>>(){}.getType());
-                                    Object rv = description.get("restrictedValues");
-                                    if(rv instanceof Map) {
-                                        @SuppressWarnings("unchecked")
-                                        Map<String, String> restrictedValues = (Map<String, String>) rv;
-                                        return Pair.of(vd.getName(), restrictedValues.getOrDefault(vd.getValue(), vd.getValue()));
-                                    }
-                                }
-                            } catch (Exception e) {
-                                log.error("cannot deserialize restricted values", e);
-                            }
-                            return Pair.of(vd.getName(), vd.getValue());
+                            var restrictedValues = restrictedValuesByDescription.computeIfAbsent(vd.getDescription(), CheckInManager::parseRestrictedValues);
+                            return Pair.of(vd.getName(), restrictedValues.getOrDefault(vd.getValue(), vd.getValue()));
                         })
                         .collect(toMap(Pair::getLeft, Pair::getRight)));
                     info.put("additionalInfoJson", Json.toJson(fields));
@@ -504,15 +585,66 @@ public class CheckInManager {
                     info.put("additionalServicesInfoJson", Json.toJson(additionalServicesInfo));
                 }
                 String key = ticket.ticketCode(eventKey, caseInsensitiveQRCode);
-                return encrypt(key, Json.toJson(info));
+                return Pair.of(key, Json.toJson(info));
             };
-            return ticketRepository.findAllFullTicketInfoAssignedByEventId(event.getId(), ids)
-                .stream()
-                .collect(toMap(hashedHMAC, encryptedBody));
+            long start = System.currentTimeMillis();
+            // the payload is built sequentially, since it needs the current transaction.
+            // Encryption is CPU-bound and can therefore be done in parallel
+            var payloads = tickets.stream()
+                .collect(toMap(hashedHMAC, keyAndBody));
+            var result = encryptAll(payloads);
+            log.debug("encrypted {} attendees for event {} in {} ms", result.size(), event.getShortName(), System.currentTimeMillis() - start);
+            return result;
 
         }).orElseGet(Collections::emptyMap);
     }
 
+    SecretKeySpec derivedKey(String key) {
+        return derivedKeysCache.get(key, CheckInManager::deriveKey);
+    }
+
+    /**
+     * Encrypts the given payloads on the dedicated encryption pool.
+     *
+     * @param payloads map of identifier -> (key, payload)
+     * @return map of identifier -> encrypted payload
+     */
+    Map<String, String> encryptAll(Map<String, Pair<String, String>> payloads) {
+        var entries = List.copyOf(payloads.entrySet());
+        int chunkSize = Math.max(MIN_ENCRYPTION_CHUNK_SIZE, (int) Math.ceil(entries.size() / (double) ENCRYPTION_THREADS));
+        var futures = new ArrayList<CompletableFuture<Map<String, String>>>();
+        for (int i = 0; i < entries.size(); i += chunkSize) {
+            var chunk = entries.subList(i, Math.min(entries.size(), i + chunkSize));
+            futures.add(CompletableFuture.supplyAsync(() -> chunk.stream()
+                .collect(toMap(Map.Entry::getKey, e -> encrypt(derivedKey(e.getValue().getLeft()), e.getValue().getRight()))), encryptionExecutor));
+        }
+        var result = new HashMap<String, String>(entries.size());
+        futures.forEach(f -> result.putAll(f.join()));
+        return result;
+    }
+
+    @Override
+    public void destroy() {
+        encryptionExecutor.shutdownNow();
+    }
+
+    private static Map<String, String> parseRestrictedValues(String description) {
+        try {
+            if(StringUtils.isNotBlank(description)) {
+                Map<String, Object> parsed = Json.GSON.fromJson(description, new TypeToken<Map<String, Object>>(){}.getType());
+                Object rv = parsed.get("restrictedValues");
+                if(rv instanceof Map) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, String> restrictedValues = (Map<String, String>) rv;
+                    return restrictedValues;
+                }
+            }
+        } catch (Exception e) {
+            log.error("cannot deserialize restricted values", e);
+        }
+        return Collections.emptyMap();
+    }
+
     static CheckInOutputColorConfiguration getOutputColorConfiguration(EventAndOrganizationId event, ConfigurationManager configurationManager) {
         return configurationManager.getFor(CHECK_IN_COLOR_CONFIGURATION, event.getConfigurationLevel()).getValue()
             .flatMap(str -> optionally(() -> Json.fromJson(str, CheckInOutputColorConfiguration.class)))
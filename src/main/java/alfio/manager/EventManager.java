@@ -52,6 +52,8 @@ import org.apache.commons.collections4.IterableUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.function.FailableConsumer;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.flywaydb.core.Flyway;
 import org.slf4j.Logger;
@@ -61,6 +63,7 @@ import org.springframework.core.env.Profiles;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
@@ -820,6 +823,7 @@ public class EventManager {
             } else {
                 configurationRepository.insertEventLevel(event.getOrganizationId(), event.getId(), CHECK_IN_COLOR_CONFIGURATION.name(), Json.toJson(colorConfiguration), null);
             }
+            configurationManager.notifyChange();
 
         }
     }
@@ -1090,10 +1094,51 @@ public class EventManager {
         return StringUtils.removeEnd(baseUrl, "/") + "/event/" + event.getShortName() + "/";
     }
 
-    public List<TicketWithReservationAndTransaction> findAllConfirmedTicketsForCSV(String eventName, String username) {
+    /**
+     * Passes all the confirmed tickets for the given event, together with their additional fields, to the given consumer.
+     * The tickets are selected by a single query, whose rows are read from a cursor in batches while the stream is being consumed,
+     * so that memory usage does not depend on the number of tickets. The stream must be consumed before the consumer returns,
+     * as the cursor is closed at the end of the transaction.
+     *
+     * @param eventName the event short name
+     * @param username the current user
+     * @param loadAdditionalFields whether the additional fields must be loaded or not
+     * @param consumer receives the tickets, sorted by confirmation timestamp
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public <E extends Throwable> void exportAllConfirmedTickets(String eventName,
+                                                                String username,
+                                                                boolean loadAdditionalFields,
+                                                                FailableConsumer<Stream<Pair<TicketWithReservationAndTransaction, Map<String, String>>>, E> consumer) throws E {
         EventAndOrganizationId event = getEventAndOrganizationId(eventName, username);
         checkOwnership(event, username, event.getOrganizationId());
-        return ticketRepository.findAllConfirmedForCSV(event.getId());
+        consumer.accept(streamConfirmedTicketsForExport(event.getId(), loadAdditionalFields));
+    }
+
+    Stream<Pair<TicketWithReservationAndTransaction, Map<String, String>>> streamConfirmedTicketsForExport(int eventId,
+                                                                                                         boolean loadAdditionalFields) {
+        ticketRepository.openConfirmedForExportCursor(eventId);
+        return Stream.iterate(fetchExportBatch(loadAdditionalFields), batch -> !batch.isEmpty(), batch -> fetchExportBatch(loadAdditionalFields))
+            .flatMap(List::stream);
+    }
+
+    private List<Pair<TicketWithReservationAndTransaction, Map<String, String>>> fetchExportBatch(boolean loadAdditionalFields) {
+        var tickets = ticketRepository.fetchConfirmedForExport();
+        if(tickets.isEmpty()) {
+            ticketRepository.closeConfirmedForExportCursor();
+            return List.of();
+        }
+        Map<Integer, Map<String, String>> additionalFields = Map.of();
+        if(loadAdditionalFields) {
+            additionalFields = ticketFieldRepository.findAllValuesByTicketIds(tickets.stream().map(t -> t.getTicket().getId()).collect(Collectors.toSet())).stream()
+                .filter(v -> v.getName() != null && v.getValue() != null)
+                .collect(Collectors.groupingBy(TicketFieldValue::getTicketId, Collectors.toMap(TicketFieldValue::getName, TicketFieldValue::getValue)));
+        }
+        var result = new ArrayList<Pair<TicketWithReservationAndTransaction, Map<String, String>>>(tickets.size());
+        for (var ticket : tickets) {
+            result.add(Pair.of(ticket, additionalFields.getOrDefault(ticket.getTicket().getId(), Map.of())));
+        }
+        return result;
     }
 
     public List<Event> getPublishedEvents(SearchOptions searchOptions) {
@@ -27,7 +27,12 @@ import alfio.util.EventUtil;
 import alfio.util.MonetaryUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
@@ -45,6 +50,8 @@ import static org.apache.commons.lang3.ObjectUtils.firstNonNull;
 @Transactional(readOnly = true)
 public class EventStatisticsManager {
 
+    private static final int TICKET_STATUS_COUNT_COMPACTION_BATCH = 10_000;
+
     private final EventRepository eventRepository;
     private final EventDescriptionRepository eventDescriptionRepository;
     private final TicketSearchRepository ticketSearchRepository;
@@ -56,6 +63,8 @@ public class EventStatisticsManager {
     private final UserManager userManager;
     private final SubscriptionRepository subscriptionRepository;
     private final ExtensionManager extensionManager;
+    private final TicketStatusCountRepository ticketStatusCountRepository;
+    private final TransactionTemplate requiresNewTransactionTemplate;
 
     public EventStatisticsManager(EventRepository eventRepository,
                                   EventDescriptionRepository eventDescriptionRepository,
@@ -67,7 +76,9 @@ public class EventStatisticsManager {
                                   ConfigurationManager configurationManager,
                                   UserManager userManager,
                                   SubscriptionRepository subscriptionRepository,
-                                  ExtensionManager extensionManager) {
+                                  ExtensionManager extensionManager,
+                                  TicketStatusCountRepository ticketStatusCountRepository,
+                                  PlatformTransactionManager transactionManager) {
         this.eventRepository = eventRepository;
         this.eventDescriptionRepository = eventDescriptionRepository;
         this.ticketSearchRepository = ticketSearchRepository;
@@ -79,6 +90,8 @@ public class EventStatisticsManager {
         this.userManager = userManager;
         this.subscriptionRepository = subscriptionRepository;
         this.extensionManager = extensionManager;
+        this.ticketStatusCountRepository = ticketStatusCountRepository;
+        this.requiresNewTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
     }
 
     private List<Event> getAllEvents(String username) {
@@ -211,5 +224,21 @@ public class EventStatisticsManager {
         return ticketReservationRepository.getReservedStatistic(eventId, from, to, granularity);
     }
 
-
+    /**
+     * Moves the changes tracked by the ticket triggers into the ticket counters used by the statistics views.
+     * Changes are consumed in batches, each one in its own transaction, until the backlog is empty.
+     * Can be safely run on multiple instances at the same time.
+     *
+     * @return the number of consumed changes
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int compactTicketStatusCount() {
+        int total = 0;
+        int consumed;
+        do {
+            consumed = Objects.requireNonNull(requiresNewTransactionTemplate.execute(status -> ticketStatusCountRepository.compactDeltas(TICKET_STATUS_COUNT_COMPACTION_BATCH)));
+            total += consumed;
+        } while(consumed == TICKET_STATUS_COUNT_COMPACTION_BATCH);
+        return total;
+    }
 }
@@ -29,24 +29,30 @@ import alfio.model.PurchaseContext.PurchaseContextType;
 import alfio.model.metadata.SubscriptionMetadata;
 import alfio.model.subscription.SubscriptionDescriptor;
 import alfio.model.system.ConfigurationKeys;
+import alfio.model.system.command.UploadedResourceChanged;
 import alfio.model.user.Organization;
 import alfio.repository.*;
 import alfio.repository.user.OrganizationRepository;
 import alfio.util.*;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.gson.*;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.MessageSource;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.crypto.codec.Hex;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 import org.springframework.transaction.support.TransactionTemplate;
 
@@ -56,8 +62,13 @@ import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -71,11 +82,14 @@ import static java.util.Objects.requireNonNullElse;
 import static java.util.Objects.requireNonNullElseGet;
 
 @Component
-public class NotificationManager {
+public class NotificationManager implements DisposableBean {
 
     private static final Logger log = LoggerFactory.getLogger(NotificationManager.class);
 
     private static final String EVENT_ID = "eventId";
+    private static final int DEFAULT_MAX_EMAIL_PER_CYCLE = 100;
+    private static final int ATTACHMENT_RENDERERS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final long RENDERED_ATTACHMENTS_MAX_BYTES = 128L * 1024 * 1024;
     private final Mailer mailer;
     private final MessageSourceManager messageSourceManager;
     private final EmailMessageRepository emailMessageRepository;
@@ -87,6 +101,30 @@ public class NotificationManager {
     private final PurchaseContextManager purchaseContextManager;
 
     private final EnumMap<Mailer.AttachmentIdentifier, Function<Map<String, String>, byte[]>> attachmentTransformer;
+    // fingerprint of the data read from the database while rendering. Attachments without it are not cached.
+    private final EnumMap<Mailer.AttachmentIdentifier, Function<Map<String, String>, Optional<String>>> documentStateVersion;
+
+    // messages are claimed (status IN_PROCESS) by the job, then sent in parallel by this pool.
+    // The queue is bounded, when it's full the job thread will send the message itself.
+    private final ThreadPoolExecutor dispatchWorkers = new ThreadPoolExecutor(1, 1, 1L, TimeUnit.MINUTES,
+        new ArrayBlockingQueue<>(DEFAULT_MAX_EMAIL_PER_CYCLE),
+        new BasicThreadFactory.Builder().namingPattern("mail-dispatcher-%d").daemon(true).build(),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+
+    // attachments (PDFs, passes) are rendered ahead of sending by a separate pool
+    private final ThreadPoolExecutor attachmentRenderers = new ThreadPoolExecutor(ATTACHMENT_RENDERERS, ATTACHMENT_RENDERERS, 1L, TimeUnit.MINUTES,
+        new ArrayBlockingQueue<>(DEFAULT_MAX_EMAIL_PER_CYCLE),
+        new BasicThreadFactory.Builder().namingPattern("mail-attachment-renderer-%d").daemon(true).build(),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+
+    // rendered attachments, keyed by identifier, hash of the model and version of the underlying data.
+    // Retries and resends will reuse the same content, as long as the data has not been modified in the meantime.
+    // Templates and configuration are not part of the version, the cache is cleared when they change.
+    private final Cache<String, byte[]> renderedAttachments = Caffeine.newBuilder()
+        .maximumWeight(RENDERED_ATTACHMENTS_MAX_BYTES)
+        .weigher((String key, byte[] value) -> value.length)
+        .expireAfterWrite(Duration.ofHours(1))
+        .build();
 
     @Autowired
     public NotificationManager(Mailer mailer,
@@ -133,6 +171,21 @@ public class NotificationManager {
         Function<Ticket, List<TicketFieldConfigurationDescriptionAndValue>> retrieveFieldValues = EventUtil.retrieveFieldValues(ticketRepository, ticketFieldRepository, additionalServiceItemRepository);
         attachmentTransformer.put(Mailer.AttachmentIdentifier.TICKET_PDF, generateTicketPDF(eventRepository, organizationRepository, configurationManager, fileUploadManager, templateManager, ticketReservationRepository, retrieveFieldValues, extensionManager, ticketRepository, subscriptionRepository));
         attachmentTransformer.put(Mailer.AttachmentIdentifier.SUBSCRIPTION_PDF, generateSubscriptionPDF(organizationRepository, configurationManager, fileUploadManager, templateManager, ticketReservationRepository, extensionManager, subscriptionRepository));
+        documentStateVersion = new EnumMap<>(Mailer.AttachmentIdentifier.class);
+        Function<Map<String, String>, Optional<String>> ticketVersion = model -> ticketRepository.findDocumentStateVersion(Json.fromJson(model.get("ticket"), Ticket.class).getId());
+        Function<Map<String, String>, Optional<String>> reservationVersion = model -> ticketReservationRepository.findDocumentStateVersion(model.get("reservationId"));
+        documentStateVersion.put(Mailer.AttachmentIdentifier.TICKET_PDF, ticketVersion);
+        documentStateVersion.put(Mailer.AttachmentIdentifier.PASSBOOK, ticketVersion);
+        documentStateVersion.put(Mailer.AttachmentIdentifier.RECEIPT_PDF, reservationVersion);
+        documentStateVersion.put(Mailer.AttachmentIdentifier.INVOICE_PDF, reservationVersion);
+        documentStateVersion.put(Mailer.AttachmentIdentifier.CREDIT_NOTE_PDF, reservationVersion);
+        documentStateVersion.put(Mailer.AttachmentIdentifier.SUBSCRIPTION_PDF, model -> subscriptionRepository.findDocumentStateVersion(UUID.fromString(model.get("subscriptionId"))));
+        configurationManager.addInvalidationListener(renderedAttachments::invalidateAll);
+    }
+
+    @EventListener
+    public void invalidateRenderedAttachments(UploadedResourceChanged uploadedResourceChanged) {
+        renderedAttachments.invalidateAll();
     }
 
     private static Function<Map<String, String>, byte[]> generateTicketPDF(EventRepository eventRepository,
@@ -355,14 +408,15 @@ public class NotificationManager {
     public Pair<Integer, List<LightweightMailMessage>> loadAllMessagesForPurchaseContext(PurchaseContext purchaseContext, Integer page, String search) {
         final int pageSize = 50;
         int offset = page == null ? 0 : page * pageSize;
-        String toSearch = StringUtils.trimToNull(search);
-        toSearch = toSearch == null ? null : ("%" + toSearch + "%");
+        String toSearch = SqlUtils.toSearchPattern(search);
         if(purchaseContext.ofType(PurchaseContextType.event)) {
             int eventId = ((Event) purchaseContext).getId();
-            return Pair.of(emailMessageRepository.countFindByEventId(eventId, toSearch), emailMessageRepository.findByEventId(eventId, offset, pageSize, toSearch));
+            var messages = emailMessageRepository.findByEventId(eventId, offset, pageSize, toSearch);
+            return Pair.of(SqlUtils.countResults(offset, pageSize, messages, () -> emailMessageRepository.countFindByEventId(eventId, toSearch)), messages);
         } else {
             var subscriptionDescriptorId = ((SubscriptionDescriptor)purchaseContext).getId();
-            return Pair.of(emailMessageRepository.countFindBySubscriptionDescriptorId(subscriptionDescriptorId, toSearch), emailMessageRepository.findBySubscriptionDescriptorId(subscriptionDescriptorId, offset, pageSize, toSearch));
+            var messages = emailMessageRepository.findBySubscriptionDescriptorId(subscriptionDescriptorId, offset, pageSize, toSearch);
+            return Pair.of(SqlUtils.countResults(offset, pageSize, messages, () -> emailMessageRepository.countFindBySubscriptionDescriptorId(subscriptionDescriptorId, toSearch)), messages);
         }
     }
 
@@ -378,39 +432,96 @@ public class NotificationManager {
         }
     }
 
-    @Transactional
     public int sendWaitingMessages() {
+        var systemConfiguration = configurationManager.getFor(EnumSet.of(ConfigurationKeys.MAX_EMAIL_PER_CYCLE, ConfigurationKeys.MAIL_DISPATCH_WORKERS), ConfigurationLevel.system());
+        int limit = systemConfiguration.get(ConfigurationKeys.MAX_EMAIL_PER_CYCLE).getValueAsIntOrDefault(DEFAULT_MAX_EMAIL_PER_CYCLE);
+        resizeDispatchWorkers(systemConfiguration.get(ConfigurationKeys.MAIL_DISPATCH_WORKERS).getValueAsIntOrDefault(1));
+        List<Pair<EmailMessage, PurchaseContext>> claimed = requireNonNullElseGet(tx.execute(status -> claimWaitingMessages(limit)), List::of);
+        return claimed.stream()
+            .map(p -> CompletableFuture.runAsync(() -> renderAttachmentsAhead(p.getLeft()), attachmentRenderers)
+                .thenApplyAsync(ignored -> processMessage(p.getLeft(), p.getRight()), dispatchWorkers))
+            .toList()
+            .stream()
+            .mapToInt(CompletableFuture::join)
+            .sum();
+    }
+
+    /**
+     * Set the status of the waiting messages to IN_PROCESS, so that they won't be picked up by other instances.
+     * Messages which exceeded the configured number of attempts are discarded.
+     *
+     * @param limit max number of messages to process
+     * @return the claimed messages, along with their purchase context
+     */
+    private List<Pair<EmailMessage, PurchaseContext>> claimWaitingMessages(int limit) {
         emailMessageRepository.setToRetryOldInProcess(ZonedDateTime.now(clockProvider.getClock()).minusHours(1));
-        return emailMessageRepository.loadAllWaitingForProcessing().stream()
+        List<Pair<EmailMessage, PurchaseContext>> claimed = new ArrayList<>();
+        emailMessageRepository.loadAllWaitingForProcessing(limit).stream()
             .collect(Collectors.groupingBy(NotificationManager::purchaseContextCacheKey))
-            .entrySet().stream()
-            .flatMapToInt(entry -> {
-                var splitKey = entry.getKey().split("//");
+            .forEach((key, messages) -> {
+                var splitKey = key.split("//");
                 PurchaseContext purchaseContext = purchaseContextManager.findById(PurchaseContextType.from(splitKey[0]), splitKey[1]).orElseThrow();
-                // TODO we can try to send emails in batches, if the provider supports it.
-                return entry.getValue().stream().mapToInt(message -> processMessage(message, purchaseContext));
-            }).sum();
+                int maxAttempts = configurationManager.getFor(ConfigurationKeys.MAIL_ATTEMPTS_COUNT, ConfigurationLevel.purchaseContext(purchaseContext)).getValueAsIntOrDefault(10);
+                for (EmailMessage message : messages) {
+                    int messageId = message.getId();
+                    if(message.getAttempts() >= maxAttempts) {
+                        emailMessageRepository.updateStatusAndAttempts(messageId, ERROR.name(), message.getAttempts(), Arrays.asList(IN_PROCESS.name(), WAITING.name(), RETRY.name()));
+                        log.warn("Message with id {} will be discarded", messageId);
+                    } else if(emailMessageRepository.updateStatus(messageId, message.getChecksum(), IN_PROCESS.name(), Arrays.asList(WAITING.name(), RETRY.name())) > 0) {
+                        claimed.add(Pair.of(message, purchaseContext));
+                    } else {
+                        log.debug("no messages have been updated on DB for the following criteria: id: {}, checksum: {}", messageId, message.getChecksum());
+                    }
+                }
+            });
+        return claimed;
     }
 
-    private int processMessage(EmailMessage message, PurchaseContext purchaseContext) {
-        int messageId = message.getId();
-        ConfigurationLevel configurationLevel = ConfigurationLevel.purchaseContext(purchaseContext);
-        if(message.getAttempts() >= configurationManager.getFor(ConfigurationKeys.MAIL_ATTEMPTS_COUNT, configurationLevel).getValueAsIntOrDefault(10)) {
-            tx.execute(status -> emailMessageRepository.updateStatusAndAttempts(messageId, ERROR.name(), message.getAttempts(), Arrays.asList(IN_PROCESS.name(), WAITING.name(), RETRY.name())));
-            log.warn("Message with id {} will be discarded", messageId);
-            return 0;
+    private void resizeDispatchWorkers(int size) {
+        int newSize = Math.max(1, size);
+        if(newSize > dispatchWorkers.getMaximumPoolSize()) {
+            dispatchWorkers.setMaximumPoolSize(newSize);
+            dispatchWorkers.setCorePoolSize(newSize);
+        } else if(newSize < dispatchWorkers.getMaximumPoolSize()) {
+            dispatchWorkers.setCorePoolSize(newSize);
+            dispatchWorkers.setMaximumPoolSize(newSize);
         }
+    }
 
+    @Override
+    public void destroy() throws InterruptedException {
+        attachmentRenderers.shutdown();
+        dispatchWorkers.shutdown();
+        // messages which are not sent before the timeout stay IN_PROCESS and will be retried
+        if(!dispatchWorkers.awaitTermination(10, TimeUnit.SECONDS)) {
+            dispatchWorkers.shutdownNow();
+        }
+        attachmentRenderers.shutdownNow();
+    }
+
+    /**
+     * Renders the attachments of the given message, so that they will be already available when sending.
+     * Errors are ignored at this stage, as the rendering will be attempted again while sending the message.
+     */
+    private void renderAttachmentsAhead(EmailMessage message) {
+        if(StringUtils.isBlank(message.getAttachments())) {
+            return;
+        }
         try {
-            int result = Optional.ofNullable(tx.execute(status -> emailMessageRepository.updateStatus(messageId, message.getChecksum(), IN_PROCESS.name(), Arrays.asList(WAITING.name(), RETRY.name())))).orElse(0);
-            if(result > 0) {
-                return Optional.ofNullable(tx.execute(status -> {
-                    sendMessage(purchaseContext, message);
-                    return 1;
-                })).orElse(0);
-            } else {
-                log.debug("no messages have been updated on DB for the following criteria: id: {}, checksum: {}", messageId, message.getChecksum());
-            }
+            tx.execute(status -> decodeAttachments(message.getAttachments()));
+        } catch(Exception e) {
+            log.debug("cannot render attachments for message {}", message.getId(), e);
+        }
+    }
+
+    private int processMessage(EmailMessage message, PurchaseContext purchaseContext) {
+        try {
+            // wait for the rate limiter before opening the transaction, so that no connection is held while throttled
+            mailer.acquireSendPermit(purchaseContext);
+            return Optional.ofNullable(tx.execute(status -> {
+                sendMessage(purchaseContext, message);
+                return 1;
+            })).orElse(0);
         } catch(Exception e) {
             tx.execute(status -> emailMessageRepository.updateStatusAndAttempts(message.getId(), RETRY.name(), ZonedDateTime.now(clockProvider.getClock()).plusMinutes(message.getAttempts() + 1L), message.getAttempts() + 1, Arrays.asList(IN_PROCESS.name(), WAITING.name(), RETRY.name())));
             log.warn("could not send message: ",e);
@@ -458,13 +569,38 @@ public class NotificationManager {
 
     private Mailer.Attachment transformAttachment(Mailer.Attachment attachment, Mailer.AttachmentIdentifier identifier) {
         if(identifier != null) {
-            byte[] result = attachmentTransformer.get(identifier).apply(attachment.getModel());
+            var model = attachment.getModel();
+            String key = documentCacheKey(identifier, model);
+            byte[] result = key == null ? null : renderedAttachments.getIfPresent(key);
+            if(result == null) {
+                result = attachmentTransformer.get(identifier).apply(model);
+                // empty content means that the rendering has failed, so we don't store it
+                if(key != null && result != null && result.length > 0) {
+                    renderedAttachments.put(key, result);
+                }
+            }
             return result == null ? null : new Mailer.Attachment(identifier.fileName(attachment.getFilename()), result, identifier.contentType(attachment.getContentType()), null, null);
         } else {
             return attachment;
         }
     }
 
+    private String documentCacheKey(Mailer.AttachmentIdentifier identifier, Map<String, String> model) {
+        var versionLoader = documentStateVersion.get(identifier);
+        if(versionLoader == null || model == null) {
+            return null;
+        }
+        configurationManager.checkForChanges();
+        try {
+            return versionLoader.apply(model)
+                .map(version -> identifier.name() + "/" + DigestUtils.sha256Hex(Json.toJson(new TreeMap<>(model))) + "/" + version)
+                .orElse(null);
+        } catch (Exception e) {
+            log.debug("cannot determine the version of {}", identifier, e);
+            return null;
+        }
+    }
+
     private static String calculateChecksum(String recipient, String attachments, String subject, RenderedTemplate renderedTemplate)  {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
@@ -20,6 +20,7 @@ import alfio.manager.system.ConfigurationManager;
 import alfio.manager.system.Mailer;
 import alfio.model.*;
 import alfio.model.system.ConfigurationKeys;
+import alfio.model.system.command.ConfigurationChanged;
 import alfio.model.user.Organization;
 import alfio.repository.*;
 import alfio.repository.user.OrganizationRepository;
@@ -41,8 +42,10 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.imgscalr.Scalr;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -51,7 +54,9 @@ import java.time.Duration;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static alfio.model.system.ConfigurationKeys.*;
 
@@ -61,10 +66,16 @@ public class PassKitManager {
     private static final Logger log = LoggerFactory.getLogger(PassKitManager.class);
 
     private static final String APPLE_PASS = "ApplePass";
-    private final Cache<String, Optional<byte[]>> passKitLogoCache = Caffeine.newBuilder()
+    private final Cache<String, Optional<List<PassResource>>> passKitLogoCache = Caffeine.newBuilder()
         .maximumSize(20)
         .expireAfterWrite(Duration.ofMinutes(20))
         .build();
+    // signers are immutable once built, and can be shared. The key contains the configuration values,
+    // therefore a new signer is built as soon as the keystore, its password or the alias change
+    private final Cache<SignerKey, PassSigner> passSignerCache = Caffeine.newBuilder()
+        .maximumSize(50)
+        .expireAfterAccess(Duration.ofHours(1))
+        .build();
     private final EventRepository eventRepository;
     private final OrganizationRepository organizationRepository;
     private final ConfigurationManager configurationManager;
@@ -72,7 +83,9 @@ public class PassKitManager {
     private final EventDescriptionRepository eventDescriptionRepository;
     private final TicketCategoryRepository ticketCategoryRepository;
     private final TicketRepository ticketRepository;
+    private final Function<SignerKey, PassSigner> signerFactory;
 
+    @Autowired
     public PassKitManager(EventRepository eventRepository,
                           OrganizationRepository organizationRepository,
                           ConfigurationManager configurationManager,
@@ -80,6 +93,19 @@ public class PassKitManager {
                           EventDescriptionRepository eventDescriptionRepository,
                           TicketCategoryRepository ticketCategoryRepository,
                           TicketRepository ticketRepository) {
+        this(eventRepository, organizationRepository, configurationManager, fileUploadManager,
+            eventDescriptionRepository, ticketCategoryRepository, ticketRepository, PassKitManager::buildSigner);
+    }
+
+    PassKitManager(EventRepository eventRepository,
+                   OrganizationRepository organizationRepository,
+                   ConfigurationManager configurationManager,
+                   FileUploadManager fileUploadManager,
+                   EventDescriptionRepository eventDescriptionRepository,
+                   TicketCategoryRepository ticketCategoryRepository,
+                   TicketRepository ticketRepository,
+                   Function<SignerKey, PassSigner> signerFactory) {
+        this.signerFactory = signerFactory;
         this.eventRepository = eventRepository;
         this.organizationRepository = organizationRepository;
         this.configurationManager = configurationManager;
@@ -168,9 +194,6 @@ public class PassKitManager {
         var ticketLocale = LocaleUtil.forLanguageTag(ticket.getUserLanguage());
         String teamIdentifier = config.get(PASSBOOK_TEAM_IDENTIFIER);
         String typeIdentifier = config.get(PASSBOOK_TYPE_IDENTIFIER);
-        byte[] keystoreRaw = Base64.getDecoder().decode(config.get(PASSBOOK_KEYSTORE));
-        String keystorePwd = config.get(PASSBOOK_KEYSTORE_PASSWORD);
-        String privateKeyAlias = config.get(PASSBOOK_PRIVATE_KEY_ALIAS);
 
 
         String eventDescription = MustacheCustomTag.renderToTextCommonmark(
@@ -217,36 +240,56 @@ public class PassKitManager {
             pass.locations(new Location(Double.parseDouble(event.getLatitude()), Double.parseDouble(event.getLongitude())).altitude(0D));
         }
 
-        List<PassResource> passResources = new ArrayList<>(6);
-
-        passResources.add(new PassResource("icon.png", () -> new ClassPathResource("/alfio/icon/icon.png").getInputStream()));
-        passResources.add(new PassResource("icon@2x.png", () -> new ClassPathResource("/alfio/icon/icon@2x.png").getInputStream()));
-        passResources.add(new PassResource("icon@3x.png", () -> new ClassPathResource("/alfio/icon/icon@3x.png").getInputStream()));
+        List<PassResource> passResources = new ArrayList<>(StaticResources.ICONS);
 
         fileUploadManager.findMetadata(event.getFileBlobId()).ifPresent(metadata -> {
             if(metadata.getContentType().equals("image/png") || metadata.getContentType().equals("image/jpeg")) {
-                Optional<byte[]> cachedLogo = passKitLogoCache.get(event.getFileBlobId(), id -> {
+                Optional<List<PassResource>> cachedLogo = passKitLogoCache.get(event.getFileBlobId(), id -> {
                     ByteArrayOutputStream baos = new ByteArrayOutputStream();
                     fileUploadManager.outputFile(event.getFileBlobId(), baos);
                     return readAndConvertImage(baos);
                 });
-                if(cachedLogo != null && cachedLogo.isPresent()) {
-                    addLogoResources(cachedLogo.get(), passResources);
+                if(cachedLogo != null) {
+                    cachedLogo.ifPresent(passResources::addAll);
                 }
             }
         });
 
         pass.files(passResources.toArray(new PassResource[0]));
-        try(InputStream appleCert = new ClassPathResource("/alfio/certificates/AppleWWDRCAG4.cer").getInputStream()) {
-            PassSigner signer = PassSignerImpl.builder()
-                .keystore(new ByteArrayInputStream(keystoreRaw), keystorePwd)
-                .alias(privateKeyAlias)
-                .intermediateCertificate(appleCert)
+        var signerKey = new SignerKey(config.get(PASSBOOK_KEYSTORE), config.get(PASSBOOK_KEYSTORE_PASSWORD), config.get(PASSBOOK_PRIVATE_KEY_ALIAS));
+        PassSerializer.writePkPassArchive(pass, getSigner(signerKey), out);
+    }
+
+    PassSigner getSigner(SignerKey key) throws PassSigningException {
+        try {
+            return passSignerCache.get(key, signerFactory);
+        } catch (IllegalStateException e) {
+            if(e.getCause() instanceof PassSigningException pse) {
+                throw pse;
+            }
+            throw e;
+        }
+    }
+
+    static PassSigner buildSigner(SignerKey key) {
+        try {
+            return PassSignerImpl.builder()
+                .keystore(new ByteArrayInputStream(Base64.getDecoder().decode(key.keystore())), key.password())
+                .alias(key.alias())
+                .intermediateCertificate(new ByteArrayInputStream(StaticResources.APPLE_INTERMEDIATE_CERTIFICATE))
                 .build();
-            PassSerializer.writePkPassArchive(pass, signer, out);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
         }
     }
 
+    @TransactionalEventListener(fallbackExecution = true)
+    public void handleConfigurationChanged(ConfigurationChanged configurationChanged) {
+        // entries belonging to an outdated configuration would never be used again. We drop them now
+        // in order to not keep the private keys in memory longer than needed
+        passSignerCache.invalidateAll();
+    }
+
     private String buildAuthenticationToken(Ticket ticket, EventAndOrganizationId event, String privateKey) {
         var code = event.getId() + "/" + ticket.getTicketsReservationId() + "/" + ticket.getUuid();
         return Ticket.hmacSHA256Base64(privateKey, code);
@@ -290,31 +333,26 @@ public class PassKitManager {
             .map(t -> Pair.of(event, t));
     }
 
-    private void addLogoResources(byte[] logo, List<PassResource> passResources) {
-        try {
-            var srcImage = ImageIO.read(new ByteArrayInputStream(logo));
-            passResources.add(new PassResource("logo.png", scaleLogo(srcImage, 1)));
-            passResources.add(new PassResource("logo@2x.png", scaleLogo(srcImage, 2)));
-            passResources.add(new PassResource("logo@3x.png", logo));
-        } catch (IOException e) {
-            log.warn("Error during image conversion", e);
-        }
-    }
-
     private List<Field<?>> getAuxiliaryFields(Ticket ticket) {
         //TODO add additional options here.
         return null;
     }
 
-    private static Optional<byte[]> readAndConvertImage(ByteArrayOutputStream baos) {
+    private static Optional<List<PassResource>> readAndConvertImage(ByteArrayOutputStream baos) {
         try {
             BufferedImage sourceImage = ImageIO.read(new ByteArrayInputStream(baos.toByteArray()));
-            return Optional.of(scaleLogo(sourceImage, 3));
+            return Optional.of(List.of(
+                new PassResource("logo.png", scaleLogo(sourceImage, 1)),
+                new PassResource("logo@2x.png", scaleLogo(sourceImage, 2)),
+                new PassResource("logo@3x.png", scaleLogo(sourceImage, 3))
+            ));
         } catch (IOException e) {
+            log.warn("Error during image conversion", e);
             return Optional.empty();
         }
     }
 
+
     private static byte[] scaleLogo(BufferedImage sourceImage, int factor) throws IOException {
         // base image is 160 x 50 points.
         // On retina displays, a point can be two or three pixels, depending on the device model
@@ -325,4 +363,29 @@ public class PassKitManager {
         ImageIO.write(thumbImg, "png", outputStream);
         return outputStream.toByteArray();
     }
+
+    /**
+     * Resources shared by all the passes, loaded from the classpath on first use
+     */
+    private static final class StaticResources {
+        private static final List<PassResource> ICONS = Stream.of("icon.png", "icon@2x.png", "icon@3x.png")
+            .map(name -> new PassResource(name, readClassPathResource("/alfio/icon/" + name)))
+            .toList();
+        private static final byte[] APPLE_INTERMEDIATE_CERTIFICATE = readClassPathResource("/alfio/certificates/AppleWWDRCAG4.cer");
+
+        private static byte[] readClassPathResource(String path) {
+            try(InputStream is = new ClassPathResource(path).getInputStream()) {
+                return is.readAllBytes();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    record SignerKey(String keystore, String password, String alias) {
+        @Override
+        public String toString() {
+            return "SignerKey{alias=" + alias + "}";
+        }
+    }
 }
@@ -0,0 +1,225 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.support.PaymentWebhookResult;
+import alfio.model.system.command.PaymentWebhookReceived;
+import alfio.model.transaction.PaymentContext;
+import alfio.model.transaction.PaymentProxy;
+import alfio.model.transaction.capabilities.WebhookHandler;
+import alfio.model.transaction.webhook.PaymentWebhookInboxEntry;
+import alfio.model.transaction.webhook.PaymentWebhookInboxStatus;
+import alfio.repository.PaymentWebhookInboxRepository;
+import alfio.repository.TicketReservationRepository;
+import alfio.util.ClockProvider;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payment webhooks are verified and stored in the {@code payment_webhook_inbox} table, then acknowledged to the provider
+ * right away. The actual processing happens in background, one reservation at a time and in the order in which the
+ * webhooks have been received. Failed webhooks are retried with an exponential backoff.
+ */
+@Component
+public class PaymentWebhookInboxManager {
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentWebhookInboxManager.class);
+    static final int MAX_ATTEMPTS = 10;
+    private static final int MAX_ENTRIES_PER_RUN = 500;
+    private static final int MAX_RETRY_DELAY_SECONDS = 3600;
+    private static final Duration RETENTION = Duration.ofDays(7);
+
+    private final PaymentManager paymentManager;
+    private final TicketReservationManager ticketReservationManager;
+    private final TicketReservationRepository ticketReservationRepository;
+    private final PaymentWebhookInboxRepository paymentWebhookInboxRepository;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final ClockProvider clockProvider;
+    private final TransactionTemplate requiresNewTransactionTemplate;
+    private final TransactionTemplate nestedTransactionTemplate;
+    // at most one worker running and one waiting: further notifications would be handled by the waiting one anyway
+    private final ThreadPoolExecutor processor;
+
+    public PaymentWebhookInboxManager(PaymentManager paymentManager,
+                                      TicketReservationManager ticketReservationManager,
+                                      TicketReservationRepository ticketReservationRepository,
+                                      PaymentWebhookInboxRepository paymentWebhookInboxRepository,
+                                      ApplicationEventPublisher applicationEventPublisher,
+                                      ClockProvider clockProvider,
+                                      PlatformTransactionManager transactionManager,
+                                      Environment environment) {
+        this.paymentManager = paymentManager;
+        this.ticketReservationManager = ticketReservationManager;
+        this.ticketReservationRepository = ticketReservationRepository;
+        this.paymentWebhookInboxRepository = paymentWebhookInboxRepository;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.clockProvider = clockProvider;
+        this.requiresNewTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        this.nestedTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED));
+        boolean async = environment.getProperty("alfio.payment.webhook.async", Boolean.class, true);
+        if(async) {
+            this.processor = new ThreadPoolExecutor(1, 1, 1L, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<>(1),
+                new BasicThreadFactory.Builder().namingPattern("payment-webhook-inbox-%d").daemon(true).build(),
+                new ThreadPoolExecutor.DiscardPolicy());
+            this.processor.allowCoreThreadTimeOut(true);
+        } else {
+            this.processor = null;
+        }
+    }
+
+    public PaymentWebhookResult receiveTransactionWebhook(String body, String signature, PaymentProxy paymentProxy, Map<String, String> additionalInfo) {
+        return receiveTransactionWebhook(body, signature, paymentProxy, additionalInfo, new PaymentContext());
+    }
+
+    /**
+     * Verifies the webhook and stores it in the inbox.
+     *
+     * @return {@link PaymentWebhookResult#accepted()} if the webhook has been stored, or the reason why it has been rejected
+     */
+    @Transactional
+    public PaymentWebhookResult receiveTransactionWebhook(String body, String signature, PaymentProxy paymentProxy, Map<String, String> additionalInfo, PaymentContext pc) {
+        //load the payment provider using given configuration
+        var paymentProviderOptional = paymentManager.streamActiveProvidersByProxyAndCapabilities(paymentProxy, pc, List.of(WebhookHandler.class)).findFirst();
+        if(paymentProviderOptional.isEmpty()) {
+            return PaymentWebhookResult.error("payment provider not found");
+        }
+
+        var webhookHandler = (WebhookHandler) paymentProviderOptional.get();
+        if(webhookHandler.requiresSignedBody() && StringUtils.isBlank(signature)) {
+            return PaymentWebhookResult.error("signature is missing");
+        }
+
+        PaymentContext paymentContext;
+        if(pc.getConfigurationLevel().isSystem()) {
+            // https://github.com/alfio-event/alf.io/issues/1019
+            // if the current PaymentContext is System, and if the provider supports it,
+            // we try to narrow the payment context by pre-parsing the JSON body
+            paymentContext = webhookHandler.detectPaymentContext(body).orElse(pc);
+        } else {
+            paymentContext = pc;
+        }
+
+        var optionalTransactionWebhookPayload = webhookHandler.parseTransactionPayload(body, signature, additionalInfo, paymentContext);
+        if(optionalTransactionWebhookPayload.isEmpty()) {
+            return PaymentWebhookResult.error("payload not recognized");
+        }
+        var transactionPayload = optionalTransactionWebhookPayload.get();
+        var reservationId = transactionPayload.getReservationId();
+        if(reservationId == null || ticketReservationRepository.findOptionalReservationById(reservationId).isEmpty()) {
+            return PaymentWebhookResult.notRelevant("reservation not found");
+        }
+
+        int stored = paymentWebhookInboxRepository.insert(paymentProxy.name(), transactionPayload.getEventId(), reservationId,
+            transactionPayload.getType(), body, additionalInfo);
+        if(stored > 0) {
+            applicationEventPublisher.publishEvent(new PaymentWebhookReceived(reservationId));
+        } else {
+            log.debug("event {} for reservation {} has been already received", transactionPayload.getEventId(), reservationId);
+        }
+        return PaymentWebhookResult.accepted();
+    }
+
+    @TransactionalEventListener
+    public void onPaymentWebhookReceived(PaymentWebhookReceived event) {
+        if(processor != null) {
+            processor.execute(this::processPendingWebhooks);
+        } else {
+            processPendingWebhooks();
+        }
+    }
+
+    /**
+     * Processes the pending webhooks, each one in its own transaction.
+     *
+     * @return the number of processed webhooks
+     */
+    public int processPendingWebhooks() {
+        int processed = 0;
+        try {
+            while(processed < MAX_ENTRIES_PER_RUN && Boolean.TRUE.equals(requiresNewTransactionTemplate.execute(status -> processNext()))) {
+                processed++;
+            }
+        } catch (Exception e) {
+            log.error("unexpected error while processing payment webhooks", e);
+        }
+        return processed;
+    }
+
+    private boolean processNext() {
+        Optional<PaymentWebhookInboxEntry> next = paymentWebhookInboxRepository.lockNextPending();
+        if(next.isEmpty()) {
+            return false;
+        }
+        var entry = next.get();
+        try {
+            // the savepoint lets us record the failure even if the processing leaves the transaction in an invalid state
+            var result = nestedTransactionTemplate.execute(status -> ticketReservationManager.processTransactionWebhook(entry));
+            if(result == null || result.isError()) {
+                registerFailure(entry, result != null ? result.getReason() : "no result");
+            } else {
+                paymentWebhookInboxRepository.markAsProcessed(entry.id(), result.getType().name());
+            }
+        } catch (Exception e) {
+            log.warn("error while processing payment webhook {} for reservation {}", entry.id(), entry.reservationId(), e);
+            registerFailure(entry, StringUtils.defaultString(e.getMessage(), e.getClass().getName()));
+        }
+        return true;
+    }
+
+    private void registerFailure(PaymentWebhookInboxEntry entry, String reason) {
+        if(entry.attempts() + 1 >= MAX_ATTEMPTS) {
+            log.error("giving up on payment webhook {} for reservation {} after {} attempts. Last error: {}", entry.id(), entry.reservationId(), MAX_ATTEMPTS, reason);
+        }
+        paymentWebhookInboxRepository.registerFailure(entry.id(), reason, retryDelaySeconds(entry.attempts()), MAX_ATTEMPTS);
+    }
+
+    static int retryDelaySeconds(int attempts) {
+        return (int) Math.min(MAX_RETRY_DELAY_SECONDS, 10L << Math.min(attempts, 20));
+    }
+
+    public PaymentWebhookInboxStatus getStatus() {
+        return paymentWebhookInboxRepository.getStatus();
+    }
+
+    /**
+     * Removes the webhooks processed more than {@link #RETENTION} ago.
+     */
+    public int cleanupProcessedWebhooks() {
+        return paymentWebhookInboxRepository.deleteProcessedBefore(ZonedDateTime.now(clockProvider.getClock()).minus(RETENTION));
+    }
+}
@@ -23,7 +23,7 @@ import alfio.model.TicketReservation;
 import alfio.model.subscription.SubscriptionDescriptor;
 import alfio.model.transaction.PaymentProxy;
 import alfio.repository.TicketSearchRepository;
-import org.apache.commons.lang3.StringUtils;
+import alfio.util.SqlUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
@@ -52,30 +52,28 @@ public class PurchaseContextSearchManager {
 
     public Pair<List<TicketReservation>, Integer> findAllReservationsFor(PurchaseContext purchaseContext, Integer page, String search, List<TicketReservation.TicketReservationStatus> status) {
         int offset = page == null ? 0 : page * PAGE_SIZE;
-        String toSearch = StringUtils.trimToNull(search);
-        toSearch = toSearch == null ? null : ("%" + toSearch + "%");
+        String toSearch = SqlUtils.toSearchPattern(search);
         List<String> toFilter = (status == null || status.isEmpty() ? Arrays.asList(TicketReservation.TicketReservationStatus.values()) : status).stream().map(TicketReservation.TicketReservationStatus::toString).collect(toList());
         if(purchaseContext.ofType(PurchaseContext.PurchaseContextType.event)) {
             var event = (Event)purchaseContext;
             List<TicketReservation> reservationsForEvent = ticketSearchRepository.findReservationsForEvent(event.getId(), offset, PAGE_SIZE, toSearch, toFilter);
-            return Pair.of(reservationsForEvent, ticketSearchRepository.countReservationsForEvent(event.getId(), toSearch, toFilter));
+            return Pair.of(reservationsForEvent, SqlUtils.countResults(offset, PAGE_SIZE, reservationsForEvent, () -> ticketSearchRepository.countReservationsForEvent(event.getId(), toSearch, toFilter)));
         } else {
             var subscription = (SubscriptionDescriptor) purchaseContext;
             List<TicketReservation> reservationsForSubscription = ticketSearchRepository.findReservationsForSubscription(subscription.getId(), offset, PAGE_SIZE, toSearch, toFilter);
-            return Pair.of(reservationsForSubscription, ticketSearchRepository.countReservationsForSubscription(subscription.getId(), toSearch, toFilter));
+            return Pair.of(reservationsForSubscription, SqlUtils.countResults(offset, PAGE_SIZE, reservationsForSubscription, () -> ticketSearchRepository.countReservationsForSubscription(subscription.getId(), toSearch, toFilter)));
         }
     }
 
     public Pair<List<ReservationPaymentDetail>, Integer> findAllPaymentsFor(PurchaseContext purchaseContext, Integer page, String search) {
         int offset = page == null ? 0 : page * PAGE_SIZE;
-        String toSearch = StringUtils.trimToNull(search);
-        toSearch = toSearch == null ? null : ("%" + toSearch + "%");
+        String toSearch = SqlUtils.toSearchPattern(search);
         var toFilter = List.of(TicketReservation.TicketReservationStatus.COMPLETE.name());
 
         if(purchaseContext.ofType(PurchaseContext.PurchaseContextType.event)) {
             var event = (Event)purchaseContext;
             List<ReservationPaymentDetail> reservationsForEvent = ticketSearchRepository.findAllPaymentsForEvent(event.getId(), offset, PAGE_SIZE, toSearch, toFilter, SUPPORTED_PAYMENT_METHODS);
-            return Pair.of(reservationsForEvent, ticketSearchRepository.countConfirmedPaymentsForEvent(event.getId(), toSearch, toFilter, SUPPORTED_PAYMENT_METHODS));
+            return Pair.of(reservationsForEvent, SqlUtils.countResults(offset, PAGE_SIZE, reservationsForEvent, () -> ticketSearchRepository.countConfirmedPaymentsForEvent(event.getId(), toSearch, toFilter, SUPPORTED_PAYMENT_METHODS)));
         } else {
             // functionality is not yet available for subscriptions
             throw new UnsupportedOperationException("not implemented");
@@ -83,8 +81,7 @@ public class PurchaseContextSearchManager {
     }
 
     public List<ReservationPaymentDetail> findAllPaymentsForExport(PurchaseContext purchaseContext,  String search) {
-        String toSearch = StringUtils.trimToNull(search);
-        toSearch = toSearch == null ? null : ("%" + toSearch + "%");
+        String toSearch = SqlUtils.toSearchPattern(search);
         var toFilter = List.of(TicketReservation.TicketReservationStatus.COMPLETE.name());
         if(purchaseContext.ofType(PurchaseContext.PurchaseContextType.event)) {
             var event = (Event)purchaseContext;
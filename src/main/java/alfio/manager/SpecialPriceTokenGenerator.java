@@ -25,16 +25,23 @@ import alfio.model.system.ConfigurationKeys;
 import alfio.repository.EventRepository;
 import alfio.repository.SpecialPriceRepository;
 import alfio.repository.TicketCategoryRepository;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.commons.text.RandomStringGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.security.SecureRandom;
+import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * Class SpecialPriceTokenGenerator.
@@ -47,6 +54,7 @@ public class SpecialPriceTokenGenerator {
 
     private static final Logger log = LoggerFactory.getLogger(SpecialPriceTokenGenerator.class);
 
+    private static final int BATCH_SIZE = 1000;
     private static final SecureRandom RANDOM = new SecureRandom();
     private static final char[] ADMITTED_CHARACTERS = new char[]{
             'A', 'B', 'C', 'D', 'E', 'F',
@@ -64,56 +72,87 @@ public class SpecialPriceTokenGenerator {
     private final TicketCategoryRepository ticketCategoryRepository;
     private final EventRepository eventRepository;
     private final ConfigurationManager configurationManager;
+    private final TransactionTemplate nestedTransactionTemplate;
 
     @Autowired
     public SpecialPriceTokenGenerator(ConfigurationManager configurationManager,
                                       SpecialPriceRepository specialPriceRepository,
                                       TicketCategoryRepository ticketCategoryRepository,
-                                      EventRepository eventRepository) {
+                                      EventRepository eventRepository,
+                                      PlatformTransactionManager transactionManager) {
         this.specialPriceRepository = specialPriceRepository;
         this.configurationManager = configurationManager;
         this.ticketCategoryRepository = ticketCategoryRepository;
         this.eventRepository = eventRepository;
+        this.nestedTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED));
     }
 
     public void generatePendingCodes() {
         StopWatch stopWatch = new StopWatch();
         log.trace("start pending codes generation");
         stopWatch.start();
-        specialPriceRepository.findWaitingElements().forEach(this::generateCode);
+        specialPriceRepository.findWaitingElements().stream()
+            .collect(Collectors.groupingBy(SpecialPrice.SpecialPriceTicketCategoryId::getTicketCategoryId, Collectors.mapping(SpecialPrice.SpecialPriceTicketCategoryId::getId, Collectors.toList())))
+            .forEach(this::generateCodes);
         stopWatch.stop();
         log.trace("end. Took {} ms", stopWatch.getTime());
     }
 
     public void generatePendingCodesForCategory(int categoryId) {
-        specialPriceRepository.findWaitingElementsForCategory(categoryId).forEach(this::generateCode);
+        var ids = specialPriceRepository.findWaitingElementsForCategory(categoryId).stream()
+            .map(SpecialPrice.SpecialPriceTicketCategoryId::getId)
+            .collect(Collectors.toList());
+        if(!ids.isEmpty()) {
+            generateCodes(categoryId, ids);
+        }
     }
 
-    private void generateCode(SpecialPrice.SpecialPriceTicketCategoryId specialPrice) {
-
-        TicketCategory ticketCategory = ticketCategoryRepository.getByIdAndActive(specialPrice.getTicketCategoryId()).orElseThrow(IllegalStateException::new);
+    private void generateCodes(int categoryId, List<Integer> specialPriceIds) {
+        TicketCategory ticketCategory = ticketCategoryRepository.getByIdAndActive(categoryId).orElseThrow(IllegalStateException::new);
         EventAndOrganizationId event = eventRepository.findEventAndOrganizationIdById(ticketCategory.getEventId());
         int maxLength = configurationManager.getFor(ConfigurationKeys.SPECIAL_PRICE_CODE_LENGTH, ConfigurationLevel.ticketCategory(event, ticketCategory.getId())).getValueAsIntOrDefault(6);
+        ListUtils.partition(specialPriceIds, BATCH_SIZE).forEach(batch -> generateBatch(categoryId, batch, maxLength));
+    }
 
-        while (true) {
+    private void generateBatch(int categoryId, List<Integer> specialPriceIds, int maxLength) {
+        StopWatch stopWatch = StopWatch.createStarted();
+        List<Integer> pending = specialPriceIds;
+        while (!pending.isEmpty()) {
+            List<String> codes = nextValidCodes(pending.size(), maxLength);
+            var toUpdate = pending;
             try {
-                log.trace("generate code for special price with id {}", specialPrice.getId());
-                specialPriceRepository.updateCode(nextValidCode(maxLength), specialPrice.getId());
-                log.trace("done.");
-                return;
-            } catch (DataAccessException e) {
-                log.warn("got a duplicate. Retrying...", e);
+                // the update runs in a savepoint, so that a code inserted concurrently does not abort the whole transaction
+                var updated = new HashSet<>(Objects.requireNonNull(nestedTransactionTemplate.execute(status -> specialPriceRepository.bulkUpdateCodes(toUpdate, codes))));
+                pending = pending.stream().filter(id -> !updated.contains(id)).collect(Collectors.toList());
+                if(!pending.isEmpty()) {
+                    log.debug("{} codes were already in use. Retrying...", pending.size());
+                }
+            } catch (DuplicateKeyException e) {
+                log.debug("codes have been assigned concurrently to other special prices. Regenerating {} codes...", pending.size());
             }
         }
+        stopWatch.stop();
+        long elapsed = Math.max(1L, stopWatch.getTime());
+        log.info("generated {} codes for category {} in {} ms ({} codes/s)", specialPriceIds.size(), categoryId, elapsed, specialPriceIds.size() * 1000L / elapsed);
     }
 
-    private String nextValidCode(int maxLength) {
-        while (true) {
-            String code = generateRandomCode(maxLength);
-            if (specialPriceRepository.countByCode(code) == 0) {
-                return code;
+    /**
+     * Generates the given number of distinct codes, which are not yet present in the database
+     */
+    private List<String> nextValidCodes(int count, int maxLength) {
+        Set<String> codes = new LinkedHashSet<>(count);
+        while (codes.size() < count) {
+            var candidates = new HashSet<String>();
+            while (candidates.size() < count - codes.size()) {
+                String code = generateRandomCode(maxLength);
+                if(!codes.contains(code)) {
+                    candidates.add(code);
+                }
             }
+            specialPriceRepository.findExistingCodes(candidates).forEach(candidates::remove);
+            codes.addAll(candidates);
         }
+        return new ArrayList<>(codes);
     }
 
     private String generateRandomCode(int maxLength) {
@@ -54,6 +54,7 @@ import alfio.model.transaction.*;
 import alfio.model.transaction.capabilities.OfflineProcessor;
 import alfio.model.transaction.capabilities.ServerInitiatedTransaction;
 import alfio.model.transaction.capabilities.WebhookHandler;
+import alfio.model.transaction.webhook.PaymentWebhookInboxEntry;
 import alfio.model.user.Organization;
 import alfio.model.user.Role;
 import alfio.repository.*;
@@ -65,11 +66,13 @@ import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.time.DateUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.http.MediaType;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.UncategorizedSQLException;
@@ -79,6 +82,7 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
@@ -93,7 +97,12 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -126,7 +135,7 @@ import static org.apache.commons.lang3.time.DateUtils.truncate;
 @Component
 @Transactional
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
-public class TicketReservationManager {
+public class TicketReservationManager implements DisposableBean {
 
     private static final Logger log = LoggerFactory.getLogger(TicketReservationManager.class);
 
@@ -135,6 +144,10 @@ public class TicketReservationManager {
     private static final String STUCK_TICKETS_SUBJECT = "warning: stuck tickets found";
     private static final String ORGANIZATION = "organization";
     private static final String RESERVATION_ID = "reservationId";
+    private static final int EXPIRED_RESERVATIONS_BATCH_SIZE = 100;
+    private static final int MAX_EXPIRED_RESERVATIONS_BATCHES = 50;
+    private static final int MAX_PENDING_TRANSACTION_CHECKS = 100;
+    private static final int MAX_PARALLEL_TRANSACTION_CHECKS = Math.min(4, Runtime.getRuntime().availableProcessors());
 
     private final EventRepository eventRepository;
     private final OrganizationRepository organizationRepository;
@@ -153,6 +166,12 @@ public class TicketReservationManager {
     private final TransactionTemplate requiresNewTransactionTemplate;
     private final TransactionTemplate serializedTransactionTemplate;
     private final TransactionTemplate nestedTransactionTemplate;
+    // each check runs in its own transaction, so the pool size must stay well below the size of the connection pool
+    private final ThreadPoolExecutor transactionCheckers = new ThreadPoolExecutor(MAX_PARALLEL_TRANSACTION_CHECKS, MAX_PARALLEL_TRANSACTION_CHECKS, 1L, TimeUnit.MINUTES,
+        new LinkedBlockingQueue<>(),
+        new BasicThreadFactory.Builder().namingPattern("expired-reservation-transaction-check-%d").daemon(true).build());
+    // transactions are checked in windows of MAX_PENDING_TRANSACTION_CHECKS reservations. Each run starts after the last one checked
+    private final AtomicReference<String> lastCheckedReservationId = new AtomicReference<>("");
     private final WaitingQueueManager waitingQueueManager;
     private final TicketFieldRepository ticketFieldRepository;
     private final AdditionalServiceRepository additionalServiceRepository;
@@ -177,6 +196,7 @@ public class TicketReservationManager {
     private final OrderSummaryGenerator orderSummaryGenerator;
     private final ReservationAuditingHelper auditingHelper;
     private final ReservationFinalizer reservationFinalizer;
+    private final TicketAvailabilityHints ticketAvailabilityHints;
 
     public TicketReservationManager(EventRepository eventRepository,
                                     OrganizationRepository organizationRepository,
@@ -214,7 +234,8 @@ public class TicketReservationManager {
                                     ReservationCostCalculator reservationCostCalculator,
                                     ReservationEmailContentHelper reservationHelper,
                                     ReservationFinalizer reservationFinalizer,
-                                    OrderSummaryGenerator orderSummaryGenerator) {
+                                    OrderSummaryGenerator orderSummaryGenerator,
+                                    TicketAvailabilityHints ticketAvailabilityHints) {
         this.eventRepository = eventRepository;
         this.organizationRepository = organizationRepository;
         this.ticketRepository = ticketRepository;
@@ -258,6 +279,8 @@ public class TicketReservationManager {
         this.reservationHelper = reservationHelper;
         this.auditingHelper = new ReservationAuditingHelper(auditingRepository);
         this.reservationFinalizer = reservationFinalizer;
+        this.ticketAvailabilityHints = ticketAvailabilityHints;
+        this.transactionCheckers.allowCoreThreadTimeOut(true);
     }
 
     private String createSubscriptionReservation(SubscriptionDescriptor subscriptionDescriptor,
@@ -323,6 +346,11 @@ public class TicketReservationManager {
                                           Locale locale,
                                           boolean forWaitingQueue,
                                           Principal principal) throws NotEnoughTicketsException, MissingSpecialPriceTokenException, InvalidSpecialPriceTokenException {
+        // fast path: reject the request if we already know that one of the categories has been sold out
+        if(!forWaitingQueue && list.stream().anyMatch(t -> ticketAvailabilityHints.isExhausted(event.getId(), t.getTicketCategoryId(), t.getQuantity()))) {
+            throw new NotEnoughTicketsException();
+        }
+
         String reservationId = UUID.randomUUID().toString();
 
         Optional<PromoCodeDiscount> discount = promotionCodeDiscount
@@ -588,10 +616,16 @@ public class TicketReservationManager {
     List<Integer> reserveTickets(int eventId , int categoryId, int qty, List<TicketStatus> requiredStatuses) {
         TicketCategory category = ticketCategoryRepository.getByIdAndActive(categoryId, eventId);
         List<String> statusesAsString = requiredStatuses.stream().map(TicketStatus::name).toList();
+        List<Integer> result;
         if(category.isBounded()) {
-            return ticketRepository.selectTicketInCategoryForUpdateSkipLocked(eventId, categoryId, qty, statusesAsString);
+            result = ticketRepository.selectTicketInCategoryForUpdateSkipLocked(eventId, categoryId, qty, statusesAsString);
+        } else {
+            result = ticketRepository.selectNotAllocatedTicketsForUpdateSkipLocked(eventId, qty, statusesAsString);
         }
-        return ticketRepository.selectNotAllocatedTicketsForUpdateSkipLocked(eventId, qty, statusesAsString);
+        if(result.size() < qty && requiredStatuses.equals(List.of(TicketStatus.FREE))) {
+            ticketAvailabilityHints.notEnoughTickets(eventId, category);
+        }
+        return result;
     }
 
     Optional<SpecialPrice> fixToken(Optional<SpecialPrice> token, int ticketCategoryId, int eventId, TicketReservationWithOptionalCodeModification ticketReservation) {
@@ -1009,47 +1043,145 @@ public class TicketReservationManager {
         return reservationHelper.getTicketEmailGenerator(event, ticketReservation, ticketLanguage, additionalInfo);
     }
 
-    @Transactional
+    /**
+     * Deletes the PENDING reservations which expired before the given date.
+     * <p>
+     * Reservations having a transaction with a webhook-capable payment provider are checked first, without holding any lock on
+     * the reservations, since the check requires a call to the provider. Then the expired reservations are locked and deleted in
+     * small batches, each one in its own transaction.
+     *
+     * @param expirationDate expiration date
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void cleanupExpiredReservations(Date expirationDate) {
-        List<String> expiredReservationIds = ticketReservationRepository.findExpiredReservationForUpdate(expirationDate);
-        if(expiredReservationIds.isEmpty()) {
-            return;
+        long start = System.currentTimeMillis();
+        var checkResult = checkPendingTransactions(expirationDate);
+        String lastId = "";
+        int deleted = 0;
+        for (int i = 0; i < MAX_EXPIRED_RESERVATIONS_BATCHES && lastId != null; i++) {
+            final String from = lastId;
+            var batch = requiresNewTransactionTemplate.execute(status -> deleteExpiredReservationsBatch(expirationDate, from, checkResult));
+            if (batch == null) {
+                break;
+            }
+            deleted += batch.getRight();
+            lastId = batch.getLeft();
         }
+        if (deleted > 0) {
+            log.info("cleanupExpiredReservations: deleted {} reservations. Elapsed {} ms", deleted, System.currentTimeMillis() - start);
+        }
+    }
 
-        List<String> reservationsToIgnore = new ArrayList<>();
-        // check if any of the above reservation has a pending transaction with a webhook-capable payment provider.
-        // if so, we'll force the remote status check in order to prevent deletion of paid (or pending) reservations
-        ticketReservationRepository.findReservationsWithPendingTransaction(expiredReservationIds)
-            .forEach(reservation -> {
-                var purchaseContextOptional = purchaseContextManager.findByReservationId(reservation.getId());
-                if (purchaseContextOptional.isPresent()) {
-                    var purchaseContext = purchaseContextOptional.get();
-                    var resultOptional = forceTransactionCheck(purchaseContext, reservation);
-                    var reservationId = reservation.getId();
-                    if (resultOptional.isPresent()) {
-                        var result = resultOptional.get();
-                        if (result.isSuccessful()) {
-                            // payment is successful, so reservation must not be deleted
-                            log.debug("Force check for expired reservation ID {} revealed a completed transaction. Will not delete.", reservationId);
-                            reservationsToIgnore.add(reservationId);
-                        } else {
-                            // we need to cancel the pending payment, otherwise we could end up with a mismatch
-                            boolean cancelPendingPaymentResult = cancelPendingPayment(reservationId, purchaseContext);
-                            log.warn("Trying to force pending payment cancellation for reservation ID {}. Successful: {}", reservationId, cancelPendingPaymentResult);
-                        }
-                    } else {
-                        log.trace("No result from forceTransactionCheck for reservation ID {}", reservationId);
-                    }
+    /**
+     * Forces the status check of the transactions linked to expired reservations. The checks run in parallel, each one in its own transaction.
+     *
+     * @param expirationDate expiration date
+     * @return the IDs of the reservations that have been checked (left), and the IDs of the reservations that must be kept because the payment was successful (right)
+     */
+    private Pair<Set<String>, Set<String>> checkPendingTransactions(Date expirationDate) {
+        var reservations = findReservationsToCheck(expirationDate);
+        if (reservations.isEmpty()) {
+            return Pair.of(Set.of(), Set.of());
+        }
+        var futures = reservations.stream()
+            .map(reservation -> CompletableFuture.supplyAsync(() -> Pair.of(reservation.getId(), checkPendingTransaction(reservation)), transactionCheckers))
+            .toList();
+        Set<String> checked = new HashSet<>();
+        Set<String> toKeep = new HashSet<>();
+        futures.stream().map(CompletableFuture::join).forEach(result -> {
+            switch (result.getRight()) {
+                case DELETE -> checked.add(result.getLeft());
+                case KEEP -> {
+                    checked.add(result.getLeft());
+                    toKeep.add(result.getLeft());
+                }
+                case UNKNOWN -> log.debug("Cannot determine the status of the transaction for reservation ID {}. Will retry later.", result.getLeft());
+            }
+        });
+        return Pair.of(checked, toKeep);
+    }
 
-                } else {
-                    log.warn("PurchaseContext not found for reservation ID {}", reservation.getId());
+    /**
+     * Returns the next window of expired reservations with a transaction. When the end is reached, the window starts again from the beginning,
+     * so that reservations whose transaction cannot be checked do not prevent the others from being checked.
+     */
+    private List<TicketReservation> findReservationsToCheck(Date expirationDate) {
+        var from = lastCheckedReservationId.get();
+        var reservations = new ArrayList<>(ticketReservationRepository.findExpiredReservationsWithPendingTransaction(expirationDate, from, MAX_PENDING_TRANSACTION_CHECKS));
+        if (reservations.size() < MAX_PENDING_TRANSACTION_CHECKS && !from.isEmpty()) {
+            var ids = reservations.stream().map(TicketReservation::getId).collect(Collectors.toSet());
+            ticketReservationRepository.findExpiredReservationsWithPendingTransaction(expirationDate, "", MAX_PENDING_TRANSACTION_CHECKS - reservations.size()).stream()
+                .filter(r -> !ids.contains(r.getId()))
+                .limit(MAX_PENDING_TRANSACTION_CHECKS - (long) reservations.size())
+                .forEach(reservations::add);
+        }
+        lastCheckedReservationId.set(reservations.size() < MAX_PENDING_TRANSACTION_CHECKS ? "" : reservations.get(reservations.size() - 1).getId());
+        return reservations;
+    }
+
+    @Override
+    public void destroy() {
+        // checks still running are interrupted. Their reservations are kept and will be checked again
+        transactionCheckers.shutdownNow();
+    }
+
+    private ExpiredReservationCheck checkPendingTransaction(TicketReservation reservation) {
+        var reservationId = reservation.getId();
+        try {
+            return requiresNewTransactionTemplate.execute(status -> {
+                var purchaseContextOptional = purchaseContextManager.findByReservationId(reservationId);
+                if (purchaseContextOptional.isEmpty()) {
+                    log.warn("PurchaseContext not found for reservation ID {}", reservationId);
+                    return ExpiredReservationCheck.DELETE;
+                }
+                var purchaseContext = purchaseContextOptional.get();
+                var resultOptional = forceTransactionCheck(purchaseContext, reservation);
+                if (resultOptional.isEmpty()) {
+                    log.trace("No result from forceTransactionCheck for reservation ID {}", reservationId);
+                    return ExpiredReservationCheck.DELETE;
+                }
+                if (resultOptional.get().isSuccessful()) {
+                    // payment is successful, so reservation must not be deleted
+                    log.debug("Force check for expired reservation ID {} revealed a completed transaction. Will not delete.", reservationId);
+                    return ExpiredReservationCheck.KEEP;
                 }
+                // we need to cancel the pending payment, otherwise we could end up with a mismatch
+                boolean cancelPendingPaymentResult = cancelPendingPayment(reservationId, purchaseContext);
+                log.warn("Trying to force pending payment cancellation for reservation ID {}. Successful: {}", reservationId, cancelPendingPaymentResult);
+                return ExpiredReservationCheck.DELETE;
             });
+        } catch (Exception e) {
+            log.warn("Error while checking the transaction for reservation ID " + reservationId, e);
+            return ExpiredReservationCheck.UNKNOWN;
+        }
+    }
 
+    /**
+     * @return the last reservation ID of the batch (left, null if there are no more reservations) and the number of deleted reservations (right)
+     */
+    private Pair<String, Integer> deleteExpiredReservationsBatch(Date expirationDate, String lastId, Pair<Set<String>, Set<String>> checkResult) {
+        long start = System.currentTimeMillis();
+        var expiredReservationIds = ticketReservationRepository.findExpiredReservationForUpdate(expirationDate, lastId, EXPIRED_RESERVATIONS_BATCH_SIZE);
+        if (expiredReservationIds.isEmpty()) {
+            return Pair.of(null, 0);
+        }
+        // reservations with a transaction that has not been checked (yet) are kept, as they might have been paid.
+        var notChecked = ticketReservationRepository.findReservationsWithPendingTransaction(expiredReservationIds).stream()
+            .map(TicketReservation::getId)
+            .filter(id -> !checkResult.getLeft().contains(id))
+            .collect(Collectors.toSet());
         var toDelete = expiredReservationIds.stream()
-            .filter(id -> !reservationsToIgnore.contains(id))
+            .filter(id -> !checkResult.getRight().contains(id) && !notChecked.contains(id))
             .toList();
+        if (!toDelete.isEmpty()) {
+            deleteExpiredReservations(toDelete);
+        }
+        log.debug("deleted {} out of {} expired reservations in {} ms", toDelete.size(), expiredReservationIds.size(), System.currentTimeMillis() - start);
+        var nextId = expiredReservationIds.size() < EXPIRED_RESERVATIONS_BATCH_SIZE ? null : expiredReservationIds.get(expiredReservationIds.size() - 1);
+        return Pair.of(nextId, toDelete.size());
+    }
 
+    private void deleteExpiredReservations(List<String> toDelete) {
         subscriptionRepository.deleteSubscriptionWithReservationId(toDelete);
         specialPriceRepository.resetToFreeAndCleanupForReservation(toDelete);
         ticketRepository.resetCategoryIdForUnboundedCategories(toDelete);
@@ -1073,6 +1205,10 @@ public class TicketReservationManager {
         ticketReservationRepository.remove(toDelete);
     }
 
+    private enum ExpiredReservationCheck {
+        DELETE, KEEP, UNKNOWN
+    }
+
     public void cleanupExpiredOfflineReservations(Date expirationDate) {
         ticketReservationRepository.findExpiredOfflineReservationsForUpdate(expirationDate)
             .forEach(this::cleanupOfflinePayment);
@@ -1804,33 +1940,24 @@ public class TicketReservationManager {
         ticketReservationRepository.updateInvoicingAdditionalInformation(reservationId, json.asJsonString(ticketReservationInvoicingAdditionalInfo));
     }
 
-    public PaymentWebhookResult processTransactionWebhook(String body, String signature, PaymentProxy paymentProxy, Map<String, String> additionalInfo) {
-        return processTransactionWebhook(body, signature, paymentProxy, additionalInfo, new PaymentContext());
-    }
-
-    public PaymentWebhookResult processTransactionWebhook(String body, String signature, PaymentProxy paymentProxy, Map<String, String> additionalInfo, PaymentContext pc) {
-        //load the payment provider using given configuration
-        var paymentProviderOptional = paymentManager.streamActiveProvidersByProxyAndCapabilities(paymentProxy, pc, List.of(WebhookHandler.class)).findFirst();
+    /**
+     * Processes a webhook which has been verified and stored by {@link PaymentWebhookInboxManager}.
+     *
+     * @param entry the stored webhook
+     * @return the result
+     */
+    public PaymentWebhookResult processTransactionWebhook(PaymentWebhookInboxEntry entry) {
+        var optionalPurchaseContext = purchaseContextManager.findByReservationId(entry.reservationId());
+        if(optionalPurchaseContext.isEmpty()) {
+            return PaymentWebhookResult.notRelevant("reservation not found");
+        }
+        var paymentContext = new PaymentContext(optionalPurchaseContext.get(), entry.reservationId());
+        var paymentProviderOptional = paymentManager.streamActiveProvidersByProxyAndCapabilities(entry.paymentProxy(), paymentContext, List.of(WebhookHandler.class)).findFirst();
         if(paymentProviderOptional.isEmpty()) {
             return PaymentWebhookResult.error("payment provider not found");
         }
-
         var paymentProvider = paymentProviderOptional.get();
-        if(((WebhookHandler)paymentProvider).requiresSignedBody() && StringUtils.isBlank(signature)) {
-            return PaymentWebhookResult.error("signature is missing");
-        }
-
-        PaymentContext paymentContext;
-        if(pc.getConfigurationLevel().isSystem()) {
-            // https://github.com/alfio-event/alf.io/issues/1019
-            // if the current PaymentContext is System, and if the provider supports it,
-            // we try to narrow the payment context by pre-parsing the JSON body
-            paymentContext = ((WebhookHandler) paymentProvider).detectPaymentContext(body).orElse(pc);
-        } else {
-            paymentContext = pc;
-        }
-
-        var optionalTransactionWebhookPayload = ((WebhookHandler)paymentProvider).parseTransactionPayload(body, signature, additionalInfo, paymentContext);
+        var optionalTransactionWebhookPayload = ((WebhookHandler)paymentProvider).parseVerifiedTransactionPayload(entry.body(), entry.additionalInfo(), paymentContext);
         if(optionalTransactionWebhookPayload.isEmpty()) {
             return PaymentWebhookResult.error("payload not recognized");
         }
@@ -18,11 +18,13 @@ package alfio.manager;
 
 import alfio.model.UploadedResource;
 import alfio.model.modification.UploadBase64FileModification;
+import alfio.model.system.command.UploadedResourceChanged;
 import alfio.repository.UploadedResourceRepository;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -47,10 +49,13 @@ public class UploadedResourceManager {
     public static final String ATTR_IMG_HEIGHT = "height";
 
     private final UploadedResourceRepository uploadedResourceRepository;
+    private final ApplicationEventPublisher applicationEventPublisher;
 
     @Autowired
-    public UploadedResourceManager(UploadedResourceRepository uploadedResourceRepository) {
+    public UploadedResourceManager(UploadedResourceRepository uploadedResourceRepository,
+                                   ApplicationEventPublisher applicationEventPublisher) {
         this.uploadedResourceRepository = uploadedResourceRepository;
+        this.applicationEventPublisher = applicationEventPublisher;
     }
 
     public boolean hasResource(String name) {
@@ -95,7 +100,9 @@ public class UploadedResourceManager {
             uploadedResourceRepository.delete(file.getName());
         }
 
-        return Optional.of(uploadedResourceRepository.upload(null, null, file, getAttributes(file)));
+        var result = Optional.of(uploadedResourceRepository.upload(null, null, file, getAttributes(file)));
+        notifyChange(file.getName(), null, null);
+        return result;
     }
 
     public Optional<Integer> saveResource(int organizationId, UploadBase64FileModification file) {
@@ -103,7 +110,9 @@ public class UploadedResourceManager {
             uploadedResourceRepository.delete(organizationId, file.getName());
         }
 
-        return Optional.of(uploadedResourceRepository.upload(organizationId, null, file, getAttributes(file)));
+        var result = Optional.of(uploadedResourceRepository.upload(organizationId, null, file, getAttributes(file)));
+        notifyChange(file.getName(), organizationId, null);
+        return result;
     }
 
     public Optional<Integer> saveResource(int organizationId, int eventId, UploadBase64FileModification file) {
@@ -111,19 +120,28 @@ public class UploadedResourceManager {
             uploadedResourceRepository.delete(organizationId, eventId, file.getName());
         }
 
-        return Optional.ofNullable(uploadedResourceRepository.upload(organizationId, eventId, file, getAttributes(file)));
+        var result = Optional.ofNullable(uploadedResourceRepository.upload(organizationId, eventId, file, getAttributes(file)));
+        notifyChange(file.getName(), organizationId, eventId);
+        return result;
     }
 
     public void deleteResource(String name) {
         uploadedResourceRepository.delete(name);
+        notifyChange(name, null, null);
     }
 
     public void deleteResource(int organizationId, String name) {
         uploadedResourceRepository.delete(organizationId, name);
+        notifyChange(name, organizationId, null);
     }
 
     public void deleteResource(int organizationId, int eventId, String name) {
         uploadedResourceRepository.delete(organizationId, eventId, name);
+        notifyChange(name, organizationId, eventId);
+    }
+
+    private void notifyChange(String name, Integer organizationId, Integer eventId) {
+        applicationEventPublisher.publishEvent(new UploadedResourceChanged(name, organizationId, eventId));
     }
 
     public List<UploadedResource> findAll() {
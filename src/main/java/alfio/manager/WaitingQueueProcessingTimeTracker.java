@@ -0,0 +1,67 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.support.WaitingQueueProcessingTime;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Keeps the time spent processing the waiting list of each event.
+ */
+@Component
+public class WaitingQueueProcessingTimeTracker {
+
+    private final Cache<Integer, Timings> timingsByEvent = Caffeine.newBuilder()
+        .maximumSize(1_000)
+        .expireAfterAccess(Duration.ofDays(1))
+        .build();
+
+    public void record(int eventId, long elapsedNanos) {
+        timingsByEvent.get(eventId, k -> new Timings()).add(elapsedNanos);
+    }
+
+    public WaitingQueueProcessingTime getProcessingTime(int eventId) {
+        var timings = timingsByEvent.getIfPresent(eventId);
+        return timings != null ? timings.toProcessingTime() : new WaitingQueueProcessingTime(0, 0, 0, 0);
+    }
+
+    private static final class Timings {
+        private long runs;
+        private long last;
+        private long total;
+        private long max;
+
+        synchronized void add(long value) {
+            runs++;
+            last = value;
+            total += value;
+            max = Math.max(max, value);
+        }
+
+        synchronized WaitingQueueProcessingTime toProcessingTime() {
+            return new WaitingQueueProcessingTime(runs, toMillis(last), toMillis(total) / runs, toMillis(max));
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
@@ -29,9 +29,11 @@ import alfio.repository.WaitingQueueRepository;
 import alfio.util.ClockProvider;
 import alfio.util.TemplateManager;
 import alfio.util.TemplateResource;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
@@ -43,6 +45,7 @@ import org.springframework.transaction.support.DefaultTransactionDefinition;
 import java.sql.Date;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 import static alfio.model.system.ConfigurationKeys.ENABLE_PRE_REGISTRATION;
@@ -51,9 +54,10 @@ import static java.util.stream.Collectors.toList;
 
 @Component
 @Transactional
-public class WaitingQueueSubscriptionProcessor {
+public class WaitingQueueSubscriptionProcessor implements DisposableBean {
 
     private static final Logger log = LoggerFactory.getLogger(WaitingQueueSubscriptionProcessor.class);
+    private static final int MAX_PARALLEL_EVENTS = Math.min(4, Runtime.getRuntime().availableProcessors());
 
     private final EventManager eventManager;
     private final TicketReservationManager ticketReservationManager;
@@ -66,6 +70,13 @@ public class WaitingQueueSubscriptionProcessor {
     private final TicketRepository ticketRepository;
     private final PlatformTransactionManager transactionManager;
     private final ClockProvider clockProvider;
+    private final WaitingQueueProcessingTimeTracker processingTimeTracker;
+    // each event is processed in its own transaction, so the pool size must stay well below the size of the connection pool
+    private final ThreadPoolExecutor eventProcessors = new ThreadPoolExecutor(MAX_PARALLEL_EVENTS, MAX_PARALLEL_EVENTS, 1L, TimeUnit.MINUTES,
+        new ArrayBlockingQueue<>(MAX_PARALLEL_EVENTS * 4),
+        new BasicThreadFactory.Builder().namingPattern("waiting-queue-processor-%d").daemon(true).build(),
+        // if the queue is full, or the pool has been shut down, the event is processed by the calling thread
+        (task, executor) -> task.run());
 
     public WaitingQueueSubscriptionProcessor(EventManager eventManager,
                                              TicketReservationManager ticketReservationManager,
@@ -77,7 +88,8 @@ public class WaitingQueueSubscriptionProcessor {
                                              TemplateManager templateManager,
                                              TicketRepository ticketRepository,
                                              PlatformTransactionManager transactionManager,
-                                             ClockProvider clockProvider) {
+                                             ClockProvider clockProvider,
+                                             WaitingQueueProcessingTimeTracker processingTimeTracker) {
         this.eventManager = eventManager;
         this.ticketReservationManager = ticketReservationManager;
         this.configurationManager = configurationManager;
@@ -89,26 +101,60 @@ public class WaitingQueueSubscriptionProcessor {
         this.ticketRepository = ticketRepository;
         this.transactionManager = transactionManager;
         this.clockProvider = clockProvider;
+        this.processingTimeTracker = processingTimeTracker;
+        this.eventProcessors.allowCoreThreadTimeOut(true);
     }
 
     public void handleWaitingTickets() {
-        Map<Boolean, List<Event>> activeEvents = eventManager.getActiveEvents().stream()
+        List<Event> activeEvents = eventManager.getActiveEvents();
+        if(activeEvents.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        // skip the events without waiting subscribers and released tickets, as there's nothing to do for them
+        var eventsToProcess = new HashSet<>(waitingQueueRepository.findEventsWithWaitingSubscriptionsOrReleasedTickets(activeEvents.stream().map(Event::getId).collect(toList())));
+        Map<Boolean, List<Event>> partitionedEvents = activeEvents.stream()
+            .filter(event -> eventsToProcess.contains(event.getId()))
             .collect(Collectors.partitioningBy(this::isWaitingListFormEnabled));
-        activeEvents.get(true).forEach(event -> {
-            TransactionStatus transaction = transactionManager.getTransaction(new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
-            try {
-                ticketReservationManager.revertTicketsToFreeIfAccessRestricted(event.getId());
-                revertTicketToFreeIfCategoryIsExpired(event);
-                distributeAvailableSeats(event);
-                transactionManager.commit(transaction);
-            } catch(Exception ex) {
-                if(!(ex instanceof TransactionException)) {
-                    transactionManager.rollback(transaction);
-                }
-                log.error("cannot process waiting list for event {}", event.getShortName(), ex);
+        var futures = partitionedEvents.get(true).stream()
+            .map(event -> eventProcessors.submit(() -> processEvent(event)))
+            .toList();
+        partitionedEvents.get(false).forEach(eventManager::resetReleasedTickets);
+        futures.forEach(WaitingQueueSubscriptionProcessor::awaitProcessing);
+        if(!eventsToProcess.isEmpty()) {
+            log.debug("processed waiting list for {} out of {} active events in {} ms", eventsToProcess.size(), activeEvents.size(), System.currentTimeMillis() - start);
+        }
+    }
+
+    private static void awaitProcessing(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+            // errors are logged by processEvent. Cancelled events will be processed by the next run
+            log.trace("waiting list processing did not complete", e);
+        }
+    }
+
+    private void processEvent(Event event) {
+        long start = System.nanoTime();
+        TransactionStatus transaction = transactionManager.getTransaction(new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        try {
+            ticketReservationManager.revertTicketsToFreeIfAccessRestricted(event.getId());
+            revertTicketToFreeIfCategoryIsExpired(event);
+            distributeAvailableSeats(event);
+            transactionManager.commit(transaction);
+        } catch(Exception ex) {
+            if(!(ex instanceof TransactionException)) {
+                transactionManager.rollback(transaction);
             }
-        });
-        activeEvents.get(false).forEach(eventManager::resetReleasedTickets);
+            log.error("cannot process waiting list for event {}", event.getShortName(), ex);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            processingTimeTracker.record(event.getId(), elapsed);
+            log.debug("waiting list for event {} processed in {} ms", event.getShortName(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
     }
 
     public void revertTicketToFreeIfCategoryIsExpired(Event event) {
@@ -167,4 +213,17 @@ public class WaitingQueueSubscriptionProcessor {
             null); // set principal to null because this happens in a job
     }
 
+    @Override
+    public void destroy() throws InterruptedException {
+        eventProcessors.shutdown();
+        if(!eventProcessors.awaitTermination(10, TimeUnit.SECONDS)) {
+            // events which are still queued are cancelled, so that the job does not wait for them
+            eventProcessors.shutdownNow().forEach(task -> {
+                if(task instanceof Future<?> future) {
+                    future.cancel(false);
+                }
+            });
+        }
+    }
+
 }
@@ -16,21 +16,26 @@
  */
 package alfio.manager.i18n;
 
+import alfio.manager.system.ConfigurationManager;
 import alfio.model.PurchaseContext;
 import alfio.repository.system.ConfigurationRepository;
 import alfio.util.CustomResourceBundleMessageSource;
 import alfio.util.LocaleUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.context.MessageSource;
 import org.springframework.context.support.AbstractMessageSource;
 
 import java.text.MessageFormat;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -46,13 +51,28 @@ public class MessageSourceManager {
     public static final Predicate<String> PUBLIC_FRONTEND = key -> !key.startsWith("admin.");
 
     private static final Pattern ARGUMENT_FINDER = Pattern.compile("\\{+(\\d+)}+");
+    private static final OverrideKey SYSTEM_OVERRIDE = new OverrideKey(-1, -1);
     private final CustomResourceBundleMessageSource messageSource;
     private final ConfigurationRepository configurationRepository;
+    private final ConfigurationManager configurationManager;
+    // merged translation overrides, by organization and event.
+    // Invalidated together with the configuration snapshots, see ConfigurationManager#addInvalidationListener
+    private final Cache<OverrideKey, Map<String, Map<String, String>>> overrides = Caffeine.newBuilder()
+        .expireAfterWrite(Duration.ofMinutes(10))
+        .maximumSize(10_000)
+        .build();
+    // resolved bundles, by base name, language and filter. Invalidated together with the overrides
+    private final Cache<BundleKey, Map<String, String>> bundles = Caffeine.newBuilder()
+        .maximumSize(200)
+        .build();
 
     public MessageSourceManager(CustomResourceBundleMessageSource messageSource,
-                                ConfigurationRepository configurationRepository) {
+                                ConfigurationRepository configurationRepository,
+                                ConfigurationManager configurationManager) {
         this.messageSource = messageSource;
         this.configurationRepository = configurationRepository;
+        this.configurationManager = configurationManager;
+        configurationManager.addInvalidationListener(this::invalidateAll);
     }
 
     public Set<String> getKeys(String basename, Locale locale) {
@@ -61,8 +81,8 @@ public class MessageSourceManager {
 
     public Pair<MessageSource, Map<String, Map<String, String>>> getMessageSourceForPurchaseContextAndOverride(PurchaseContext purchaseContext) {
         Map<String, Map<String, String>> override = purchaseContext.event()
-            .map(event -> configurationRepository.getEventOverrideMessages(event.getOrganizationId(), event.getId()))
-            .orElseGet(() -> configurationRepository.getOrganizationOverrideMessages(purchaseContext.getOrganizationId()));
+            .map(event -> getEventOverride(event.getOrganizationId(), event.getId()))
+            .orElseGet(() -> getOverride(new OverrideKey(purchaseContext.getOrganizationId(), -1), () -> configurationRepository.getOrganizationOverrideMessages(purchaseContext.getOrganizationId())));
         return Pair.of(new MessageSourceWithOverride(messageSource, override), override);
     }
 
@@ -71,8 +91,7 @@ public class MessageSourceManager {
     }
 
     public MessageSource getMessageSourceFor(int orgId, int eventId) {
-        var override = configurationRepository.getEventOverrideMessages(orgId, eventId);
-        return new MessageSourceWithOverride(messageSource, override);
+        return new MessageSourceWithOverride(messageSource, getEventOverride(orgId, eventId));
     }
 
     public MessageSource getRootMessageSource() {
@@ -81,12 +100,32 @@ public class MessageSourceManager {
 
     public MessageSource getRootMessageSource(boolean withSystemOverride) {
         if (withSystemOverride) {
-            return new MessageSourceWithOverride(messageSource, configurationRepository.getSystemOverrideMessages());
+            return new MessageSourceWithOverride(messageSource, getOverride(SYSTEM_OVERRIDE, configurationRepository::getSystemOverrideMessages));
         } else {
             return messageSource;
         }
     }
 
+    private Map<String, Map<String, String>> getEventOverride(int organizationId, int eventId) {
+        return getOverride(new OverrideKey(organizationId, eventId), () -> configurationRepository.getEventOverrideMessages(organizationId, eventId));
+    }
+
+    private Map<String, Map<String, String>> getOverride(OverrideKey key, Supplier<Map<String, Map<String, String>>> loader) {
+        configurationManager.checkForChanges();
+        return overrides.get(key, k -> loader.get());
+    }
+
+    private void invalidateAll() {
+        overrides.invalidateAll();
+        bundles.invalidateAll();
+    }
+
+    private record OverrideKey(int organizationId, int eventId) {
+    }
+
+    private record BundleKey(String baseName, boolean withSystemOverride, String lang, Predicate<String> keysFilter) {
+    }
+
     private static final String[] EMPTY_ARRAY = new String[]{};
 
     private static final Pattern PLACEHOLDER_TO_REPLACE = Pattern.compile("\\{(\\d+)\\}");
@@ -107,10 +146,22 @@ public class MessageSourceManager {
         return res;
     }
 
+    /**
+     * Returns the resolved bundle for the given language. The result is cached until the translations are modified,
+     * therefore the same (unmodifiable) instance is returned as long as the bundle does not change.
+     */
     public Map<String, String> getBundleAsMap(String baseName,
                                               boolean withSystemOverride,
                                               String lang,
                                               Predicate<String> keysFilter) {
+        configurationManager.checkForChanges();
+        return bundles.get(new BundleKey(baseName, withSystemOverride, lang, keysFilter), k -> Map.copyOf(loadBundle(baseName, withSystemOverride, lang, keysFilter)));
+    }
+
+    private Map<String, String> loadBundle(String baseName,
+                                           boolean withSystemOverride,
+                                           String lang,
+                                           Predicate<String> keysFilter) {
         var locale = LocaleUtil.forLanguageTag(lang);
         var rootMessageSource = getRootMessageSource(withSystemOverride);
         return getKeys(baseName, locale)
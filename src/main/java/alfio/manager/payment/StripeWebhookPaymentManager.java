@@ -39,6 +39,7 @@ import com.stripe.exception.StripeException;
 import com.stripe.model.Charge;
 import com.stripe.model.PaymentIntent;
 import com.stripe.model.StripeObject;
+import com.stripe.net.ApiResource;
 import com.stripe.net.HttpHeaders;
 import com.stripe.net.RequestOptions;
 import com.stripe.net.StripeResponse;
@@ -245,21 +246,39 @@ public class StripeWebhookPaymentManager implements PaymentProvider, RefundReque
                                                                        PaymentContext paymentContext) {
         try {
             var stripeEvent = Webhook.constructEvent(body, signature, getWebhookSignatureKey(paymentContext.getConfigurationLevel()));
-            String eventType = stripeEvent.getType();
-            if(eventType.startsWith("charge.")) {
-                return deserializeObject(stripeEvent, body)
-                    .map(obj -> new StripeChargeTransactionWebhookPayload(eventType, (Charge)obj));
-            } else if(eventType.startsWith("payment_intent.")) {
-                return deserializeObject(stripeEvent, body)
-                    .map(obj -> new StripePaymentIntentWebhookPayload(eventType, (PaymentIntent)obj));
-            }
-            return Optional.empty();
+            return toTransactionPayload(stripeEvent, body);
         } catch (Exception e) {
             log.error("got exception while handling stripe webhook", e);
             return Optional.empty();
         }
     }
 
+    @Override
+    public Optional<TransactionWebhookPayload> parseVerifiedTransactionPayload(String body,
+                                                                               Map<String, String> additionalInfo,
+                                                                               PaymentContext paymentContext) {
+        // the signature has been checked when the webhook was received. Checking it again would fail, because
+        // the signed timestamp is accepted only for a few minutes
+        try {
+            return toTransactionPayload(ApiResource.GSON.fromJson(body, com.stripe.model.Event.class), body);
+        } catch (Exception e) {
+            log.error("got exception while parsing stripe webhook", e);
+            return Optional.empty();
+        }
+    }
+
+    private Optional<TransactionWebhookPayload> toTransactionPayload(com.stripe.model.Event stripeEvent, String body) {
+        String eventType = stripeEvent.getType();
+        if(eventType.startsWith("charge.")) {
+            return deserializeObject(stripeEvent, body)
+                .map(obj -> new StripeChargeTransactionWebhookPayload(eventType, (Charge)obj, stripeEvent.getId()));
+        } else if(eventType.startsWith("payment_intent.")) {
+            return deserializeObject(stripeEvent, body)
+                .map(obj -> new StripePaymentIntentWebhookPayload(eventType, (PaymentIntent)obj, stripeEvent.getId()));
+        }
+        return Optional.empty();
+    }
+
     private Optional<StripeObject> deserializeObject(com.stripe.model.Event stripeEvent, String rawJson) {
         var dataObjectDeserializer = stripeEvent.getDataObjectDeserializer();
         var cleanDeserialization = dataObjectDeserializer.getObject();
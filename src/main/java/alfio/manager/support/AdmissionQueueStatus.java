@@ -0,0 +1,32 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+/**
+ * Position of a buyer in the admission queue.
+ *
+ * @param token the signed queue token, to be sent with the reservation request. {@code null} if the queue is not enabled
+ * @param admitted whether the buyer can reserve tickets
+ * @param position estimated number of buyers ahead
+ * @param estimatedWaitSeconds estimated waiting time
+ */
+public record AdmissionQueueStatus(String token, boolean admitted, long position, long estimatedWaitSeconds) {
+
+    public static AdmissionQueueStatus notEnabled() {
+        return new AdmissionQueueStatus(null, true, 0, 0);
+    }
+}
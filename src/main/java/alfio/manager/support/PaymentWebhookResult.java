@@ -29,7 +29,8 @@ public class PaymentWebhookResult {
         SUCCESSFUL,
         FAILED,
         CANCELLED,
-        ERROR
+        ERROR,
+        ACCEPTED
     }
 
     private final Type type;
@@ -52,6 +53,10 @@ public class PaymentWebhookResult {
         return type == Type.ERROR;
     }
 
+    public boolean isAccepted() {
+        return type == Type.ACCEPTED;
+    }
+
     public static PaymentWebhookResult successful(PaymentToken paymentToken) {
         return new PaymentWebhookResult(Type.SUCCESSFUL, paymentToken, null, null);
     }
@@ -68,6 +73,13 @@ public class PaymentWebhookResult {
         return new PaymentWebhookResult(Type.ERROR, null, reason, null);
     }
 
+    /**
+     * The webhook has been verified and stored, and will be processed asynchronously
+     */
+    public static PaymentWebhookResult accepted() {
+        return new PaymentWebhookResult(Type.ACCEPTED, null, null, null);
+    }
+
     public static PaymentWebhookResult notRelevant(String reason) {
         return new PaymentWebhookResult(Type.NOT_RELEVANT, null, reason, null);
     }
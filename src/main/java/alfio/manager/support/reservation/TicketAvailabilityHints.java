@@ -0,0 +1,98 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support.reservation;
+
+import alfio.model.TicketCategory;
+import alfio.repository.TicketStatusCountRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Remembers the categories which ran out of tickets, so that further reservation attempts can be rejected
+ * without scanning (and locking) the ticket table.
+ * <p>
+ * A hint is created only after a reservation attempt failed. It is then verified against the ticket counters
+ * (see V207_2.0.0.52__TICKET_STATUS_COUNT.sql), which are maintained by the ticket triggers on every node. Therefore
+ * tickets released or freed by expired reservations become available again within the recheck interval, no matter which node
+ * freed them. The interval can be configured with {@code alfio.reservation.availability-hints.recheck-interval-ms}.
+ */
+@Component
+public class TicketAvailabilityHints {
+
+    private static final long RECHECK_INTERVAL_MILLIS = 200;
+    // tickets without category are counted under -1, see TicketStatusCountRepository
+    private static final int NOT_ALLOCATED = -1;
+
+    private final TicketStatusCountRepository ticketStatusCountRepository;
+    private final long recheckIntervalMillis;
+    private final Cache<HintKey, Hint> hints = Caffeine.newBuilder()
+        .expireAfterWrite(Duration.ofMinutes(10))
+        .maximumSize(10_000)
+        .build();
+
+    public TicketAvailabilityHints(TicketStatusCountRepository ticketStatusCountRepository, Environment environment) {
+        this.ticketStatusCountRepository = ticketStatusCountRepository;
+        this.recheckIntervalMillis = environment.getProperty("alfio.reservation.availability-hints.recheck-interval-ms", Long.class, RECHECK_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param eventId the event id
+     * @param categoryId the category id
+     * @param requested number of requested tickets
+     * @return {@code true} if the category is known to have less than {@code requested} free tickets
+     */
+    public boolean isExhausted(int eventId, int categoryId, int requested) {
+        var key = new HintKey(eventId, categoryId);
+        var hint = hints.getIfPresent(key);
+        if (hint == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (now - hint.checkedAt() >= recheckIntervalMillis) {
+            int free = ticketStatusCountRepository.countFreeTickets(eventId, hint.counterCategoryId());
+            if (free >= requested) {
+                hints.invalidate(key);
+                return false;
+            }
+            hint = new Hint(hint.counterCategoryId(), free, now);
+            hints.put(key, hint);
+        }
+        return hint.free() < requested;
+    }
+
+    /**
+     * Records that a reservation attempt for the given category failed because there were not enough free tickets.
+     *
+     * @param eventId the event id
+     * @param category the category
+     */
+    public void notEnoughTickets(int eventId, TicketCategory category) {
+        int counterCategoryId = category.isBounded() ? category.getId() : NOT_ALLOCATED;
+        int free = ticketStatusCountRepository.countFreeTickets(eventId, counterCategoryId);
+        hints.put(new HintKey(eventId, category.getId()), new Hint(counterCategoryId, free, System.currentTimeMillis()));
+    }
+
+    private record HintKey(int eventId, int categoryId) {
+    }
+
+    private record Hint(int counterCategoryId, int free, long checkedAt) {
+    }
+}
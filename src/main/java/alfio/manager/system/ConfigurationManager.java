@@ -21,8 +21,6 @@ import alfio.controller.api.v2.model.AlfioInfo;
 import alfio.controller.api.v2.model.AnalyticsConfiguration;
 import alfio.controller.api.v2.model.WalletConfiguration;
 import alfio.controller.api.v2.user.support.PurchaseContextInfoBuilder;
-import alfio.manager.system.ConfigurationLevels.CategoryLevel;
-import alfio.manager.system.ConfigurationLevels.EventLevel;
 import alfio.manager.system.ConfigurationLevels.OrganizationLevel;
 import alfio.manager.user.UserManager;
 import alfio.model.*;
@@ -32,6 +30,7 @@ import alfio.model.system.Configuration.*;
 import alfio.model.system.ConfigurationKeyValuePathLevel;
 import alfio.model.system.ConfigurationKeys;
 import alfio.model.system.ConfigurationPathLevel;
+import alfio.model.system.command.ConfigurationChanged;
 import alfio.model.transaction.PaymentMethod;
 import alfio.model.transaction.PaymentProxy;
 import alfio.model.user.User;
@@ -46,13 +45,16 @@ import org.apache.commons.lang3.builder.CompareToBuilder;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.Profiles;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import javax.servlet.http.HttpSession;
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.time.Duration;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -79,6 +81,8 @@ public class ConfigurationManager {
     private final ExternalConfiguration externalConfiguration;
     private final Environment environment;
     private final Cache<Set<ConfigurationKeys>, Map<ConfigurationKeys, MaybeConfiguration>> oneMinuteCache;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final ConfigurationSnapshotCache snapshotCache;
     private final SecureRandom secureRandom = new SecureRandom();
 
     public ConfigurationManager(ConfigurationRepository configurationRepository,
@@ -87,13 +91,17 @@ public class ConfigurationManager {
                                 ExternalConfiguration externalConfiguration,
                                 Environment environment,
                                 Cache<Set<ConfigurationKeys>,
-                                Map<ConfigurationKeys, MaybeConfiguration>> oneMinuteCache) {
+                                Map<ConfigurationKeys, MaybeConfiguration>> oneMinuteCache,
+                                ApplicationEventPublisher applicationEventPublisher,
+                                Duration versionCheckInterval) {
         this.configurationRepository = configurationRepository;
         this.userManager = userManager;
         this.eventRepository = eventRepository;
         this.externalConfiguration = externalConfiguration;
         this.environment = environment;
         this.oneMinuteCache = oneMinuteCache;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.snapshotCache = new ConfigurationSnapshotCache(configurationRepository, versionCheckInterval);
     }
 
     //TODO: refactor, not the most beautiful code, find a better solution...
@@ -152,6 +160,7 @@ public class ConfigurationManager {
             }
             default -> throw new IllegalStateException("can't reach here");
         }
+        notifyChange();
     }
 
     public void saveAllSystemConfiguration(List<ConfigurationModification> list) {
@@ -175,6 +184,7 @@ public class ConfigurationManager {
         list.stream()
             .filter(ConfigurationManager::toBeSaved)
             .forEach(c -> saveOrganizationConfiguration(organizationId, c.getKey(), c.getValue()));
+        notifyChange();
     }
 
     private void saveEventConfiguration(int eventId, int organizationId, String key, String optionValue) {
@@ -200,6 +210,7 @@ public class ConfigurationManager {
         list.stream()
             .filter(ConfigurationManager::toBeSaved)
             .forEach(c -> saveEventConfiguration(eventId, organizationId, c.getKey(), c.getValue()));
+        notifyChange();
     }
 
     public void saveCategoryConfiguration(int categoryId, int eventId, List<ConfigurationModification> list, String username) {
@@ -220,6 +231,7 @@ public class ConfigurationManager {
                     configurationRepository.insertTicketCategoryLevel(event.getOrganizationId(), eventId, categoryId, c.getKey(), value.get(), ConfigurationKeys.fromString(c.getKey()).getDescription());
                 }
             });
+        notifyChange();
     }
 
     private Optional<String> evaluateValue(String key, String value) {
@@ -254,6 +266,7 @@ public class ConfigurationManager {
                 configurationRepository.update(key.getValue(), value);
             }
         }
+        notifyChange();
     }
 
     /**
@@ -424,11 +437,13 @@ public class ConfigurationManager {
 
     public void deleteKey(String key) {
         configurationRepository.deleteByKey(key);
+        notifyChange();
     }
 
     public void deleteOrganizationLevelByKey(String key, int organizationId, String username) {
         Validate.isTrue(userManager.isOwnerOfOrganization(userManager.findUserByUsername(username), organizationId), DELETE_ERROR);
         configurationRepository.deleteOrganizationLevelByKey(key, organizationId);
+        notifyChange();
     }
 
     public void deleteEventLevelByKey(String key, int eventId, String username) {
@@ -436,6 +451,7 @@ public class ConfigurationManager {
         Validate.notNull(event, "Wrong event id");
         Validate.isTrue(userManager.isOwnerOfOrganization(userManager.findUserByUsername(username), event.getOrganizationId()), DELETE_ERROR);
         configurationRepository.deleteEventLevelByKey(key, eventId);
+        notifyChange();
     }
 
     public void deleteCategoryLevelByKey(String key, int eventId, int categoryId, String username) {
@@ -443,6 +459,42 @@ public class ConfigurationManager {
         Validate.notNull(event, "Wrong event id");
         Validate.isTrue(userManager.isOwnerOfOrganization(userManager.findUserByUsername(username), event.getOrganizationId()), DELETE_ERROR);
         configurationRepository.deleteCategoryLevelByKey(key, eventId, categoryId);
+        notifyChange();
+    }
+
+    /**
+     * Invalidates the cached configuration once the current transaction has been committed.
+     * Must be called after modifying the configuration directly through {@link ConfigurationRepository}.
+     */
+    public void notifyChange() {
+        ConfigurationSnapshotCache.markModifiedInCurrentTransaction();
+        applicationEventPublisher.publishEvent(new ConfigurationChanged());
+    }
+
+    /**
+     * Invalidates the configuration snapshots once the transaction which modified the settings has been committed.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void invalidateSnapshots(ConfigurationChanged configurationChanged) {
+        snapshotCache.invalidateAll();
+    }
+
+    /**
+     * Registers a listener which is notified every time the configuration snapshots are invalidated, either because
+     * the configuration has been modified on this node or because a change made by another node has been detected.
+     *
+     * @param listener the listener
+     */
+    public void addInvalidationListener(Runnable listener) {
+        snapshotCache.addInvalidationListener(listener);
+    }
+
+    /**
+     * Detects changes made by other nodes. The configuration version is checked at most once every
+     * {@code alfio.configuration.version-check-interval-ms}; if it has changed, the registered listeners are notified.
+     */
+    public void checkForChanges() {
+        snapshotCache.checkVersion();
     }
 
     private static Map<ConfigurationKeys.SettingCategory, List<Configuration>> collectConfigurationKeysByCategory(ConfigurationPathLevel pathLevel) {
@@ -550,22 +602,7 @@ public class ConfigurationManager {
     public Map<ConfigurationKeys, MaybeConfiguration> getFor(Collection<ConfigurationKeys> keys, ConfigurationLevel configurationLevel) {
         var keysAsString = keys.stream().map(ConfigurationKeys::getValue).collect(Collectors.toSet());
         List<ConfigurationKeyValuePathLevel> found = new ArrayList<>(externalConfiguration.getAll(keysAsString));
-        switch (configurationLevel.getPathLevel()) {
-            case SYSTEM -> found.addAll(configurationRepository.findByKeysAtSystemLevel(keysAsString));
-            case ORGANIZATION ->
-                found.addAll(configurationRepository.findByOrganizationAndKeys(((OrganizationLevel) configurationLevel).organizationId, keysAsString));
-            case EVENT -> {
-                var eventLevel = (EventLevel) configurationLevel;
-                found.addAll(configurationRepository.findByEventAndKeys(eventLevel.organizationId, eventLevel.eventId, keysAsString));
-            }
-            case TICKET_CATEGORY -> {
-                var categoryLevel = (CategoryLevel) configurationLevel;
-                found.addAll(configurationRepository.findByTicketCategoryAndKeys(categoryLevel.organizationId, categoryLevel.eventId, categoryLevel.categoryId, keysAsString));
-            }
-            default -> {
-                // ignore EXTERNAL
-            }
-        }
+        found.addAll(snapshotCache.find(keys, configurationLevel));
         return buildKeyConfigurationMapResult(keys, found);
     }
 
@@ -758,11 +795,13 @@ public class ConfigurationManager {
         if(existing.isPresent() && rotate) {
             apiKeyValue = generateApiKey();
             configurationRepository.update(SYSTEM_API_KEY.name(), apiKeyValue);
+            notifyChange();
         } else if(existing.isPresent()) {
             apiKeyValue = existing.get().getValue();
         } else {
             apiKeyValue = generateApiKey();
             configurationRepository.insert(SYSTEM_API_KEY.name(), apiKeyValue, SYSTEM_API_KEY.getDescription());
+            notifyChange();
         }
         return apiKeyValue;
     }
@@ -0,0 +1,254 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.manager.system.ConfigurationLevels.CategoryLevel;
+import alfio.manager.system.ConfigurationLevels.EventLevel;
+import alfio.manager.system.ConfigurationLevels.OrganizationLevel;
+import alfio.model.system.ConfigurationKeyValuePathLevel;
+import alfio.model.system.ConfigurationKeys;
+import alfio.model.system.ConfigurationPathLevel;
+import alfio.repository.system.ConfigurationRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static alfio.model.system.ConfigurationPathLevel.*;
+
+/**
+ * In-memory, immutable snapshots of the configuration, one for each level (system, organization, event, category).
+ * <p>
+ * Snapshots are loaded on demand and invalidated when a {@link alfio.model.system.command.ConfigurationChanged}
+ * event is received. Changes made by other nodes, or by writing directly on the configuration tables, are detected by
+ * checking the configuration version, at most once every {@code versionCheckInterval}.
+ * Other caches which depend on the configuration can register a listener, which is notified on every invalidation.
+ */
+final class ConfigurationSnapshotCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ConfigurationSnapshotCache.class);
+    private static final String QUERY_COUNTER_ATTRIBUTE = ConfigurationSnapshotCache.class.getName() + ".queries";
+    private static final Object MODIFIED_IN_TRANSACTION = new Object();
+
+    private final ConfigurationRepository configurationRepository;
+    private final Cache<LevelKey, Map<ConfigurationKeys, ConfigurationKeyValuePathLevel>> snapshots = Caffeine.newBuilder()
+        .maximumSize(10_000)
+        .expireAfterAccess(Duration.ofHours(1))
+        .build();
+    private final long versionCheckIntervalNanos;
+    private final AtomicLong nextVersionCheck;
+    private volatile long knownVersion = -1;
+    private final List<Runnable> invalidationListeners = new CopyOnWriteArrayList<>();
+
+    ConfigurationSnapshotCache(ConfigurationRepository configurationRepository, Duration versionCheckInterval) {
+        this.configurationRepository = configurationRepository;
+        this.versionCheckIntervalNanos = versionCheckInterval.toNanos();
+        this.nextVersionCheck = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Returns the values defined for the given keys on the given level and on all its parents, as stored in the database.
+     * The caller is responsible for selecting the most specific one.
+     */
+    List<ConfigurationKeyValuePathLevel> find(Collection<ConfigurationKeys> keys, ConfigurationLevel configurationLevel) {
+        List<Map<ConfigurationKeys, ConfigurationKeyValuePathLevel>> levels = new ArrayList<>(4);
+        switch (configurationLevel.getPathLevel()) {
+            case SYSTEM -> levels.add(system());
+            case ORGANIZATION -> {
+                var organizationId = ((OrganizationLevel) configurationLevel).organizationId;
+                levels.add(system());
+                levels.add(organization(organizationId));
+            }
+            case EVENT -> {
+                var eventLevel = (EventLevel) configurationLevel;
+                levels.add(system());
+                levels.add(organization(eventLevel.organizationId));
+                levels.add(event(eventLevel.organizationId, eventLevel.eventId));
+            }
+            case TICKET_CATEGORY -> {
+                var categoryLevel = (CategoryLevel) configurationLevel;
+                levels.add(system());
+                levels.add(organization(categoryLevel.organizationId));
+                levels.add(event(categoryLevel.organizationId, categoryLevel.eventId));
+                levels.add(category(categoryLevel.organizationId, categoryLevel.eventId, categoryLevel.categoryId));
+            }
+            default -> {
+                // ignore EXTERNAL
+            }
+        }
+        var result = new ArrayList<ConfigurationKeyValuePathLevel>();
+        for (var snapshot : levels) {
+            for (var key : keys) {
+                var value = snapshot.get(key);
+                if (value != null) {
+                    result.add(value);
+                }
+            }
+        }
+        return result;
+    }
+
+    void invalidateAll() {
+        nextVersionCheck.set(System.nanoTime());
+        invalidateSnapshots();
+    }
+
+    void addInvalidationListener(Runnable listener) {
+        invalidationListeners.add(listener);
+    }
+
+    /**
+     * Marks the current transaction as "dirty", so that it won't use nor populate the cache until it is completed.
+     */
+    static void markModifiedInCurrentTransaction() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+            || TransactionSynchronizationManager.hasResource(MODIFIED_IN_TRANSACTION)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(MODIFIED_IN_TRANSACTION, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(MODIFIED_IN_TRANSACTION);
+            }
+        });
+    }
+
+    /**
+     * @return the number of configuration queries performed while serving the current HTTP request
+     */
+    static int getQueriesForCurrentRequest() {
+        var attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return 0;
+        }
+        var counter = (AtomicInteger) attributes.getAttribute(QUERY_COUNTER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        return counter != null ? counter.get() : 0;
+    }
+
+    private Map<ConfigurationKeys, ConfigurationKeyValuePathLevel> system() {
+        return get(new LevelKey(SYSTEM, 0), configurationRepository::findAllAtSystemLevel);
+    }
+
+    private Map<ConfigurationKeys, ConfigurationKeyValuePathLevel> organization(int organizationId) {
+        return get(new LevelKey(ORGANIZATION, organizationId), () -> configurationRepository.findAllAtOrganizationLevel(organizationId));
+    }
+
+    private Map<ConfigurationKeys, ConfigurationKeyValuePathLevel> event(int organizationId, int eventId) {
+        return get(new LevelKey(EVENT, eventId), () -> configurationRepository.findAllAtEventLevel(organizationId, eventId));
+    }
+
+    private Map<ConfigurationKeys, ConfigurationKeyValuePathLevel> category(int organizationId, int eventId, int categoryId) {
+        return get(new LevelKey(TICKET_CATEGORY, categoryId), () -> configurationRepository.findAllAtTicketCategoryLevel(organizationId, eventId, categoryId));
+    }
+
+    private Map<ConfigurationKeys, ConfigurationKeyValuePathLevel> get(LevelKey key, Supplier<List<ConfigurationKeyValuePathLevel>> loader) {
+        if (TransactionSynchronizationManager.hasResource(MODIFIED_IN_TRANSACTION)) {
+            return load(loader);
+        }
+        checkVersion();
+        var snapshot = snapshots.getIfPresent(key);
+        if (snapshot == null) {
+            snapshot = load(loader);
+            // if row level security is active the snapshot could be incomplete, so we don't share it
+            if (!isRowAccessRestricted()) {
+                snapshots.put(key, snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    private Map<ConfigurationKeys, ConfigurationKeyValuePathLevel> load(Supplier<List<ConfigurationKeyValuePathLevel>> loader) {
+        countQuery();
+        var snapshot = new EnumMap<ConfigurationKeys, ConfigurationKeyValuePathLevel>(ConfigurationKeys.class);
+        for (var configuration : loader.get()) {
+            if (configuration.getConfigurationKey() != ConfigurationKeys.NOT_RECOGNIZED) {
+                snapshot.put(configuration.getConfigurationKey(), configuration);
+            }
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    private boolean isRowAccessRestricted() {
+        countQuery();
+        return configurationRepository.isRowAccessRestricted();
+    }
+
+    /**
+     * Checks the configuration version, if the last check has been performed more than {@code versionCheckInterval} ago.
+     * If the version has changed, the snapshots are invalidated and the listeners are notified.
+     */
+    void checkVersion() {
+        long next = nextVersionCheck.get();
+        long now = System.nanoTime();
+        // only one thread at a time performs the check, the others keep using the cached values
+        if (now - next < 0 || !nextVersionCheck.compareAndSet(next, now + versionCheckIntervalNanos)) {
+            return;
+        }
+        countQuery();
+        long version = configurationRepository.getConfigurationVersion();
+        if (version != knownVersion) {
+            knownVersion = version;
+            invalidateSnapshots();
+        }
+    }
+
+    private void invalidateSnapshots() {
+        snapshots.invalidateAll();
+        for (var listener : invalidationListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.warn("Error while notifying configuration invalidation", e);
+            }
+        }
+    }
+
+    private static void countQuery() {
+        var attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return;
+        }
+        var counter = (AtomicInteger) attributes.getAttribute(QUERY_COUNTER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (counter == null) {
+            var newCounter = new AtomicInteger();
+            attributes.setAttribute(QUERY_COUNTER_ATTRIBUTE, newCounter, RequestAttributes.SCOPE_REQUEST);
+            if (log.isDebugEnabled() && attributes instanceof ServletRequestAttributes servletRequestAttributes) {
+                var uri = servletRequestAttributes.getRequest().getRequestURI();
+                attributes.registerDestructionCallback(QUERY_COUNTER_ATTRIBUTE,
+                    () -> log.debug("{} configuration queries for request {}", newCounter.get(), uri), RequestAttributes.SCOPE_REQUEST);
+            }
+            counter = newCounter;
+        }
+        counter.incrementAndGet();
+    }
+
+    private record LevelKey(ConfigurationPathLevel level, int id) {
+    }
+}
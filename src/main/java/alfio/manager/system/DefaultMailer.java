@@ -24,8 +24,10 @@ import org.springframework.stereotype.Component;
 
 import java.net.http.HttpClient;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static alfio.model.system.ConfigurationKeys.MAILER_TYPE;
+import static alfio.model.system.ConfigurationKeys.MAIL_RATE_LIMIT_PER_SECOND;
 
 @Component
 public class DefaultMailer implements Mailer {
@@ -34,6 +36,7 @@ public class DefaultMailer implements Mailer {
     private final Map<String, Mailer> mailers;
     private final Mailer defaultMailer;
     private final Environment environment;
+    private final Map<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
 
     @Autowired
     public DefaultMailer(ConfigurationManager configurationManager,
@@ -57,11 +60,21 @@ public class DefaultMailer implements Mailer {
 
         subject = decorateSubjectIfDemo(subject, environment);
 
-        String mailerType = configurationManager.getFor(MAILER_TYPE, configurable.getConfigurationLevel())
-            .getValueOrDefault("disabled").toLowerCase(Locale.ENGLISH);
+        String mailerType = configurationManager.getFor(MAILER_TYPE, configurable.getConfigurationLevel()).getValueOrDefault("disabled").toLowerCase(Locale.ENGLISH);
 
         mailers.getOrDefault(mailerType, defaultMailer)
                 .send(configurable, fromName, to, cc, subject, text, html, attachments);
     }
 
+    @Override
+    public void acquireSendPermit(Configurable configurable) {
+        var conf = configurationManager.getFor(EnumSet.of(MAILER_TYPE, MAIL_RATE_LIMIT_PER_SECOND), configurable.getConfigurationLevel());
+        int rateLimit = conf.get(MAIL_RATE_LIMIT_PER_SECOND).getValueAsIntOrDefault(0);
+        if(rateLimit > 0) {
+            String mailerType = conf.get(MAILER_TYPE).getValueOrDefault("disabled").toLowerCase(Locale.ENGLISH);
+            rateLimiters.compute(mailerType, (k, existing) -> existing != null && existing.getPermitsPerSecond() == rateLimit ? existing : new RateLimiter(rateLimit))
+                .acquire();
+        }
+    }
+
 }
\ No newline at end of file
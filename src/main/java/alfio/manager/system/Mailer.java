@@ -30,6 +30,15 @@ public interface Mailer {
 
     void send(Configurable configurable, String fromName, String to, List<String> cc, String subject, String text, Optional<String> html, Attachment... attachment);
 
+    /**
+     * Waits until the configured sending rate allows a new message to be sent.
+     * Must be called outside any transaction, since it might block.
+     *
+     * @param configurable the sender
+     */
+    default void acquireSendPermit(Configurable configurable) {
+    }
+
     @Data
     class Attachment {
         private final String filename;
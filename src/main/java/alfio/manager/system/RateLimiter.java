@@ -0,0 +1,69 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Spreads the calls evenly, allowing at most one call every (1 / permitsPerSecond) seconds.
+ */
+class RateLimiter {
+    private final int permitsPerSecond;
+    private final long intervalNanos;
+    private final LongSupplier nanoTime;
+    private long nextSlot;
+
+    RateLimiter(int permitsPerSecond) {
+        this(permitsPerSecond, System::nanoTime);
+    }
+
+    RateLimiter(int permitsPerSecond, LongSupplier nanoTime) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.nanoTime = nanoTime;
+        this.nextSlot = nanoTime.getAsLong();
+    }
+
+    int getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Reserves the next free slot.
+     *
+     * @return the time to wait, in nanoseconds, before the slot begins
+     */
+    synchronized long reserve() {
+        long now = nanoTime.getAsLong();
+        long slot = Math.max(nextSlot, now);
+        nextSlot = slot + intervalNanos;
+        return slot - now;
+    }
+
+    void acquire() {
+        long waitNanos = reserve();
+        if(waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@
  */
 package alfio.manager.wallet;
 
+import alfio.manager.system.ConfigurationLevel;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.*;
 import alfio.model.metadata.TicketMetadata;
@@ -28,6 +29,8 @@ import alfio.util.MustacheCustomTag;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.auth.oauth2.ServiceAccountCredentials;
 import lombok.AllArgsConstructor;
@@ -38,7 +41,10 @@ import org.springframework.context.event.EventListener;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.Profiles;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -48,6 +54,7 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.security.interfaces.RSAPrivateKey;
+import java.time.Duration;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -64,6 +71,21 @@ public class GoogleWalletManager {
     private static final String WALLET_OBJECT_ID = "gWalletObjectId";
     private static final String AUTHORIZATION = "Authorization";
     private static final String BEARER_PLACEHOLDER = "Bearer %s";
+    private static final int PROVISIONING_BATCH_SIZE = 50;
+    // claimed tickets are not selected again by other instances until the lease expires
+    private static final int PROVISIONING_LEASE_SECONDS = 600;
+    private static final int PROVISIONING_RETRY_DELAY_SECONDS = 60;
+    private static final int PROVISIONING_MAX_DELAY_SECONDS = 86_400;
+    // parsed credentials keep the access token until it expires, so we can reuse them
+    private final Cache<String, GoogleCredentials> credentialsCache = Caffeine.newBuilder()
+        .maximumSize(10)
+        .expireAfterAccess(Duration.ofHours(1))
+        .build();
+    // classes already created or updated by this instance, along with their definition
+    private final Cache<String, String> provisionedClasses = Caffeine.newBuilder()
+        .maximumSize(1000)
+        .expireAfterWrite(Duration.ofHours(12))
+        .build();
     private final EventRepository eventRepository;
     private final ConfigurationManager configurationManager;
     private final EventDescriptionRepository eventDescriptionRepository;
@@ -73,6 +95,8 @@ public class GoogleWalletManager {
     private final ObjectMapper objectMapper;
     private final Environment environment;
     private final AuditingRepository auditingRepository;
+    private final WalletProvisioningRepository walletProvisioningRepository;
+    private final PlatformTransactionManager transactionManager;
 
     public Optional<Pair<EventAndOrganizationId, Ticket>> validateTicket(String eventName, String ticketUuid) {
         var eventOptional = eventRepository.findOptionalEventAndOrganizationIdByShortName(eventName);
@@ -96,6 +120,52 @@ public class GoogleWalletManager {
         }
     }
 
+    /**
+     * Creates the wallet objects of confirmed tickets, if {@link ConfigurationKeys#WALLET_PROVISION_IN_ADVANCE} is enabled.
+     * The "add to wallet" link of a provisioned ticket can be generated without contacting Google.
+     * <p>
+     * Tickets are claimed with a single statement, so no lock is held while calling Google. If the object cannot be
+     * created, the next attempt for that ticket is postponed, so that the following tickets are not blocked.
+     *
+     * @return the number of provisioned tickets
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int provisionWalletObjects() {
+        if (!configurationManager.getFor(WALLET_PROVISION_IN_ADVANCE, ConfigurationLevel.system()).getValueAsBooleanOrDefault()) {
+            return 0;
+        }
+        var ticketIds = walletProvisioningRepository.claimTicketsWithoutWalletObject(PROVISIONING_BATCH_SIZE, PROVISIONING_LEASE_SECONDS);
+        if (ticketIds.isEmpty()) {
+            return 0;
+        }
+        var transactionTemplate = new TransactionTemplate(transactionManager);
+        Map<Integer, Event> events = new HashMap<>();
+        Map<Integer, Map<ConfigurationKeys, String>> configurations = new HashMap<>();
+        int provisioned = 0;
+        for (Ticket ticket : ticketRepository.findByIds(ticketIds)) {
+            try {
+                var event = events.computeIfAbsent(ticket.getEventId(), eventRepository::findById);
+                // BASE_URL and the wallet settings can be overridden by the organization or by the event
+                var passConf = configurations.computeIfAbsent(event.getId(), id -> getConfigurationKeys(event));
+                if (passConf.isEmpty()) {
+                    walletProvisioningRepository.registerFailure(ticket.getId(), "Google Wallet integration is not enabled.", PROVISIONING_MAX_DELAY_SECONDS, PROVISIONING_MAX_DELAY_SECONDS);
+                    continue;
+                }
+                var eventObjectId = createWalletEntities(ticket, event, passConf);
+                transactionTemplate.executeWithoutResult(status -> {
+                    persistPassId(ticket, eventObjectId);
+                    walletProvisioningRepository.deleteAttempt(ticket.getId());
+                });
+                provisioned++;
+            } catch (RuntimeException e) {
+                log.warn("Cannot provision wallet object for ticket " + ticket.getUuid(), e);
+                walletProvisioningRepository.registerFailure(ticket.getId(), e.getMessage(), PROVISIONING_RETRY_DELAY_SECONDS, PROVISIONING_MAX_DELAY_SECONDS);
+            }
+        }
+        log.debug("provisioned {} wallet objects out of {}", provisioned, ticketIds.size());
+        return provisioned;
+    }
+
     @EventListener
     public void invalidateAccessForTicket(InvalidateAccess invalidateAccess) {
         try {
@@ -118,7 +188,7 @@ public class GoogleWalletManager {
             URI uriWithId = URI.create(String.format("%s/%s", EventTicketObject.WALLET_URL, objectId));
             HttpRequest expireRequest = HttpRequest.newBuilder()
                 .uri(uriWithId)
-                .header(AUTHORIZATION, String.format(BEARER_PLACEHOLDER, credentials.refreshAccessToken().getTokenValue()))
+                .header(AUTHORIZATION, String.format(BEARER_PLACEHOLDER, getAccessToken(credentials)))
                 .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"state\":\"INACTIVE\"}"))
                 .build();
             var response = httpClient.send(expireRequest, HttpResponse.BodyHandlers.ofString());
@@ -136,13 +206,17 @@ public class GoogleWalletManager {
     }
 
     private Map<ConfigurationKeys, String> getConfigurationKeys(EventAndOrganizationId event) {
+        return getConfigurationKeys(event.getConfigurationLevel());
+    }
+
+    private Map<ConfigurationKeys, String> getConfigurationKeys(ConfigurationLevel configurationLevel) {
         var conf = configurationManager.getFor(Set.of(
                 ENABLE_WALLET,
                 WALLET_ISSUER_IDENTIFIER,
                 WALLET_SERVICE_ACCOUNT_KEY,
                 WALLET_OVERWRITE_PREVIOUS_CLASSES_AND_EVENTS,
                 BASE_URL),
-            event.getConfigurationLevel());
+            configurationLevel);
 
         if (!conf.get(ENABLE_WALLET).getValueAsBooleanOrDefault()) {
             return Map.of();
@@ -166,6 +240,18 @@ public class GoogleWalletManager {
     private String buildWalletPassUrl(Ticket ticket,
                                       Event event,
                                       Map<ConfigurationKeys, String> config) {
+        String eventObjectId = formatEventTicketObjectId(ticket, event, config.get(WALLET_ISSUER_IDENTIFIER), walletHost(config));
+        if (!eventObjectId.equals(getPersistedPassId(ticket))) {
+            eventObjectId = createWalletEntities(ticket, event, config);
+            persistPassId(ticket, eventObjectId);
+        }
+        // the object has already been created for the current ticket holder. We only need to sign the link
+        return generateWalletPassUrl(retrieveCredentials(config.get(WALLET_SERVICE_ACCOUNT_KEY)), eventObjectId, config.get(BASE_URL));
+    }
+
+    private String createWalletEntities(Ticket ticket,
+                                        Event event,
+                                        Map<ConfigurationKeys, String> config) {
         String baseUrl = config.get(BASE_URL);
         String issuerId = config.get(WALLET_ISSUER_IDENTIFIER);
         String serviceAccountKey = config.get(WALLET_SERVICE_ACCOUNT_KEY);
@@ -182,7 +268,7 @@ public class GoogleWalletManager {
             latitudeLongitudePoint = EventTicketClass.LatitudeLongitudePoint.of(Double.parseDouble(event.getLatitude()), Double.parseDouble(event.getLongitude()));
         }
 
-        var host = URI.create(baseUrl).getHost().replace(".", "-");
+        var host = walletHost(config);
         var eventTicketClass = EventTicketClass.builder()
             .id(formatEventTicketClassId(event, issuerId, category, host))
             .eventOrGroupingId(Integer.toString(event.getId()))
@@ -208,20 +294,36 @@ public class GoogleWalletManager {
         GoogleCredentials credentials = retrieveCredentials(serviceAccountKey);
 
         createEventClass(credentials, eventTicketClass, overwritePreviousClassesAndEvents);
-        String eventObjectId = createEventObject(credentials, eventTicketObject, overwritePreviousClassesAndEvents);
-        String walletPassUrl = generateWalletPassUrl(credentials, eventObjectId, baseUrl);
-        persistPassId(ticket, eventObjectId);
-        return walletPassUrl;
+        return createEventObject(credentials, eventTicketObject, overwritePreviousClassesAndEvents);
     }
 
-    private static GoogleCredentials retrieveCredentials(String serviceAccountKey) {
-        try {
-            return GoogleCredentials
-                .fromStream(new ByteArrayInputStream(serviceAccountKey.getBytes(StandardCharsets.UTF_8)))
-                .createScoped(Collections.singleton("https://www.googleapis.com/auth/wallet_object.issuer"));
-        } catch (IOException e) {
-            throw new GoogleWalletException("Unable to retrieve Service Account Credentials from configuration", e);
-        }
+    private static String walletHost(Map<ConfigurationKeys, String> config) {
+        return URI.create(config.get(BASE_URL)).getHost().replace(".", "-");
+    }
+
+    private GoogleCredentials retrieveCredentials(String serviceAccountKey) {
+        return credentialsCache.get(serviceAccountKey, key -> {
+            try {
+                return GoogleCredentials
+                    .fromStream(new ByteArrayInputStream(key.getBytes(StandardCharsets.UTF_8)))
+                    .createScoped(Collections.singleton("https://www.googleapis.com/auth/wallet_object.issuer"));
+            } catch (IOException e) {
+                throw new GoogleWalletException("Unable to retrieve Service Account Credentials from configuration", e);
+            }
+        });
+    }
+
+    private static String getAccessToken(GoogleCredentials credentials) throws IOException {
+        // a new token is requested only if the current one is missing or about to expire
+        credentials.refreshIfExpired();
+        return credentials.getAccessToken().getTokenValue();
+    }
+
+    private String getPersistedPassId(Ticket ticket) {
+        return ticketRepository.getTicketMetadata(ticket.getId())
+            .getMetadataForKey(TicketMetadataContainer.GENERAL)
+            .map(m -> m.getAttributes().get(WALLET_OBJECT_ID))
+            .orElse(null);
     }
 
     private void persistPassId(Ticket ticket, String eventObjectId) {
@@ -270,7 +372,14 @@ public class GoogleWalletManager {
     }
 
     private String createEventClass(GoogleCredentials credentials, EventTicketClass eventTicketClass, boolean overwritePreviousClassesAndEvents) {
-        return createOnWallet(EventTicketClass.WALLET_URL, credentials, eventTicketClass, overwritePreviousClassesAndEvents);
+        // the class is shared by all the tickets of the same category, we contact Google only if its definition has changed
+        var definition = eventTicketClass.build(objectMapper);
+        if (definition.equals(provisionedClasses.getIfPresent(eventTicketClass.getId()))) {
+            return eventTicketClass.getId();
+        }
+        var id = createOnWallet(EventTicketClass.WALLET_URL, credentials, eventTicketClass, overwritePreviousClassesAndEvents);
+        provisionedClasses.put(id, definition);
+        return id;
     }
 
     private String createEventObject(GoogleCredentials credentials, EventTicketObject eventTicketObject, boolean overwritePreviousClassesAndEvents) {
@@ -282,7 +391,7 @@ public class GoogleWalletManager {
             URI uriWithId = URI.create(String.format("%s/%s", uri, entity.getId()));
             HttpRequest getRequest = HttpRequest.newBuilder()
                 .uri(uriWithId)
-                .header(AUTHORIZATION, String.format(BEARER_PLACEHOLDER, credentials.refreshAccessToken().getTokenValue()))
+                .header(AUTHORIZATION, String.format(BEARER_PLACEHOLDER, getAccessToken(credentials)))
                 .GET()
                 .build();
             log.debug("GET Request: {}", getRequest);
@@ -296,7 +405,7 @@ public class GoogleWalletManager {
 
             if (getResponse.statusCode() == 404 || overwritePreviousClassesAndEvents) {
                 HttpRequest.Builder builder = HttpRequest.newBuilder()
-                    .header(AUTHORIZATION, String.format(BEARER_PLACEHOLDER, credentials.refreshAccessToken().getTokenValue()));
+                    .header(AUTHORIZATION, String.format(BEARER_PLACEHOLDER, getAccessToken(credentials)));
                 if (getResponse.statusCode() == 404) {
                     builder = builder
                         .uri(URI.create(uri))
@@ -0,0 +1,34 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model;
+
+import ch.digitalfondue.npjt.ConstructorAnnotationRowMapper.Column;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Position assigned to a buyer in the admission queue of an event. The buyer at {@code startPosition} is admitted
+ * at {@code startTs}, the following ones at the configured rate.
+ *
+ * @param position the position assigned to the buyer
+ * @param startPosition the position from which the queue has been (re)started
+ * @param startTs the admission time of the buyer at {@code startPosition}
+ */
+public record AdmissionQueuePosition(@Column("position") long position,
+                                     @Column("start_position") long startPosition,
+                                     @Column("start_ts") ZonedDateTime startTs) {
+}
@@ -0,0 +1,27 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model.system.command;
+
+/**
+ * Published when an uploaded resource (e.g. a template override) has been saved or deleted.
+ *
+ * @param name the resource name
+ * @param organizationId the organization id, or {@code null} for system-level resources
+ * @param eventId the event id, or {@code null} for organization/system-level resources
+ */
+public record UploadedResourceChanged(String name, Integer organizationId, Integer eventId) {
+}
@@ -30,4 +30,12 @@ public interface TransactionWebhookPayload {
 
     Status getStatus();
 
+    /**
+     * @return the unique identifier assigned by the provider to this notification, if available.
+     * Used to discard duplicate deliveries.
+     */
+    default String getEventId() {
+        return null;
+    }
+
 }
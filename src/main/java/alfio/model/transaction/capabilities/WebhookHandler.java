@@ -35,6 +35,13 @@ public interface WebhookHandler extends Capability {
 
     Optional<TransactionWebhookPayload> parseTransactionPayload(String body, String signature, Map<String, String> additionalInfo, PaymentContext paymentContext);
 
+    /**
+     * Parses a payload which has been already verified by {@link #parseTransactionPayload(String, String, Map, PaymentContext)}
+     */
+    default Optional<TransactionWebhookPayload> parseVerifiedTransactionPayload(String body, Map<String, String> additionalInfo, PaymentContext paymentContext) {
+        return parseTransactionPayload(body, null, additionalInfo, paymentContext);
+    }
+
     PaymentWebhookResult processWebhook(TransactionWebhookPayload payload, Transaction transaction, PaymentContext paymentContext);
 
     PaymentWebhookResult forceTransactionCheck(TicketReservation reservation, Transaction transaction, PaymentContext paymentContext);
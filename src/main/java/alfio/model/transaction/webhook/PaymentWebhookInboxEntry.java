@@ -0,0 +1,38 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model.transaction.webhook;
+
+import alfio.model.support.JSONData;
+import alfio.model.transaction.PaymentProxy;
+import ch.digitalfondue.npjt.ConstructorAnnotationRowMapper.Column;
+
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+/**
+ * A verified payment webhook, waiting to be processed.
+ */
+public record PaymentWebhookInboxEntry(@Column("id") long id,
+                                       @Column("payment_proxy") PaymentProxy paymentProxy,
+                                       @Column("provider_event_id") String providerEventId,
+                                       @Column("reservation_id") String reservationId,
+                                       @Column("event_type") String eventType,
+                                       @Column("body") String body,
+                                       @Column("additional_info") @JSONData Map<String, String> additionalInfo,
+                                       @Column("attempts") int attempts,
+                                       @Column("received_ts") ZonedDateTime receivedTs) {
+}
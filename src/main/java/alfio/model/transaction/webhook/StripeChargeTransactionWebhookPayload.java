@@ -23,10 +23,12 @@ public class StripeChargeTransactionWebhookPayload implements TransactionWebhook
 
     private final String type;
     private final Charge payload;
+    private final String eventId;
 
-    public StripeChargeTransactionWebhookPayload(String type, Charge payload) {
+    public StripeChargeTransactionWebhookPayload(String type, Charge payload, String eventId) {
         this.type = type;
         this.payload = payload;
+        this.eventId = eventId;
     }
 
     @Override
@@ -44,6 +46,11 @@ public class StripeChargeTransactionWebhookPayload implements TransactionWebhook
         return payload.getMetadata().get("reservationId");
     }
 
+    @Override
+    public String getEventId() {
+        return eventId;
+    }
+
     @Override
     public Status getStatus() {
         return payload.getStatus().equals("succeeded") ? Status.SUCCESS : Status.FAILURE;
@@ -23,10 +23,12 @@ public class StripePaymentIntentWebhookPayload implements TransactionWebhookPayl
 
     private final String type;
     private final PaymentIntent payload;
+    private final String eventId;
 
-    public StripePaymentIntentWebhookPayload(String type, PaymentIntent payload) {
+    public StripePaymentIntentWebhookPayload(String type, PaymentIntent payload, String eventId) {
         this.type = type;
         this.payload = payload;
+        this.eventId = eventId;
     }
 
     @Override
@@ -44,6 +46,11 @@ public class StripePaymentIntentWebhookPayload implements TransactionWebhookPayl
         return payload.getMetadata().get("reservationId");
     }
 
+    @Override
+    public String getEventId() {
+        return eventId;
+    }
+
     @Override
     public Status getStatus() {
         return payload.getStatus().equals("succeeded") ? Status.SUCCESS : Status.FAILURE;
@@ -46,15 +46,12 @@ public interface AdminReservationRequestRepository {
         getNamedParameterJdbcTemplate().batchUpdate("insert into admin_reservation_request(user_id, request_id, event_id, request_type, status, body) values(:userId, :requestId, :eventId, :requestType, :status, :body)", requests);
     }
 
-    @Query("select id from admin_reservation_request where status = 'PENDING' order by request_id limit :limit for update skip locked")
-    List<Long> findPendingForUpdate(@Bind("limit") int limit);
+    @Query("select * from admin_reservation_request where status = 'PENDING' order by request_id, id limit :limit for update skip locked")
+    List<AdminReservationRequest> findPendingForUpdate(@Bind("limit") int limit);
 
     @Query("select count(*) from admin_reservation_request where status = 'PENDING'")
     Integer countPending();
 
-    @Query("select * from admin_reservation_request where id = :id")
-    AdminReservationRequest fetchCompleteById(@Bind("id") long id);
-
     //todo, would be better to have more sane parameters, we are leaking the details here
     default void updateStatus(List<MapSqlParameterSource> params) {
         getNamedParameterJdbcTemplate().batchUpdate("update admin_reservation_request set status = :status, reservation_id = :reservationId, failure_code = :failureCode where id = :id", params.toArray(new MapSqlParameterSource[0]));
@@ -0,0 +1,100 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.model.AdmissionQueuePosition;
+import alfio.model.AdmissionQueueEntry;
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+import ch.digitalfondue.npjt.QueryType;
+
+import java.time.ZonedDateTime;
+
+@QueryRepository
+public interface AdmissionQueueRepository {
+
+    // the next position would be admitted before "now", i.e. all the buyers in the queue have been admitted already
+    String QUEUE_IS_EMPTY = "admission_queue.start_ts + make_interval(secs => cast(admission_queue.next_position - admission_queue.start_position as double precision) / :rate) < :now";
+
+    /**
+     * Assigns the next position in the admission queue of the given event, creating the queue if needed. An empty queue
+     * is restarted from the assigned position.
+     * The row of the event stays locked until the end of the transaction, so that the positions of the same event are assigned
+     * one at a time. Queues of other events are not affected.
+     */
+    @Query(type = QueryType.MODIFYING_WITH_RETURN, value = "insert into admission_queue(event_id, organization_id_fk, start_position, start_ts, next_position)" +
+        " values(:eventId, :organizationId, 0, :now, 1)" +
+        " on conflict(event_id) do update set" +
+        " start_position = case when " + QUEUE_IS_EMPTY + " then admission_queue.next_position else admission_queue.start_position end," +
+        " start_ts = case when " + QUEUE_IS_EMPTY + " then :now else admission_queue.start_ts end," +
+        " next_position = admission_queue.next_position + 1" +
+        " returning next_position - 1 as position, start_position, start_ts")
+    AdmissionQueuePosition nextPosition(@Bind("eventId") int eventId,
+                                        @Bind("organizationId") int organizationId,
+                                        @Bind("rate") int rate,
+                                        @Bind("now") ZonedDateTime now);
+
+    /**
+     * Returns the entry of the given client, creating an expired one if the client is not in the queue yet.
+     * The entry stays locked until the end of the transaction, so that concurrent requests of the same client are serialized.
+     */
+    @Query(type = QueryType.MODIFYING_WITH_RETURN, value = "insert into admission_queue_entry(event_id, organization_id_fk, client_id, client_address, admission_ts, creation_ts)" +
+        " values(:eventId, :organizationId, :clientId, :clientAddress, to_timestamp(0), :now)" +
+        " on conflict(event_id, client_id) do update set client_id = excluded.client_id" +
+        " returning id, admission_ts")
+    AdmissionQueueEntry lockEntry(@Bind("eventId") int eventId,
+                                  @Bind("organizationId") int organizationId,
+                                  @Bind("clientId") String clientId,
+                                  @Bind("clientAddress") String clientAddress,
+                                  @Bind("now") ZonedDateTime now);
+
+    /**
+     * Counts the entries created from the given address by other clients.
+     */
+    @Query("select count(*) from admission_queue_entry where event_id = :eventId and client_address = :clientAddress" +
+        " and creation_ts > :since and client_id <> :clientId")
+    int countEntriesFromAddress(@Bind("eventId") int eventId,
+                                @Bind("clientAddress") String clientAddress,
+                                @Bind("clientId") String clientId,
+                                @Bind("since") ZonedDateTime since);
+
+    @Query("update admission_queue_entry set client_address = :clientAddress, admission_ts = :admissionTs, creation_ts = :now, reservation_attempts = 0 where id = :id")
+    int updateEntry(@Bind("id") long id,
+                    @Bind("clientAddress") String clientAddress,
+                    @Bind("admissionTs") ZonedDateTime admissionTs,
+                    @Bind("now") ZonedDateTime now);
+
+    /**
+     * Counts a reservation attempt made with the token of the given entry.
+     *
+     * @return 1 if the attempt is allowed, 0 if the entry does not belong to the client or if there are no attempts left
+     */
+    @Query("update admission_queue_entry set reservation_attempts = reservation_attempts + 1" +
+        " where id = :id and event_id = :eventId and client_id = :clientId and reservation_attempts < :maxAttempts")
+    int registerReservationAttempt(@Bind("id") long id,
+                                   @Bind("eventId") int eventId,
+                                   @Bind("clientId") String clientId,
+                                   @Bind("maxAttempts") int maxAttempts);
+
+    /**
+     * Removes the entries which can no longer be used, nor count for the limit of entries from the same address.
+     */
+    @Query("delete from admission_queue_entry where admission_ts < :admittedBefore and creation_ts < :createdBefore")
+    int deleteExpiredEntries(@Bind("admittedBefore") ZonedDateTime admittedBefore,
+                             @Bind("createdBefore") ZonedDateTime createdBefore);
+}
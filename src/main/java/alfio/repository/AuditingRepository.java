@@ -25,6 +25,8 @@ import alfio.util.Json;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import java.time.ZonedDateTime;
 import java.util.Collection;
@@ -67,6 +69,13 @@ public interface AuditingRepository {
         return insert(reservationId, userId, eventId, eventType, eventTime, entityType, entityId, modifications);
     }
 
+    NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
+
+    default int[] bulkInsert(MapSqlParameterSource[] params) {
+        return getNamedParameterJdbcTemplate().batchUpdate("insert into auditing(reservation_id, user_id, event_id, event_type, event_time, entity_type, entity_id)" +
+            " values (:reservationId, :userId, :eventId, :eventType, :eventTime, :entityType, :entityId)", params);
+    }
+
 
     @Query("select * from auditing_user where reservation_id = :reservationId order by event_time asc")
     List<Audit> findAllForReservation(@Bind("reservationId") String reservationId);
@@ -82,18 +82,22 @@ public interface EmailMessageRepository {
                 " where (" +
                 " (event_id is not null and event_id in (select id from event where end_ts > now())) or " +
                 " (subscription_descriptor_id_fk is not null and subscription_descriptor_id_fk in (select id from subscription_descriptor where validity_to is null or validity_to > now())) " +
-                ") and (status = 'WAITING' or status = 'RETRY') limit 100 for update skip locked")
-    List<EmailMessage> loadAllWaitingForProcessing();
+                ") and (status = 'WAITING' or status = 'RETRY') limit :limit for update skip locked")
+    List<EmailMessage> loadAllWaitingForProcessing(@Bind("limit") int limit);
 
     @Query("update email_message set status = 'SENT', sent_ts = :sentTimestamp, html_message = null where id = :id and checksum = :checksum and status in (:expectedStatuses)")
     int updateStatusToSent(@Bind("id") int id, @Bind("checksum") String checksum, @Bind("sentTimestamp") ZonedDateTime sentTimestamp, @Bind("expectedStatuses") List<String> expectedStatuses);
 
     String LIGHTWEIGHT_FIELDS = "id, event_id, subscription_descriptor_id_fk, status, recipient, subject, message, checksum, request_ts, sent_ts, attempts, email_cc, organization_id_fk ";
+    // backed by the trigram index created by V206_2_0_0_51_1__Search_Indexes. Keep it in sync.
+    // The message body is not indexed, it is matched only within the messages of the given event or subscription.
+    String SEARCH_DOCUMENT = "lower(coalesce(recipient, '') || chr(31) || coalesce(subject, ''))";
+    String SEARCH_FILTER = " (:search is null or " + SEARCH_DOCUMENT + " like lower(:search) or lower(message) like lower(:search)) ";
     String FIND_MAILS_BY_EVENT = "select " + LIGHTWEIGHT_FIELDS + " from email_message where event_id = :eventId and " +
-        " (:search is null or (recipient like :search or subject like :search or message like :search)) order by sent_ts desc, id ";
+        SEARCH_FILTER + "order by sent_ts desc, id ";
 
     String FIND_MAILS_BY_SUBSCRIPTION = "select " + LIGHTWEIGHT_FIELDS + " from email_message where subscription_descriptor_id_fk = :subscriptionId and " +
-        " (:search is null or (recipient like :search or subject like :search or message like :search)) order by sent_ts desc, id ";
+        SEARCH_FILTER + "order by sent_ts desc, id ";
 
     @Query("select * from (" + FIND_MAILS_BY_EVENT +" limit :pageSize offset :page) as d_tbl")
     List<LightweightMailMessage> findByEventId(@Bind("eventId") int eventId, @Bind("page") int page, @Bind("pageSize") int pageSize, @Bind("search") String search);
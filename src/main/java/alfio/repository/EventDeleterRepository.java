@@ -65,6 +65,18 @@ public interface EventDeleterRepository {
 	@Query("delete from ticket where event_id = :eventId")
 	int deleteTicket(@Bind("eventId") int eventId);
 
+	@Query("delete from ticket_status_count where event_id = :eventId")
+	int deleteTicketStatusCount(@Bind("eventId") int eventId);
+
+	@Query("delete from ticket_status_count_delta where event_id = :eventId")
+	int deleteTicketStatusCountDelta(@Bind("eventId") int eventId);
+
+	@Query("delete from admission_queue where event_id = :eventId")
+	int deleteAdmissionQueue(@Bind("eventId") int eventId);
+
+	@Query("delete from admission_queue_entry where event_id = :eventId")
+	int deleteAdmissionQueueEntries(@Bind("eventId") int eventId);
+
 	@Query("delete from tickets_reservation where event_id_fk = :eventId")
 	int deleteReservation(@Bind("eventId") int eventId);
 
@@ -113,6 +125,8 @@ public interface EventDeleterRepository {
     default void deleteAllForEvent(int eventId) {
         deletePolls(eventId);
         deleteWaitingQueue(eventId);
+        deleteAdmissionQueue(eventId);
+        deleteAdmissionQueueEntries(eventId);
         deleteWhitelistedTickets(eventId);
         deleteGroupLinks(eventId);
         deleteConfigurationEvent(eventId);
@@ -128,6 +142,8 @@ public interface EventDeleterRepository {
         deleteEventMigration(eventId);
         deleteSponsorScan(eventId);
         deleteTicket(eventId);
+        deleteTicketStatusCount(eventId);
+        deleteTicketStatusCountDelta(eventId);
         deleteTransactions(eventId);
         deleteBillingDocuments(eventId);
         deleteReservation(eventId);
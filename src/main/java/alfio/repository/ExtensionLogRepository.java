@@ -21,6 +21,8 @@ import alfio.model.ExtensionLog;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import java.util.List;
 
@@ -34,6 +36,17 @@ public interface ExtensionLogRepository {
                @Bind("description") String description,
                @Bind("type") ExtensionLog.Type type);
 
+    NamedParameterJdbcTemplate getJdbcTemplate();
+
+    /**
+     * Inserts multiple entries in a single batch. The {@code age} parameter (seconds) is used to compute the
+     * timestamp of the entry, since the insert can happen after the entry has been logged.
+     */
+    default int[] bulkInsert(MapSqlParameterSource[] params) {
+        return getJdbcTemplate().batchUpdate("insert into extension_log(effective_path, path, name, description, type, event_ts)" +
+            " values (:effectivePath, :path, :name, :description, :type, clock_timestamp() - make_interval(secs => :age))", params);
+    }
+
     String FIND_EXTENSION_LOG = "select * from extension_log where ((:path is null or path = :path) and (:name is null or name = :name)) and (:type is null or type = :type) order by event_ts desc";
 
     @Query("select count(*) from (" + FIND_EXTENSION_LOG + ") as el_tbl")
@@ -0,0 +1,76 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.model.support.JSONData;
+import alfio.model.transaction.webhook.PaymentWebhookInboxEntry;
+import alfio.model.transaction.webhook.PaymentWebhookInboxStatus;
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.Optional;
+
+@QueryRepository
+public interface PaymentWebhookInboxRepository {
+
+    /**
+     * Stores a webhook. Deliveries of an event which has been already received are ignored.
+     *
+     * @return 1 if the webhook has been stored, 0 if it was a duplicate
+     */
+    @Query("insert into payment_webhook_inbox(payment_proxy, provider_event_id, reservation_id, event_type, body, additional_info)" +
+        " values(:paymentProxy, :providerEventId, :reservationId, :eventType, :body, :additionalInfo::jsonb) on conflict do nothing")
+    int insert(@Bind("paymentProxy") String paymentProxy,
+               @Bind("providerEventId") String providerEventId,
+               @Bind("reservationId") String reservationId,
+               @Bind("eventType") String eventType,
+               @Bind("body") String body,
+               @Bind("additionalInfo") @JSONData Map<String, String> additionalInfo);
+
+    /**
+     * Locks the next webhook to be processed. Webhooks for the same reservation are processed one at a time, in order.
+     * A webhook waiting for a retry does not hold back the following ones.
+     */
+    @Query("select * from payment_webhook_inbox i where status = 'PENDING' and next_attempt_ts <= now()" +
+        " and not exists(select 1 from payment_webhook_inbox p where p.reservation_id = i.reservation_id and p.status = 'PENDING'" +
+        " and p.next_attempt_ts <= now() and p.id < i.id)" +
+        " order by id limit 1 for update skip locked")
+    Optional<PaymentWebhookInboxEntry> lockNextPending();
+
+    @Query("update payment_webhook_inbox set status = 'PROCESSED', attempts = attempts + 1, processed_ts = now(), last_result = :result where id = :id")
+    int markAsProcessed(@Bind("id") long id, @Bind("result") String result);
+
+    @Query("update payment_webhook_inbox set attempts = attempts + 1, last_result = :error," +
+        " next_attempt_ts = now() + make_interval(secs => :delaySeconds)," +
+        " status = case when attempts + 1 >= :maxAttempts then 'FAILED' else status end," +
+        " processed_ts = case when attempts + 1 >= :maxAttempts then now() end" +
+        " where id = :id")
+    int registerFailure(@Bind("id") long id,
+                        @Bind("error") String error,
+                        @Bind("delaySeconds") int delaySeconds,
+                        @Bind("maxAttempts") int maxAttempts);
+
+    @Query("select count(*) as pending, coalesce(extract(epoch from now() - min(received_ts)), 0)::bigint as lag_seconds" +
+        " from payment_webhook_inbox where status = 'PENDING'")
+    PaymentWebhookInboxStatus getStatus();
+
+    @Query("delete from payment_webhook_inbox where status <> 'PENDING' and processed_ts < :limit")
+    int deleteProcessedBefore(@Bind("limit") ZonedDateTime limit);
+}
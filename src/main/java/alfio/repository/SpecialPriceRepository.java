@@ -18,6 +18,7 @@ package alfio.repository;
 
 import alfio.model.SpecialPrice;
 import alfio.model.TicketCategory;
+import alfio.model.support.Array;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
@@ -68,9 +69,6 @@ public interface SpecialPriceRepository {
     @Query("select * from special_price where code = :code for update skip locked")
     Optional<SpecialPrice> getForUpdateByCode(@Bind("code") String code);
 
-    @Query("select count(*) from special_price where code = :code")
-    Integer countByCode(@Bind("code") String code);
-
     @Query("update special_price set status = :status, session_id = null, access_code_id_fk = :accessCodeId where id in (:ids)")
     int batchUpdateStatus(@Bind("ids") List<Integer> ids, @Bind("status") SpecialPrice.Status status, @Bind("accessCodeId") Integer accessCodeId);
 
@@ -89,8 +87,18 @@ public interface SpecialPriceRepository {
         " where id in (select special_price_id_fk from ticket where ticket.id in (:ticketIds) and special_price_id_fk is not null) ")
     int resetToFreeAndCleanupForTickets(@Bind("ticketIds") List<Integer> ticketIds);
 
-    @Query("update special_price set code = :code, status = 'FREE', sent_ts = null where id = :id")
-    int updateCode(@Bind("code") String code, @Bind("id") int id);
+    @Query("select code from special_price where code in (:codes)")
+    List<String> findExistingCodes(@Bind("codes") Collection<String> codes);
+
+    /**
+     * Assigns the given codes to the special prices. Codes which are already in use are skipped.
+     *
+     * @return the ids of the special prices which have been updated
+     */
+    @Query(type = QueryType.MODIFYING_WITH_RETURN, value = "update special_price sp set code = v.code, status = 'FREE', sent_ts = null" +
+        " from (select unnest(:ids::integer[]) as id, unnest(:codes::text[]) as code) v" +
+        " where sp.id = v.id and not exists(select 1 from special_price e where e.code = v.code) returning sp.id")
+    List<Integer> bulkUpdateCodes(@Bind("ids") @Array(type = "INTEGER") List<Integer> ids, @Bind("codes") @Array List<String> codes);
 
     NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
 
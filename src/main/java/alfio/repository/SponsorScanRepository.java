@@ -18,6 +18,7 @@ package alfio.repository;
 
 import alfio.model.DetailedScanData;
 import alfio.model.SponsorScan;
+import alfio.model.support.Array;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
@@ -53,6 +54,22 @@ public interface SponsorScanRepository {
                                  @Bind("leadStatus") SponsorScan.LeadStatus leadStatus,
                                  @Bind("operator") String operator);
 
+    /**
+     * Registers the given scans with a single statement. Scans which have already been registered
+     * keep their original creation timestamp; only notes and lead status are updated.
+     */
+    @Query("insert into sponsor_scan (user_id, creation, event_id, ticket_id, notes, lead_status, operator)" +
+        " select :userId, :creation, :eventId, v.ticket_id, v.notes, v.lead_status, :operator" +
+        " from (select unnest(:ticketIds::integer[]) as ticket_id, unnest(:notes::text[]) as notes, unnest(:leadStatuses::text[]) as lead_status) v" +
+        " on conflict on constraint spsc_unique_ticket do update set notes = excluded.notes, lead_status = excluded.lead_status")
+    int bulkUpsert(@Bind("userId") int userId,
+                   @Bind("creation") ZonedDateTime creation,
+                   @Bind("eventId") int eventId,
+                   @Bind("ticketIds") @Array(type = "INTEGER") List<Integer> ticketIds,
+                   @Bind("notes") @Array List<String> notes,
+                   @Bind("leadStatuses") @Array List<String> leadStatuses,
+                   @Bind("operator") String operator);
+
     @Query("select t.id t_id, t.uuid t_uuid, t.creation t_creation, t.category_id t_category_id, t.status t_status, t.event_id t_event_id," +
         " t.src_price_cts t_src_price_cts, t.final_price_cts t_final_price_cts, t.vat_cts t_vat_cts, t.discount_cts t_discount_cts, t.tickets_reservation_id t_tickets_reservation_id," +
         " t.full_name t_full_name, t.first_name t_first_name, t.last_name t_last_name, t.email_address t_email_address, t.locked_assignment t_locked_assignment," +
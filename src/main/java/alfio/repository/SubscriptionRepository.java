@@ -160,6 +160,16 @@ public interface SubscriptionRepository {
     @Query("select * from subscription_descriptor where id = (select subscription_descriptor_fk from subscription where id = :id) and status = 'ACTIVE'")
     SubscriptionDescriptor findDescriptorBySubscriptionId(@Bind("id") UUID subscriptionId);
 
+    /**
+     * Fingerprint of the data used to render a subscription document: the subscription, its reservation,
+     * its descriptor and the organization.
+     */
+    @Query("select md5(s::text || coalesce(r::text, '') || coalesce(d::text, '') || coalesce(o::text, ''))" +
+        " from subscription s left join tickets_reservation r on r.id = s.reservation_id_fk" +
+        " left join subscription_descriptor d on d.id = s.subscription_descriptor_fk" +
+        " left join organization o on o.id = d.organization_id_fk where s.id = :id")
+    Optional<String> findDocumentStateVersion(@Bind("id") UUID subscriptionId);
+
     @Query("select organization_id_fk from subscription_descriptor where id = (select subscription_descriptor_fk from subscription where id = :id) and status = 'ACTIVE'")
     Optional<Integer> findOrganizationIdForSubscription(@Bind("id") UUID subscriptionId);
 
@@ -42,17 +42,17 @@ public interface TicketFieldRepository extends FieldRepository {
 
     @Query("select a.ticket_id_fk, a.ticket_field_configuration_id_fk, b.field_name, a.field_value, null as description " +
         "from ticket_field_value a inner join ticket_field_configuration b on a.ticket_field_configuration_id_fk = b.id " +
-        "where a.ticket_id_fk = :ticketId and b.field_name in (:fieldNames) and b.field_type <> 'select' " +
+        "where a.ticket_id_fk in (:ticketIds) and b.field_name in (:fieldNames) and b.field_type <> 'select' " +
         "union all " +
         "select a.ticket_id_fk, a.ticket_field_configuration_id_fk, b.field_name, a.field_value, c.description " +
         "from ticket_field_value a " +
         "inner join ticket_field_configuration b on a.ticket_field_configuration_id_fk = b.id " +
         "inner join ticket on a.ticket_id_fk = ticket.id "+
         "left join ticket_field_description c on c.ticket_field_configuration_id_fk = a.ticket_field_configuration_id_fk " +
-        "where a.ticket_id_fk = :ticketId and b.field_name in (:fieldNames) " +
+        "where a.ticket_id_fk in (:ticketIds) and b.field_name in (:fieldNames) " +
         "and c.field_locale = ticket.user_language " +
         "and b.field_type = 'select'")
-    List<TicketFieldValueAndDescription> findValueForTicketId(@Bind("ticketId") int id, @Bind("fieldNames") Set<String> fieldNames);
+    List<TicketFieldValueAndDescription> findValueForTicketIds(@Bind("ticketIds") Collection<Integer> ticketIds, @Bind("fieldNames") Set<String> fieldNames);
 
     @Query("update ticket_field_value set field_value = :value where ticket_id_fk = :ticketId and ticket_field_configuration_id_fk = :fieldConfigurationId")
     int updateValue(@Bind("ticketId") int ticketId, @Bind("fieldConfigurationId") int fieldConfigurationId, @Bind("value") String value);
@@ -252,6 +252,20 @@ public interface TicketRepository {
     @Query("select * from ticket where uuid = :uuid")
     Optional<Ticket> findOptionalByUUID(@Bind("uuid") String uuid);
 
+    @Query("select * from ticket where uuid in (:uuids)")
+    List<Ticket> findByUUIDs(@Bind("uuids") Collection<String> uuids);
+
+    /**
+     * Fingerprint of the data used to render the documents of a ticket: the ticket itself (including its metadata),
+     * its reservation, its event, the organization and the values of its additional fields.
+     */
+    @Query("select md5(t::text || coalesce(r::text, '') || coalesce(e::text, '') || coalesce(o::text, '')" +
+        " || coalesce((select string_agg(v.ticket_field_configuration_id_fk || '=' || coalesce(v.field_value, ''), ',' order by v.ticket_field_configuration_id_fk)" +
+        " from ticket_field_value v where v.ticket_id_fk = t.id), ''))" +
+        " from ticket t left join tickets_reservation r on r.id = t.tickets_reservation_id" +
+        " left join event e on e.id = t.event_id left join organization o on o.id = e.org_id where t.id = :ticketId")
+    Optional<String> findDocumentStateVersion(@Bind("ticketId") int ticketId);
+
     @Query("select * from ticket where uuid = :uuid for update")
     Optional<Ticket> findByUUIDForUpdate(@Bind("uuid") String uuid);
 
@@ -330,8 +344,23 @@ public interface TicketRepository {
             " and t.full_name is not null and t.email_address is not null and (coalesce(ltu.last_update, t.creation) > :changedSince)  order by t.id asc")
     List<Integer> findAllAssignedByEventIdForCheckIn(@Bind("eventId") int eventId, @Bind("changedSince") Date changedSince);
 
-    @Query("select * from reservation_and_ticket_and_tx where t_id is not null and t_status in (" + CONFIRMED + ") and t_event_id = :eventId order by tr_confirmation_ts, t_id")
-    List<TicketWithReservationAndTransaction> findAllConfirmedForCSV(@Bind("eventId") int eventId);
+    String EXPORT_CURSOR = "confirmed_tickets_export";
+    int EXPORT_FETCH_SIZE = 1000;
+
+    /**
+     * Opens a cursor on the confirmed tickets of the given event, sorted by confirmation timestamp and ID. The query is executed
+     * only once, and its rows are read in batches with {@link #fetchConfirmedForExport()}. The cursor is closed at the end of the transaction,
+     * at the latest.
+     */
+    @Query("declare " + EXPORT_CURSOR + " no scroll cursor for select * from reservation_and_ticket_and_tx" +
+        " where t_id is not null and t_status in (" + CONFIRMED + ") and t_event_id = :eventId order by tr_confirmation_ts, t_id")
+    int openConfirmedForExportCursor(@Bind("eventId") int eventId);
+
+    @Query(type = QueryType.SELECT, value = "fetch forward " + EXPORT_FETCH_SIZE + " from " + EXPORT_CURSOR)
+    List<TicketWithReservationAndTransaction> fetchConfirmedForExport();
+
+    @Query("close " + EXPORT_CURSOR)
+    int closeConfirmedForExportCursor();
 
     @Query("select a.*, b.confirmation_ts from ticket a, tickets_reservation b where a.event_id = :eventId and a.status in(" + CONFIRMED + ") and a.tickets_reservation_id = b.id order by b.confirmation_ts")
     List<Ticket> findAllConfirmed(@Bind("eventId") int eventId);
@@ -447,6 +476,9 @@ public interface TicketRepository {
     @Query("update ticket set status = 'CHECKED_IN', locked_assignment = true where uuid = :uuid and event_id = :eventId and status = 'ACQUIRED'")
     int performCheckIn(@Bind("uuid") String ticketUUID, @Bind("eventId") int eventId);
 
+    @Query(type = QueryType.MODIFYING_WITH_RETURN, value = "update ticket set status = 'CHECKED_IN', locked_assignment = true where uuid = :uuid and event_id = :eventId and status = 'ACQUIRED' returning *")
+    List<Ticket> performCheckInReturningTicket(@Bind("uuid") String ticketUUID, @Bind("eventId") int eventId);
+
     @Query("select t.id as t_id, t.first_name as t_first_name, t.last_name as t_last_name, t.email_address as t_email_address, tc.name as tc_name from ticket t " +
         " join ticket_category tc on t.category_id = tc.id where t.event_id = :eventId and t.status in ('ACQUIRED', 'TO_BE_PAID', 'CHECKED_IN') and t.tags @> ARRAY[ :tags ]::text[]")
     List<PollParticipant> getTicketsForEventByTags(@Bind("eventId") int eventId, @Bind("tags") List<String> tags);
@@ -112,6 +112,17 @@ public interface TicketReservationRepository {
     @Query("select * from tickets_reservation where id = :id")
     TicketReservation findReservationById(@Bind("id") String id);
 
+    /**
+     * Fingerprint of the data used to render the receipt or invoice of a reservation: the reservation itself,
+     * its tickets, its additional items, the event and the organization.
+     */
+    @Query("select md5(r::text || coalesce(e::text, '') || coalesce(o::text, '')" +
+        " || coalesce((select string_agg(t::text, ',' order by t.id) from ticket t where t.tickets_reservation_id = r.id), '')" +
+        " || coalesce((select string_agg(a::text, ',' order by a.id) from additional_service_item a where a.tickets_reservation_uuid = r.id), ''))" +
+        " from tickets_reservation r left join event e on e.id = r.event_id_fk" +
+        " left join organization o on o.id = r.organization_id_fk where r.id = :id")
+    Optional<String> findDocumentStateVersion(@Bind("id") String id);
+
     @Query("select * from tickets_reservation where id = :id for update")
     TicketReservation findReservationByIdForUpdate(@Bind("id") String id);
 
@@ -124,8 +135,11 @@ public interface TicketReservationRepository {
     @Query("select status, validated_for_overview from tickets_reservation where id = :id")
     Optional<TicketReservationStatusAndValidation> findOptionalStatusAndValidationById(@Bind("id") String id);
 
-    @Query("select id from tickets_reservation where validity < :date and status = 'PENDING' for update skip locked")
-    List<String> findExpiredReservationForUpdate(@Bind("date") Date date);
+    @Query("select id from tickets_reservation where validity < :date and status = 'PENDING' and id > :lastId order by id limit :limit for update skip locked")
+    List<String> findExpiredReservationForUpdate(@Bind("date") Date date, @Bind("lastId") String lastId, @Bind("limit") int limit);
+
+    @Query("select distinct tr.* from tickets_reservation tr join b_transaction tx on tx.reservation_id = tr.id where tr.validity < :date and tr.status = 'PENDING' and tr.id > :lastId order by tr.id limit :limit")
+    List<TicketReservation> findExpiredReservationsWithPendingTransaction(@Bind("date") Date date, @Bind("lastId") String lastId, @Bind("limit") int limit);
 
     @Query("select distinct tr.* from tickets_reservation tr join b_transaction tx on tx.reservation_id = tr.id where tr.id in (:reservationIds) and tr.status = 'PENDING'")
     List<TicketReservation> findReservationsWithPendingTransaction(@Bind("reservationIds") Collection<String> reservationIds);
@@ -34,9 +34,13 @@ import java.util.UUID;
 @QueryRepository
 public interface TicketSearchRepository {
 
-    String BASE_FILTER = ":search is null or (lower(tr_id) like lower(:search) or lower(t_uuid) like lower(:search) or lower(t_full_name) like lower(:search) or lower(t_first_name) like lower(:search) or lower(t_last_name) like lower(:search) or lower(t_email_address) like lower(:search) or " +
-        "  lower(tr_full_name) like lower(:search) or lower(tr_first_name) like lower(:search) or lower(tr_last_name) like lower(:search) or lower(tr_email_address) like lower(:search) or lower(tr_customer_reference) like lower(:search) " +
-        "  or (tr_invoice_number is not null and lower(tr_invoice_number) like lower(:search)) )";
+    // search documents, backed by the trigram indexes created by V206_2_0_0_51_1__Search_Indexes. Keep them in sync.
+    // Fields are separated by chr(31), which cannot be part of a search pattern, so that a match never spans two fields.
+    String RESERVATION_SEARCH_DOCUMENT = "lower(coalesce(id, '') || chr(31) || coalesce(full_name, '') || chr(31) || coalesce(first_name, '') || chr(31) || coalesce(last_name, '') || chr(31) || coalesce(email_address, '') || chr(31) || coalesce(customer_reference, '') || chr(31) || coalesce(invoice_number, ''))";
+    String TICKET_SEARCH_DOCUMENT = "lower(coalesce(uuid, '') || chr(31) || coalesce(full_name, '') || chr(31) || coalesce(first_name, '') || chr(31) || coalesce(last_name, '') || chr(31) || coalesce(email_address, ''))";
+
+    String BASE_FILTER = ":search is null or (tr_id in (select id from tickets_reservation where event_id_fk = :eventId and " + RESERVATION_SEARCH_DOCUMENT + " like lower(:search)) " +
+        "  or t_id in (select id from ticket where event_id = :eventId and " + TICKET_SEARCH_DOCUMENT + " like lower(:search)) )";
 
     String APPLY_FILTER = " (" + BASE_FILTER + " or lower(promo_code) like lower(:search) or lower(special_price_token) like lower(:search)) ";
 
@@ -0,0 +1,77 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+import ch.digitalfondue.npjt.QueryType;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counters backing the statistics views. The ticket triggers append to ticket_status_count_delta, which must be compacted
+ * periodically into ticket_status_count.
+ */
+@QueryRepository
+public interface TicketStatusCountRepository {
+
+    /**
+     * Moves at most {@code limit} rows from ticket_status_count_delta into ticket_status_count.
+     *
+     * @param limit the maximum number of delta rows to consume
+     * @return the number of delta rows consumed
+     */
+    @Query(type = QueryType.MODIFYING_WITH_RETURN, value = "with consumed as (" +
+        " delete from ticket_status_count_delta where id in (select id from ticket_status_count_delta order by id limit :limit for update skip locked)" +
+        " returning event_id, category_id, status, organization_id_fk, delta)," +
+        " compacted as (insert into ticket_status_count(event_id, category_id, status, organization_id_fk, count)" +
+        " select event_id, category_id, status, organization_id_fk, sum(delta) from consumed group by 1, 2, 3, 4" +
+        " on conflict(event_id, category_id, status) do update set count = ticket_status_count.count + excluded.count)" +
+        " select count(*) from consumed")
+    int compactDeltas(@Bind("limit") int limit);
+
+    @Query("select coalesce(sum(cnt), 0) from (" +
+        " select count as cnt from ticket_status_count where event_id = :eventId and category_id = :categoryId and status = 'FREE'" +
+        " union all select delta from ticket_status_count_delta where event_id = :eventId and category_id = :categoryId and status = 'FREE'" +
+        ") c")
+    int countFreeTickets(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId);
+
+    NamedParameterJdbcTemplate getJdbcTemplate();
+
+    /**
+     * Counts the FREE tickets of the given event, including the changes not yet compacted.
+     *
+     * @param eventId the event id
+     * @return the number of FREE tickets by category id. Tickets without category are counted under {@code -1}
+     */
+    default Map<Integer, Integer> countFreeTicketsByCategory(int eventId) {
+        Map<Integer, Integer> res = new HashMap<>();
+        getJdbcTemplate().query("select category_id, sum(cnt) as cnt from (" +
+                " select category_id, count as cnt from ticket_status_count where event_id = :eventId and status = 'FREE'" +
+                " union all select category_id, delta from ticket_status_count_delta where event_id = :eventId and status = 'FREE'" +
+                ") c group by category_id",
+            Map.of("eventId", eventId),
+            rs -> {
+                res.put(rs.getInt("category_id"), rs.getInt("cnt"));
+            });
+        return res;
+    }
+
+}
@@ -20,6 +20,7 @@ import alfio.model.WaitingQueueSubscription;
 import ch.digitalfondue.npjt.*;
 
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @QueryRepository
@@ -50,6 +51,14 @@ public interface WaitingQueueRepository {
     @Query("update waiting_queue set status = 'EXPIRED', ticket_reservation_id = null where ticket_reservation_id in (:ticketReservationIds)")
     int bulkUpdateExpiredReservations(@Bind("ticketReservationIds") List<String> ticketReservationIds);
 
+    @Query("select e.id from event e where e.id in (:eventIds) and (" +
+        " exists(select 1 from waiting_queue w where w.event_id = e.id and w.status = 'WAITING')" +
+        " or (select coalesce(sum(c.cnt), 0) from (" +
+        "   select count as cnt from ticket_status_count where event_id = e.id and status = 'RELEASED'" +
+        "   union all" +
+        "   select delta as cnt from ticket_status_count_delta where event_id = e.id and status = 'RELEASED') c) > 0)")
+    List<Integer> findEventsWithWaitingSubscriptionsOrReleasedTickets(@Bind("eventIds") Collection<Integer> eventIds);
+
     @Query("select count(*) from waiting_queue where event_id = :eventId and status = 'WAITING'")
     Integer countWaitingPeople(@Bind("eventId") int eventId);
 
@@ -0,0 +1,62 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+import ch.digitalfondue.npjt.QueryType;
+
+import java.util.List;
+
+@QueryRepository
+public interface WalletProvisioningRepository {
+
+    /**
+     * Claims the next confirmed tickets without a wallet object, skipping those which are still in backoff.
+     * The claim is valid for {@code leaseSeconds}: other instances do not select the same tickets in the meantime,
+     * even after the row locks have been released.
+     *
+     * @return the IDs of the claimed tickets
+     */
+    @Query(type = QueryType.MODIFYING_WITH_RETURN, value = "with candidates as (" +
+        " select t.id from ticket t join event e on e.id = t.event_id" +
+        " left join wallet_provisioning_attempt a on a.ticket_id = t.id" +
+        " where t.status in (" + TicketRepository.CONFIRMED + ") and e.end_ts > now() and t.full_name is not null" +
+        " and t.metadata->'metadataMap'->'general'->'attributes'->>'gWalletObjectId' is null" +
+        " and (a.next_attempt_ts is null or a.next_attempt_ts <= now())" +
+        " order by t.id limit :limit for update of t skip locked)" +
+        " insert into wallet_provisioning_attempt(ticket_id, next_attempt_ts)" +
+        " select id, now() + make_interval(secs => :leaseSeconds) from candidates" +
+        " on conflict(ticket_id) do update set next_attempt_ts = excluded.next_attempt_ts" +
+        " returning ticket_id")
+    List<Integer> claimTicketsWithoutWalletObject(@Bind("limit") int limit, @Bind("leaseSeconds") int leaseSeconds);
+
+    @Query("delete from wallet_provisioning_attempt where ticket_id = :ticketId")
+    int deleteAttempt(@Bind("ticketId") int ticketId);
+
+    /**
+     * Postpones the next attempt for the given ticket. The delay doubles after each failure, up to {@code maxDelaySeconds}.
+     */
+    @Query("update wallet_provisioning_attempt set attempts = attempts + 1, last_error = :error," +
+        " next_attempt_ts = now() + make_interval(secs => least(:baseDelaySeconds * power(2, attempts), :maxDelaySeconds))" +
+        " where ticket_id = :ticketId")
+    int registerFailure(@Bind("ticketId") int ticketId,
+                        @Bind("error") String error,
+                        @Bind("baseDelaySeconds") int baseDelaySeconds,
+                        @Bind("maxDelaySeconds") int maxDelaySeconds);
+}
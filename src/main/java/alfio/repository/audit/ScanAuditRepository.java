@@ -22,6 +22,8 @@ import alfio.model.audit.ScanAudit;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import java.time.ZonedDateTime;
 import java.util.List;
@@ -36,6 +38,13 @@ public interface ScanAuditRepository {
                    @Bind("status") CheckInStatus checkInStatus,
                    @Bind("operation") ScanAudit.Operation operation);
 
+    NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
+
+    default int[] bulkInsert(MapSqlParameterSource[] params) {
+        return getNamedParameterJdbcTemplate().batchUpdate("insert into scan_audit(ticket_uuid, event_id_fk, scan_ts, username, check_in_status, operation)" +
+            " values(:ticketUuid, :eventId, :scanTs, :username, :status, :operation)", params);
+    }
+
     @Query("select * from scan_audit where event_id_fk = :eventId")
     List<ScanAudit> findAllForEvent(@Bind("eventId") int eventId);
 
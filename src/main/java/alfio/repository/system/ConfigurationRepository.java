@@ -196,6 +196,27 @@ public interface ConfigurationRepository {
     Optional<Integer> findOrganizationIdByKeyAndValue(@Bind("key") String key, @Bind("value") String value);
 
 
+    @Query("select version from configuration_version where id = 1")
+    long getConfigurationVersion();
+
+    @Query(SELECT_FROM_SYSTEM)
+    List<ConfigurationKeyValuePathLevel> findAllAtSystemLevel();
+
+    @Query(SELECT_FROM_ORGANIZATION)
+    List<ConfigurationKeyValuePathLevel> findAllAtOrganizationLevel(@Bind("organizationId") int organizationId);
+
+    @Query(SELECT_FROM_EVENT)
+    List<ConfigurationKeyValuePathLevel> findAllAtEventLevel(@Bind("organizationId") int organizationId, @Bind("eventId") int eventId);
+
+    @Query(SELECT_FROM_TICKET_CATEGORY)
+    List<ConfigurationKeyValuePathLevel> findAllAtTicketCategoryLevel(@Bind("organizationId") int organizationId, @Bind("eventId") int eventId, @Bind("ticketCategoryId") int ticketCategoryId);
+
+    /**
+     * @return {@code true} if the current transaction can only see the rows of some organizations
+     */
+    @Query("select coalesce(current_setting('alfio.checkRowAccess', true), 'false') = 'true'")
+    boolean isRowAccessRestricted();
+
     @Query("select c_value::jsonb from configuration where c_key = 'TRANSLATION_OVERRIDE' union all select '{}'::jsonb limit 1")
     @JSONData Map<String, Map<String, String>> getSystemOverrideMessages();
 
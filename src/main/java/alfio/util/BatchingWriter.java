@@ -0,0 +1,110 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.util;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Collects entries in a bounded in-memory queue and hands them over in batches to a single background thread.
+ * <p>
+ * The batch passed to the writer is reused for the next batch, so it must not be retained.
+ * Exceptions thrown by the writer are logged and the batch is discarded.
+ *
+ * @param <E> the entry type
+ */
+public final class BatchingWriter<E> {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchingWriter.class);
+    public static final int BATCH_SIZE = 200;
+
+    private final String name;
+    private final long pollIntervalMillis;
+    private final Consumer<List<E>> batchWriter;
+    private final BlockingQueue<E> queue;
+    private final ExecutorService executor;
+    private volatile boolean running;
+
+    public BatchingWriter(String name, int queueSize, long pollIntervalMillis, Consumer<List<E>> batchWriter) {
+        this.name = name;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.batchWriter = batchWriter;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.executor = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder()
+            .namingPattern(name + "-%d")
+            .daemon(true)
+            .build());
+        this.running = true;
+        this.executor.execute(this::writeLoop);
+    }
+
+    /**
+     * @return {@code true} if the writer accepts new entries
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Queues an entry.
+     *
+     * @param entry the entry
+     * @return {@code false} if the queue is full or the writer has been stopped
+     */
+    public boolean offer(E entry) {
+        return running && queue.offer(entry);
+    }
+
+    private void writeLoop() {
+        var batch = new ArrayList<E>(BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(pollIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    batchWriter.accept(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("{}: cannot write {} entries", name, batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Stops accepting entries and waits up to 10 seconds for the pending ones to be written.
+     */
+    public void shutdown() throws InterruptedException {
+        running = false;
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("{} did not terminate in time. {} entries have not been written", name, queue.size());
+            executor.shutdownNow();
+        }
+    }
+}
@@ -16,13 +16,16 @@
  */
 package alfio.util;
 
+import org.apache.commons.lang3.StringUtils;
 import org.postgresql.util.PSQLException;
 import org.postgresql.util.ServerErrorMessage;
 import org.springframework.jdbc.UncategorizedSQLException;
 
 import java.sql.Timestamp;
 import java.time.ZonedDateTime;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 
 public final class SqlUtils {
@@ -45,4 +48,37 @@ public final class SqlUtils {
         }
         return ZonedDateTime.ofInstant(timestamp.toInstant(), ClockProvider.clock().getZone());
     }
+
+    /**
+     * Transforms the given search term into a "contains" pattern for the like operator.
+     * Wildcards in the search term are escaped and control characters are removed, so that a pattern cannot match
+     * across the field separators of a search document.
+     *
+     * @param search the search term
+     * @return the pattern, or {@code null} if the search term is blank
+     */
+    public static String toSearchPattern(String search) {
+        String toSearch = StringUtils.trimToNull(StringUtils.defaultString(search).replaceAll("\\p{Cntrl}", ""));
+        if(toSearch == null) {
+            return null;
+        }
+        return "%" + toSearch.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    /**
+     * Returns the total number of results for a paginated search.
+     * If the first page is not full, it already contains all the results, so there is no need to run the count query.
+     *
+     * @param offset the offset of the current page
+     * @param pageSize the page size
+     * @param results the results of the current page
+     * @param countQuery the count query, executed only if needed
+     * @return the total number of results
+     */
+    public static int countResults(int offset, int pageSize, List<?> results, Supplier<Integer> countQuery) {
+        if(offset == 0 && results.size() < pageSize) {
+            return results.size();
+        }
+        return countQuery.get();
+    }
 }
@@ -23,20 +23,26 @@ import alfio.manager.system.ConfigurationManager;
 import alfio.model.Event;
 import alfio.model.PurchaseContext;
 import alfio.model.system.ConfigurationKeys;
+import alfio.model.system.command.UploadedResourceChanged;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.samskivert.mustache.Mustache;
 import com.samskivert.mustache.Mustache.Compiler;
 import com.samskivert.mustache.Template;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.MessageSource;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.web.servlet.ModelAndView;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
@@ -60,6 +66,8 @@ public class TemplateManager {
     public static final String ADDITIONAL_FIELDS_KEY = "additional-fields";
     public static final String VAT_TRANSLATION_TEMPLATE_KEY = "vatTranslation";
     public static final String MAIL_FOOTER = "mailFooter";
+    private static final String UPLOADED_TEMPLATE_PREFIX = "uploaded:";
+    private static final int COMPILED_TEMPLATES_MAX_SIZE = 500;
 
     private final MessageSourceManager messageSourceManager;
 
@@ -73,6 +81,12 @@ public class TemplateManager {
     
     private final ConfigurationManager configurationManager;
 
+    // compiled templates are immutable and can be shared between threads. The content hash is part of the key,
+    // so a modified resource will never be served from a stale entry.
+    private final Cache<CompiledTemplateKey, Template> compiledTemplates = Caffeine.newBuilder()
+        .maximumSize(COMPILED_TEMPLATES_MAX_SIZE)
+        .recordStats()
+        .build();
 
     public TemplateManager(MessageSourceManager messageSourceManager,
                            UploadedResourceManager uploadedResourceManager,
@@ -128,7 +142,7 @@ public class TemplateManager {
     public RenderedTemplate renderTemplate(PurchaseContext purchaseContext, TemplateResource templateResource, Map<String, Object> model, Locale locale) {
         Map<String, Object> updatedModel = modelEnricher(model, purchaseContext, locale);
         return uploadedResourceManager.findCascading(purchaseContext.getOrganizationId(), purchaseContext.event().map(Event::getId).orElse(null), templateResource.getSavedName(locale))
-            .map(resource -> RenderedTemplate.plaintext(render(new ByteArrayResource(resource), updatedModel, locale, purchaseContext, templateResource.getTemplateOutput()), model))
+            .map(resource -> RenderedTemplate.plaintext(render(new UploadedTemplateResource(resource, templateResource.getSavedName(locale)), updatedModel, locale, purchaseContext, templateResource.getTemplateOutput()), model))
             .orElseGet(() -> renderMultipartTemplate(purchaseContext, templateResource, updatedModel, locale));
     }
 
@@ -187,13 +201,53 @@ public class TemplateManager {
     }
 
     private Template compile(Resource resource, TemplateOutput templateOutput) {
-        try (InputStreamReader tmpl = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
-            return compilers.get(templateOutput).compile(tmpl);
+        try (InputStream tmpl = resource.getInputStream()) {
+            byte[] content = tmpl.readAllBytes();
+            var key = new CompiledTemplateKey(templateName(resource), templateOutput, DigestUtils.sha256Hex(content));
+            return compiledTemplates.get(key, k -> compilers.get(templateOutput).compile(new String(content, StandardCharsets.UTF_8)));
         } catch (IOException ioe) {
             throw new IllegalStateException(ioe);
         }
     }
 
+    private static String templateName(Resource resource) {
+        if(resource instanceof UploadedTemplateResource uploaded) {
+            return UPLOADED_TEMPLATE_PREFIX + uploaded.savedName;
+        } else if(resource instanceof ClassPathResource classPathResource) {
+            return classPathResource.getPath();
+        }
+        return resource.getDescription();
+    }
+
+    @EventListener
+    public void invalidateUploadedTemplate(UploadedResourceChanged uploadedResourceChanged) {
+        var name = UPLOADED_TEMPLATE_PREFIX + uploadedResourceChanged.name();
+        boolean removed = compiledTemplates.asMap().keySet().removeIf(k -> k.name().equals(name));
+        if(removed) {
+            log.debug("invalidated compiled templates for {}. Cache stats: {}", uploadedResourceChanged.name(), compiledTemplates.stats());
+        }
+    }
+
+    /**
+     * @return hit/miss counters of the compiled templates cache
+     */
+    public CacheStats getCompiledTemplatesStats() {
+        return compiledTemplates.stats();
+    }
+
+    private record CompiledTemplateKey(String name, TemplateOutput templateOutput, String contentHash) {
+    }
+
+    private static class UploadedTemplateResource extends ByteArrayResource {
+
+        private final String savedName;
+
+        private UploadedTemplateResource(byte[] content, String savedName) {
+            super(content, savedName);
+            this.savedName = savedName;
+        }
+    }
+
     private static final Pattern KEY_PATTERN = Pattern.compile("^([^\\[]+)[\\s\\[]");
     private static final Pattern ARGS_PATTERN = Pattern.compile("\\[(.*?)]");
 
@@ -0,0 +1,27 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- trigram extension used by the admin search (reservations, check-in, email log).
+-- The indexes are created concurrently by alfio.db.PGSQL.V206_2_0_0_51_1__Search_Indexes, which cannot run in a transaction.
+-- If the extension cannot be created (e.g. insufficient privileges), search will still work without indexes.
+do $$
+begin
+    create extension if not exists pg_trgm;
+exception when insufficient_privilege then
+    raise notice 'cannot create extension pg_trgm, search indexes will not be created';
+end
+$$;
@@ -0,0 +1,98 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- number of tickets by event, category and status, used by the statistics views.
+-- category_id is -1 for the tickets without category.
+create table ticket_status_count (
+    event_id integer not null,
+    category_id integer not null,
+    status varchar(255) not null,
+    organization_id_fk integer not null,
+    count integer not null,
+    primary key (event_id, category_id, status)
+);
+alter table ticket_status_count add foreign key(event_id) references event(id);
+alter table ticket_status_count add foreign key(organization_id_fk) references organization(id);
+create index ticket_status_count_category_id_idx on ticket_status_count(category_id);
+
+-- changes not yet compacted into ticket_status_count. Rows are only appended by the ticket triggers, in order to avoid
+-- contention on the counters while tickets are being sold.
+create table ticket_status_count_delta (
+    id bigserial primary key not null,
+    event_id integer not null,
+    category_id integer not null,
+    status varchar(255) not null,
+    organization_id_fk integer not null,
+    delta integer not null
+);
+alter table ticket_status_count_delta add foreign key(event_id) references event(id);
+alter table ticket_status_count_delta add foreign key(organization_id_fk) references organization(id);
+-- countFreeTickets reads the pending changes of a single category and status on every reservation attempt
+-- for a sold-out category. The composite index also serves the lookups by event
+create index ticket_status_count_delta_event_category_status_idx on ticket_status_count_delta(event_id, category_id, status);
+create index ticket_status_count_delta_category_id_idx on ticket_status_count_delta(category_id);
+
+insert into ticket_status_count(event_id, category_id, status, organization_id_fk, count)
+    select event_id, coalesce(category_id, -1), status, organization_id_fk, count(*) from ticket group by 1, 2, 3, 4;
+
+alter table ticket_status_count enable row level security;
+alter table ticket_status_count force row level security;
+create policy ticket_status_count_access_policy on ticket_status_count to public
+    using (alfio_check_row_access(organization_id_fk))
+    with check (alfio_check_row_access(organization_id_fk));
+
+alter table ticket_status_count_delta enable row level security;
+alter table ticket_status_count_delta force row level security;
+create policy ticket_status_count_delta_access_policy on ticket_status_count_delta to public
+    using (alfio_check_row_access(organization_id_fk))
+    with check (alfio_check_row_access(organization_id_fk));
+
+-- statement level triggers: one row for each (event, category, status) whose count has changed
+create or replace function track_ticket_status_count() returns trigger
+as $$ begin
+    if TG_OP = 'INSERT' then
+        insert into ticket_status_count_delta(event_id, category_id, status, organization_id_fk, delta)
+            select event_id, coalesce(category_id, -1), status, organization_id_fk, count(*) from new_rows group by 1, 2, 3, 4;
+    elsif TG_OP = 'DELETE' then
+        insert into ticket_status_count_delta(event_id, category_id, status, organization_id_fk, delta)
+            select event_id, coalesce(category_id, -1), status, organization_id_fk, -count(*) from old_rows group by 1, 2, 3, 4;
+    else
+        insert into ticket_status_count_delta(event_id, category_id, status, organization_id_fk, delta)
+            select event_id, category_id, status, organization_id_fk, sum(delta) from (
+                select event_id, coalesce(category_id, -1) as category_id, status, organization_id_fk, -1 as delta from old_rows
+                union all
+                select event_id, coalesce(category_id, -1) as category_id, status, organization_id_fk, 1 as delta from new_rows
+            ) changes group by 1, 2, 3, 4 having sum(delta) <> 0;
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+create trigger ticket_status_count_insert_trigger
+    after insert on ticket
+    referencing new table as new_rows
+    for each statement execute procedure track_ticket_status_count();
+
+create trigger ticket_status_count_update_trigger
+    after update on ticket
+    referencing old table as old_rows new table as new_rows
+    for each statement execute procedure track_ticket_status_count();
+
+create trigger ticket_status_count_delete_trigger
+    after delete on ticket
+    referencing old table as old_rows
+    for each statement execute procedure track_ticket_status_count();
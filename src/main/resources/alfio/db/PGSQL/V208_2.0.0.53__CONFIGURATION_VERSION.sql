@@ -0,0 +1,41 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- incremented on every change of the configuration tables. It's used by the application nodes in order to detect
+-- changes made by other nodes and invalidate the local caches.
+create table configuration_version (
+    id integer primary key not null default 1 check (id = 1),
+    version bigint not null
+);
+insert into configuration_version(id, version) values (1, 0);
+
+create or replace function increment_configuration_version() returns trigger
+as $$
+begin
+    update configuration_version set version = version + 1 where id = 1;
+    return null;
+end;
+$$ language plpgsql;
+
+create trigger configuration_version_trg after insert or update or delete on configuration
+    for each statement execute procedure increment_configuration_version();
+create trigger configuration_organization_version_trg after insert or update or delete on configuration_organization
+    for each statement execute procedure increment_configuration_version();
+create trigger configuration_event_version_trg after insert or update or delete on configuration_event
+    for each statement execute procedure increment_configuration_version();
+create trigger configuration_ticket_category_version_trg after insert or update or delete on configuration_ticket_category
+    for each statement execute procedure increment_configuration_version();
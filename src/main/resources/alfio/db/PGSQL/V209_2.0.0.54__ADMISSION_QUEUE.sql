@@ -0,0 +1,60 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- admission queue (virtual waiting room). Buyers are admitted at a fixed rate. Each buyer of an event takes next_position,
+-- and is admitted 1/rate seconds for each position after start_position, which is admitted at start_ts.
+-- When the queue is empty, it is restarted from the new buyer, who is admitted immediately.
+create table admission_queue (
+    event_id integer primary key not null,
+    organization_id_fk integer not null,
+    start_position bigint not null,
+    start_ts timestamp with time zone not null,
+    next_position bigint not null
+);
+alter table admission_queue add foreign key(event_id) references event(id);
+alter table admission_queue add foreign key(organization_id_fk) references organization(id);
+
+alter table admission_queue enable row level security;
+alter table admission_queue force row level security;
+create policy admission_queue_access_policy on admission_queue to public
+    using (alfio_check_row_access(organization_id_fk))
+    with check (alfio_check_row_access(organization_id_fk));
+
+-- one entry for each client in the admission queue of an event. The token issued to the client refers to its entry,
+-- which limits how many reservations can be attempted with it. client_address contains a hash of the IP address,
+-- used to limit how many entries can be created from the same address
+create table admission_queue_entry (
+    id bigserial primary key not null,
+    event_id integer not null,
+    organization_id_fk integer not null,
+    client_id varchar(64) not null,
+    client_address varchar(64) not null,
+    admission_ts timestamp with time zone not null,
+    creation_ts timestamp with time zone not null,
+    reservation_attempts integer not null default 0
+);
+alter table admission_queue_entry add foreign key(event_id) references event(id);
+alter table admission_queue_entry add foreign key(organization_id_fk) references organization(id);
+create unique index admission_queue_entry_client_uq on admission_queue_entry(event_id, client_id);
+create index admission_queue_entry_address_idx on admission_queue_entry(event_id, client_address, creation_ts);
+create index admission_queue_entry_admission_ts_idx on admission_queue_entry(admission_ts);
+
+alter table admission_queue_entry enable row level security;
+alter table admission_queue_entry force row level security;
+create policy admission_queue_entry_access_policy on admission_queue_entry to public
+    using (alfio_check_row_access(organization_id_fk))
+    with check (alfio_check_row_access(organization_id_fk));
@@ -0,0 +1,37 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- payment webhooks are stored here once verified, then processed asynchronously
+create table payment_webhook_inbox (
+    id bigserial primary key not null,
+    payment_proxy varchar(255) not null,
+    provider_event_id varchar(255),
+    reservation_id varchar(255) not null,
+    event_type varchar(255),
+    body text not null,
+    additional_info jsonb not null default '{}',
+    status varchar(32) not null default 'PENDING',
+    attempts integer not null default 0,
+    received_ts timestamp with time zone not null default now(),
+    next_attempt_ts timestamp with time zone not null default now(),
+    processed_ts timestamp with time zone,
+    last_result text
+);
+
+-- the same event cannot be stored twice
+create unique index payment_webhook_inbox_event_id_uq on payment_webhook_inbox(payment_proxy, provider_event_id) where provider_event_id is not null;
+create index payment_webhook_inbox_pending_idx on payment_webhook_inbox(reservation_id, id) where status = 'PENDING';
@@ -0,0 +1,25 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- tickets claimed by the Google Wallet provisioning job. A ticket is not selected again until next_attempt_ts,
+-- which is moved forward when the ticket is claimed and, with an exponential backoff, after each failure
+create table wallet_provisioning_attempt (
+    ticket_id integer primary key not null references ticket(id) on delete cascade,
+    attempts integer not null default 0,
+    next_attempt_ts timestamp with time zone not null,
+    last_error text
+);
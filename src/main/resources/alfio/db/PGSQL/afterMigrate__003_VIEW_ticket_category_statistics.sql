@@ -39,19 +39,20 @@ from
 
 (select max_tickets, bounded, id, event_id, expiration < now() as is_expired, access_restricted from ticket_category where tc_status = 'ACTIVE' ) ticket_cat
 
-left join
+left join lateral
 
+-- counters are maintained by the ticket triggers, see V207_2.0.0.52__TICKET_STATUS_COUNT.sql
 (select
-  sum(case(status = 'PENDING') when true then 1 else 0 end) as pending_count,
-  sum(case(status = 'RELEASED') when true then 1 else 0 end) as released_count,
-  sum(case(status = 'CHECKED_IN') when true then 1 else 0 end) checked_in_count,
-  sum(case(status in ('TO_BE_PAID', 'ACQUIRED')) when true then 1 else 0 end) as sold_tickets_count,
-  category_id
-from ticket
-inner join ticket_category tc
-on category_id = tc.id
-group by category_id
-) tickets_stats on ticket_cat.id = tickets_stats.category_id
+  sum(case(status = 'PENDING') when true then cnt else 0 end) as pending_count,
+  sum(case(status = 'RELEASED') when true then cnt else 0 end) as released_count,
+  sum(case(status = 'CHECKED_IN') when true then cnt else 0 end) checked_in_count,
+  sum(case(status in ('TO_BE_PAID', 'ACQUIRED')) when true then cnt else 0 end) as sold_tickets_count
+from (
+  select status, count as cnt from ticket_status_count where category_id = ticket_cat.id
+  union all
+  select status, delta as cnt from ticket_status_count_delta where category_id = ticket_cat.id
+) counts
+) tickets_stats on true
 
 left join
 
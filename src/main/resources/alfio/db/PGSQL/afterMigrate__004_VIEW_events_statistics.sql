@@ -18,20 +18,20 @@
 create view events_statistics as (
 select
       event.id,
-      (select count(id) from ticket where event_id = event.id and status not in ('INVALIDATED', 'EXPIRED')) as available_seats,
-      coalesce( case(contains_unbounded_categories) when true then 0 else (select count(id) from ticket where event_id = event.id and status not in ('INVALIDATED', 'EXPIRED')) - allocated_count end, 0) as not_allocated_tickets,
+      coalesce(tickets.existing_count, 0) as available_seats,
+      coalesce( case(contains_unbounded_categories) when true then 0 else coalesce(tickets.existing_count, 0) - allocated_count end, 0) as not_allocated_tickets,
       coalesce (pending_count, 0) as pending_tickets,
       coalesce (sold_tickets_count, 0) as sold_tickets,
-      coalesce ( (select released_count + count(id) from ticket where event_id = event.id and status = 'RELEASED' and category_id is null),0) as released_tickets,
+      coalesce ( released_count + coalesce(tickets.released_without_category_count, 0),0) as released_tickets,
       coalesce(stats.checked_in_count, 0) as checked_in_tickets,
       coalesce (case(contains_unbounded_categories) when true then
-        (select count(id) from ticket where event_id = event.id and status not in ('INVALIDATED', 'EXPIRED'))
+        coalesce(tickets.existing_count, 0)
           - allocated_count
           - released_count
           - sold_tickets_count_unbounded
           - checked_in_count_unbounded
           - pending_count_unbounded
-          - (select count(*) from ticket where status = 'RELEASED' and category_id is null and event_id = event.id)
+          - coalesce(tickets.released_without_category_count, 0)
           else 0 end, 0) as dynamic_allocation,
       coalesce (
       	case (contains_unbounded_categories) when true then
@@ -60,5 +60,17 @@ select
     sum(case (is_containing_stuck_tickets) when true then 1 else 0 end) is_containing_stuck_tickets_count,
     sum(case (access_restricted = false and is_expired = false) when true then 1 else 0 end) as public_and_valid_count,
 	event_id from ticket_category_statistics group by event_id) as stats
-right outer join event on event_id = event.id order by event.start_ts, event.end_ts
+right outer join event on event_id = event.id
+-- counters are maintained by the ticket triggers, see V207_2.0.0.52__TICKET_STATUS_COUNT.sql
+left join lateral (
+    select
+        sum(cnt) filter (where status not in ('INVALIDATED', 'EXPIRED')) as existing_count,
+        sum(cnt) filter (where status = 'RELEASED' and category_id = -1) as released_without_category_count
+    from (
+        select category_id, status, count as cnt from ticket_status_count where ticket_status_count.event_id = event.id
+        union all
+        select category_id, status, delta as cnt from ticket_status_count_delta where ticket_status_count_delta.event_id = event.id
+    ) counts
+) tickets on true
+order by event.start_ts, event.end_ts
 );
\ No newline at end of file
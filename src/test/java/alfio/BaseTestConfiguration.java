@@ -32,6 +32,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.annotation.PropertySource;
 import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
 import org.springframework.core.io.ByteArrayResource;
 import org.testcontainers.containers.GenericContainer;
@@ -54,6 +55,7 @@ import java.util.function.Supplier;
 import static alfio.test.util.TestUtil.FIXED_TIME_CLOCK;
 
 @Configuration(proxyBeanMethods = false)
+@PropertySource("classpath:integration-test.properties")
 public class BaseTestConfiguration {
 
     public static final int MAX_POOL_SIZE = 5;
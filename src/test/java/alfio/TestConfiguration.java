@@ -27,6 +27,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
@@ -49,7 +50,8 @@ public class TestConfiguration {
                                               UserManager userManager,
                                               EventRepository eventRepository,
                                               ExternalConfiguration externalConfiguration,
-                                              Environment environment) {
+                                              Environment environment,
+                                              ApplicationEventPublisher applicationEventPublisher) {
         Cache<Set<ConfigurationKeys>, Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration>> cache = Caffeine.newBuilder()
             .expireAfterWrite(Duration.ZERO)
             .build();
@@ -58,7 +60,9 @@ public class TestConfiguration {
             eventRepository,
             externalConfiguration,
             environment,
-            cache);
+            cache,
+            applicationEventPublisher,
+            Duration.ZERO);
     }
 
     @Bean
@@ -19,9 +19,7 @@ package alfio.controller;
 import alfio.controller.api.v2.model.EventWithAdditionalInfo;
 import alfio.controller.api.v2.model.Language;
 import alfio.controller.api.v2.user.support.EventLoader;
-import alfio.manager.i18n.MessageSourceManager;
 import alfio.util.Json;
-import ch.digitalfondue.jfiveparse.Element;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -33,40 +31,42 @@ import org.springframework.web.context.request.ServletWebRequest;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.function.UnaryOperator;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 class IndexControllerTest {
 
     private EventLoader eventLoader;
-    private Element head;
-    private Element index;
-    private Element html;
+    private StringBuilder head;
     private EventWithAdditionalInfo event;
     private HttpSession session;
 
     private ServletWebRequest request;
-    private MessageSourceManager messageSourceManager;
+    private List<String> requestedBundles;
+    private UnaryOperator<String> serializedBundle;
     private Json json;
 
     @BeforeEach
     void setUp() {
         eventLoader = mock(EventLoader.class);
         request = mock(ServletWebRequest.class);
-        head = mock(Element.class);
-        index = mock(Element.class);
-        html = mock(Element.class);
+        head = new StringBuilder();
         event = mock(EventWithAdditionalInfo.class);
         session = mock(HttpSession.class);
         json = mock(Json.class);
-        messageSourceManager = mock(MessageSourceManager.class);
-        when(messageSourceManager.getBundleAsMap(anyString(), anyBoolean(), anyString(), same(MessageSourceManager.PUBLIC_FRONTEND))).thenReturn(Map.of());
+        requestedBundles = new ArrayList<>();
+        serializedBundle = lang -> {
+            requestedBundles.add(lang);
+            return "{}";
+        };
         when(eventLoader.loadEventInfo(anyString(), eq(session))).thenReturn(Optional.of(event));
-        when(index.getElementsByTagName("html")).thenReturn(List.of(html));
         when(json.asJsonString(any())).thenReturn("{}");
         when(request.getNativeRequest(HttpServletRequest.class)).thenReturn(new MockHttpServletRequest());
     }
@@ -77,43 +77,38 @@ class IndexControllerTest {
         @Test
         void singleLanguage() {
             when(event.getContentLanguages()).thenReturn(List.of(new Language("it", "")));
-            IndexController.preloadTranslations("shortName", request, session, eventLoader, head, messageSourceManager, index, json, null);
-            verify(messageSourceManager).getBundleAsMap(anyString(), eq(true), eq("it"), same(MessageSourceManager.PUBLIC_FRONTEND));
-            verify(html).setAttribute("lang", "it");
-            verify(messageSourceManager).getBundleAsMap(anyString(), eq(true), eq("en"), same(MessageSourceManager.PUBLIC_FRONTEND)); //for non en language we preload also the fallback
+            assertEquals("it", IndexController.preloadTranslations("shortName", request, session, eventLoader, head, serializedBundle, json, null));
+            assertEquals(List.of("it", "en"), requestedBundles); //for non en language we preload also the fallback
+            assertTrue(head.toString().contains("<script type=\"application/json\" id=\"preload-bundle\" data-param=\"en\">{}</script>"));
         }
 
         @Test
         void singleLanguageWithWrongParam() {
             when(event.getContentLanguages()).thenReturn(List.of(new Language("it", "")));
-            IndexController.preloadTranslations("shortName", request, session, eventLoader, head, messageSourceManager, index, json, "de");
-            verify(messageSourceManager).getBundleAsMap(anyString(), eq(true), eq("it"), same(MessageSourceManager.PUBLIC_FRONTEND));
-            verify(html).setAttribute("lang", "it");
+            assertEquals("it", IndexController.preloadTranslations("shortName", request, session, eventLoader, head, serializedBundle, json, "de"));
+            assertTrue(requestedBundles.contains("it"));
         }
 
         @Test
         void singleLanguageWithParam() {
             when(event.getContentLanguages()).thenReturn(List.of(new Language("de", "")));
-            IndexController.preloadTranslations("shortName", request, session, eventLoader, head, messageSourceManager, index, json, "de");
-            verify(messageSourceManager).getBundleAsMap(anyString(), eq(true), eq("de"), same(MessageSourceManager.PUBLIC_FRONTEND));
-            verify(html).setAttribute("lang", "de");
+            assertEquals("de", IndexController.preloadTranslations("shortName", request, session, eventLoader, head, serializedBundle, json, "de"));
+            assertTrue(requestedBundles.contains("de"));
         }
 
         @Test
         void multipleLanguages() {
             when(event.getContentLanguages()).thenReturn(List.of(new Language("de", ""), new Language("it", "")));
-            IndexController.preloadTranslations("shortName", request, session, eventLoader, head, messageSourceManager, index, json, null);
-            verify(messageSourceManager).getBundleAsMap(anyString(), eq(true), eq("de"), same(MessageSourceManager.PUBLIC_FRONTEND));
-            verify(html).setAttribute("lang", "de");
+            assertEquals("de", IndexController.preloadTranslations("shortName", request, session, eventLoader, head, serializedBundle, json, null));
+            assertTrue(requestedBundles.contains("de"));
         }
 
         @ParameterizedTest
         @ValueSource(strings = {"it", "de"})
         void multipleLanguagesWithParam(String param) {
             when(event.getContentLanguages()).thenReturn(List.of(new Language("de", ""), new Language("it", "")));
-            IndexController.preloadTranslations("shortName", request, session, eventLoader, head, messageSourceManager, index, json, param);
-            verify(messageSourceManager).getBundleAsMap(anyString(), eq(true), eq(param), same(MessageSourceManager.PUBLIC_FRONTEND));
-            verify(html).setAttribute("lang", param);
+            assertEquals(param, IndexController.preloadTranslations("shortName", request, session, eventLoader, head, serializedBundle, json, param));
+            assertTrue(requestedBundles.contains(param));
         }
 
 
@@ -121,12 +116,10 @@ class IndexControllerTest {
 
     @Test
     void preloadTranslationsEventNotPresent() {
-        IndexController.preloadTranslations(null, request, session, eventLoader, head, messageSourceManager, index, json, null);
-        verify(messageSourceManager).getBundleAsMap(anyString(), eq(true), eq("en"), same(MessageSourceManager.PUBLIC_FRONTEND));
-        verify(html).setAttribute("lang", "en");
+        assertEquals("en", IndexController.preloadTranslations(null, request, session, eventLoader, head, serializedBundle, json, null));
+        assertEquals(List.of("en"), requestedBundles);
 
-        IndexController.preloadTranslations(null, request, session, eventLoader, head, messageSourceManager, index, json, "it");
-        verify(messageSourceManager).getBundleAsMap(anyString(), eq(true), eq("it"), same(MessageSourceManager.PUBLIC_FRONTEND));
-        verify(html).setAttribute("lang", "it");
+        assertEquals("it", IndexController.preloadTranslations(null, request, session, eventLoader, head, serializedBundle, json, "it"));
+        assertTrue(requestedBundles.contains("it"));
     }
 }
\ No newline at end of file
@@ -17,22 +17,47 @@
 package alfio.controller.api.admin;
 
 import alfio.util.MonetaryUtil;
+import alfio.util.TemplateManager;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.junit.jupiter.api.Test;
+import org.springframework.core.env.Environment;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 class UtilsApiControllerTest {
 
     @Test
     void getCurrencies() {
-        new UtilsApiController(null, null, null)
+        new UtilsApiController(null, null, null, null, null)
             .getCurrencies()
             .forEach(currency -> {
                 assertFalse(currency.getFractionDigits() < 0);
                 assertEquals(MonetaryUtil.unitToCents(BigDecimal.TEN, currency.getCode()), 10 * Math.pow(10, currency.getFractionDigits()));
             });
     }
-}
\ No newline at end of file
+
+    @Test
+    void compiledTemplatesStatsAreVisibleOnlyToAdmins() {
+        var templateManager = mock(TemplateManager.class);
+        when(templateManager.getCompiledTemplatesStats()).thenReturn(CacheStats.of(3, 1, 1, 0, 10, 0, 0));
+        var controller = new UtilsApiController(null, "test", mock(Environment.class), null, templateManager);
+
+        var admin = new UsernamePasswordAuthenticationToken("admin", null, List.of(new SimpleGrantedAuthority("ROLE_ADMIN")));
+        var stats = (Map<?, ?>) controller.getApplicationInfo(admin).get("compiledTemplatesCache");
+        assertNotNull(stats);
+        assertEquals(3L, stats.get("hitCount"));
+        assertEquals(1L, stats.get("missCount"));
+        assertEquals(0.75, stats.get("hitRate"));
+
+        var owner = new UsernamePasswordAuthenticationToken("owner", null, List.of(new SimpleGrantedAuthority("ROLE_OWNER")));
+        assertFalse(controller.getApplicationInfo(owner).containsKey("compiledTemplatesCache"));
+    }
+}
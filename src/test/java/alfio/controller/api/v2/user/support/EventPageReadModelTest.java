@@ -0,0 +1,85 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.v2.user.support;
+
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.Event;
+import alfio.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class EventPageReadModelTest {
+
+    private EventRepository eventRepository;
+    private TicketCategoryRepository ticketCategoryRepository;
+    private ConfigurationManager configurationManager;
+    private EventPageReadModel readModel;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository = mock(EventRepository.class);
+        ticketCategoryRepository = mock(TicketCategoryRepository.class);
+        var additionalServiceRepository = mock(AdditionalServiceRepository.class);
+        var event = mock(Event.class);
+        when(event.getId()).thenReturn(1);
+        when(eventRepository.findOptionalByShortName("event")).thenReturn(Optional.of(event));
+        when(eventRepository.findOptionalByShortName("missing")).thenReturn(Optional.empty());
+        when(ticketCategoryRepository.findAllTicketCategories(anyInt())).thenReturn(List.of());
+        when(additionalServiceRepository.loadAllForEvent(anyInt())).thenReturn(List.of());
+        configurationManager = mock(ConfigurationManager.class);
+        readModel = new EventPageReadModel(eventRepository, configurationManager, ticketCategoryRepository,
+            mock(TicketCategoryDescriptionRepository.class), additionalServiceRepository, mock(AdditionalServiceTextRepository.class),
+            mock(TicketStatusCountRepository.class), new MockEnvironment());
+    }
+
+    @Test
+    void snapshotIsBuiltOnce() {
+        var first = readModel.load("event");
+        var second = readModel.load("event");
+        assertTrue(first.isPresent());
+        assertSame(first.get(), second.get());
+        verify(eventRepository, times(1)).findOptionalByShortName("event");
+        verify(ticketCategoryRepository, times(1)).findAllTicketCategories(1);
+        verify(configurationManager, times(2)).checkForChanges();
+    }
+
+    @Test
+    void snapshotIsRebuiltAfterConfigurationInvalidation() {
+        var listener = ArgumentCaptor.forClass(Runnable.class);
+        verify(configurationManager).addInvalidationListener(listener.capture());
+        var first = readModel.load("event").orElseThrow();
+        listener.getValue().run();
+        var second = readModel.load("event").orElseThrow();
+        assertNotSame(first, second);
+    }
+
+    @Test
+    void missingEventIsNotCached() {
+        assertTrue(readModel.load("missing").isEmpty());
+        assertTrue(readModel.load("missing").isEmpty());
+        verify(eventRepository, times(2)).findOptionalByShortName("missing");
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.support;
+
+import ch.digitalfondue.jfiveparse.JFiveParse;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexShellTest {
+
+    private static final String PAGE = "<!doctype html><html lang=\"en\"><head><title>alf.io</title><script src=\"main.js\"></script></head><body><app-root></app-root><script src=\"polyfills.js\"></script></body></html>";
+
+    @Test
+    void fillSlots() throws IOException {
+        var shell = IndexShell.from(JFiveParse.parse(PAGE));
+        var out = new ByteArrayOutputStream();
+        shell.write(out, "abcd", "it", false, "<meta name=\"GID\" content=\"1\">");
+        var result = out.toString(StandardCharsets.UTF_8);
+        assertTrue(result.contains("<html lang=\"it\">"));
+        assertTrue(result.contains("<script src=\"main.js\" nonce=\"abcd\"></script><meta name=\"GID\" content=\"1\"></head>"));
+        assertTrue(result.contains("<script src=\"polyfills.js\" nonce=\"abcd\"></script>"));
+        assertFalse(result.contains("alfio-slot"));
+    }
+
+    @Test
+    void signedUpAttributeAndEscaping() throws IOException {
+        var shell = IndexShell.from(JFiveParse.parse(PAGE));
+        var out = new ByteArrayOutputStream();
+        shell.write(out, "\"", "\"de", true, "");
+        var result = out.toString(StandardCharsets.UTF_8);
+        assertTrue(result.contains("<html lang=\"&quot;de\" data-signed-up=\"true\">"));
+        assertTrue(result.contains("<script src=\"main.js\" nonce=\"&quot;\"></script></head>"));
+        assertFalse(result.contains("alfio-slot"));
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.extension;
+
+import alfio.model.ExtensionLog;
+import alfio.repository.ExtensionLogRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ExtensionLogWriterTest {
+
+    private ExtensionLogRepository repository;
+    private PlatformTransactionManager transactionManager;
+    private List<MapSqlParameterSource[]> batches;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(ExtensionLogRepository.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        batches = new CopyOnWriteArrayList<>();
+        when(repository.bulkInsert(any())).thenAnswer(i -> {
+            MapSqlParameterSource[] params = i.getArgument(0);
+            batches.add(params);
+            return new int[params.length];
+        });
+    }
+
+    @Test
+    void writeQueuedEntries() throws InterruptedException {
+        var writer = new ExtensionLogWriter(repository, transactionManager, true, 10, false);
+        writer.write("effective", "path", "ext", "message 0", ExtensionLog.Type.INFO);
+        writer.write("effective", "path", "ext", "message 1", ExtensionLog.Type.WARNING);
+        writer.destroy();
+        var params = batches.stream().flatMap(Arrays::stream).toList();
+        assertEquals(2, params.size());
+        assertEquals("effective", params.get(0).getValue("effectivePath"));
+        assertEquals("path", params.get(0).getValue("path"));
+        assertEquals("ext", params.get(0).getValue("name"));
+        assertEquals("message 0", params.get(0).getValue("description"));
+        assertEquals("WARNING", params.get(1).getValue("type"));
+    }
+
+    @Test
+    void dropEntriesIfQueueIsFull() throws InterruptedException {
+        var firstWrite = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(repository.bulkInsert(any())).thenAnswer(i -> {
+            MapSqlParameterSource[] params = i.getArgument(0);
+            batches.add(params);
+            firstWrite.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return new int[params.length];
+        });
+        int queueSize = 10;
+        var writer = new ExtensionLogWriter(repository, transactionManager, true, queueSize, false);
+        writer.write("-", "-", "ext", "first", ExtensionLog.Type.INFO);
+        assertTrue(firstWrite.await(5, TimeUnit.SECONDS));
+        // the writer is now blocked, so only queueSize entries can be accepted
+        for (int i = 0; i < 100; i++) {
+            writer.write("-", "-", "ext", "message " + i, ExtensionLog.Type.INFO);
+        }
+        release.countDown();
+        writer.destroy();
+        assertEquals(1 + queueSize, batches.stream().mapToInt(b -> b.length).sum());
+    }
+
+    @Test
+    void writeErrorsSynchronouslyIfConfigured() throws InterruptedException {
+        var writer = new ExtensionLogWriter(repository, transactionManager, true, 10, true);
+        var caller = Thread.currentThread();
+        var threads = new CopyOnWriteArrayList<Thread>();
+        when(repository.bulkInsert(any())).thenAnswer(i -> {
+            threads.add(Thread.currentThread());
+            return new int[1];
+        });
+        writer.write("-", "-", "ext", "error", ExtensionLog.Type.ERROR);
+        assertEquals(List.of(caller), threads);
+        writer.destroy();
+    }
+
+    @Test
+    void synchronousWriter() {
+        var writer = ExtensionLogWriter.synchronous(repository, transactionManager);
+        writer.write("-", "-", "ext", "message", ExtensionLog.Type.SUCCESS);
+        verify(repository).bulkInsert(any());
+        assertEquals("SUCCESS", batches.get(0)[0].getValue("type"));
+    }
+}
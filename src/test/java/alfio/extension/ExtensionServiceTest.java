@@ -22,7 +22,6 @@ import alfio.manager.system.ExternalConfiguration;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.transaction.PlatformTransactionManager;
 
 import java.util.Collection;
 import java.util.EnumSet;
@@ -41,7 +40,7 @@ class ExtensionServiceTest {
 
     @BeforeEach
     void setUp() {
-        extensionService = new ExtensionService(null, null, null, mock(PlatformTransactionManager.class), mock(ExternalConfiguration.class), mock(NamedParameterJdbcTemplate.class));
+        extensionService = new ExtensionService(null, null, null, mock(ExtensionLogWriter.class), mock(ExternalConfiguration.class), mock(NamedParameterJdbcTemplate.class));
     }
 
     @Test
@@ -73,6 +73,19 @@ public class ScriptingExecutionServiceTest {
         verify(extensionLogger).logInfo("test");
     }
 
+    @Test
+    void compiledScriptIsReused() throws IOException {
+        String concatenation = getScriptContent("base.js");
+        @SuppressWarnings("unchecked")
+        Supplier<String> scriptFetcher = mock(Supplier.class);
+        when(scriptFetcher.get()).thenReturn(concatenation);
+        scriptingExecutionService.executeScript("name", "compiledScriptIsReused", scriptFetcher, Map.of("extensionEvent", "first"), Void.class, extensionLogger);
+        scriptingExecutionService.executeScript("name", "compiledScriptIsReused", scriptFetcher, Map.of("extensionEvent", "second"), Void.class, extensionLogger);
+        verify(scriptFetcher, times(1)).get();
+        verify(extensionLogger).logInfo("first");
+        verify(extensionLogger).logInfo("second");
+    }
+
     @Test
     void testExecutionTimeout() {
         assertTimeoutPreemptively(Duration.ofSeconds(16L), () -> {
@@ -0,0 +1,117 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.model.AdminReservationRequest;
+import alfio.model.Event;
+import alfio.model.TicketReservation;
+import alfio.model.modification.AdminReservationModification;
+import alfio.model.result.Result;
+import alfio.model.user.User;
+import alfio.repository.AdminReservationRequestRepository;
+import alfio.repository.EventRepository;
+import alfio.repository.user.UserRepository;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AdminReservationRequestManagerTest {
+
+    private AdminReservationManager adminReservationManager;
+    private AdminReservationRequestRepository adminReservationRequestRepository;
+    private EventRepository eventRepository;
+    private UserRepository userRepository;
+    private AdminReservationRequestManager manager;
+
+    @BeforeEach
+    void setUp() {
+        adminReservationManager = mock(AdminReservationManager.class);
+        adminReservationRequestRepository = mock(AdminReservationRequestRepository.class);
+        eventRepository = mock(EventRepository.class);
+        userRepository = mock(UserRepository.class);
+        var transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        manager = new AdminReservationRequestManager(adminReservationManager,
+            mock(EventManager.class),
+            userRepository,
+            adminReservationRequestRepository,
+            eventRepository,
+            transactionManager);
+    }
+
+    @Test
+    void processPendingReservationsLoadsEventAndUserOncePerChunk() {
+        var event = mock(Event.class);
+        when(event.getShortName()).thenReturn("event");
+        var user = mock(User.class);
+        when(user.getUsername()).thenReturn("user");
+        var reservation = mock(TicketReservation.class);
+        when(reservation.getId()).thenReturn("reservation");
+        when(eventRepository.findOptionalById(1)).thenReturn(Optional.of(event));
+        when(userRepository.findOptionalById(2)).thenReturn(Optional.of(user));
+        when(adminReservationManager.createReservation(any(), eq("event"), eq("user"))).thenReturn(Result.success(Pair.of(reservation, List.of())));
+        when(adminReservationManager.confirmReservation(any(), eq("event"), eq("reservation"), eq("user"), any(), any())).thenReturn(Result.success(Triple.of(reservation, List.of(), event)));
+        when(adminReservationRequestRepository.findPendingForUpdate(anyInt())).thenReturn(List.of(request(10L), request(11L)), List.of());
+
+        var result = manager.processPendingReservations();
+
+        assertEquals(Pair.of(2, 0), result);
+        verify(eventRepository).findOptionalById(1);
+        verify(userRepository).findOptionalById(2);
+        assertEquals(List.of("SUCCESS", "SUCCESS"), capturedStatuses());
+    }
+
+    @Test
+    void processPendingReservationsEventNotFound() {
+        when(eventRepository.findOptionalById(1)).thenReturn(Optional.empty());
+        when(adminReservationRequestRepository.findPendingForUpdate(anyInt())).thenReturn(List.of(request(10L)), List.of());
+
+        var result = manager.processPendingReservations();
+
+        assertEquals(Pair.of(0, 1), result);
+        verifyNoInteractions(adminReservationManager, userRepository);
+        assertEquals(List.of("ERROR"), capturedStatuses());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> capturedStatuses() {
+        ArgumentCaptor<List<MapSqlParameterSource>> captor = ArgumentCaptor.forClass(List.class);
+        verify(adminReservationRequestRepository).updateStatus(captor.capture());
+        return captor.getValue().stream().map(ps -> ps.getValue("status")).toList();
+    }
+
+    private static AdminReservationRequest request(long id) {
+        var request = mock(AdminReservationRequest.class);
+        when(request.getId()).thenReturn(id);
+        when(request.getEventId()).thenReturn(1L);
+        when(request.getUserId()).thenReturn(2L);
+        when(request.getBody()).thenReturn(mock(AdminReservationModification.class));
+        return request;
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.manager.support.AdmissionQueueStatus;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.TicketCategory;
+import alfio.model.metadata.AlfioMetadata;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.model.system.ConfigurationKeys;
+import alfio.repository.EventRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.AlfioIntegrationTest;
+import alfio.util.ClockProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@AlfioIntegrationTest
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+class AdmissionQueueManagerIntegrationTest {
+
+    private static final int RATE = 10;
+    private static final int CLIENTS = 40;
+
+    @Autowired
+    private AdmissionQueueManager admissionQueueManager;
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private Event event;
+
+    @BeforeEach
+    void setUp() {
+        event = initEventWithAdmissionQueue();
+    }
+
+    private Event initEventWithAdmissionQueue() {
+        var categories = List.of(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).minusDays(1), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).plusDays(1), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", false, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        var newEvent = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository).getLeft();
+        configurationRepository.insertEventLevel(newEvent.getOrganizationId(), newEvent.getId(), ConfigurationKeys.ENABLE_ADMISSION_QUEUE.name(), "true", "");
+        configurationRepository.insertEventLevel(newEvent.getOrganizationId(), newEvent.getId(), ConfigurationKeys.ADMISSION_QUEUE_RATE.name(), Integer.toString(RATE), "");
+        return newEvent;
+    }
+
+    @Test
+    void concurrentClientsAreAdmittedAtTheConfiguredRate() throws Exception {
+        var results = runConcurrently(CLIENTS, i -> admissionQueueManager.enqueue(event, "client-" + i, "192.0.2." + i).orElseThrow());
+        assertEquals(CLIENTS, results.stream().map(AdmissionQueueStatus::token).distinct().count());
+
+        var admissionTimes = jdbcTemplate.queryForList("select admission_ts from admission_queue_entry where event_id = :eventId order by admission_ts",
+            Map.of("eventId", event.getId()), Timestamp.class);
+        assertEquals(CLIENTS, admissionTimes.size());
+        for (int i = 1; i < admissionTimes.size(); i++) {
+            // no two clients share the same slot, even if they have been enqueued at the same time
+            assertTrue(admissionTimes.get(i).getTime() - admissionTimes.get(i - 1).getTime() >= 1000 / RATE);
+        }
+    }
+
+    @Test
+    void repeatedEnqueuesDoNotMoveTheQueueForward() throws Exception {
+        var results = runConcurrently(CLIENTS, i -> admissionQueueManager.enqueue(event, "client-" + (i % 2), "192.0.2.1").orElseThrow());
+        // concurrent requests of the same client are serialized, and all get the same position
+        assertEquals(2, results.stream().map(AdmissionQueueStatus::token).distinct().count());
+        assertEquals(2, countEntries());
+    }
+
+    @Test
+    void entriesFromTheSameAddressAreNotLimitedByDefault() throws Exception {
+        var results = runConcurrently(CLIENTS, i -> admissionQueueManager.enqueue(event, "client-" + i, "192.0.2.1"));
+        assertTrue(results.stream().allMatch(Optional::isPresent));
+        assertEquals(CLIENTS, countEntries());
+    }
+
+    @Test
+    void limitEntriesFromTheSameAddress() {
+        configurationRepository.insertEventLevel(event.getOrganizationId(), event.getId(), ConfigurationKeys.ADMISSION_QUEUE_MAX_ENTRIES_PER_ADDRESS.name(), "5", "");
+        for (int i = 0; i < 5; i++) {
+            assertTrue(admissionQueueManager.enqueue(event, "client-" + i, "192.0.2.1").isPresent());
+        }
+        assertTrue(admissionQueueManager.enqueue(event, "client-5", "192.0.2.1").isEmpty());
+        // clients already in the queue keep their position
+        assertTrue(admissionQueueManager.enqueue(event, "client-0", "192.0.2.1").isPresent());
+        assertTrue(admissionQueueManager.enqueue(event, "client-5", "192.0.2.2").isPresent());
+    }
+
+    @Test
+    void queuesOfDifferentEventsAreIndependent() throws Exception {
+        var otherEvent = initEventWithAdmissionQueue();
+        runConcurrently(CLIENTS, i -> admissionQueueManager.enqueue(event, "client-" + i, "192.0.2." + i).orElseThrow());
+        // the other event has its own counter, so its first client does not wait behind the clients of the first event
+        assertTrue(admissionQueueManager.enqueue(otherEvent, "client-0", "192.0.2.1").orElseThrow().admitted());
+        assertFalse(admissionQueueManager.enqueue(event, "client-" + CLIENTS, "192.0.2.1").orElseThrow().admitted());
+    }
+
+    @Test
+    void expiredEntriesAreRemoved() {
+        for (int i = 0; i < 3; i++) {
+            admissionQueueManager.enqueue(event, "client-" + i, "192.0.2.1").orElseThrow();
+        }
+        // client-0 has been admitted more than 15 minutes ago, client-1 too, but it has been enqueued recently
+        jdbcTemplate.update("update admission_queue_entry set admission_ts = now() - interval '1 hour', creation_ts = now() - interval '1 hour' where event_id = :eventId and client_id = 'client-0'",
+            Map.of("eventId", event.getId()));
+        jdbcTemplate.update("update admission_queue_entry set admission_ts = now() - interval '1 hour' where event_id = :eventId and client_id = 'client-1'",
+            Map.of("eventId", event.getId()));
+        assertEquals(1, admissionQueueManager.cleanupExpiredEntries());
+        assertEquals(2, countEntries());
+    }
+
+    @Test
+    void tokenCanBeUsedForALimitedNumberOfConcurrentAttempts() throws Exception {
+        var token = admissionQueueManager.enqueue(event, "client", "192.0.2.1").orElseThrow().token();
+        var results = runConcurrently(20, i -> admissionQueueManager.isAdmitted(event, token, "client"));
+        assertEquals(5, results.stream().filter(Boolean::booleanValue).count());
+        assertFalse(admissionQueueManager.isAdmitted(event, token, "another-client"));
+    }
+
+    private int countEntries() {
+        return Objects.requireNonNull(jdbcTemplate.queryForObject("select count(*) from admission_queue_entry where event_id = :eventId",
+            Map.of("eventId", event.getId()), Integer.class));
+    }
+
+    private static <T> List<T> runConcurrently(int count, IndexedCall<T> call) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            var calls = new ArrayList<Callable<T>>();
+            for (int i = 0; i < count; i++) {
+                int index = i;
+                calls.add(() -> call.apply(index));
+            }
+            var results = new ArrayList<T>();
+            for (Future<T> future : pool.invokeAll(calls)) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface IndexedCall<T> {
+        T apply(int index);
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.support.AdmissionQueueStatus;
+import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.ConfigurationManager.MaybeConfiguration;
+import alfio.model.AdmissionQueuePosition;
+import alfio.model.AdmissionQueueEntry;
+import alfio.model.Event;
+import alfio.model.system.ConfigurationKeyValuePathLevel;
+import alfio.repository.AdmissionQueueRepository;
+import alfio.util.ClockProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static alfio.model.system.ConfigurationKeys.ADMISSION_QUEUE_MAX_ENTRIES_PER_ADDRESS;
+import static alfio.model.system.ConfigurationKeys.ADMISSION_QUEUE_RATE;
+import static alfio.model.system.ConfigurationKeys.ENABLE_ADMISSION_QUEUE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AdmissionQueueManagerTest {
+
+    private static final int RATE = 50;
+    private static final int BUYERS = 50_000;
+    private static final long START = Instant.parse("2026-01-01T10:00:00Z").toEpochMilli();
+    private static final String CLIENT = "client";
+    private static final String ADDRESS = "192.0.2.1";
+    private static final ZonedDateTime EXPIRED = ZonedDateTime.ofInstant(Instant.EPOCH, ZoneOffset.UTC);
+
+    private final AtomicLong now = new AtomicLong(START);
+    private final AtomicLong entryIds = new AtomicLong();
+    private final Map<Long, Integer> reservationAttempts = new HashMap<>();
+    private ConfigurationManager configurationManager;
+    private AdmissionQueueRepository repository;
+    private Event event;
+    private AdmissionQueueManager manager;
+
+    @BeforeEach
+    void setUp() {
+        configurationManager = mock(ConfigurationManager.class);
+        repository = mock(AdmissionQueueRepository.class);
+        var clockProvider = mock(ClockProvider.class);
+        when(clockProvider.getClock()).thenAnswer(i -> Clock.fixed(Instant.ofEpochMilli(now.get()), ZoneOffset.UTC));
+        event = mockEvent(1, "event-key");
+        when(configurationManager.getFor(eq(ENABLE_ADMISSION_QUEUE), any())).thenReturn(new MaybeConfiguration(ENABLE_ADMISSION_QUEUE, new ConfigurationKeyValuePathLevel(null, "true", null)));
+        when(configurationManager.getFor(eq(ADMISSION_QUEUE_RATE), any())).thenReturn(new MaybeConfiguration(ADMISSION_QUEUE_RATE, new ConfigurationKeyValuePathLevel(null, Integer.toString(RATE), null)));
+        when(configurationManager.getFor(eq(ADMISSION_QUEUE_MAX_ENTRIES_PER_ADDRESS), any())).thenReturn(new MaybeConfiguration(ADMISSION_QUEUE_MAX_ENTRIES_PER_ADDRESS));
+        // same semantic of the upsert on admission_queue
+        var queues = new HashMap<Integer, AdmissionQueuePosition>();
+        when(repository.nextPosition(anyInt(), anyInt(), anyInt(), any())).thenAnswer(i -> {
+            int eventId = i.getArgument(0);
+            int rate = i.getArgument(2);
+            ZonedDateTime currentTs = i.getArgument(3);
+            var queue = queues.get(eventId);
+            AdmissionQueuePosition assigned;
+            if (queue == null) {
+                assigned = new AdmissionQueuePosition(0, 0, currentTs);
+            } else {
+                long next = queue.position() + 1;
+                boolean empty = queue.startTs().plusNanos((next - queue.startPosition()) * 1_000_000_000L / rate).isBefore(currentTs);
+                assigned = empty ? new AdmissionQueuePosition(next, next, currentTs) : new AdmissionQueuePosition(next, queue.startPosition(), queue.startTs());
+            }
+            queues.put(eventId, assigned);
+            return assigned;
+        });
+        // new clients get an expired entry, which is then updated with the admission time
+        when(repository.lockEntry(anyInt(), anyInt(), anyString(), anyString(), any())).thenAnswer(i -> new AdmissionQueueEntry(entryIds.incrementAndGet(), EXPIRED));
+        // same semantic of the update on admission_queue_entry
+        when(repository.registerReservationAttempt(anyLong(), anyInt(), anyString(), anyInt())).thenAnswer(i -> {
+            long id = i.getArgument(0);
+            int max = i.getArgument(3);
+            int attempts = reservationAttempts.getOrDefault(id, 0);
+            if (attempts >= max) {
+                return 0;
+            }
+            reservationAttempts.put(id, attempts + 1);
+            return 1;
+        });
+        manager = new AdmissionQueueManager(repository, configurationManager, clockProvider);
+    }
+
+    @Test
+    void burstIsAdmittedAtConfiguredRate() {
+        var tokens = new ArrayList<String>(BUYERS);
+        // all the buyers come from the same address, which is not limited by default
+        for (int i = 0; i < BUYERS; i++) {
+            var status = manager.enqueue(event, client(i), ADDRESS).orElseThrow();
+            assertNotNull(status.token());
+            tokens.add(status.token());
+        }
+        // only the first buyer is admitted immediately
+        assertTrue(manager.isAdmitted(event, tokens.get(0), client(0)));
+        assertFalse(manager.isAdmitted(event, tokens.get(1), client(1)));
+        var lastStatus = manager.getStatus(event, tokens.get(BUYERS - 1), client(BUYERS - 1)).orElseThrow();
+        assertFalse(lastStatus.admitted());
+        assertEquals(BUYERS / RATE, lastStatus.estimatedWaitSeconds());
+
+        Map<Long, Integer> admittedPerSecond = new HashMap<>();
+        long previous = -1;
+        for (int i = 0; i < BUYERS; i++) {
+            var token = tokens.get(i);
+            long admissionTime = admissionTime(token);
+            if (previous >= 0) {
+                assertEquals(1000 / RATE, admissionTime - previous);
+            }
+            previous = admissionTime;
+            now.set(admissionTime - 1);
+            assertFalse(manager.isAdmitted(event, token, client(i)));
+            now.set(admissionTime);
+            assertTrue(manager.isAdmitted(event, token, client(i)));
+            admittedPerSecond.merge((admissionTime - START) / 1000, 1, Integer::sum);
+        }
+        assertTrue(admittedPerSecond.values().stream().allMatch(count -> count <= RATE));
+        assertEquals(BUYERS / RATE, admittedPerSecond.size());
+    }
+
+    @Test
+    void tokenExpires() {
+        var token = manager.enqueue(event, CLIENT, ADDRESS).orElseThrow().token();
+        assertTrue(manager.isAdmitted(event, token, CLIENT));
+        now.addAndGet(15 * 60_000 + 1);
+        assertFalse(manager.isAdmitted(event, token, CLIENT));
+    }
+
+    @Test
+    void rejectInvalidTokens() {
+        var token = manager.enqueue(event, CLIENT, ADDRESS).orElseThrow().token();
+        var parts = token.split("\\.");
+        assertFalse(manager.isAdmitted(event, null, CLIENT));
+        assertFalse(manager.isAdmitted(event, "not-a-token", CLIENT));
+        assertFalse(manager.isAdmitted(event, parts[0] + "." + parts[1] + "." + (Long.parseLong(parts[2]) - 1000) + "." + parts[3], CLIENT));
+        assertFalse(manager.isAdmitted(event, parts[0] + "." + (Long.parseLong(parts[1]) + 1) + "." + parts[2] + "." + parts[3], CLIENT));
+        assertFalse(manager.isAdmitted(event, parts[0] + "." + parts[1] + "." + parts[2] + "." + parts[3].substring(1), CLIENT));
+        assertTrue(manager.getStatus(event, "1.1.1.1", CLIENT).isEmpty());
+        var otherEvent = mockEvent(2, "other-key");
+        assertFalse(manager.isAdmitted(otherEvent, token, CLIENT));
+    }
+
+    @Test
+    void tokenIsBoundToTheClient() {
+        var token = manager.enqueue(event, CLIENT, ADDRESS).orElseThrow().token();
+        assertFalse(manager.isAdmitted(event, token, "another-client"));
+        assertFalse(manager.isAdmitted(event, token, null));
+        assertTrue(manager.getStatus(event, token, "another-client").isEmpty());
+        assertTrue(manager.isAdmitted(event, token, CLIENT));
+    }
+
+    @Test
+    void reservationAttemptsAreLimited() {
+        var token = manager.enqueue(event, CLIENT, ADDRESS).orElseThrow().token();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(manager.isAdmitted(event, token, CLIENT));
+        }
+        assertFalse(manager.isAdmitted(event, token, CLIENT));
+    }
+
+    @Test
+    void clientKeepsItsPositionWhenEnqueuedAgain() {
+        var admissionTs = ZonedDateTime.ofInstant(Instant.ofEpochMilli(START + 60_000), ZoneOffset.UTC);
+        when(repository.lockEntry(eq(event.getId()), anyInt(), eq(CLIENT), anyString(), any())).thenReturn(new AdmissionQueueEntry(42L, admissionTs));
+        var status = manager.enqueue(event, CLIENT, ADDRESS).orElseThrow();
+        assertEquals(admissionTs.toInstant().toEpochMilli(), admissionTime(status.token()));
+        assertFalse(status.admitted());
+        verify(repository, never()).nextPosition(anyInt(), anyInt(), anyInt(), any());
+        verify(repository, never()).updateEntry(anyLong(), anyString(), any(), any());
+    }
+
+    @Test
+    void expiredPositionIsReplaced() {
+        var admissionTs = ZonedDateTime.ofInstant(Instant.ofEpochMilli(START - 16 * 60_000), ZoneOffset.UTC);
+        when(repository.lockEntry(eq(event.getId()), anyInt(), eq(CLIENT), anyString(), any())).thenReturn(new AdmissionQueueEntry(42L, admissionTs));
+        var status = manager.enqueue(event, CLIENT, ADDRESS).orElseThrow();
+        assertTrue(status.admitted());
+        verify(repository).nextPosition(eq(event.getId()), anyInt(), eq(RATE), any());
+        verify(repository).updateEntry(eq(42L), anyString(), any(), any());
+    }
+
+    @Test
+    void limitEntriesFromTheSameAddress() {
+        when(configurationManager.getFor(eq(ADMISSION_QUEUE_MAX_ENTRIES_PER_ADDRESS), any())).thenReturn(new MaybeConfiguration(ADMISSION_QUEUE_MAX_ENTRIES_PER_ADDRESS, new ConfigurationKeyValuePathLevel(null, "50", null)));
+        when(repository.countEntriesFromAddress(eq(event.getId()), anyString(), eq(CLIENT), any())).thenReturn(50);
+        assertTrue(manager.enqueue(event, CLIENT, ADDRESS).isEmpty());
+        verify(repository, never()).nextPosition(anyInt(), anyInt(), anyInt(), any());
+        // the address is not stored in clear
+        verify(repository).countEntriesFromAddress(eq(event.getId()), argThat(hash -> !hash.contains(ADDRESS)), eq(CLIENT), any());
+    }
+
+    @Test
+    void entriesFromTheSameAddressAreNotLimitedByDefault() {
+        assertTrue(manager.enqueue(event, CLIENT, ADDRESS).isPresent());
+        verify(repository, never()).countEntriesFromAddress(anyInt(), anyString(), anyString(), any());
+    }
+
+    @Test
+    void emptyQueueIsRestarted() {
+        var first = manager.enqueue(event, client(0), ADDRESS).orElseThrow();
+        var second = manager.enqueue(event, client(1), ADDRESS).orElseThrow();
+        assertEquals(START + 1000 / RATE, admissionTime(second.token()));
+        // everybody has been admitted, so the next buyer does not wait
+        now.set(START + 60_000);
+        var third = manager.enqueue(event, client(2), ADDRESS).orElseThrow();
+        assertTrue(first.admitted());
+        assertTrue(third.admitted());
+        assertEquals(START + 60_000, admissionTime(third.token()));
+        var fourth = manager.enqueue(event, client(3), ADDRESS).orElseThrow();
+        assertEquals(START + 60_000 + 1000 / RATE, admissionTime(fourth.token()));
+    }
+
+    @Test
+    void queuesOfDifferentEventsAreIndependent() {
+        for (int i = 0; i < BUYERS; i++) {
+            manager.enqueue(event, client(i), ADDRESS).orElseThrow();
+        }
+        var otherEvent = mockEvent(2, "other-key");
+        var first = manager.enqueue(otherEvent, client(0), ADDRESS).orElseThrow();
+        var second = manager.enqueue(otherEvent, client(1), ADDRESS).orElseThrow();
+        assertTrue(first.admitted());
+        assertEquals(START + 1000 / RATE, admissionTime(second.token()));
+    }
+
+    @Test
+    void cleanupExpiredEntries() {
+        when(repository.deleteExpiredEntries(any(), any())).thenReturn(3);
+        assertEquals(3, manager.cleanupExpiredEntries());
+        var currentTs = ZonedDateTime.ofInstant(Instant.ofEpochMilli(START), ZoneOffset.UTC);
+        verify(repository).deleteExpiredEntries(currentTs.minusMinutes(15), currentTs.minusMinutes(10));
+    }
+
+    @Test
+    void everybodyIsAdmittedIfQueueIsDisabled() {
+        when(configurationManager.getFor(eq(ENABLE_ADMISSION_QUEUE), any())).thenReturn(new MaybeConfiguration(ENABLE_ADMISSION_QUEUE));
+        assertTrue(manager.isAdmitted(event, null, null));
+        AdmissionQueueStatus status = manager.enqueue(event, CLIENT, ADDRESS).orElseThrow();
+        assertTrue(status.admitted());
+        assertNull(status.token());
+        verifyNoInteractions(repository);
+    }
+
+    private static String client(int i) {
+        return "client-" + i;
+    }
+
+    private static long admissionTime(String token) {
+        return Long.parseLong(token.split("\\.")[2]);
+    }
+
+    private static Event mockEvent(int id, String privateKey) {
+        var e = mock(Event.class);
+        when(e.getId()).thenReturn(id);
+        when(e.getOrganizationId()).thenReturn(1);
+        when(e.getPrivateKey()).thenReturn(privateKey);
+        return e;
+    }
+}
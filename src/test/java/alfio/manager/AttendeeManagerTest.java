@@ -0,0 +1,119 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.support.CheckInResult;
+import alfio.manager.support.CheckInStatus;
+import alfio.manager.support.SponsorScanRegistration;
+import alfio.manager.support.TicketAndCheckInResult;
+import alfio.model.EventAndOrganizationId;
+import alfio.model.SponsorScan;
+import alfio.model.Ticket;
+import alfio.model.user.User;
+import alfio.repository.EventRepository;
+import alfio.repository.SponsorScanRepository;
+import alfio.repository.TicketRepository;
+import alfio.repository.user.UserRepository;
+import alfio.test.util.TestUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AttendeeManagerTest {
+
+    private static final String EVENT_NAME = "eventName";
+    private static final String USERNAME = "sponsor";
+    private static final int EVENT_ID = 1;
+    private static final int USER_ID = 2;
+
+    private SponsorScanRepository sponsorScanRepository;
+    private EventRepository eventRepository;
+    private TicketRepository ticketRepository;
+    private AttendeeManager attendeeManager;
+
+    @BeforeEach
+    void setUp() {
+        sponsorScanRepository = mock(SponsorScanRepository.class);
+        eventRepository = mock(EventRepository.class);
+        ticketRepository = mock(TicketRepository.class);
+        var userRepository = mock(UserRepository.class);
+        var user = mock(User.class);
+        when(user.getId()).thenReturn(USER_ID);
+        when(userRepository.getByUsername(USERNAME)).thenReturn(user);
+        when(eventRepository.findOptionalEventAndOrganizationIdByShortName(EVENT_NAME)).thenReturn(Optional.of(new EventAndOrganizationId(EVENT_ID, 3)));
+        when(eventRepository.findOptionalEventAndOrganizationIdByShortName("missing")).thenReturn(Optional.empty());
+        when(eventRepository.getZoneIdByEventId(EVENT_ID)).thenReturn(ZoneId.of("UTC"));
+        attendeeManager = new AttendeeManager(sponsorScanRepository, eventRepository, ticketRepository, userRepository,
+            null, null, null, TestUtil.clockProvider());
+    }
+
+    @Test
+    void registerSponsorScansWithSingleUpsert() {
+        var checkedIn = ticket(10, "checked-in", Ticket.TicketStatus.CHECKED_IN);
+        var acquired = ticket(11, "acquired", Ticket.TicketStatus.ACQUIRED);
+        var other = ticket(12, "other", Ticket.TicketStatus.CHECKED_IN);
+        when(ticketRepository.findByUUIDs(anyCollection())).thenReturn(List.of(checkedIn, acquired, other));
+
+        var results = attendeeManager.registerSponsorScans(List.of(
+            new SponsorScanRegistration(EVENT_NAME, "checked-in", "first", SponsorScan.LeadStatus.COLD),
+            new SponsorScanRegistration(EVENT_NAME, "unknown", null, SponsorScan.LeadStatus.WARM),
+            new SponsorScanRegistration("missing", "other", null, SponsorScan.LeadStatus.WARM),
+            new SponsorScanRegistration(EVENT_NAME, "acquired", null, SponsorScan.LeadStatus.WARM),
+            new SponsorScanRegistration(EVENT_NAME, "other", null, SponsorScan.LeadStatus.HOT),
+            new SponsorScanRegistration(EVENT_NAME, "checked-in", "second", SponsorScan.LeadStatus.HOT)
+        ), USERNAME, null);
+
+        assertEquals(List.of(CheckInStatus.SUCCESS, CheckInStatus.TICKET_NOT_FOUND, CheckInStatus.EVENT_NOT_FOUND,
+            CheckInStatus.INVALID_TICKET_STATE, CheckInStatus.SUCCESS, CheckInStatus.SUCCESS),
+            results.stream().map(TicketAndCheckInResult::getResult).map(CheckInResult::getStatus).toList());
+        verify(ticketRepository).findByUUIDs(Set.of("checked-in", "unknown", "other", "acquired"));
+        verify(eventRepository, times(1)).findOptionalEventAndOrganizationIdByShortName(EVENT_NAME);
+        verify(sponsorScanRepository).bulkUpsert(eq(USER_ID), any(), eq(EVENT_ID), eq(List.of(10, 12)),
+            eq(Arrays.asList("second", null)), eq(List.of("HOT", "HOT")), eq(AttendeeManager.DEFAULT_OPERATOR_ID));
+        verifyNoMoreInteractions(sponsorScanRepository);
+    }
+
+    @Test
+    void registerSponsorScansNothingToWrite() {
+        when(ticketRepository.findByUUIDs(anyCollection())).thenReturn(List.of());
+        var results = attendeeManager.registerSponsorScans(List.of(
+            new SponsorScanRegistration(EVENT_NAME, "unknown", null, SponsorScan.LeadStatus.WARM)
+        ), USERNAME, "operator");
+        assertEquals(1, results.size());
+        assertEquals(CheckInStatus.TICKET_NOT_FOUND, results.get(0).getResult().getStatus());
+        verifyNoInteractions(sponsorScanRepository);
+        assertTrue(attendeeManager.registerSponsorScans(List.of(), USERNAME, "operator").isEmpty());
+    }
+
+    private static Ticket ticket(int id, String uuid, Ticket.TicketStatus status) {
+        var ticket = mock(Ticket.class);
+        when(ticket.getId()).thenReturn(id);
+        when(ticket.getUuid()).thenReturn(uuid);
+        when(ticket.getStatus()).thenReturn(status);
+        return ticket;
+    }
+}
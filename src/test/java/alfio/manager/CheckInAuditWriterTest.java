@@ -0,0 +1,140 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.support.CheckInStatus;
+import alfio.model.Audit;
+import alfio.model.audit.ScanAudit;
+import alfio.repository.AuditingRepository;
+import alfio.repository.audit.ScanAuditRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CheckInAuditWriterTest {
+
+    private ScanAuditRepository scanAuditRepository;
+    private AuditingRepository auditingRepository;
+    private PlatformTransactionManager transactionManager;
+    private List<MapSqlParameterSource[]> scanBatches;
+    private List<MapSqlParameterSource[]> auditBatches;
+
+    @BeforeEach
+    void setUp() {
+        scanAuditRepository = mock(ScanAuditRepository.class);
+        auditingRepository = mock(AuditingRepository.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        scanBatches = new CopyOnWriteArrayList<>();
+        auditBatches = new CopyOnWriteArrayList<>();
+        when(scanAuditRepository.bulkInsert(any())).thenAnswer(i -> {
+            MapSqlParameterSource[] params = i.getArgument(0);
+            scanBatches.add(params);
+            return new int[params.length];
+        });
+        when(auditingRepository.bulkInsert(any())).thenAnswer(i -> {
+            MapSqlParameterSource[] params = i.getArgument(0);
+            auditBatches.add(params);
+            return new int[params.length];
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void writeQueuedEntries() throws InterruptedException {
+        var writer = new CheckInAuditWriter(scanAuditRepository, auditingRepository, transactionManager, true, 10);
+        writer.write(entry("ticket-0"), false);
+        writer.write(entry("ticket-1"), false);
+        writer.destroy();
+        assertEquals(2, scanBatches.stream().mapToInt(b -> b.length).sum());
+        assertEquals(2, auditBatches.stream().mapToInt(b -> b.length).sum());
+        assertEquals("ticket-0", scanBatches.get(0)[0].getValue("ticketUuid"));
+        assertEquals("SCAN", scanBatches.get(0)[0].getValue("operation"));
+        assertEquals("CHECK_IN", auditBatches.get(0)[0].getValue("eventType"));
+        assertEquals("3", auditBatches.get(0)[0].getValue("entityId"));
+        verify(scanAuditRepository, never()).insert(anyString(), anyInt(), any(), anyString(), any(), any());
+    }
+
+    @Test
+    void writeOneByOneIfBatchFails() throws InterruptedException {
+        when(scanAuditRepository.bulkInsert(any())).thenThrow(new IllegalStateException("failure"));
+        var writer = new CheckInAuditWriter(scanAuditRepository, auditingRepository, transactionManager, true, 10);
+        writer.write(entry("ticket-0"), false);
+        writer.write(entry("ticket-1"), false);
+        writer.destroy();
+        verify(scanAuditRepository).insert(eq("ticket-0"), eq(1), any(), eq("user"), eq(CheckInStatus.SUCCESS), eq(ScanAudit.Operation.SCAN));
+        verify(scanAuditRepository).insert(eq("ticket-1"), eq(1), any(), eq("user"), eq(CheckInStatus.SUCCESS), eq(ScanAudit.Operation.SCAN));
+    }
+
+    @Test
+    void writeImmediatelyIfRequested() throws InterruptedException {
+        var writer = new CheckInAuditWriter(scanAuditRepository, auditingRepository, transactionManager, true, 10);
+        var entry = entry("ticket");
+        writer.write(entry, true);
+        verify(scanAuditRepository).insert("ticket", 1, entry.timestamp(), "user", CheckInStatus.SUCCESS, ScanAudit.Operation.SCAN);
+        verify(auditingRepository).insert(eq("reservation"), eq(2), eq(1), eq(Audit.EventType.CHECK_IN), any(), eq(Audit.EntityType.TICKET), eq("3"));
+        writer.destroy();
+        assertTrue(scanBatches.isEmpty());
+    }
+
+    @Test
+    void enqueueOnlyAfterCommit() throws InterruptedException {
+        var writer = new CheckInAuditWriter(scanAuditRepository, auditingRepository, transactionManager, true, 10);
+        TransactionSynchronizationManager.initSynchronization();
+        writer.write(entry("ticket"), false);
+        var synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        assertEquals(1, synchronizations.size());
+        // transaction rolled back: nothing is written
+        synchronizations.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        writer.write(entry("ticket-2"), false);
+        TransactionSynchronizationManager.getSynchronizations().get(1).afterCommit();
+        writer.destroy();
+        assertEquals(1, scanBatches.size());
+        assertEquals("ticket-2", scanBatches.get(0)[0].getValue("ticketUuid"));
+    }
+
+    @Test
+    void synchronousWriter() throws InterruptedException {
+        var writer = new CheckInAuditWriter(scanAuditRepository, auditingRepository, transactionManager, false, 0);
+        writer.write(entry("ticket"), false);
+        verify(scanAuditRepository).insert(eq("ticket"), eq(1), any(), eq("user"), eq(CheckInStatus.SUCCESS), eq(ScanAudit.Operation.SCAN));
+        verify(auditingRepository).insert(eq("reservation"), eq(2), eq(1), eq(Audit.EventType.CHECK_IN), any(), eq(Audit.EntityType.TICKET), eq("3"));
+        writer.destroy();
+    }
+
+    private static CheckInAuditWriter.Entry entry(String ticketUuid) {
+        return new CheckInAuditWriter.Entry(ticketUuid, 1, "user", 2, CheckInStatus.SUCCESS, ScanAudit.Operation.SCAN,
+            "reservation", Audit.EventType.CHECK_IN, 3, ZonedDateTime.now());
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.system.ConfigurationLevel;
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.Event;
+import alfio.model.user.Organization;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.repository.user.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static alfio.model.system.ConfigurationKeys.CHECK_IN_COLOR_CONFIGURATION;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CheckInContextCacheTest {
+
+    private EventRepository eventRepository;
+    private UserRepository userRepository;
+    private OrganizationRepository organizationRepository;
+    private ConfigurationManager configurationManager;
+    private CheckInContextCache cache;
+    private Event event;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository = mock(EventRepository.class);
+        userRepository = mock(UserRepository.class);
+        var ticketCategoryRepository = mock(TicketCategoryRepository.class);
+        organizationRepository = mock(OrganizationRepository.class);
+        configurationManager = mock(ConfigurationManager.class);
+        var colorConfiguration = mock(ConfigurationManager.MaybeConfiguration.class);
+        event = mock(Event.class);
+        when(event.getId()).thenReturn(1);
+        when(event.getOrganizationId()).thenReturn(2);
+        var configurationLevel = ConfigurationLevel.event(event);
+        when(event.getConfigurationLevel()).thenReturn(configurationLevel);
+        when(ticketCategoryRepository.findAllTicketCategories(1)).thenReturn(List.of());
+        when(colorConfiguration.getValue()).thenReturn(Optional.empty());
+        when(configurationManager.getFor(eq(CHECK_IN_COLOR_CONFIGURATION), any())).thenReturn(colorConfiguration);
+        when(organizationRepository.findOrganizationForUser("user", 2)).thenReturn(Optional.of(mock(Organization.class)));
+        cache = new CheckInContextCache(eventRepository, ticketCategoryRepository, organizationRepository, userRepository,
+            configurationManager, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void contextIsCached() {
+        when(eventRepository.findOptionalByShortName("event")).thenReturn(Optional.of(event));
+        var first = cache.findContext("event", "user");
+        var second = cache.findContext("event", "user");
+        assertTrue(first.isPresent());
+        assertSame(first.get(), second.orElseThrow());
+        verify(eventRepository, times(1)).findOptionalByShortName("event");
+    }
+
+    @Test
+    void missingEventIsNotCached() {
+        when(eventRepository.findOptionalByShortName("event")).thenReturn(Optional.empty());
+        assertTrue(cache.findContext("event", "user").isEmpty());
+        // the event has been created in the meantime
+        when(eventRepository.findOptionalByShortName("event")).thenReturn(Optional.of(event));
+        assertTrue(cache.findContext("event", "user").isPresent());
+        verify(eventRepository, times(2)).findOptionalByShortName("event");
+    }
+
+    @Test
+    void missingUserIsNotCached() {
+        when(userRepository.findIdByUserName("user")).thenReturn(Optional.empty());
+        assertNull(cache.findUserId("user"));
+        when(userRepository.findIdByUserName("user")).thenReturn(Optional.of(3));
+        assertEquals(3, cache.findUserId("user"));
+        assertEquals(3, cache.findUserId("user"));
+        verify(userRepository, times(2)).findIdByUserName("user");
+    }
+
+    @Test
+    void contextAndOwnershipAreReloadedAfterConfigurationInvalidation() {
+        when(eventRepository.findOptionalByShortName("event")).thenReturn(Optional.of(event));
+        var listener = ArgumentCaptor.forClass(Runnable.class);
+        verify(configurationManager).addInvalidationListener(listener.capture());
+        var first = cache.findContext("event", "user").orElseThrow();
+        listener.getValue().run();
+        // the user has been removed from the organization in the meantime
+        when(organizationRepository.findOrganizationForUser("user", 2)).thenReturn(Optional.empty());
+        assertTrue(cache.findContext("event", "user").isEmpty());
+        when(organizationRepository.findOrganizationForUser("user", 2)).thenReturn(Optional.of(mock(Organization.class)));
+        listener.getValue().run();
+        var second = cache.findContext("event", "user").orElseThrow();
+        assertNotSame(first, second);
+        verify(eventRepository, times(3)).findOptionalByShortName("event");
+        verify(configurationManager, times(3)).checkForChanges();
+    }
+}
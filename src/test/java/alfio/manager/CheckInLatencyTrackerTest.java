@@ -0,0 +1,53 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CheckInLatencyTrackerTest {
+
+    @Test
+    void percentiles() {
+        var tracker = new CheckInLatencyTracker();
+        for (int i = 1; i <= 100; i++) {
+            tracker.record("event", TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        var latency = tracker.getLatency("event");
+        assertEquals(100, latency.samples());
+        assertEquals(50.0, latency.p50Millis());
+        assertEquals(99.0, latency.p99Millis());
+        assertEquals(0, tracker.getLatency("another-event").samples());
+    }
+
+    @Test
+    void keepOnlyMostRecentScans() {
+        var tracker = new CheckInLatencyTracker();
+        for (int i = 0; i < CheckInLatencyTracker.MAX_SAMPLES; i++) {
+            tracker.record("event", TimeUnit.SECONDS.toNanos(1));
+        }
+        for (int i = 0; i < CheckInLatencyTracker.MAX_SAMPLES; i++) {
+            tracker.record("event", TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        var latency = tracker.getLatency("event");
+        assertEquals(CheckInLatencyTracker.MAX_SAMPLES, latency.samples());
+        assertEquals(10.0, latency.p99Millis());
+    }
+}
@@ -17,23 +17,34 @@
 package alfio.manager;
 
 import alfio.manager.support.CheckInStatistics;
+import alfio.manager.support.CheckInStatus;
+import alfio.manager.support.SuccessfulCheckIn;
 import alfio.manager.system.ConfigurationLevel;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.Event;
+import alfio.model.Ticket;
+import alfio.model.TicketCategory;
 import alfio.model.system.ConfigurationKeyValuePathLevel;
 import alfio.model.user.Organization;
 import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
 import alfio.repository.user.OrganizationRepository;
 import alfio.test.util.TestUtil;
+import org.apache.commons.lang3.tuple.Pair;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static alfio.model.system.ConfigurationKeys.CHECK_IN_STATS;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
-import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 class CheckInManagerTest {
@@ -64,7 +75,7 @@ class CheckInManagerTest {
         when(organization.getId()).thenReturn(ORG_ID);
         when(eventRepository.retrieveCheckInStatisticsForEvent(EVENT_ID)).thenReturn(new CheckInStatistics(0, 0, new Date()));
         checkInManager = new CheckInManager(null, eventRepository, null, null, null, null,
-            null, configurationManager, organizationRepository, null, null, null, null, null, TestUtil.clockProvider());
+            null, configurationManager, organizationRepository, null, null, null, null, TestUtil.clockProvider(), null, null);
     }
 
     @Test
@@ -85,5 +96,90 @@ class CheckInManagerTest {
         verify(eventRepository, never()).retrieveCheckInStatisticsForEvent(EVENT_ID);
     }
 
+    @Test
+    void checkInWithCachedContext() {
+        var ticketRepository = mock(TicketRepository.class);
+        var ticketCategoryRepository = mock(TicketCategoryRepository.class);
+        var checkInContextCache = mock(CheckInContextCache.class);
+        var checkInAuditWriter = mock(CheckInAuditWriter.class);
+        var extensionManager = mock(ExtensionManager.class);
+        var event = mock(Event.class);
+        when(event.getId()).thenReturn(EVENT_ID);
+        when(event.getPrivateKey()).thenReturn("key");
+        var category = mock(TicketCategory.class);
+        when(category.hasValidCheckIn(any(), any())).thenReturn(true);
+        when(category.getTicketCheckInStrategy()).thenReturn(TicketCategory.TicketCheckInStrategy.ONCE_PER_EVENT);
+        var ticket = mock(Ticket.class);
+        when(ticket.getId()).thenReturn(2);
+        when(ticket.getCategoryId()).thenReturn(3);
+        when(ticket.getTicketsReservationId()).thenReturn("reservation");
+        when(ticket.getStatus()).thenReturn(Ticket.TicketStatus.ACQUIRED);
+        when(ticket.ticketCode("key", false)).thenReturn("code");
+        when(ticketRepository.findOptionalByUUID("uuid")).thenReturn(Optional.of(ticket));
+        when(ticketRepository.performCheckInReturningTicket("uuid", EVENT_ID)).thenReturn(List.of(ticket));
+        when(ticketRepository.findFirstTicketIdInReservation("reservation")).thenReturn(Optional.of(1));
+        when(checkInContextCache.findContext(EVENT_NAME, USERNAME)).thenReturn(Optional.of(new CheckInContextCache.CheckInContext(event, Map.of(3, category), null)));
+        var manager = new CheckInManager(ticketRepository, eventRepository, null, null, ticketCategoryRepository, null,
+            null, configurationManager, null, null, extensionManager, null, null, TestUtil.clockProvider(), checkInContextCache, checkInAuditWriter);
+
+        var result = manager.checkIn(EVENT_NAME, "uuid", Optional.of("code"), USERNAME, USERNAME);
+
+        assertEquals(CheckInStatus.SUCCESS, result.getResult().getStatus());
+        assertTrue(result instanceof SuccessfulCheckIn);
+        verify(ticketRepository, never()).findByUUIDForUpdate(anyString());
+        verifyNoInteractions(ticketCategoryRepository);
+        verify(eventRepository, never()).findOptionalByShortName(anyString());
+        verify(extensionManager).handleTicketCheckedIn(ticket);
+        verify(checkInAuditWriter).write(argThat(e -> e.ticketUuid().equals("uuid") && e.status() == CheckInStatus.SUCCESS), eq(false));
+    }
+
+    @Test
+    void fallbackToLockedTicketIfModifiedConcurrently() {
+        var ticketRepository = mock(TicketRepository.class);
+        var checkInContextCache = mock(CheckInContextCache.class);
+        var event = mock(Event.class);
+        when(event.getId()).thenReturn(EVENT_ID);
+        var category = mock(TicketCategory.class);
+        when(category.hasValidCheckIn(any(), any())).thenReturn(true);
+        var ticket = mock(Ticket.class);
+        when(ticket.getCategoryId()).thenReturn(3);
+        when(ticket.getStatus()).thenReturn(Ticket.TicketStatus.ACQUIRED);
+        when(ticket.ticketCode(any(), anyBoolean())).thenReturn("code");
+        var checkedIn = mock(Ticket.class);
+        when(checkedIn.getCategoryId()).thenReturn(3);
+        when(checkedIn.getStatus()).thenReturn(Ticket.TicketStatus.CHECKED_IN);
+        when(checkedIn.ticketCode(any(), anyBoolean())).thenReturn("code");
+        when(ticketRepository.findOptionalByUUID("uuid")).thenReturn(Optional.of(ticket));
+        when(ticketRepository.performCheckInReturningTicket("uuid", EVENT_ID)).thenReturn(List.of());
+        when(ticketRepository.findByUUIDForUpdate("uuid")).thenReturn(Optional.of(checkedIn));
+        when(eventRepository.findOptionalById(EVENT_ID)).thenReturn(Optional.of(event));
+        var ticketCategoryRepository = mock(TicketCategoryRepository.class);
+        when(ticketCategoryRepository.getById(3)).thenReturn(category);
+        when(checkInContextCache.findContext(EVENT_NAME, USERNAME)).thenReturn(Optional.of(new CheckInContextCache.CheckInContext(event, Map.of(3, category), null)));
+        var manager = new CheckInManager(ticketRepository, eventRepository, null, null, ticketCategoryRepository, null,
+            null, configurationManager, null, null, null, null, null, TestUtil.clockProvider(), checkInContextCache, null);
 
-}
\ No newline at end of file
+        var result = manager.checkIn(EVENT_NAME, "uuid", Optional.of("code"), USERNAME, USERNAME);
+
+        assertEquals(CheckInStatus.ALREADY_CHECK_IN, result.getResult().getStatus());
+    }
+
+    @Test
+    void derivedKeysAreCached() {
+        var first = checkInManager.derivedKey("uuid/code");
+        assertSame(first, checkInManager.derivedKey("uuid/code"));
+        assertNotSame(first, checkInManager.derivedKey("uuid/other-code"));
+        assertArrayEquals(first.getEncoded(), CheckInManager.getCypher("uuid/code").getRight().getEncoded());
+    }
+
+    @Test
+    void encryptAllPayloads() {
+        var payloads = IntStream.range(0, 1_000).boxed()
+            .collect(Collectors.toMap(i -> "id-" + i, i -> Pair.of("uuid-" + i + "/code", "payload-" + i)));
+        var result = checkInManager.encryptAll(payloads);
+        assertEquals(payloads.keySet(), result.keySet());
+        payloads.forEach((id, keyAndPayload) ->
+            assertEquals(keyAndPayload.getRight(), CheckInManagerInvoker.decrypt(keyAndPayload.getLeft(), result.get(id))));
+        checkInManager.destroy();
+    }
+}
@@ -61,6 +61,7 @@ class EventManagerCheckInConfigurationTest {
         when(configuration.getValue()).thenReturn(Optional.empty());
         eventManager.saveBadgeColorConfiguration("warning", event, 1);
         verify(configurationRepository).insertEventLevel(eq(1), eq(eventId), eq(CHECK_IN_COLOR_CONFIGURATION.name()), eq("{\"defaultColorName\":\"success\",\"configurations\":[{\"colorName\":\"warning\",\"categories\":[1]}]}"), isNull());
+        verify(configurationManager).notifyChange();
     }
 
     @Test
@@ -69,6 +70,7 @@ class EventManagerCheckInConfigurationTest {
         when(configuration.getValue()).thenReturn(Optional.of(json));
         eventManager.saveBadgeColorConfiguration("warning", event, 1);
         verify(configurationRepository).updateEventLevel(eq(eventId), eq(1), eq(CHECK_IN_COLOR_CONFIGURATION.name()), eq("{\"defaultColorName\":\"success\",\"configurations\":[{\"colorName\":\"info\",\"categories\":[5]},{\"colorName\":\"warning\",\"categories\":[1]}]}"));
+        verify(configurationManager).notifyChange();
     }
 
     @Test
@@ -77,6 +79,7 @@ class EventManagerCheckInConfigurationTest {
         when(configuration.getValue()).thenReturn(Optional.of(json));
         eventManager.saveBadgeColorConfiguration("info", event, 1);
         verify(configurationRepository).updateEventLevel(eq(eventId), eq(1), eq(CHECK_IN_COLOR_CONFIGURATION.name()), eq("{\"defaultColorName\":\"success\",\"configurations\":[{\"colorName\":\"info\",\"categories\":[5,1]}]}"));
+        verify(configurationManager).notifyChange();
     }
 
     @Test
@@ -85,5 +88,6 @@ class EventManagerCheckInConfigurationTest {
         when(configuration.getValue()).thenReturn(Optional.of(json));
         eventManager.saveBadgeColorConfiguration("warning", event, 1);
         verify(configurationRepository).updateEventLevel(eq(eventId), eq(1), eq(CHECK_IN_COLOR_CONFIGURATION.name()), eq("{\"defaultColorName\":\"success\",\"configurations\":[{\"colorName\":\"warning\",\"categories\":[1]}]}"));
+        verify(configurationManager).notifyChange();
     }
 }
\ No newline at end of file
@@ -23,6 +23,9 @@ import alfio.manager.user.UserManager;
 import alfio.model.Event;
 import alfio.model.Ticket;
 import alfio.model.TicketCategory;
+import alfio.model.TicketFieldConfiguration;
+import alfio.model.TicketReservation;
+import alfio.model.TicketWithReservationAndTransaction;
 import alfio.model.metadata.AlfioMetadata;
 import alfio.model.modification.*;
 import alfio.model.result.ErrorCode;
@@ -92,6 +95,8 @@ class EventManagerIntegrationTest extends BaseIntegrationTest {
     private ClockProvider clockProvider;
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
+    @Autowired
+    private TicketFieldRepository ticketFieldRepository;
 
     @Test
     void testUnboundedTicketsGeneration() {
@@ -1056,4 +1061,58 @@ class EventManagerIntegrationTest extends BaseIntegrationTest {
             null, event.getZoneId().toString(), Collections.emptyMap(), DateTimeModification.fromZonedDateTime(event.getBegin()), DateTimeModification.fromZonedDateTime(event.getEnd()),
             event.getRegularPrice(), event.getCurrency(), availableSeats, event.getVat(), event.isVatIncluded(), allowedPaymentProxies, null, event.isFreeOfCharge(), null, 7, null, null, AlfioMetadata.empty(), List.of());
     }
+
+    @Test
+    void exportAllConfirmedTickets() {
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(clockProvider.getClock()).minusDays(1), LocalTime.now(clockProvider.getClock())),
+                new DateTimeModification(LocalDate.now(clockProvider.getClock()).plusDays(1), LocalTime.now(clockProvider.getClock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", false, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        var eventAndUsername = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository);
+        Event event = eventAndUsername.getKey();
+        var category = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0);
+        var now = ZonedDateTime.now(clockProvider.getClock());
+
+        var lateConfirmation = createConfirmedReservation(event, category, 3, now);
+        var withoutConfirmation = createConfirmedReservation(event, category, 2, null);
+        var earlyConfirmation = createConfirmedReservation(event, category, 4, now.minusDays(1));
+        int fieldId = ticketFieldRepository.insertConfiguration(event.getId(), "company", 0, "text", null, null, null, false,
+            TicketFieldConfiguration.Context.ATTENDEE, -1, null).getKey();
+        ticketFieldRepository.insertValue(earlyConfirmation.get(3), fieldId, "ACME");
+
+        // sorted by confirmation timestamp and ticket id. Tickets without confirmation timestamp come last
+        var expected = new ArrayList<Integer>();
+        expected.addAll(earlyConfirmation);
+        expected.addAll(lateConfirmation);
+        expected.addAll(withoutConfirmation);
+        // same order of the single query used before the export was streamed
+        var previousExport = jdbcTemplate.queryForList("select t_id from reservation_and_ticket_and_tx where t_id is not null and t_status in (" + TicketRepository.CONFIRMED + ")" +
+            " and t_event_id = :eventId order by tr_confirmation_ts, t_id", Map.of("eventId", event.getId()), Integer.class);
+        assertEquals(expected, previousExport);
+
+        var exported = new ArrayList<Pair<TicketWithReservationAndTransaction, Map<String, String>>>();
+        eventManager.exportAllConfirmedTickets(event.getShortName(), eventAndUsername.getRight(), true, tickets -> tickets.forEach(exported::add));
+        assertEquals(expected, exported.stream().map(p -> p.getLeft().getTicket().getId()).toList());
+        var fields = exported.stream().filter(p -> !p.getRight().isEmpty()).toList();
+        assertEquals(1, fields.size());
+        assertEquals(earlyConfirmation.get(3), fields.get(0).getLeft().getTicket().getId());
+        assertEquals(Map.of("company", "ACME"), fields.get(0).getRight());
+
+        exported.clear();
+        eventManager.exportAllConfirmedTickets(event.getShortName(), eventAndUsername.getRight(), false, tickets -> tickets.forEach(exported::add));
+        assertEquals(expected, exported.stream().map(p -> p.getLeft().getTicket().getId()).toList());
+        assertTrue(exported.stream().allMatch(p -> p.getRight().isEmpty()));
+    }
+
+    private List<Integer> createConfirmedReservation(Event event, TicketCategory category, int tickets, ZonedDateTime confirmationTs) {
+        String reservationId = UUID.randomUUID().toString();
+        ticketReservationRepository.createNewReservation(reservationId, ZonedDateTime.now(clockProvider.getClock()), DateUtils.addDays(new Date(), 1), null, "en", event.getId(), event.getVat(), event.isVatIncluded(), event.getCurrency(), event.getOrganizationId(), null);
+        var ids = ticketRepository.selectNotAllocatedTicketsForUpdate(event.getId(), tickets, List.of(TicketRepository.FREE));
+        assertEquals(tickets, ticketRepository.reserveTickets(reservationId, ids, category, "en", event.getVatStatus(), i -> null));
+        ticketReservationRepository.updateTicketReservation(reservationId, TicketReservation.TicketReservationStatus.COMPLETE.name(), "test@example.org",
+            "Full Name", "Full", "Name", "en", null, confirmationTs, PaymentProxy.OFFLINE.name(), null);
+        ticketRepository.updateTicketsStatusWithReservationId(reservationId, Ticket.TicketStatus.ACQUIRED.name());
+        return ticketRepository.findTicketsInReservation(reservationId).stream().map(Ticket::getId).sorted().toList();
+    }
 }
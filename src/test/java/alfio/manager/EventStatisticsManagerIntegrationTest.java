@@ -0,0 +1,150 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.TicketCategory;
+import alfio.model.metadata.AlfioMetadata;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.repository.*;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.AlfioIntegrationTest;
+import alfio.util.ClockProvider;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@AlfioIntegrationTest
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+class EventStatisticsManagerIntegrationTest {
+
+    @Autowired
+    private EventStatisticsManager eventStatisticsManager;
+    @Autowired
+    private TicketStatusCountRepository ticketStatusCountRepository;
+    @Autowired
+    private TicketRepository ticketRepository;
+    @Autowired
+    private TicketReservationRepository ticketReservationRepository;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Test
+    void countersMatchTicketTable() {
+        Event event = createEvent();
+        var category = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0);
+
+        // inserts
+        eventStatisticsManager.compactTicketStatusCount();
+        assertCountersMatch(event.getId());
+
+        // status updates, checked both before and after compaction
+        String reservationId = UUID.randomUUID().toString();
+        ticketReservationRepository.createNewReservation(reservationId, ZonedDateTime.now(ClockProvider.clock()), DateUtils.addDays(new Date(), 1), null, "en", event.getId(), event.getVat(), event.isVatIncluded(), event.getCurrency(), event.getOrganizationId(), null);
+        var ids = ticketRepository.selectTicketInCategoryForUpdate(event.getId(), category.getId(), 4, List.of(TicketRepository.FREE));
+        assertEquals(4, ticketRepository.reserveTickets(reservationId, ids, category, "en", event.getVatStatus(), i -> null));
+        ticketRepository.updateTicketsStatusWithReservationId(reservationId, "ACQUIRED");
+        assertEquals(countFree(event.getId(), category.getId()), ticketStatusCountRepository.countFreeTicketsByCategory(event.getId()).getOrDefault(category.getId(), 0));
+        eventStatisticsManager.compactTicketStatusCount();
+        assertCountersMatch(event.getId());
+
+        ticketRepository.updateTicketStatusWithUUID(ticketRepository.findTicketsInReservation(reservationId).get(0).getUuid(), "CHECKED_IN");
+        eventStatisticsManager.compactTicketStatusCount();
+        assertCountersMatch(event.getId());
+        assertEquals(0, countDeltas(event.getId()));
+    }
+
+    @Test
+    void compactionConsumesTheWholeBacklogInBatches() {
+        Event event = createEvent();
+        eventStatisticsManager.compactTicketStatusCount();
+        assertCountersMatch(event.getId());
+
+        // more changes than a single compaction batch. They cancel each other out, so the counters must not change
+        int changes = 25_001;
+        jdbcTemplate.update("insert into ticket_status_count_delta(event_id, category_id, status, organization_id_fk, delta)" +
+            " select :eventId, -1, 'FREE', :organizationId, case when n % 2 = 0 then 1 else -1 end from generate_series(1, :changes) n",
+            Map.of("eventId", event.getId(), "organizationId", event.getOrganizationId(), "changes", changes));
+        jdbcTemplate.update("insert into ticket_status_count_delta(event_id, category_id, status, organization_id_fk, delta) values(:eventId, -1, 'FREE', :organizationId, 1)",
+            Map.of("eventId", event.getId(), "organizationId", event.getOrganizationId()));
+
+        assertTrue(eventStatisticsManager.compactTicketStatusCount() >= changes + 1);
+        assertEquals(0, countDeltas(event.getId()));
+        var free = jdbcTemplate.queryForObject("select count from ticket_status_count where event_id = :eventId and category_id = -1 and status = 'FREE'",
+            Map.of("eventId", event.getId()), Integer.class);
+        assertEquals(countFree(event.getId(), -1) + 1, free);
+    }
+
+    private Event createEvent() {
+        // a bounded category with 10 tickets, the other 10 tickets are not assigned to any category
+        var categories = List.of(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, 10,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).minusDays(1), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).plusDays(1), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", true, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        return initEvent(categories, organizationRepository, userManager, eventManager, eventRepository).getLeft();
+    }
+
+    private void assertCountersMatch(int eventId) {
+        var params = Map.of("eventId", eventId);
+        var expected = new HashMap<String, Integer>();
+        jdbcTemplate.query("select coalesce(category_id, -1) as category_id, status, count(*) as cnt from ticket where event_id = :eventId group by 1, 2", params,
+            rs -> { expected.put(rs.getInt("category_id") + "/" + rs.getString("status"), rs.getInt("cnt")); });
+        var actual = new HashMap<String, Integer>();
+        jdbcTemplate.query("select category_id, status, count as cnt from ticket_status_count where event_id = :eventId and count <> 0", params,
+            rs -> { actual.put(rs.getInt("category_id") + "/" + rs.getString("status"), rs.getInt("cnt")); });
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+    }
+
+    private int countFree(int eventId, int categoryId) {
+        return Objects.requireNonNull(jdbcTemplate.queryForObject("select count(*) from ticket where event_id = :eventId and coalesce(category_id, -1) = :categoryId and status = 'FREE'",
+            Map.of("eventId", eventId, "categoryId", categoryId), Integer.class));
+    }
+
+    private int countDeltas(int eventId) {
+        return Objects.requireNonNull(jdbcTemplate.queryForObject("select count(*) from ticket_status_count_delta where event_id = :eventId", Map.of("eventId", eventId), Integer.class));
+    }
+}
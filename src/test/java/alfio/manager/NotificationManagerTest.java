@@ -0,0 +1,210 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.ConfigurationManager.MaybeConfiguration;
+import alfio.manager.system.Mailer;
+import alfio.model.EmailMessage;
+import alfio.model.Event;
+import alfio.model.PurchaseContext;
+import alfio.model.system.ConfigurationKeys;
+import alfio.model.system.command.UploadedResourceChanged;
+import alfio.repository.EmailMessageRepository;
+import alfio.repository.TicketRepository;
+import alfio.util.Json;
+import alfio.util.TemplateResource;
+import alfio.test.util.TestUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class NotificationManagerTest {
+
+    private static final int EVENT_ID = 1;
+
+    private Mailer mailer;
+    private PlatformTransactionManager transactionManager;
+    private EmailMessageRepository emailMessageRepository;
+    private PurchaseContextManager purchaseContextManager;
+    private PassKitManager passKitManager;
+    private TicketRepository ticketRepository;
+    private ConfigurationManager configurationManager;
+    private NotificationManager notificationManager;
+    private Event event;
+
+    @BeforeEach
+    void setUp() {
+        mailer = mock(Mailer.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        emailMessageRepository = mock(EmailMessageRepository.class);
+        purchaseContextManager = mock(PurchaseContextManager.class);
+        passKitManager = mock(PassKitManager.class);
+        ticketRepository = mock(TicketRepository.class);
+        configurationManager = mock(ConfigurationManager.class);
+        when(configurationManager.getFor(anyCollection(), any())).thenReturn(Map.of(
+            ConfigurationKeys.MAX_EMAIL_PER_CYCLE, new MaybeConfiguration(ConfigurationKeys.MAX_EMAIL_PER_CYCLE),
+            ConfigurationKeys.MAIL_DISPATCH_WORKERS, new MaybeConfiguration(ConfigurationKeys.MAIL_DISPATCH_WORKERS)));
+        when(configurationManager.getFor(eq(ConfigurationKeys.MAIL_ATTEMPTS_COUNT), any())).thenReturn(new MaybeConfiguration(ConfigurationKeys.MAIL_ATTEMPTS_COUNT));
+        event = mock(Event.class);
+        when(event.getDisplayName()).thenReturn("event");
+        doReturn(Optional.of(event)).when(purchaseContextManager).findById(PurchaseContext.PurchaseContextType.event, Integer.toString(EVENT_ID));
+        when(emailMessageRepository.updateStatus(anyInt(), anyString(), anyString(), anyList())).thenReturn(1);
+        notificationManager = new NotificationManager(mailer, null, transactionManager, emailMessageRepository, null, null, null,
+            configurationManager, null, null, null, null, passKitManager, ticketRepository, null, null, null,
+            TestUtil.clockProvider(), purchaseContextManager, null);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        notificationManager.destroy();
+    }
+
+    @Test
+    void sendClaimedMessages() {
+        when(emailMessageRepository.loadAllWaitingForProcessing(anyInt())).thenReturn(List.of(message(1), message(2), message(3)));
+        doThrow(new IllegalStateException("boom")).when(mailer).send(any(), any(), eq("2@example.com"), any(), any(), any(), any());
+
+        assertEquals(2, notificationManager.sendWaitingMessages());
+
+        verify(mailer, times(3)).acquireSendPermit(event);
+        verify(emailMessageRepository).updateStatusToSent(eq(1), eq("checksum-1"), any(), anyList());
+        verify(emailMessageRepository).updateStatusToSent(eq(3), eq("checksum-3"), any(), anyList());
+        verify(emailMessageRepository, never()).updateStatusToSent(eq(2), any(), any(), anyList());
+        verify(emailMessageRepository).updateStatusAndAttempts(eq(2), eq(EmailMessage.Status.RETRY.name()), any(ZonedDateTime.class), eq(1), anyList());
+    }
+
+    @Test
+    void doNotSendMessagesClaimedByOthers() {
+        when(emailMessageRepository.loadAllWaitingForProcessing(anyInt())).thenReturn(List.of(message(1)));
+        when(emailMessageRepository.updateStatus(eq(1), anyString(), anyString(), anyList())).thenReturn(0);
+
+        assertEquals(0, notificationManager.sendWaitingMessages());
+
+        verifyNoInteractions(mailer);
+    }
+
+    @Test
+    void acquirePermitBeforeOpeningTheTransaction() {
+        when(emailMessageRepository.loadAllWaitingForProcessing(anyInt())).thenReturn(List.of(message(1)));
+
+        assertEquals(1, notificationManager.sendWaitingMessages());
+
+        // the first transaction is used to claim the message
+        InOrder inOrder = inOrder(transactionManager, mailer);
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(mailer).acquireSendPermit(event);
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(mailer).send(any(), any(), eq("1@example.com"), any(), any(), any(), any());
+    }
+
+    @Test
+    void reuseRenderedAttachmentsUntilTheTicketIsModified() {
+        var model = Map.of("ticket", Json.toJson(Map.of("id", 42, "status", "ACQUIRED")), "organizationId", "1");
+        var attachments = "[" + Json.toJson(Map.of("filename", "pass", "contentType", "application/octet-stream",
+            "identifier", Mailer.AttachmentIdentifier.PASSBOOK.name(), "model", Json.toJson(model))) + "]";
+        when(emailMessageRepository.loadAllWaitingForProcessing(anyInt())).thenReturn(List.of(message(1, attachments)));
+        when(passKitManager.getPass(anyMap())).thenReturn(new byte[] {1, 2, 3});
+        when(ticketRepository.findDocumentStateVersion(42)).thenReturn(Optional.of("v1"));
+
+        // attachments are rendered ahead of sending, then reused by the dispatcher
+        assertEquals(1, notificationManager.sendWaitingMessages());
+        verify(passKitManager, times(1)).getPass(anyMap());
+
+        // retry, same data
+        assertEquals(1, notificationManager.sendWaitingMessages());
+        verify(passKitManager, times(1)).getPass(anyMap());
+
+        // the ticket has been modified in the meantime
+        when(ticketRepository.findDocumentStateVersion(42)).thenReturn(Optional.of("v2"));
+        assertEquals(1, notificationManager.sendWaitingMessages());
+        verify(passKitManager, times(2)).getPass(anyMap());
+    }
+
+    @Test
+    void renderAgainAfterTemplateChange() {
+        var model = Map.of("ticket", Json.toJson(Map.of("id", 42, "status", "ACQUIRED")), "organizationId", "1");
+        var attachments = "[" + Json.toJson(Map.of("filename", "pass", "contentType", "application/octet-stream",
+            "identifier", Mailer.AttachmentIdentifier.PASSBOOK.name(), "model", Json.toJson(model))) + "]";
+        when(emailMessageRepository.loadAllWaitingForProcessing(anyInt())).thenReturn(List.of(message(1, attachments)));
+        when(passKitManager.getPass(anyMap())).thenReturn(new byte[] {1, 2, 3});
+        when(ticketRepository.findDocumentStateVersion(42)).thenReturn(Optional.of("v1"));
+
+        assertEquals(1, notificationManager.sendWaitingMessages());
+        verify(passKitManager, times(1)).getPass(anyMap());
+
+        // the organizer uploads a new template, the ticket data is the same
+        notificationManager.invalidateRenderedAttachments(new UploadedResourceChanged(TemplateResource.TICKET_PDF.getSavedName(Locale.ENGLISH), 1, null));
+        assertEquals(1, notificationManager.sendWaitingMessages());
+        verify(passKitManager, times(2)).getPass(anyMap());
+    }
+
+    @Test
+    void renderAgainAfterConfigurationChange() {
+        var model = Map.of("ticket", Json.toJson(Map.of("id", 42, "status", "ACQUIRED")), "organizationId", "1");
+        var attachments = "[" + Json.toJson(Map.of("filename", "pass", "contentType", "application/octet-stream",
+            "identifier", Mailer.AttachmentIdentifier.PASSBOOK.name(), "model", Json.toJson(model))) + "]";
+        when(emailMessageRepository.loadAllWaitingForProcessing(anyInt())).thenReturn(List.of(message(1, attachments)));
+        when(passKitManager.getPass(anyMap())).thenReturn(new byte[] {1, 2, 3});
+        when(ticketRepository.findDocumentStateVersion(42)).thenReturn(Optional.of("v1"));
+        var listener = ArgumentCaptor.forClass(Runnable.class);
+        verify(configurationManager).addInvalidationListener(listener.capture());
+
+        assertEquals(1, notificationManager.sendWaitingMessages());
+        verify(passKitManager, times(1)).getPass(anyMap());
+
+        // the configuration has been modified, e.g. the VAT settings
+        listener.getValue().run();
+        assertEquals(1, notificationManager.sendWaitingMessages());
+        verify(passKitManager, times(2)).getPass(anyMap());
+    }
+
+    @Test
+    void doNotCacheAttachmentsWithoutVersion() {
+        var model = Map.of("ticket", Json.toJson(Map.of("id", 42, "status", "ACQUIRED")), "organizationId", "1");
+        var attachments = "[" + Json.toJson(Map.of("filename", "pass", "contentType", "application/octet-stream",
+            "identifier", Mailer.AttachmentIdentifier.PASSBOOK.name(), "model", Json.toJson(model))) + "]";
+        when(emailMessageRepository.loadAllWaitingForProcessing(anyInt())).thenReturn(List.of(message(1, attachments)));
+        when(passKitManager.getPass(anyMap())).thenReturn(new byte[] {1, 2, 3});
+        when(ticketRepository.findDocumentStateVersion(42)).thenReturn(Optional.empty());
+
+        assertEquals(1, notificationManager.sendWaitingMessages());
+        verify(passKitManager, times(2)).getPass(anyMap());
+    }
+
+    static EmailMessage message(int id) {
+        return message(id, null);
+    }
+
+    static EmailMessage message(int id, String attachments) {
+        return new EmailMessage(id, EVENT_ID, null, EmailMessage.Status.WAITING.name(), id + "@example.com", "subject", "message",
+            null, attachments, "checksum-" + id, ZonedDateTime.now(TestUtil.clockProvider().getClock()), null, 0, null, 1);
+    }
+}
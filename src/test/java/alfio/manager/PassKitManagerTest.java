@@ -0,0 +1,104 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.PassKitManager.SignerKey;
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.system.command.ConfigurationChanged;
+import alfio.repository.EventDescriptionRepository;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
+import alfio.repository.user.OrganizationRepository;
+import com.ryantenney.passkit4j.sign.PassSigner;
+import com.ryantenney.passkit4j.sign.PassSigningException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class PassKitManagerTest {
+
+    private static final SignerKey KEY = new SignerKey("keystore", "password", "alias");
+
+    private AtomicInteger builtSigners;
+    private PassKitManager passKitManager;
+
+    @BeforeEach
+    void setUp() {
+        builtSigners = new AtomicInteger();
+        passKitManager = new PassKitManager(mock(EventRepository.class),
+            mock(OrganizationRepository.class),
+            mock(ConfigurationManager.class),
+            mock(FileUploadManager.class),
+            mock(EventDescriptionRepository.class),
+            mock(TicketCategoryRepository.class),
+            mock(TicketRepository.class),
+            key -> {
+                builtSigners.incrementAndGet();
+                return mock(PassSigner.class);
+            });
+    }
+
+    @Test
+    void signerIsReusedForTheSameConfiguration() throws PassSigningException {
+        var first = passKitManager.getSigner(KEY);
+        var second = passKitManager.getSigner(new SignerKey("keystore", "password", "alias"));
+        assertSame(first, second);
+        assertEquals(1, builtSigners.get());
+    }
+
+    @Test
+    void newSignerIsBuiltWhenTheConfigurationIsDifferent() throws PassSigningException {
+        var first = passKitManager.getSigner(KEY);
+        var second = passKitManager.getSigner(new SignerKey("keystore", "new-password", "alias"));
+        assertNotSame(first, second);
+        assertEquals(2, builtSigners.get());
+    }
+
+    @Test
+    void signersAreInvalidatedWhenTheConfigurationChanges() throws PassSigningException {
+        var first = passKitManager.getSigner(KEY);
+        passKitManager.handleConfigurationChanged(new ConfigurationChanged());
+        var second = passKitManager.getSigner(KEY);
+        assertNotSame(first, second);
+        assertEquals(2, builtSigners.get());
+    }
+
+    @Test
+    void signingErrorsAreNotCached() {
+        var failures = new AtomicInteger();
+        var manager = new PassKitManager(mock(EventRepository.class),
+            mock(OrganizationRepository.class),
+            mock(ConfigurationManager.class),
+            mock(FileUploadManager.class),
+            mock(EventDescriptionRepository.class),
+            mock(TicketCategoryRepository.class),
+            mock(TicketRepository.class),
+            key -> {
+                failures.incrementAndGet();
+                throw new IllegalStateException(new IOException("invalid keystore"));
+            });
+        assertThrows(IllegalStateException.class, () -> manager.getSigner(KEY));
+        assertThrows(IllegalStateException.class, () -> manager.getSigner(KEY));
+        assertEquals(2, failures.get());
+    }
+}
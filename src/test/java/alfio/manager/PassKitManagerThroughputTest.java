@@ -0,0 +1,145 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.PassKitManager.SignerKey;
+import alfio.manager.system.ConfigurationManager;
+import alfio.repository.EventDescriptionRepository;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
+import alfio.repository.user.OrganizationRepository;
+import com.ryantenney.passkit4j.Pass;
+import com.ryantenney.passkit4j.PassResource;
+import com.ryantenney.passkit4j.PassSerializer;
+import com.ryantenney.passkit4j.model.*;
+import com.ryantenney.passkit4j.sign.PassSigner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Measures how many passes per second can be generated when the signer and the static resources are built
+ * for every pass (as before) and when they are reused.
+ */
+class PassKitManagerThroughputTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PassKitManagerThroughputTest.class);
+    private static final int WARMUP = 5;
+    private static final int PASSES = 50;
+    private static final String PASSWORD = "alfio-test";
+    private static final String ALIAS = "pass";
+
+    @TempDir
+    Path tempDir;
+
+    private SignerKey signerKey;
+    private PassKitManager passKitManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        var keystore = tempDir.resolve("pass.p12");
+        var keytool = Path.of(System.getProperty("java.home"), "bin", "keytool").toString();
+        var process = new ProcessBuilder(keytool, "-J-Dkeystore.pkcs12.legacy", "-genkeypair",
+            "-alias", ALIAS, "-keyalg", "RSA", "-keysize", "2048", "-dname", "CN=alfio-test", "-validity", "1",
+            "-storetype", "PKCS12", "-keystore", keystore.toString(), "-storepass", PASSWORD, "-keypass", PASSWORD)
+            .redirectErrorStream(true)
+            .start();
+        process.getInputStream().transferTo(OutputStream.nullOutputStream());
+        assertTrue(process.waitFor(1, TimeUnit.MINUTES) && process.exitValue() == 0, "cannot generate the keystore");
+        signerKey = new SignerKey(Base64.getEncoder().encodeToString(Files.readAllBytes(keystore)), PASSWORD, ALIAS);
+        passKitManager = new PassKitManager(mock(EventRepository.class),
+            mock(OrganizationRepository.class),
+            mock(ConfigurationManager.class),
+            mock(FileUploadManager.class),
+            mock(EventDescriptionRepository.class),
+            mock(TicketCategoryRepository.class),
+            mock(TicketRepository.class));
+    }
+
+    @Test
+    void reusingSignerAndResourcesIncreasesThroughput() throws Exception {
+        // previous behavior: keystore, intermediate certificate and icons are loaded for each pass
+        double perPass = passesPerSecond(PassKitManagerThroughputTest::readIcons, () -> PassKitManager.buildSigner(signerKey));
+        // current behavior: icons are loaded once, the signer is taken from the cache
+        var icons = readIcons();
+        double reused = passesPerSecond(() -> icons, () -> {
+            try {
+                return passKitManager.getSigner(signerKey);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        log.info("passes/sec: {} building the signer for each pass, {} reusing it", String.format("%.1f", perPass), String.format("%.1f", reused));
+        assertTrue(reused > perPass, "expected reused (" + reused + ") > per pass (" + perPass + ")");
+    }
+
+    private static double passesPerSecond(Supplier<List<PassResource>> icons, Supplier<PassSigner> signer) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            writePass(icons.get(), signer.get());
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < PASSES; i++) {
+            writePass(icons.get(), signer.get());
+        }
+        return PASSES / ((System.nanoTime() - start) / 1_000_000_000D);
+    }
+
+    private static void writePass(List<PassResource> icons, PassSigner signer) throws Exception {
+        var pass = new Pass()
+            .teamIdentifier("TEAM")
+            .passTypeIdentifier("pass.io.alf.test")
+            .organizationName("alf.io")
+            .description("throughput test")
+            .serialNumber(UUID.randomUUID().toString())
+            .barcode(new Barcode(BarcodeFormat.QR, UUID.randomUUID().toString()))
+            .passInformation(new EventTicket().primaryFields(List.of(new TextField("categoryId", "event", "category"))))
+            .files(icons.toArray(new PassResource[0]));
+        PassSerializer.writePkPassArchive(pass, signer, new ByteArrayOutputStream());
+    }
+
+    private static List<PassResource> readIcons() {
+        return Stream.of("icon.png", "icon@2x.png", "icon@3x.png")
+            .map(name -> {
+                try (InputStream is = new ClassPathResource("/alfio/icon/" + name).getInputStream()) {
+                    return new PassResource(name, is.readAllBytes());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            })
+            .toList();
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.support.PaymentWebhookResult;
+import alfio.model.TicketReservation;
+import alfio.model.system.command.PaymentWebhookReceived;
+import alfio.model.transaction.PaymentContext;
+import alfio.model.transaction.PaymentProvider;
+import alfio.model.transaction.PaymentProxy;
+import alfio.model.transaction.TransactionWebhookPayload;
+import alfio.model.transaction.capabilities.WebhookHandler;
+import alfio.model.transaction.webhook.PaymentWebhookInboxEntry;
+import alfio.repository.PaymentWebhookInboxRepository;
+import alfio.repository.TicketReservationRepository;
+import alfio.util.ClockProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PaymentWebhookInboxManagerTest {
+
+    private static final String RESERVATION_ID = "reservation-id";
+    private static final String BODY = "{}";
+
+    private PaymentManager paymentManager;
+    private TicketReservationManager ticketReservationManager;
+    private TicketReservationRepository ticketReservationRepository;
+    private PaymentWebhookInboxRepository repository;
+    private ApplicationEventPublisher publisher;
+    private PaymentProvider provider;
+    private TransactionWebhookPayload payload;
+    private PaymentWebhookInboxManager manager;
+
+    @BeforeEach
+    void setUp() {
+        paymentManager = mock(PaymentManager.class);
+        ticketReservationManager = mock(TicketReservationManager.class);
+        ticketReservationRepository = mock(TicketReservationRepository.class);
+        repository = mock(PaymentWebhookInboxRepository.class);
+        publisher = mock(ApplicationEventPublisher.class);
+        provider = mock(PaymentProvider.class, withSettings().extraInterfaces(WebhookHandler.class));
+        payload = mock(TransactionWebhookPayload.class);
+        when(payload.getReservationId()).thenReturn(RESERVATION_ID);
+        when(payload.getEventId()).thenReturn("evt_1");
+        when(payload.getType()).thenReturn("charge.succeeded");
+        when(paymentManager.streamActiveProvidersByProxyAndCapabilities(eq(PaymentProxy.STRIPE), any(), any())).thenAnswer(i -> Stream.of(provider));
+        when(((WebhookHandler) provider).detectPaymentContext(anyString())).thenReturn(Optional.empty());
+        when(((WebhookHandler) provider).parseTransactionPayload(eq(BODY), eq("signature"), any(), any())).thenReturn(Optional.of(payload));
+        when(ticketReservationRepository.findOptionalReservationById(RESERVATION_ID)).thenReturn(Optional.of(mock(TicketReservation.class)));
+        var environment = new MockEnvironment().withProperty("alfio.payment.webhook.async", "false");
+        manager = new PaymentWebhookInboxManager(paymentManager, ticketReservationManager, ticketReservationRepository,
+            repository, publisher, mock(ClockProvider.class), mock(PlatformTransactionManager.class), environment);
+    }
+
+    @Test
+    void storeVerifiedWebhook() {
+        when(repository.insert("STRIPE", "evt_1", RESERVATION_ID, "charge.succeeded", BODY, Map.of())).thenReturn(1);
+        var result = manager.receiveTransactionWebhook(BODY, "signature", PaymentProxy.STRIPE, Map.of());
+        assertTrue(result.isAccepted());
+        verify(publisher).publishEvent(new PaymentWebhookReceived(RESERVATION_ID));
+        verifyNoInteractions(ticketReservationManager);
+    }
+
+    @Test
+    void acknowledgeDuplicateWithoutProcessingItAgain() {
+        when(repository.insert(anyString(), anyString(), anyString(), anyString(), anyString(), any())).thenReturn(0);
+        var result = manager.receiveTransactionWebhook(BODY, "signature", PaymentProxy.STRIPE, Map.of());
+        assertTrue(result.isAccepted());
+        verifyNoInteractions(publisher);
+    }
+
+    @Test
+    void rejectUnsignedWebhook() {
+        when(((WebhookHandler) provider).requiresSignedBody()).thenReturn(true);
+        var result = manager.receiveTransactionWebhook(BODY, null, PaymentProxy.STRIPE, Map.of());
+        assertTrue(result.isError());
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void ignoreWebhookForUnknownReservation() {
+        when(ticketReservationRepository.findOptionalReservationById(RESERVATION_ID)).thenReturn(Optional.empty());
+        var result = manager.receiveTransactionWebhook(BODY, "signature", PaymentProxy.STRIPE, Map.of(), new PaymentContext());
+        assertEquals(PaymentWebhookResult.Type.NOT_RELEVANT, result.getType());
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void processPendingWebhooks() {
+        var successful = entry(1L, 0);
+        var error = entry(2L, 0);
+        var failing = entry(3L, PaymentWebhookInboxManager.MAX_ATTEMPTS - 1);
+        when(repository.lockNextPending()).thenReturn(Optional.of(successful), Optional.of(error), Optional.of(failing), Optional.empty());
+        when(ticketReservationManager.processTransactionWebhook(successful)).thenReturn(PaymentWebhookResult.successful(null));
+        when(ticketReservationManager.processTransactionWebhook(error)).thenReturn(PaymentWebhookResult.error("provider not available"));
+        when(ticketReservationManager.processTransactionWebhook(failing)).thenThrow(new IllegalStateException("boom"));
+
+        assertEquals(3, manager.processPendingWebhooks());
+        verify(repository).markAsProcessed(1L, "SUCCESSFUL");
+        verify(repository).registerFailure(2L, "provider not available", PaymentWebhookInboxManager.retryDelaySeconds(0), PaymentWebhookInboxManager.MAX_ATTEMPTS);
+        verify(repository).registerFailure(3L, "boom", PaymentWebhookInboxManager.retryDelaySeconds(PaymentWebhookInboxManager.MAX_ATTEMPTS - 1), PaymentWebhookInboxManager.MAX_ATTEMPTS);
+    }
+
+    @Test
+    void processWebhooksOnceCommitted() {
+        when(repository.lockNextPending()).thenReturn(Optional.empty());
+        manager.onPaymentWebhookReceived(new PaymentWebhookReceived(RESERVATION_ID));
+        verify(repository).lockNextPending();
+    }
+
+    @Test
+    void retryDelayIsCapped() {
+        assertEquals(10, PaymentWebhookInboxManager.retryDelaySeconds(0));
+        assertEquals(20, PaymentWebhookInboxManager.retryDelaySeconds(1));
+        assertEquals(3600, PaymentWebhookInboxManager.retryDelaySeconds(9));
+        assertEquals(3600, PaymentWebhookInboxManager.retryDelaySeconds(100));
+    }
+
+    private static PaymentWebhookInboxEntry entry(long id, int attempts) {
+        return new PaymentWebhookInboxEntry(id, PaymentProxy.STRIPE, "evt_" + id, RESERVATION_ID, "charge.succeeded", BODY, Map.of(), attempts, ZonedDateTime.now());
+    }
+}
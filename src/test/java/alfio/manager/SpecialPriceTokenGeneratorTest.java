@@ -0,0 +1,101 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.ConfigurationManager.MaybeConfiguration;
+import alfio.model.EventAndOrganizationId;
+import alfio.model.SpecialPrice;
+import alfio.model.TicketCategory;
+import alfio.model.system.ConfigurationKeys;
+import alfio.repository.EventRepository;
+import alfio.repository.SpecialPriceRepository;
+import alfio.repository.TicketCategoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SpecialPriceTokenGeneratorTest {
+
+    private static final int CATEGORY_ID = 2;
+    private static final List<Integer> IDS = List.of(10, 11, 12);
+
+    private SpecialPriceRepository specialPriceRepository;
+    private PlatformTransactionManager transactionManager;
+    private SpecialPriceTokenGenerator generator;
+
+    @BeforeEach
+    void setUp() {
+        specialPriceRepository = mock(SpecialPriceRepository.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        var ticketCategoryRepository = mock(TicketCategoryRepository.class);
+        var eventRepository = mock(EventRepository.class);
+        var configurationManager = mock(ConfigurationManager.class);
+        var category = mock(TicketCategory.class);
+        when(category.getId()).thenReturn(CATEGORY_ID);
+        when(category.getEventId()).thenReturn(1);
+        when(ticketCategoryRepository.getByIdAndActive(CATEGORY_ID)).thenReturn(Optional.of(category));
+        when(eventRepository.findEventAndOrganizationIdById(1)).thenReturn(new EventAndOrganizationId(1, 1));
+        when(configurationManager.getFor(eq(ConfigurationKeys.SPECIAL_PRICE_CODE_LENGTH), any())).thenReturn(new MaybeConfiguration(ConfigurationKeys.SPECIAL_PRICE_CODE_LENGTH));
+        when(specialPriceRepository.findWaitingElementsForCategory(CATEGORY_ID))
+            .thenReturn(IDS.stream().map(id -> new SpecialPrice.SpecialPriceTicketCategoryId(id, CATEGORY_ID)).toList());
+        when(specialPriceRepository.findExistingCodes(anyCollection())).thenReturn(List.of());
+        generator = new SpecialPriceTokenGenerator(configurationManager, specialPriceRepository, ticketCategoryRepository, eventRepository, transactionManager);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void regenerateCodesOnDuplicateKey() {
+        when(specialPriceRepository.bulkUpdateCodes(anyList(), anyList()))
+            .thenThrow(new DuplicateKeyException("duplicate code"))
+            .thenReturn(IDS);
+
+        generator.generatePendingCodesForCategory(CATEGORY_ID);
+
+        ArgumentCaptor<List<String>> codes = ArgumentCaptor.forClass(List.class);
+        verify(specialPriceRepository, times(2)).bulkUpdateCodes(eq(IDS), codes.capture());
+        // the codes are regenerated after the failure
+        assertNotEquals(codes.getAllValues().get(0), codes.getAllValues().get(1));
+        codes.getAllValues().forEach(c -> assertEquals(IDS.size(), c.size()));
+        // only the savepoint of the failed update is rolled back
+        verify(transactionManager, times(1)).rollback(any());
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void retryCodesAlreadyInUse() {
+        when(specialPriceRepository.bulkUpdateCodes(anyList(), anyList()))
+            .thenReturn(List.of(10))
+            .thenReturn(List.of(11, 12));
+
+        generator.generatePendingCodesForCategory(CATEGORY_ID);
+
+        ArgumentCaptor<List<Integer>> ids = ArgumentCaptor.forClass(List.class);
+        verify(specialPriceRepository, times(2)).bulkUpdateCodes(ids.capture(), anyList());
+        assertEquals(List.of(IDS, List.of(11, 12)), ids.getAllValues());
+    }
+}
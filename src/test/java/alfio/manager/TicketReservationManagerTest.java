@@ -25,6 +25,7 @@ import alfio.manager.support.*;
 import alfio.manager.support.reservation.OrderSummaryGenerator;
 import alfio.manager.support.reservation.ReservationCostCalculator;
 import alfio.manager.support.reservation.ReservationEmailContentHelper;
+import alfio.manager.support.reservation.TicketAvailabilityHints;
 import alfio.manager.system.ConfigurationManager;
 import alfio.manager.system.ConfigurationManager.MaybeConfiguration;
 import alfio.manager.testSupport.MaybeConfigurationBuilder;
@@ -54,6 +55,7 @@ import alfio.util.*;
 import ch.digitalfondue.npjt.AffectedRowCountAndKey;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
@@ -71,6 +73,7 @@ import java.time.*;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static alfio.manager.TicketReservationManager.buildCompleteBillingAddress;
@@ -265,7 +268,8 @@ class TicketReservationManagerTest {
             reservationCostCalculator,
             reservationHelper,
             reservationFinalizer,
-            osm);
+            osm,
+            mock(TicketAvailabilityHints.class));
 
         when(event.getId()).thenReturn(EVENT_ID);
         when(event.getOrganizationId()).thenReturn(ORGANIZATION_ID);
@@ -305,6 +309,11 @@ class TicketReservationManagerTest {
         when(metadata.isFinalized()).thenReturn(true);
     }
 
+    @AfterEach
+    void tearDown() {
+        trm.destroy();
+    }
+
     private void initUpdateTicketOwner(Ticket original, Ticket modified, String ticketId, String originalEmail, String originalName, UpdateTicketOwnerForm form) {
         when(original.getUuid()).thenReturn(ticketId);
         when(original.getEmail()).thenReturn(originalEmail);
@@ -679,9 +688,10 @@ class TicketReservationManagerTest {
     @Test
     void doNothingIfNoReservations() {
         Date now = new Date(Instant.now(ClockProvider.clock()).getEpochSecond());
-        when(ticketReservationRepository.findExpiredReservationForUpdate(eq(now))).thenReturn(Collections.emptyList());
+        when(ticketReservationRepository.findExpiredReservationForUpdate(eq(now), eq(""), anyInt())).thenReturn(Collections.emptyList());
         trm.cleanupExpiredReservations(now);
-        verify(ticketReservationRepository).findExpiredReservationForUpdate(eq(now));
+        verify(ticketReservationRepository).findExpiredReservationsWithPendingTransaction(eq(now), eq(""), anyInt());
+        verify(ticketReservationRepository).findExpiredReservationForUpdate(eq(now), eq(""), anyInt());
         verifyNoMoreInteractions(ticketReservationRepository, specialPriceRepository, ticketRepository, waitingQueueManager);
     }
 
@@ -689,9 +699,10 @@ class TicketReservationManagerTest {
     void cancelExpiredReservations() {
         Date now = new Date(Instant.now(ClockProvider.clock()).getEpochSecond());
         List<String> reservationIds = singletonList("reservation-id");
-        when(ticketReservationRepository.findExpiredReservationForUpdate(now)).thenReturn(reservationIds);
+        when(ticketReservationRepository.findExpiredReservationForUpdate(eq(now), eq(""), anyInt())).thenReturn(reservationIds);
         trm.cleanupExpiredReservations(now);
-        verify(ticketReservationRepository).findExpiredReservationForUpdate(now);
+        verify(ticketReservationRepository).findExpiredReservationsWithPendingTransaction(eq(now), eq(""), anyInt());
+        verify(ticketReservationRepository).findExpiredReservationForUpdate(eq(now), eq(""), anyInt());
         verify(specialPriceRepository).resetToFreeAndCleanupForReservation(reservationIds);
         verify(ticketRepository).resetCategoryIdForUnboundedCategories(reservationIds);
         verify(ticketRepository).freeFromReservation(reservationIds);
@@ -702,6 +713,45 @@ class TicketReservationManagerTest {
         verifyNoMoreInteractions(ticketReservationRepository, specialPriceRepository, ticketRepository);
     }
 
+    @Test
+    void cleanupExpiredReservationsInBatches() {
+        Date now = new Date(Instant.now(ClockProvider.clock()).getEpochSecond());
+        List<String> firstBatch = IntStream.range(0, 100).mapToObj(i -> String.format("reservation-%03d", i)).toList();
+        List<String> secondBatch = List.of("reservation-100");
+        when(ticketReservationRepository.findExpiredReservationForUpdate(eq(now), eq(""), anyInt())).thenReturn(firstBatch);
+        when(ticketReservationRepository.findExpiredReservationForUpdate(eq(now), eq("reservation-099"), anyInt())).thenReturn(secondBatch);
+        trm.cleanupExpiredReservations(now);
+        verify(ticketReservationRepository).remove(firstBatch);
+        verify(ticketReservationRepository).remove(secondBatch);
+        verify(ticketRepository).freeFromReservation(firstBatch);
+        verify(ticketRepository).freeFromReservation(secondBatch);
+        verify(ticketReservationRepository, times(2)).findExpiredReservationForUpdate(eq(now), anyString(), anyInt());
+    }
+
+    @Test
+    void pendingTransactionChecksRotateOverExpiredReservations() {
+        Date now = new Date(Instant.now(ClockProvider.clock()).getEpochSecond());
+        var firstWindow = IntStream.range(0, 100).mapToObj(i -> reservationWithId(String.format("reservation-%03d", i))).toList();
+        var secondWindow = List.of(reservationWithId("reservation-100"));
+        when(ticketReservationRepository.findExpiredReservationsWithPendingTransaction(eq(now), eq(""), anyInt())).thenReturn(firstWindow);
+        when(ticketReservationRepository.findExpiredReservationsWithPendingTransaction(eq(now), eq("reservation-099"), anyInt())).thenReturn(secondWindow);
+        trm.cleanupExpiredReservations(now);
+        // the second run starts after the last reservation checked by the first one
+        trm.cleanupExpiredReservations(now);
+        verify(ticketReservationRepository).findExpiredReservationsWithPendingTransaction(eq(now), eq("reservation-099"), eq(100));
+        // then, having reached the end, it starts again from the beginning
+        verify(ticketReservationRepository).findExpiredReservationsWithPendingTransaction(eq(now), eq(""), eq(99));
+        verify(purchaseContextManager).findByReservationId("reservation-100");
+        verify(purchaseContextManager, times(2)).findByReservationId("reservation-000");
+        verify(purchaseContextManager, times(1)).findByReservationId("reservation-099");
+    }
+
+    private static TicketReservation reservationWithId(String id) {
+        var reservation = mock(TicketReservation.class);
+        when(reservation.getId()).thenReturn(id);
+        return reservation;
+    }
+
     @Test
     void countAvailableTickets() {
         //count how many tickets yet available for a category
@@ -1391,8 +1441,9 @@ class TicketReservationManagerTest {
 
         @BeforeEach
         void setUp() {
-            when(ticketReservationRepository.findExpiredReservationForUpdate(now)).thenReturn(reservationIds);
+            when(ticketReservationRepository.findExpiredReservationForUpdate(eq(now), eq(""), anyInt())).thenReturn(reservationIds);
             pendingReservationMock = mock(TicketReservation.class);
+            when(ticketReservationRepository.findExpiredReservationsWithPendingTransaction(eq(now), eq(""), anyInt())).thenReturn(List.of(pendingReservationMock));
             when(pendingReservationMock.getId()).thenReturn(PENDING_RESERVATION_ID);
             when(pendingReservationMock.getSrcPriceCts()).thenReturn(100);
             when(pendingReservationMock.getVatCts()).thenReturn(1);
@@ -1421,7 +1472,8 @@ class TicketReservationManagerTest {
                 .thenReturn(PaymentWebhookResult.successful(new StripeCreditCardToken("")));
             when(reservationCostCalculator.totalReservationCostWithVAT(pendingReservationMock)).thenReturn(Pair.of(new TotalPrice(0, 0, 0, 0, "CHF"), Optional.empty()));
             trm.cleanupExpiredReservations(now);
-            verify(ticketReservationRepository).findExpiredReservationForUpdate(now);
+            verify(ticketReservationRepository).findExpiredReservationsWithPendingTransaction(eq(now), eq(""), anyInt());
+            verify(ticketReservationRepository).findExpiredReservationForUpdate(eq(now), eq(""), anyInt());
             verify(specialPriceRepository).resetToFreeAndCleanupForReservation(expiredReservationIds);
             verify(ticketRepository).resetCategoryIdForUnboundedCategories(expiredReservationIds);
             verify(ticketRepository).freeFromReservation(expiredReservationIds);
@@ -1451,7 +1503,8 @@ class TicketReservationManagerTest {
             when(ticketReservationRepository.updateReservationStatus(PENDING_RESERVATION_ID, TicketReservationStatus.PENDING.toString()))
                 .thenReturn(1);
             trm.cleanupExpiredReservations(now);
-            verify(ticketReservationRepository).findExpiredReservationForUpdate(now);
+            verify(ticketReservationRepository).findExpiredReservationsWithPendingTransaction(eq(now), eq(""), anyInt());
+            verify(ticketReservationRepository).findExpiredReservationForUpdate(eq(now), eq(""), anyInt());
             verify(specialPriceRepository).resetToFreeAndCleanupForReservation(reservationIds);
             verify(ticketRepository).resetCategoryIdForUnboundedCategories(reservationIds);
             verify(ticketRepository).freeFromReservation(reservationIds);
@@ -20,6 +20,7 @@ import alfio.manager.i18n.MessageSourceManager;
 import alfio.manager.support.reservation.OrderSummaryGenerator;
 import alfio.manager.support.reservation.ReservationCostCalculator;
 import alfio.manager.support.reservation.ReservationEmailContentHelper;
+import alfio.manager.support.reservation.TicketAvailabilityHints;
 import alfio.manager.system.ConfigurationManager;
 import alfio.manager.user.UserManager;
 import alfio.model.*;
@@ -168,7 +169,8 @@ class TicketReservationManagerUnitTest {
             reservationCostCalculator,
             mock(ReservationEmailContentHelper.class),
             mock(ReservationFinalizer.class),
-            mock(OrderSummaryGenerator.class));
+            mock(OrderSummaryGenerator.class),
+            mock(TicketAvailabilityHints.class));
     }
 
     @Test
@@ -0,0 +1,40 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WaitingQueueProcessingTimeTrackerTest {
+
+    @Test
+    void processingTime() {
+        var tracker = new WaitingQueueProcessingTimeTracker();
+        tracker.record(1, TimeUnit.MILLISECONDS.toNanos(10));
+        tracker.record(1, TimeUnit.MILLISECONDS.toNanos(50));
+        tracker.record(1, TimeUnit.MILLISECONDS.toNanos(30));
+        var processingTime = tracker.getProcessingTime(1);
+        assertEquals(3, processingTime.runs());
+        assertEquals(30.0, processingTime.lastMillis());
+        assertEquals(30.0, processingTime.averageMillis());
+        assertEquals(50.0, processingTime.maxMillis());
+        assertEquals(0, tracker.getProcessingTime(2).runs());
+    }
+}
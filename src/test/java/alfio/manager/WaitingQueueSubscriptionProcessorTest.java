@@ -82,6 +82,7 @@ public class WaitingQueueSubscriptionProcessorTest {
         when(event.getId()).thenReturn(eventId);
         when(event.getZoneId()).thenReturn(ZoneId.systemDefault());
         when(eventManager.getActiveEvents()).thenReturn(Collections.singletonList(event));
+        when(waitingQueueRepository.findEventsWithWaitingSubscriptionsOrReleasedTickets(anyCollection())).thenReturn(List.of(eventId));
         when(messageSourceManager.getMessageSourceFor(any())).thenReturn(messageSource);
         when(messageSourceManager.getRootMessageSource()).thenReturn(messageSource);
         processor = new WaitingQueueSubscriptionProcessor(eventManager,
@@ -94,7 +95,8 @@ public class WaitingQueueSubscriptionProcessorTest {
             templateManager,
             ticketRepository,
             transactionManager,
-            clockProvider());
+            clockProvider(),
+            new WaitingQueueProcessingTimeTracker());
     }
 
     @Test
@@ -129,4 +131,13 @@ public class WaitingQueueSubscriptionProcessorTest {
         verify(ticketReservationManager).createTicketReservation(eq(event), eq(Collections.singletonList(reservation)), anyList(), eq(Date.from(expiration.toInstant())), eq(Optional.empty()), eq(Locale.ENGLISH), eq(true), isNull());
         verify(notificationManager).sendSimpleEmail(eq(event), eq(reservationId), eq("me"), eq("subject"), any(TemplateGenerator.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void skipEventsWithoutSubscribersAndReleasedTickets() {
+        when(waitingQueueRepository.findEventsWithWaitingSubscriptionsOrReleasedTickets(anyCollection())).thenReturn(List.of());
+        processor.handleWaitingTickets();
+        verify(configurationManager, never()).getFor(anySet(), any());
+        verify(waitingQueueManager, never()).distributeSeats(any());
+        verify(eventManager, never()).resetReleasedTickets(any());
+    }
+}
@@ -16,11 +16,16 @@
  */
 package alfio.manager.i18n;
 
+import alfio.manager.system.ConfigurationManager;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.util.CustomResourceBundleMessageSource;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
 
 class MessageSourceManagerTest {
 
@@ -38,4 +43,24 @@ class MessageSourceManagerTest {
         assertEquals("blabla{1}", MessageSourceManager.cleanArguments("blabla{1}", "{$1}"));
         assertEquals("blabla{1}", MessageSourceManager.cleanArguments("blabla{{{{{{1}}", "{$1}"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void overridesAreCachedUntilConfigurationIsInvalidated() {
+        var configurationRepository = mock(ConfigurationRepository.class);
+        var configurationManager = mock(ConfigurationManager.class);
+        when(configurationRepository.getEventOverrideMessages(1, 2)).thenReturn(Map.of("en", Map.of("common.vat", "GST")));
+        var manager = new MessageSourceManager(new CustomResourceBundleMessageSource(), configurationRepository, configurationManager);
+        var listener = ArgumentCaptor.forClass(Runnable.class);
+        verify(configurationManager).addInvalidationListener(listener.capture());
+
+        manager.getMessageSourceFor(1, 2);
+        manager.getMessageSourceFor(1, 2);
+        verify(configurationRepository, times(1)).getEventOverrideMessages(1, 2);
+        // changes made by other nodes are detected by the configuration manager
+        verify(configurationManager, times(2)).checkForChanges();
+
+        listener.getValue().run();
+        manager.getMessageSourceFor(1, 2);
+        verify(configurationRepository, times(2)).getEventOverrideMessages(1, 2);
+    }
+}
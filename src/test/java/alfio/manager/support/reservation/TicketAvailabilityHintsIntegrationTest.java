@@ -0,0 +1,159 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support.reservation;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.manager.EventManager;
+import alfio.manager.TicketReservationManager;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.TicketCategory;
+import alfio.model.metadata.AlfioMetadata;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.model.modification.TicketReservationModification;
+import alfio.model.modification.TicketReservationWithOptionalCodeModification;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
+import alfio.repository.TicketStatusCountRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.AlfioIntegrationTest;
+import alfio.util.ClockProvider;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the sold-out fast path against the ticket counters maintained by the database triggers.
+ */
+@AlfioIntegrationTest
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+class TicketAvailabilityHintsIntegrationTest {
+
+    private static final int CATEGORY_SIZE = 10;
+    private static final int ATTEMPTS = 50;
+
+    @Autowired
+    private TicketReservationManager ticketReservationManager;
+    @Autowired
+    private TicketStatusCountRepository ticketStatusCountRepository;
+    @Autowired
+    private TicketRepository ticketRepository;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private EventRepository eventRepository;
+
+    private Event event;
+    private TicketCategory category;
+
+    @BeforeEach
+    void setUp() {
+        var categories = List.of(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, CATEGORY_SIZE,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).minusDays(1), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).plusDays(1), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", true, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        event = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository).getLeft();
+        category = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0);
+    }
+
+    @Test
+    void concurrentReservationsDoNotOversellTheCategory() throws InterruptedException {
+        var pool = Executors.newFixedThreadPool(8);
+        try {
+            var attempts = new ArrayList<Callable<String>>();
+            for (int i = 0; i < ATTEMPTS; i++) {
+                attempts.add(this::reserveOneTicket);
+            }
+            int reserved = 0;
+            int rejected = 0;
+            for (Future<String> result : pool.invokeAll(attempts)) {
+                try {
+                    assertNotNull(result.get());
+                    reserved++;
+                } catch (ExecutionException e) {
+                    assertInstanceOf(NotEnoughTicketsException.class, e.getCause());
+                    rejected++;
+                }
+            }
+            assertEquals(CATEGORY_SIZE, reserved);
+            assertEquals(ATTEMPTS - CATEGORY_SIZE, rejected);
+            assertEquals(0, ticketStatusCountRepository.countFreeTickets(event.getId(), category.getId()));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void releasedTicketsBecomeAvailableAfterTheRecheckInterval() throws Exception {
+        var reservationIds = new ArrayList<String>();
+        for (int i = 0; i < CATEGORY_SIZE; i++) {
+            reservationIds.add(reserveOneTicket());
+        }
+        assertThrows(NotEnoughTicketsException.class, this::reserveOneTicket);
+
+        var hints = new TicketAvailabilityHints(ticketStatusCountRepository,
+            new MockEnvironment().withProperty("alfio.reservation.availability-hints.recheck-interval-ms", "200"));
+        hints.notEnoughTickets(event.getId(), category);
+        assertTrue(hints.isExhausted(event.getId(), category.getId(), 1));
+
+        // the ticket is released, then put back on sale by the waiting list job, without going through the hints
+        ticketReservationManager.cancelPendingReservation(reservationIds.get(0), false, null);
+        assertEquals(1, ticketRepository.revertToFree(event.getId()));
+        assertEquals(1, ticketStatusCountRepository.countFreeTickets(event.getId(), category.getId()));
+        assertTrue(hints.isExhausted(event.getId(), category.getId(), 1));
+
+        Thread.sleep(250);
+        assertFalse(hints.isExhausted(event.getId(), category.getId(), 1));
+        assertNotNull(reserveOneTicket());
+    }
+
+    private String reserveOneTicket() throws Exception {
+        var modification = new TicketReservationModification();
+        modification.setQuantity(1);
+        modification.setTicketCategoryId(category.getId());
+        return ticketReservationManager.createTicketReservation(event, List.of(new TicketReservationWithOptionalCodeModification(modification, Optional.empty())),
+            List.of(), DateUtils.addHours(new Date(), 1), Optional.empty(), Locale.ENGLISH, false, null);
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support.reservation;
+
+import alfio.model.TicketCategory;
+import alfio.repository.TicketStatusCountRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class TicketAvailabilityHintsTest {
+
+    private static final int EVENT_ID = 1;
+    private static final int CATEGORY_ID = 2;
+
+    private TicketStatusCountRepository ticketStatusCountRepository;
+    private TicketCategory category;
+    private TicketAvailabilityHints hints;
+
+    @BeforeEach
+    void setUp() {
+        ticketStatusCountRepository = mock(TicketStatusCountRepository.class);
+        category = mock(TicketCategory.class);
+        when(category.getId()).thenReturn(CATEGORY_ID);
+        when(category.isBounded()).thenReturn(true);
+        hints = new TicketAvailabilityHints(ticketStatusCountRepository, new MockEnvironment());
+    }
+
+    @Test
+    void unknownCategoryIsNotExhausted() {
+        assertFalse(hints.isExhausted(EVENT_ID, CATEGORY_ID, 1));
+        verifyNoInteractions(ticketStatusCountRepository);
+    }
+
+    @Test
+    void rejectWithoutQueryingAfterFailure() {
+        when(ticketStatusCountRepository.countFreeTickets(EVENT_ID, CATEGORY_ID)).thenReturn(0);
+        hints.notEnoughTickets(EVENT_ID, category);
+        assertTrue(hints.isExhausted(EVENT_ID, CATEGORY_ID, 1));
+        assertTrue(hints.isExhausted(EVENT_ID, CATEGORY_ID, 2));
+        verify(ticketStatusCountRepository, times(1)).countFreeTickets(EVENT_ID, CATEGORY_ID);
+    }
+
+    @Test
+    void partialAvailability() {
+        when(ticketStatusCountRepository.countFreeTickets(EVENT_ID, CATEGORY_ID)).thenReturn(2);
+        hints.notEnoughTickets(EVENT_ID, category);
+        assertFalse(hints.isExhausted(EVENT_ID, CATEGORY_ID, 2));
+        assertTrue(hints.isExhausted(EVENT_ID, CATEGORY_ID, 3));
+    }
+
+    @Test
+    void unboundedCategoriesUseNotAllocatedCounter() {
+        when(category.isBounded()).thenReturn(false);
+        hints.notEnoughTickets(EVENT_ID, category);
+        verify(ticketStatusCountRepository).countFreeTickets(EVENT_ID, -1);
+        assertTrue(hints.isExhausted(EVENT_ID, CATEGORY_ID, 1));
+    }
+
+    @Test
+    void releasedTicketsAreDetected() throws InterruptedException {
+        when(ticketStatusCountRepository.countFreeTickets(anyInt(), anyInt())).thenReturn(0, 1);
+        hints.notEnoughTickets(EVENT_ID, category);
+        assertTrue(hints.isExhausted(EVENT_ID, CATEGORY_ID, 1));
+        Thread.sleep(250);
+        assertFalse(hints.isExhausted(EVENT_ID, CATEGORY_ID, 1));
+        verify(ticketStatusCountRepository, times(2)).countFreeTickets(EVENT_ID, CATEGORY_ID);
+    }
+}
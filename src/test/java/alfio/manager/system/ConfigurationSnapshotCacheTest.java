@@ -0,0 +1,134 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.model.system.ConfigurationKeyValuePathLevel;
+import alfio.model.system.ConfigurationKeys;
+import alfio.model.system.ConfigurationPathLevel;
+import alfio.repository.system.ConfigurationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static alfio.model.system.ConfigurationKeys.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+class ConfigurationSnapshotCacheTest {
+
+    private static final int ORGANIZATION_ID = 1;
+    private static final int EVENT_ID = 2;
+    private static final ConfigurationLevel EVENT_LEVEL = new ConfigurationLevels.EventLevel(ORGANIZATION_ID, EVENT_ID);
+
+    private ConfigurationRepository configurationRepository;
+
+    @BeforeEach
+    void setUp() {
+        configurationRepository = mock(ConfigurationRepository.class);
+        when(configurationRepository.getConfigurationVersion()).thenReturn(1L);
+        when(configurationRepository.findAllAtSystemLevel()).thenReturn(List.of(conf(BASE_URL, "https://example.org", ConfigurationPathLevel.SYSTEM), conf(VAT_NR, "1", ConfigurationPathLevel.SYSTEM)));
+        when(configurationRepository.findAllAtOrganizationLevel(ORGANIZATION_ID)).thenReturn(List.of(conf(VAT_NR, "2", ConfigurationPathLevel.ORGANIZATION)));
+        when(configurationRepository.findAllAtEventLevel(ORGANIZATION_ID, EVENT_ID)).thenReturn(List.of(conf(VAT_NR, "3", ConfigurationPathLevel.EVENT)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void snapshotsAreCachedUntilConfigurationChanges() {
+        var cache = new ConfigurationSnapshotCache(configurationRepository, Duration.ZERO);
+        var result = cache.find(Set.of(VAT_NR, BASE_URL, INVOICE_ADDRESS), EVENT_LEVEL);
+        assertEquals(4, result.size());
+        cache.find(Set.of(VAT_NR), EVENT_LEVEL);
+        cache.find(Set.of(BASE_URL), ConfigurationLevel.system());
+        verify(configurationRepository, times(1)).findAllAtSystemLevel();
+        verify(configurationRepository, times(1)).findAllAtEventLevel(ORGANIZATION_ID, EVENT_ID);
+
+        // changed by another node
+        when(configurationRepository.getConfigurationVersion()).thenReturn(2L);
+        cache.find(Set.of(VAT_NR), EVENT_LEVEL);
+        verify(configurationRepository, times(2)).findAllAtEventLevel(ORGANIZATION_ID, EVENT_ID);
+
+        // changed locally
+        cache.invalidateAll();
+        cache.find(Set.of(VAT_NR), EVENT_LEVEL);
+        verify(configurationRepository, times(3)).findAllAtEventLevel(ORGANIZATION_ID, EVENT_ID);
+    }
+
+    @Test
+    void notifyListenersOnInvalidation() {
+        var cache = new ConfigurationSnapshotCache(configurationRepository, Duration.ZERO);
+        var notifications = new AtomicInteger();
+        cache.addInvalidationListener(notifications::incrementAndGet);
+        cache.checkVersion();
+        assertEquals(1, notifications.get());
+        // same version
+        cache.checkVersion();
+        assertEquals(1, notifications.get());
+        // changed by another node
+        when(configurationRepository.getConfigurationVersion()).thenReturn(2L);
+        cache.checkVersion();
+        assertEquals(2, notifications.get());
+        // changed locally
+        cache.invalidateAll();
+        assertEquals(3, notifications.get());
+    }
+
+    @Test
+    void versionIsNotCheckedBeforeInterval() {
+        var cache = new ConfigurationSnapshotCache(configurationRepository, Duration.ofMinutes(1));
+        for (int i = 0; i < 10; i++) {
+            cache.find(Set.of(VAT_NR), EVENT_LEVEL);
+        }
+        verify(configurationRepository, times(1)).getConfigurationVersion();
+        verify(configurationRepository, times(1)).findAllAtOrganizationLevel(ORGANIZATION_ID);
+    }
+
+    @Test
+    void doNotShareSnapshotsLoadedWithRowLevelSecurity() {
+        when(configurationRepository.isRowAccessRestricted()).thenReturn(true);
+        var cache = new ConfigurationSnapshotCache(configurationRepository, Duration.ofMinutes(1));
+        cache.find(Set.of(VAT_NR), ConfigurationLevel.organization(ORGANIZATION_ID));
+        cache.find(Set.of(VAT_NR), ConfigurationLevel.organization(ORGANIZATION_ID));
+        verify(configurationRepository, times(2)).findAllAtOrganizationLevel(ORGANIZATION_ID);
+    }
+
+    @Test
+    void countQueriesForCurrentRequest() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        var cache = new ConfigurationSnapshotCache(configurationRepository, Duration.ofMinutes(1));
+        for (int i = 0; i < 10; i++) {
+            cache.find(Set.of(VAT_NR), EVENT_LEVEL);
+        }
+        // version check + 3 levels, each one with the row level security check
+        assertEquals(7, ConfigurationSnapshotCache.getQueriesForCurrentRequest());
+    }
+
+    private static ConfigurationKeyValuePathLevel conf(ConfigurationKeys key, String value, ConfigurationPathLevel level) {
+        return new ConfigurationKeyValuePathLevel(key.name(), value, level);
+    }
+}
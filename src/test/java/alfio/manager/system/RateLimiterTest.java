@@ -0,0 +1,63 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void spreadCallsEvenly() {
+        var now = new AtomicLong(0);
+        var rateLimiter = new RateLimiter(10, now::get);
+        assertEquals(0, rateLimiter.reserve());
+        assertEquals(INTERVAL, rateLimiter.reserve());
+        assertEquals(2 * INTERVAL, rateLimiter.reserve());
+        now.set(INTERVAL);
+        assertEquals(2 * INTERVAL, rateLimiter.reserve());
+    }
+
+    @Test
+    void doNotAccumulatePermitsWhileIdle() {
+        var now = new AtomicLong(0);
+        var rateLimiter = new RateLimiter(10, now::get);
+        assertEquals(0, rateLimiter.reserve());
+        now.set(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(0, rateLimiter.reserve());
+        assertEquals(INTERVAL, rateLimiter.reserve());
+    }
+
+    @Test
+    void acquireWaitsForTheSlot() {
+        var rateLimiter = new RateLimiter(20);
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.acquire();
+        }
+        // the first permit is immediately available, the other four are 50ms apart
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed >= 190, "elapsed: " + elapsed);
+    }
+}
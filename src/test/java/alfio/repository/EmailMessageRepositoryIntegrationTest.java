@@ -0,0 +1,112 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.manager.EventManager;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.LightweightMailMessage;
+import alfio.model.TicketCategory;
+import alfio.model.metadata.AlfioMetadata;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.AlfioIntegrationTest;
+import alfio.util.ClockProvider;
+import alfio.util.SqlUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@AlfioIntegrationTest
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+class EmailMessageRepositoryIntegrationTest {
+
+    @Autowired
+    private EmailMessageRepository emailMessageRepository;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private EventRepository eventRepository;
+
+    private Event event;
+
+    @BeforeEach
+    void setUp() {
+        var categories = List.of(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).minusDays(1), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).plusDays(1), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", false, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        event = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository).getLeft();
+        insert("mario@example.org", "Your ticket", "Dear Mario, here is your ticket");
+        insert("giulia@example.org", "Reservation confirmed", "Dear Giulia, your payment has been received");
+    }
+
+    @Test
+    void searchByRecipientAndSubject() {
+        assertEquals(List.of("mario@example.org"), search("MARIO@"));
+        assertEquals(List.of("giulia@example.org"), search("confirmed"));
+        assertEquals(2, emailMessageRepository.countFindByEventId(event.getId(), null));
+    }
+
+    @Test
+    void searchByMessageBody() {
+        assertEquals(List.of("giulia@example.org"), search("payment has been"));
+        assertEquals(1, emailMessageRepository.countFindByEventId(event.getId(), SqlUtils.toSearchPattern("payment has been")));
+    }
+
+    @Test
+    void searchDoesNotMatchAcrossFields() {
+        // recipient and subject are adjacent in the search document
+        assertTrue(search("org your").isEmpty());
+        assertTrue(search("org_your").isEmpty());
+        assertEquals(0, emailMessageRepository.countFindByEventId(event.getId(), SqlUtils.toSearchPattern("org your")));
+    }
+
+    private List<String> search(String term) {
+        return emailMessageRepository.findByEventId(event.getId(), 0, 10, SqlUtils.toSearchPattern(term)).stream()
+            .map(LightweightMailMessage::getRecipient)
+            .collect(Collectors.toList());
+    }
+
+    private void insert(String recipient, String subject, String message) {
+        emailMessageRepository.insert(event.getId(), null, null, recipient, null, subject, message, null, null,
+            UUID.randomUUID().toString(), ZonedDateTime.now(ClockProvider.clock()), event.getOrganizationId());
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.model.transaction.PaymentProxy;
+import alfio.model.transaction.webhook.PaymentWebhookInboxEntry;
+import alfio.test.util.AlfioIntegrationTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@AlfioIntegrationTest
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+class PaymentWebhookInboxRepositoryIntegrationTest {
+
+    @Autowired
+    private PaymentWebhookInboxRepository paymentWebhookInboxRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void processEntriesForTheSameReservationInOrder() {
+        insert("evt-1", "reservation-1");
+        insert("evt-2", "reservation-1");
+        var first = lockNext();
+        assertEquals("evt-1", first.providerEventId());
+        // the first entry is still pending, so the second one must wait
+        assertEquals("evt-1", lockNext().providerEventId());
+        paymentWebhookInboxRepository.markAsProcessed(first.id(), "OK");
+        assertEquals("evt-2", lockNext().providerEventId());
+    }
+
+    @Test
+    void entryWaitingForRetryDoesNotHoldBackTheFollowingOnes() {
+        insert("evt-1", "reservation-1");
+        insert("evt-2", "reservation-1");
+        var first = lockNext();
+        assertEquals("evt-1", first.providerEventId());
+        paymentWebhookInboxRepository.registerFailure(first.id(), "error", 3600, 5);
+        var second = lockNext();
+        assertEquals("evt-2", second.providerEventId());
+        paymentWebhookInboxRepository.markAsProcessed(second.id(), "OK");
+        // the first entry is not due yet
+        assertTrue(paymentWebhookInboxRepository.lockNextPending().isEmpty());
+    }
+
+    @Test
+    void failedEntryDoesNotHoldBackTheFollowingOnes() {
+        insert("evt-1", "reservation-1");
+        insert("evt-2", "reservation-1");
+        var first = lockNext();
+        paymentWebhookInboxRepository.registerFailure(first.id(), "error", 0, 1);
+        assertEquals("evt-2", lockNext().providerEventId());
+    }
+
+    @Test
+    void lockedEntryHoldsBackTheFollowingOnesForTheSameReservation() throws Exception {
+        insert("evt-1", "reservation-1");
+        insert("evt-2", "reservation-1");
+        insert("evt-3", "reservation-2");
+        var template = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            template.executeWithoutResult(s -> {
+                assertEquals("evt-1", lockNext().providerEventId());
+                // another worker skips the locked entry and the following one for the same reservation
+                var other = executor.submit(() -> template.execute(s2 -> paymentWebhookInboxRepository.lockNextPending()));
+                Optional<PaymentWebhookInboxEntry> next;
+                try {
+                    next = other.get(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                assertEquals("evt-3", next.orElseThrow().providerEventId());
+            });
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void insert(String providerEventId, String reservationId) {
+        assertEquals(1, paymentWebhookInboxRepository.insert(PaymentProxy.STRIPE.name(), providerEventId, reservationId, "charge.succeeded", "{}", Map.of()));
+    }
+
+    private PaymentWebhookInboxEntry lockNext() {
+        return paymentWebhookInboxRepository.lockNextPending().orElseThrow();
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.manager.EventManager;
+import alfio.manager.user.UserManager;
+import alfio.model.*;
+import alfio.model.metadata.AlfioMetadata;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.AlfioIntegrationTest;
+import alfio.util.ClockProvider;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@AlfioIntegrationTest
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+class TicketFieldRepositoryIntegrationTest {
+
+    @Autowired
+    private TicketFieldRepository ticketFieldRepository;
+    @Autowired
+    private TicketRepository ticketRepository;
+    @Autowired
+    private TicketReservationRepository ticketReservationRepository;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Test
+    void findValueForTicketIds() {
+        var categories = List.of(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).minusDays(1), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).plusDays(1), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", false, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        Event event = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository).getLeft();
+        var category = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0);
+        String reservationId = UUID.randomUUID().toString();
+        ticketReservationRepository.createNewReservation(reservationId, ZonedDateTime.now(ClockProvider.clock()), DateUtils.addDays(new Date(), 1), null, "en", event.getId(), event.getVat(), event.isVatIncluded(), event.getCurrency(), event.getOrganizationId(), null);
+        var ids = ticketRepository.selectNotAllocatedTicketsForUpdate(event.getId(), 3, List.of(TicketRepository.FREE));
+        assertEquals(3, ticketRepository.reserveTickets(reservationId, ids, category, "en", event.getVatStatus(), i -> null));
+        var tickets = ticketRepository.findTicketsInReservation(reservationId);
+        int first = tickets.get(0).getId();
+        int second = tickets.get(1).getId();
+        int third = tickets.get(2).getId();
+
+        int company = insertField(event, "company", "text", 0);
+        int size = insertField(event, "size", "select", 1);
+        int ignored = insertField(event, "ignored", "text", 2);
+        ticketFieldRepository.insertDescription(size, "en", "{\"label\":\"Size\",\"restrictedValues\":{\"s\":\"Small\"}}");
+        ticketFieldRepository.insertDescription(size, "it", "{\"label\":\"Taglia\",\"restrictedValues\":{\"s\":\"Piccola\"}}");
+
+        ticketFieldRepository.insertValue(first, company, "ACME");
+        ticketFieldRepository.insertValue(first, size, "s");
+        ticketFieldRepository.insertValue(first, ignored, "ignored");
+        ticketFieldRepository.insertValue(second, company, "Umbrella");
+        ticketFieldRepository.insertValue(third, company, "not requested");
+
+        var values = ticketFieldRepository.findValueForTicketIds(List.of(first, second), Set.of("company", "size"));
+
+        assertEquals(3, values.size());
+        var byTicket = values.stream().collect(Collectors.groupingBy(TicketFieldValueAndDescription::getTicketId));
+        assertEquals(Set.of(first, second), byTicket.keySet());
+        var firstValues = byTicket.get(first).stream().collect(Collectors.toMap(TicketFieldValueAndDescription::getName, v -> v));
+        assertEquals(Set.of("company", "size"), firstValues.keySet());
+        assertEquals("ACME", firstValues.get("company").getValue());
+        assertNull(firstValues.get("company").getDescription());
+        assertEquals("s", firstValues.get("size").getValue());
+        // select fields are returned with the description in the attendee's language
+        assertTrue(firstValues.get("size").getDescription().contains("Small"));
+        assertEquals("Umbrella", byTicket.get(second).get(0).getValue());
+    }
+
+    private int insertField(Event event, String name, String type, int order) {
+        return ticketFieldRepository.insertConfiguration(event.getId(), name, order, type, null, null, null, false,
+            TicketFieldConfiguration.Context.ATTENDEE, -1, null).getKey();
+    }
+}
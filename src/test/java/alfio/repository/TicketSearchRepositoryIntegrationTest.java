@@ -0,0 +1,160 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.manager.EventManager;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.TicketCategory;
+import alfio.model.TicketReservation;
+import alfio.model.metadata.AlfioMetadata;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.AlfioIntegrationTest;
+import alfio.util.ClockProvider;
+import alfio.util.SqlUtils;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@AlfioIntegrationTest
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+class TicketSearchRepositoryIntegrationTest {
+
+    private static final List<String> COMPLETE = List.of(TicketReservation.TicketReservationStatus.COMPLETE.name());
+
+    @Autowired
+    private TicketSearchRepository ticketSearchRepository;
+    @Autowired
+    private TicketRepository ticketRepository;
+    @Autowired
+    private TicketReservationRepository ticketReservationRepository;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private EventRepository eventRepository;
+
+    private Event event;
+    private TicketCategory category;
+    private String reservationId;
+
+    @BeforeEach
+    void setUp() {
+        var categories = List.of(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).minusDays(1), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).plusDays(1), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", false, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        event = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository).getLeft();
+        category = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0);
+        reservationId = UUID.randomUUID().toString();
+        ticketReservationRepository.createNewReservation(reservationId, ZonedDateTime.now(ClockProvider.clock()), DateUtils.addDays(new Date(), 1), null, "en", event.getId(), event.getVat(), event.isVatIncluded(), event.getCurrency(), event.getOrganizationId(), null);
+        var ids = ticketRepository.selectNotAllocatedTicketsForUpdate(event.getId(), 2, List.of(TicketRepository.FREE));
+        assertEquals(2, ticketRepository.reserveTickets(reservationId, ids, category, "en", event.getVatStatus(), i -> null));
+        ticketReservationRepository.updateTicketReservation(reservationId, TicketReservation.TicketReservationStatus.COMPLETE.name(), "buyer@example.org",
+            "Mario Rossi", "Mario", "Rossi", "en", null, ZonedDateTime.now(ClockProvider.clock()), "OFFLINE", "PO-4242");
+        ticketRepository.updateTicketsStatusWithReservationId(reservationId, "ACQUIRED");
+        var tickets = ticketRepository.findTicketsInReservation(reservationId);
+        ticketRepository.updateTicketOwnerById(tickets.get(0).getId(), "attendee@example.org", "Giulia Bianchi", "Giulia", "Bianchi");
+    }
+
+    @Test
+    void findReservationsByReservationFields() {
+        assertFound("rossi");
+        assertFound("MARIO ROSSI");
+        assertFound("buyer@example");
+        assertFound("po-4242");
+        assertFound(reservationId.substring(0, 8));
+        assertNotFound("verdi");
+    }
+
+    @Test
+    void findReservationsByTicketFields() {
+        assertFound("bianchi");
+        assertFound("attendee@example.org");
+        assertEquals(1, countTickets("giulia"));
+        assertEquals(2, countTickets("mario"));
+        assertEquals(2, countTickets(null));
+    }
+
+    @Test
+    void searchDoesNotMatchAcrossFields() {
+        // last name and email are adjacent in the search document
+        assertNotFound("rossi buyer");
+        assertNotFound("bianchi attendee");
+        assertEquals(0, countTickets("bianchi attendee"));
+    }
+
+    @Test
+    void wildcardsAreMatchedLiterally() {
+        assertNotFound("_");
+        assertNotFound("%");
+        assertEquals(0, countTickets("ro_si"));
+    }
+
+    @Test
+    void searchAttendees() {
+        var results = ticketRepository.searchAttendees(event.getId(), SqlUtils.toSearchPattern("bianchi"), 10, 0);
+        assertEquals(1, results.size());
+        assertEquals("Giulia", results.get(0).getTicket().getFirstName());
+        assertEquals(2, ticketRepository.searchAttendees(event.getId(), SqlUtils.toSearchPattern("rossi"), 10, 0).size());
+        assertTrue(ticketRepository.searchAttendees(event.getId(), SqlUtils.toSearchPattern("rossi giulia"), 10, 0).isEmpty());
+    }
+
+    private void assertFound(String search) {
+        var pattern = SqlUtils.toSearchPattern(search);
+        var reservations = ticketSearchRepository.findReservationsForEvent(event.getId(), 0, 10, pattern, COMPLETE);
+        assertEquals(1, reservations.size(), "expected a match for " + search);
+        assertEquals(reservationId, reservations.get(0).getId());
+        assertEquals(1, ticketSearchRepository.countReservationsForEvent(event.getId(), pattern, COMPLETE));
+    }
+
+    private void assertNotFound(String search) {
+        var pattern = SqlUtils.toSearchPattern(search);
+        assertTrue(ticketSearchRepository.findReservationsForEvent(event.getId(), 0, 10, pattern, COMPLETE).isEmpty(), "unexpected match for " + search);
+        assertEquals(0, ticketSearchRepository.countReservationsForEvent(event.getId(), pattern, COMPLETE));
+    }
+
+    private int countTickets(String search) {
+        return ticketSearchRepository.countAllModifiedTicketsWithReservationAndTransaction(event.getId(), category.getId(), SqlUtils.toSearchPattern(search));
+    }
+}
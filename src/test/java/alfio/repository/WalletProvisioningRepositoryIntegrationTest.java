@@ -0,0 +1,122 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.manager.EventManager;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.Ticket;
+import alfio.model.TicketCategory;
+import alfio.model.TicketReservation;
+import alfio.model.metadata.AlfioMetadata;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.AlfioIntegrationTest;
+import alfio.util.ClockProvider;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@AlfioIntegrationTest
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+class WalletProvisioningRepositoryIntegrationTest {
+
+    @Autowired
+    private WalletProvisioningRepository walletProvisioningRepository;
+    @Autowired
+    private TicketRepository ticketRepository;
+    @Autowired
+    private TicketReservationRepository ticketReservationRepository;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private List<Integer> ticketIds;
+
+    @BeforeEach
+    void setUp() {
+        var categories = List.of(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).minusDays(1), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).plusDays(1), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", false, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        Event event = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository).getLeft();
+        var category = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0);
+        var reservationId = UUID.randomUUID().toString();
+        ticketReservationRepository.createNewReservation(reservationId, ZonedDateTime.now(ClockProvider.clock()), DateUtils.addDays(new Date(), 1), null, "en", event.getId(), event.getVat(), event.isVatIncluded(), event.getCurrency(), event.getOrganizationId(), null);
+        var ids = ticketRepository.selectNotAllocatedTicketsForUpdate(event.getId(), 3, List.of(TicketRepository.FREE));
+        assertEquals(3, ticketRepository.reserveTickets(reservationId, ids, category, "en", event.getVatStatus(), i -> null));
+        ticketReservationRepository.updateTicketReservation(reservationId, TicketReservation.TicketReservationStatus.COMPLETE.name(), "buyer@example.org",
+            "Mario Rossi", "Mario", "Rossi", "en", null, ZonedDateTime.now(ClockProvider.clock()), "OFFLINE", null);
+        ticketRepository.updateTicketsStatusWithReservationId(reservationId, "ACQUIRED");
+        ticketIds = ticketRepository.findTicketsInReservation(reservationId).stream().map(Ticket::getId).sorted().toList();
+        ticketIds.forEach(id -> ticketRepository.updateTicketOwnerById(id, "attendee" + id + "@example.org", "Attendee " + id, "Attendee", Integer.toString(id)));
+    }
+
+    @Test
+    void claimedTicketsAreNotSelectedUntilTheLeaseExpires() {
+        assertEquals(ticketIds, sorted(walletProvisioningRepository.claimTicketsWithoutWalletObject(10, 600)));
+        assertTrue(walletProvisioningRepository.claimTicketsWithoutWalletObject(10, 600).isEmpty());
+    }
+
+    @Test
+    void failingTicketsDoNotBlockTheOthers() {
+        assertEquals(List.of(ticketIds.get(0)), walletProvisioningRepository.claimTicketsWithoutWalletObject(1, 0));
+        assertEquals(1, walletProvisioningRepository.registerFailure(ticketIds.get(0), "error", 3600, 86_400));
+        assertEquals(ticketIds.subList(1, 3), sorted(walletProvisioningRepository.claimTicketsWithoutWalletObject(10, 0)));
+        assertEquals(1, jdbcTemplate.queryForObject("select attempts from wallet_provisioning_attempt where ticket_id = :id", Map.of("id", ticketIds.get(0)), Integer.class));
+    }
+
+    @Test
+    void ticketsWithWalletObjectAreIgnored() {
+        jdbcTemplate.update("update ticket set metadata = '{\"metadataMap\":{\"general\":{\"attributes\":{\"gWalletObjectId\":\"object\"}}}}'::jsonb where id = :id",
+            Map.of("id", ticketIds.get(0)));
+        assertEquals(ticketIds.subList(1, 3), sorted(walletProvisioningRepository.claimTicketsWithoutWalletObject(10, 0)));
+        assertEquals(1, walletProvisioningRepository.deleteAttempt(ticketIds.get(1)));
+    }
+
+    private static List<Integer> sorted(List<Integer> ids) {
+        return ids.stream().sorted().toList();
+    }
+}
@@ -59,6 +59,7 @@ public class DataCleaner implements AfterEachCallback, BeforeEachCallback {
                 assertTrue(jdbc.update("delete from extension_log", Map.of()) >= 0);
                 assertTrue(jdbc.update("delete from extension_support", Map.of()) >= 0);
                 assertTrue(jdbc.update("delete from admin_job_queue", Map.of()) >= 0);
+                assertTrue(jdbc.update("delete from payment_webhook_inbox", Map.of()) >= 0);
                 // delete organization
                 var organizationDeleter = applicationContext.getBean(OrganizationDeleter.class);
                 jdbc.queryForList("select id from organization", Map.of(), Integer.class)
@@ -0,0 +1,108 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchingWriterTest {
+
+    @Test
+    void writeInBatches() throws InterruptedException {
+        var batches = new CopyOnWriteArrayList<List<Integer>>();
+        var writer = new BatchingWriter<Integer>("test-writer", 10_000, 50, b -> batches.add(List.copyOf(b)));
+        int entries = 1000;
+        for (int i = 0; i < entries; i++) {
+            assertTrue(writer.offer(i));
+        }
+        writer.shutdown();
+        assertFalse(writer.isRunning());
+        assertTrue(batches.stream().allMatch(b -> b.size() <= BatchingWriter.BATCH_SIZE));
+        assertTrue(batches.size() < entries);
+        // order is preserved and pending entries are written on shutdown
+        var written = batches.stream().flatMap(List::stream).toList();
+        assertEquals(entries, written.size());
+        for (int i = 0; i < entries; i++) {
+            assertEquals(i, written.get(i));
+        }
+    }
+
+    @Test
+    void rejectEntriesIfQueueIsFull() throws InterruptedException {
+        var firstWrite = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var written = new CopyOnWriteArrayList<Integer>();
+        int queueSize = 10;
+        var writer = new BatchingWriter<Integer>("test-writer", queueSize, 50, b -> {
+            written.addAll(b);
+            firstWrite.countDown();
+            try {
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(writer.offer(-1));
+        assertTrue(firstWrite.await(5, TimeUnit.SECONDS));
+        // the writer is now blocked, so only queueSize entries can be accepted
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) {
+            if (writer.offer(i)) {
+                accepted++;
+            }
+        }
+        assertEquals(queueSize, accepted);
+        release.countDown();
+        writer.shutdown();
+        assertEquals(1 + queueSize, written.size());
+    }
+
+    @Test
+    void keepWritingAfterFailure() throws InterruptedException {
+        var failed = new AtomicBoolean();
+        var written = new CopyOnWriteArrayList<Integer>();
+        var writer = new BatchingWriter<Integer>("test-writer", 10, 50, b -> {
+            if (failed.compareAndSet(false, true)) {
+                throw new IllegalStateException("failure");
+            }
+            written.addAll(b);
+        });
+        assertTrue(writer.offer(1));
+        while (!failed.get()) {
+            Thread.sleep(10);
+        }
+        assertTrue(writer.offer(2));
+        writer.shutdown();
+        assertEquals(List.of(2), written);
+    }
+
+    @Test
+    void rejectEntriesAfterShutdown() throws InterruptedException {
+        var written = new CopyOnWriteArrayList<Integer>();
+        var writer = new BatchingWriter<Integer>("test-writer", 10, 50, written::addAll);
+        writer.shutdown();
+        assertFalse(writer.offer(1));
+        assertTrue(written.isEmpty());
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlUtilsTest {
+
+    @Test
+    void toSearchPattern() {
+        assertNull(SqlUtils.toSearchPattern(null));
+        assertNull(SqlUtils.toSearchPattern("  "));
+        assertEquals("%test%", SqlUtils.toSearchPattern(" test "));
+    }
+
+    @Test
+    void toSearchPatternEscapesWildcards() {
+        assertEquals("%10\\%\\_off%", SqlUtils.toSearchPattern("10%_off"));
+        assertEquals("%a\\\\b%", SqlUtils.toSearchPattern("a\\b"));
+        assertEquals("%ab%", SqlUtils.toSearchPattern("a\u001Fb"));
+        assertNull(SqlUtils.toSearchPattern("\u001F"));
+    }
+
+    @Test
+    void countIsSkippedIfFirstPageIsNotFull() {
+        assertEquals(2, SqlUtils.countResults(0, 10, List.of(1, 2), () -> fail("count should not be executed")));
+    }
+
+    @Test
+    void countIsExecutedIfNeeded() {
+        assertEquals(42, SqlUtils.countResults(0, 2, List.of(1, 2), () -> 42));
+        assertEquals(42, SqlUtils.countResults(10, 10, List.of(1), () -> 42));
+    }
+}
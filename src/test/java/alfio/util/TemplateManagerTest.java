@@ -17,14 +17,22 @@
 package alfio.util;
 
 
+import alfio.manager.UploadedResourceManager;
+import alfio.manager.i18n.MessageSourceManager;
+import alfio.manager.system.ConfigurationManager;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.context.support.StaticMessageSource;
+import org.springframework.core.io.ByteArrayResource;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
 
 class TemplateManagerTest {
 
@@ -98,4 +106,21 @@ class TemplateManagerTest {
     void simpleParams(String input) {
         assertEquals("3-2-1", TemplateManager.translate(input, Locale.ENGLISH, messageSource));
     }
-}
\ No newline at end of file
+
+    @Test
+    void compiledTemplatesAreReused() {
+        var templateManager = new TemplateManager(mock(MessageSourceManager.class), mock(UploadedResourceManager.class), mock(ConfigurationManager.class));
+        assertEquals("hello <b>", renderHtml(templateManager, "hello {{{name}}}"));
+        assertEquals("hello <b>", renderHtml(templateManager, "hello {{{name}}}"));
+        assertEquals("bye &lt;b&gt;", renderHtml(templateManager, "bye {{name}}"));
+        var stats = templateManager.getCompiledTemplatesStats();
+        assertEquals(1, stats.hitCount());
+        assertEquals(2, stats.missCount());
+    }
+
+    private static String renderHtml(TemplateManager templateManager, String template) {
+        var os = new ByteArrayOutputStream();
+        templateManager.renderHtml(new ByteArrayResource(template.getBytes(StandardCharsets.UTF_8)), Map.of("name", "<b>"), os);
+        return os.toString(StandardCharsets.UTF_8);
+    }
+}